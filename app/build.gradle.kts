@@ -66,6 +66,10 @@ android {
     buildConfigString("LANGUAGE_PACK", Telegram.LANGUAGE_PACK)
 
     buildConfigString("THEME_FILE_EXTENSION", App.THEME_EXTENSION)
+
+    // Instrumented benchmarks for code that depends on Android, see src/androidTest
+    testInstrumentationRunner = "androidx.benchmark.junit4.AndroidBenchmarkRunner"
+    testInstrumentationRunnerArguments["androidx.benchmark.suppressErrors"] = "DEBUGGABLE,EMULATOR"
   }
 
   // TODO: needs performance tests. Must be used once custom icon sets will be available
@@ -247,6 +251,12 @@ dependencies {
   // TODO: upgrade to "com.googlecode.mp4parser:isoparser:1.1.22" or latest
   // mp4parser: https://github.com/sannies/mp4parser/releases
   implementation("com.googlecode.mp4parser:isoparser:1.0.6")
+
+  // JUnit: https://github.com/junit-team/junit4/releases
+  testImplementation("junit:junit:4.13.2")
+  // Jetpack Benchmark: https://developer.android.com/jetpack/androidx/releases/benchmark
+  androidTestImplementation("androidx.benchmark:benchmark-junit4:1.1.1")
+  androidTestImplementation("androidx.test.ext:junit:1.1.5")
 }
 
 if (!isExperimentalBuild) {
@@ -0,0 +1,83 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 10:40
+ */
+package org.thunderdog.challegram.benchmark;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import me.vkryl.core.util.Blob;
+
+/**
+ * Varint decoding used by PaintState and SimpleDrawing when restoring a painting,
+ * with values distributed like canvas sizes, drawing counts and path lengths.
+ * See {@link org.thunderdog.challegram.mediaview.paint.PaintStateBenchmark} for the whole decoding.
+ *
+ * Run with {@code ./gradlew :app:connectedAndroidTest}, preferably on a physical device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BlobVarintBenchmark {
+  @Rule
+  public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+  private static byte[] encode (int valueCount) {
+    Random random = new Random(valueCount);
+    int[] values = new int[valueCount];
+    int size = 0;
+    for (int i = 0; i < valueCount; i++) {
+      switch (i % 3) {
+        case 0: values[i] = random.nextInt(128); break; // Counts, 1 byte
+        case 1: values[i] = 128 + random.nextInt(4096); break; // Canvas sizes, 2 bytes
+        default: values[i] = random.nextInt(Integer.MAX_VALUE); break; // Worst case
+      }
+      size += Blob.sizeOf(values[i]);
+    }
+    Blob blob = new Blob(size);
+    for (int value : values) {
+      blob.writeVarint(value);
+    }
+    return blob.toByteArray();
+  }
+
+  private void decode (int valueCount) {
+    final byte[] data = encode(valueCount);
+    final BenchmarkState state = benchmarkRule.getState();
+    int sum = 0;
+    while (state.keepRunning()) {
+      Blob blob = new Blob(data);
+      for (int i = 0; i < valueCount; i++) {
+        sum += blob.readVarint();
+      }
+    }
+    if (sum == 42)
+      throw new AssertionError();
+  }
+
+  @Test
+  public void decodeSmall () {
+    decode(64);
+  }
+
+  @Test
+  public void decodeLarge () {
+    decode(4096);
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 10:30
+ */
+package org.thunderdog.challegram.benchmark;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import me.vkryl.core.reference.ReferenceList;
+
+/**
+ * Listener dispatch through {@link ReferenceList}, as done for every settings, emoji or user update.
+ *
+ * Run with {@code ./gradlew :app:connectedAndroidTest}, preferably on a physical device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ReferenceListBenchmark {
+  private static final class Listener {
+    private final int id;
+
+    Listener (int id) {
+      this.id = id;
+    }
+
+    int onEvent (int value) {
+      return value ^ id;
+    }
+  }
+
+  @Rule
+  public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+  private Listener[] listeners; // Strong references, so nothing is collected during the run
+
+  private ReferenceList<Listener> newList (int listenerCount, boolean isThreadSafe) {
+    ReferenceList<Listener> list = new ReferenceList<>(isThreadSafe);
+    listeners = new Listener[listenerCount];
+    for (int i = 0; i < listenerCount; i++) {
+      listeners[i] = new Listener(i);
+      list.add(listeners[i]);
+    }
+    return list;
+  }
+
+  private void iterate (int listenerCount, boolean isThreadSafe) {
+    final ReferenceList<Listener> list = newList(listenerCount, isThreadSafe);
+    final BenchmarkState state = benchmarkRule.getState();
+    int sum = 0;
+    while (state.keepRunning()) {
+      for (Listener listener : list) {
+        sum += listener.onEvent(1);
+      }
+    }
+    if (sum == 42)
+      throw new AssertionError();
+  }
+
+  @Test
+  public void iterateFew () {
+    iterate(4, false);
+  }
+
+  @Test
+  public void iterateMany () {
+    iterate(256, false);
+  }
+
+  @Test
+  public void iterateManyThreadSafe () {
+    iterate(256, true);
+  }
+
+  @Test
+  public void addRemove () {
+    final ReferenceList<Listener> list = newList(32, true);
+    final Listener listener = listeners[listeners.length / 2];
+    final BenchmarkState state = benchmarkRule.getState();
+    while (state.keepRunning()) {
+      list.remove(listener);
+      list.add(listener);
+    }
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 19:10
+ */
+package org.thunderdog.challegram.emoji;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.thunderdog.challegram.unsorted.Settings;
+
+import static org.junit.Assume.assumeFalse;
+
+/**
+ * {@link Emoji#replaceEmoji(CharSequence)} on typical message texts, as done for every message preview and bubble.
+ *
+ * Skipped when system emoji are enabled in settings, because then the text is returned as is.
+ * Run with {@code ./gradlew :app:connectedAndroidTest}, preferably on a physical device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class EmojiBenchmark {
+  private static final String PLAIN = "Alice Johnson: see you at 12:45 tomorrow, Bob Smith will bring the slides";
+  private static final String MIXED = "Happy birthday! 🎉🎂 Have a great day 😊 See you at the party 👍🏻 ❤️";
+  private static final String EMOJI_ONLY = "😂😂😂👍🏽🔥🇩🇪👨‍👩‍👧‍👦";
+
+  @Rule
+  public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+  private Emoji emoji;
+
+  @Before
+  public void setup () {
+    assumeFalse(Settings.instance().useSystemEmoji());
+    emoji = Emoji.instance();
+  }
+
+  private void replace (String text) {
+    final BenchmarkState state = benchmarkRule.getState();
+    int length = 0;
+    while (state.keepRunning()) {
+      length += emoji.replaceEmoji(text).length();
+    }
+    if (length == 0)
+      throw new AssertionError();
+  }
+
+  @Test
+  public void replacePlain () {
+    replace(PLAIN);
+  }
+
+  @Test
+  public void replaceMixed () {
+    replace(MIXED);
+  }
+
+  @Test
+  public void replaceEmojiOnly () {
+    replace(EMOJI_ONLY);
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 19:30
+ */
+package org.thunderdog.challegram.mediaview.paint;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.os.SystemClock;
+import android.util.Base64;
+import android.view.MotionEvent;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Decoding and drawing of a painting attached to a photo, as done when the photo is opened in media viewer.
+ *
+ * The painting is kept small enough to be stored inline, so no files in {@link PaintState#getPaintsDir()}
+ * or paint ids in settings are created.
+ * Run with {@code ./gradlew :app:connectedAndroidTest}, preferably on a physical device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PaintStateBenchmark {
+  private static final int CANVAS_SIZE = 1080;
+
+  @Rule
+  public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+  private String encoded;
+  private PaintState paintState;
+  private Bitmap bitmap;
+
+  private static void track (SimpleDrawing drawing, float[] points) {
+    long time = SystemClock.uptimeMillis();
+    for (int i = 0; i < points.length; i += 2) {
+      int action = i == 0 ? MotionEvent.ACTION_DOWN : i == points.length - 2 ? MotionEvent.ACTION_UP : MotionEvent.ACTION_MOVE;
+      MotionEvent e = MotionEvent.obtain(time, time + i * 8, action, points[i], points[i + 1], 0);
+      switch (action) {
+        case MotionEvent.ACTION_DOWN:
+          drawing.startDrawing(e);
+          break;
+        case MotionEvent.ACTION_MOVE:
+          drawing.moveDrawing(e, false);
+          break;
+        case MotionEvent.ACTION_UP:
+          drawing.completeDrawing(e, false);
+          break;
+      }
+      e.recycle();
+    }
+  }
+
+  @Before
+  public void setup () {
+    PaintState state = new PaintState();
+
+    SimpleDrawing path = new SimpleDrawing(SimpleDrawing.TYPE_PATH, CANVAS_SIZE, CANVAS_SIZE, 1f, 0f);
+    path.setBrushParameters(Color.RED, 12f);
+    track(path, new float[] {100, 100, 180, 140, 260, 220, 340, 260, 420, 380, 500, 420, 580, 540});
+    state.addSimpleDrawing(path);
+
+    SimpleDrawing rectangle = new SimpleDrawing(SimpleDrawing.TYPE_RECTANGLE, CANVAS_SIZE, CANVAS_SIZE, 1f, 0f);
+    rectangle.setBrushParameters(Color.BLUE, 8f);
+    track(rectangle, new float[] {600, 600, 900, 850});
+    state.addSimpleDrawing(rectangle);
+
+    encoded = state.toString();
+    assertEquals("Painting must be stored inline", 0, Base64.decode(encoded, Base64.NO_PADDING)[0]);
+    paintState = PaintState.parse(encoded);
+    assertNotNull(paintState);
+
+    bitmap = Bitmap.createBitmap(CANVAS_SIZE, CANVAS_SIZE, Bitmap.Config.ARGB_8888);
+  }
+
+  @After
+  public void cleanup () {
+    if (bitmap != null) {
+      bitmap.recycle();
+      bitmap = null;
+    }
+  }
+
+  @Test
+  public void parse () {
+    final BenchmarkState state = benchmarkRule.getState();
+    int count = 0;
+    while (state.keepRunning()) {
+      if (PaintState.parse(encoded) != null) {
+        count++;
+      }
+    }
+    if (count == 0)
+      throw new AssertionError();
+  }
+
+  @Test
+  public void draw () {
+    final Canvas c = new Canvas(bitmap);
+    final BenchmarkState state = benchmarkRule.getState();
+    while (state.keepRunning()) {
+      paintState.draw(c, 0, 0, CANVAS_SIZE, CANVAS_SIZE);
+    }
+  }
+}
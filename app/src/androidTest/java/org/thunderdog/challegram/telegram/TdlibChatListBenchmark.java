@@ -0,0 +1,77 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 19:40
+ */
+package org.thunderdog.challegram.telegram;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.drinkless.tdlib.TdApi;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Chat list maintenance on {@code updateChatPosition}, as done by {@link TdlibChatList} for every new message:
+ * the chat is found by id and moved to its new place, while the list stays sorted.
+ *
+ * Uses the same list operations as {@link TdlibChatList#onUpdateChatPosition}, without a running {@link Tdlib},
+ * so listener dispatch is not included.
+ * Run with {@code ./gradlew :app:connectedAndroidTest}, preferably on a physical device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TdlibChatListBenchmark {
+  @Rule
+  public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+  private static ArrayList<TdlibChatList.Entry> newList (TdApi.ChatList chatList, int chatCount) {
+    ArrayList<TdlibChatList.Entry> list = new ArrayList<>(chatCount);
+    for (int i = 0; i < chatCount; i++) {
+      TdApi.Chat chat = new TdApi.Chat();
+      chat.id = 1000 + i;
+      // Sorted by descending order
+      list.add(new TdlibChatList.Entry(chat, chatList, new TdApi.ChatPosition(chatList, (long) (chatCount - i) << 20, false, null)));
+    }
+    return list;
+  }
+
+  private void moveToTop (int chatCount) {
+    final TdApi.ChatList chatList = new TdApi.ChatListMain();
+    final ArrayList<TdlibChatList.Entry> list = newList(chatList, chatCount);
+    final Random random = new Random(chatCount);
+    final BenchmarkState state = benchmarkRule.getState();
+    long order = (long) (chatCount + 1) << 20;
+    while (state.keepRunning()) {
+      long chatId = 1000 + random.nextInt(chatCount);
+      int prevIndex = TdlibChatList.indexOfEntry(list, chatId);
+      int newIndex = TdlibChatList.moveEntry(list, prevIndex, new TdApi.ChatPosition(chatList, ++order, false, null));
+      if (newIndex != 0)
+        throw new AssertionError();
+    }
+  }
+
+  @Test
+  public void moveToTopSmall () {
+    moveToTop(100);
+  }
+
+  @Test
+  public void moveToTopLarge () {
+    moveToTop(2000);
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 21:10
+ */
+package org.thunderdog.challegram.ui;
+
+import static org.junit.Assume.assumeTrue;
+
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.FrameMetrics;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.Window;
+
+import androidx.annotation.RequiresApi;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.thunderdog.challegram.MainActivity;
+import org.thunderdog.challegram.component.dialogs.ChatsAdapter;
+import org.thunderdog.challegram.telegram.TdlibManager;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Frame times while flinging the main chat list of the current account,
+ * as a measure of chat cells measured ahead of scroll and shared between folder pages.
+ *
+ * Needs a logged in account: the list is whatever the account has, so use one with thousands of chats
+ * and compare runs on the same device and account. Skipped when nobody is logged in.
+ * Run with {@code ./gradlew :app:connectedAndroidTest}, results are reported as instrumentation status
+ * and logged with the {@code ChatListFrameTime} tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ChatListFrameTimeTest {
+  private static final String TAG = "ChatListFrameTime";
+  private static final int FLING_COUNT = 40;
+  private static final int FLING_VELOCITY_DP = 8000;
+  private static final long FLING_DURATION_MS = 1200;
+  private static final long CHAT_LIST_TIMEOUT_MS = 15000;
+  private static final int MAX_FRAME_COUNT = 16384;
+
+  private static RecyclerView findChatList (View view) {
+    if (view instanceof RecyclerView && ((RecyclerView) view).getAdapter() instanceof ChatsAdapter && view.isShown()) {
+      return (RecyclerView) view;
+    }
+    if (view instanceof ViewGroup) {
+      ViewGroup group = (ViewGroup) view;
+      for (int i = 0; i < group.getChildCount(); i++) {
+        RecyclerView found = findChatList(group.getChildAt(i));
+        if (found != null) {
+          return found;
+        }
+      }
+    }
+    return null;
+  }
+
+  private static long percentile (long[] sorted, int count, int percent) {
+    return sorted[Math.min(count - 1, count * percent / 100)];
+  }
+
+  @Test
+  @RequiresApi(Build.VERSION_CODES.N)
+  public void flingChatList () throws InterruptedException {
+    assumeTrue("FrameMetrics need Android 7.0", Build.VERSION.SDK_INT >= Build.VERSION_CODES.N);
+    try (ActivityScenario<MainActivity> scenario = ActivityScenario.launch(MainActivity.class)) {
+      assumeTrue("Needs a logged in account", TdlibManager.instance().current().isAuthorized());
+
+      AtomicReference<RecyclerView> chatList = new AtomicReference<>();
+      long startMs = SystemClock.uptimeMillis();
+      while (chatList.get() == null && SystemClock.uptimeMillis() - startMs < CHAT_LIST_TIMEOUT_MS) {
+        scenario.onActivity(activity -> chatList.set(findChatList(activity.getWindow().getDecorView())));
+        if (chatList.get() == null) {
+          Thread.sleep(250);
+        }
+      }
+      assumeTrue("Chat list is not shown", chatList.get() != null);
+
+      final long[] frameTimesNs = new long[MAX_FRAME_COUNT];
+      final AtomicInteger frameCount = new AtomicInteger();
+      HandlerThread metricsThread = new HandlerThread(TAG);
+      metricsThread.start();
+      Window.OnFrameMetricsAvailableListener listener = (window, frameMetrics, dropCount) -> {
+        if (frameMetrics.getMetric(FrameMetrics.FIRST_DRAW_FRAME) == 1) {
+          return;
+        }
+        int index = frameCount.getAndIncrement();
+        if (index < MAX_FRAME_COUNT) {
+          frameTimesNs[index] = frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION);
+        }
+      };
+      scenario.onActivity(activity -> activity.getWindow().addOnFrameMetricsAvailableListener(listener, new Handler(metricsThread.getLooper())));
+
+      for (int i = 0; i < FLING_COUNT; i++) {
+        scenario.onActivity(activity -> {
+          RecyclerView recyclerView = chatList.get();
+          int velocity = (int) (FLING_VELOCITY_DP * activity.getResources().getDisplayMetrics().density);
+          recyclerView.fling(0, velocity);
+        });
+        Thread.sleep(FLING_DURATION_MS);
+      }
+
+      AtomicInteger itemCount = new AtomicInteger();
+      AtomicReference<Float> refreshRate = new AtomicReference<>();
+      scenario.onActivity(activity -> {
+        activity.getWindow().removeOnFrameMetricsAvailableListener(listener);
+        RecyclerView.Adapter<?> adapter = chatList.get().getAdapter();
+        itemCount.set(adapter != null ? adapter.getItemCount() : 0);
+        refreshRate.set(activity.getWindowManager().getDefaultDisplay().getRefreshRate());
+      });
+      metricsThread.quitSafely();
+      metricsThread.join();
+
+      int count = Math.min(frameCount.get(), MAX_FRAME_COUNT);
+      assumeTrue("No frames were drawn", count > 0);
+      long[] sorted = Arrays.copyOf(frameTimesNs, count);
+      Arrays.sort(sorted);
+      long frameBudgetNs = (long) (1_000_000_000L / refreshRate.get());
+      int jankyCount = 0;
+      for (long frameTimeNs : sorted) {
+        if (frameTimeNs > frameBudgetNs) {
+          jankyCount++;
+        }
+      }
+
+      Bundle results = new Bundle();
+      results.putInt("chat_count", itemCount.get());
+      results.putInt("frame_count", count);
+      results.putLong("frame_p50_us", percentile(sorted, count, 50) / 1000);
+      results.putLong("frame_p90_us", percentile(sorted, count, 90) / 1000);
+      results.putLong("frame_p99_us", percentile(sorted, count, 99) / 1000);
+      results.putInt("janky_frame_count", jankyCount);
+      InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+      Log.i(TAG, results.toString());
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 19:20
+ */
+package org.thunderdog.challegram.util.text;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.thunderdog.challegram.tool.Paints;
+import org.thunderdog.challegram.tool.Screen;
+
+/**
+ * Full {@link Text} layout of message texts, as done when a chat is opened or a message is received.
+ * Word measurement alone is covered by {@link TextWidthCacheBenchmark}.
+ *
+ * Run with {@code ./gradlew :app:connectedAndroidTest}, preferably on a physical device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TextBenchmark {
+  private static final String SHORT = "Alice Johnson: see you at 12:45 tomorrow 👍";
+  private static final String LONG =
+    "The meeting is moved to Thursday, 10:30, room 4B. Please bring the printed slides and the updated budget, " +
+    "we will go through the numbers for the second quarter first 📊. Bob Smith will join remotely, " +
+    "so make sure the camera works before we start. If anything changes I will post it here 🙂\n\n" +
+    "Agenda: quarterly numbers, hiring plan, office move, anything else.";
+
+  @Rule
+  public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+  private void layout (String text, boolean isSingleLine) {
+    final TextStyleProvider provider = Paints.robotoStyleProvider(15f);
+    final int maxWidth = Screen.dp(280f);
+    final BenchmarkState state = benchmarkRule.getState();
+    int lineCount = 0;
+    while (state.keepRunning()) {
+      Text.Builder b = new Text.Builder(text, maxWidth, provider, TextColorSets.Regular.NORMAL);
+      if (isSingleLine) {
+        b.singleLine();
+      }
+      lineCount += b.build().getLineCount();
+    }
+    if (lineCount == 0)
+      throw new AssertionError();
+  }
+
+  @Test
+  public void layoutSingleLine () {
+    layout(SHORT, true);
+  }
+
+  @Test
+  public void layoutMultiLine () {
+    layout(LONG, false);
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 20:20
+ */
+package org.thunderdog.challegram.util.text;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.drinkless.tdlib.TdApi;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.thunderdog.challegram.N;
+
+import me.vkryl.td.Td;
+
+/**
+ * {@link TextEntityFinder} compared to calling {@link Td#findEntities(String)} directly,
+ * on the texts from {@link TextEntityFinderTest#CORPUS}.
+ *
+ * Run with {@code ./gradlew :app:connectedAndroidTest}, preferably on a physical device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TextEntityFinderBenchmark {
+  @Rule
+  public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+  @BeforeClass
+  public static void init () {
+    if (!N.init())
+      throw new AssertionError();
+  }
+
+  @Test
+  public void findTdlib () {
+    final BenchmarkState state = benchmarkRule.getState();
+    int count = 0;
+    while (state.keepRunning()) {
+      for (String text : TextEntityFinderTest.CORPUS) {
+        TdApi.TextEntity[] entities = Td.findEntities(text);
+        count += entities != null ? entities.length : 0;
+      }
+    }
+    if (count == 0)
+      throw new AssertionError();
+  }
+
+  @Test
+  public void findCached () {
+    final BenchmarkState state = benchmarkRule.getState();
+    int count = 0;
+    while (state.keepRunning()) {
+      for (String text : TextEntityFinderTest.CORPUS) {
+        TdApi.TextEntity[] entities = TextEntityFinder.findEntities(text);
+        count += entities != null ? entities.length : 0;
+      }
+    }
+    if (count == 0)
+      throw new AssertionError();
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 20:10
+ */
+package org.thunderdog.challegram.util.text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.drinkless.tdlib.TdApi;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.thunderdog.challegram.N;
+
+import me.vkryl.td.Td;
+
+/**
+ * Checks that {@link TextEntityFinder} returns the same entities as {@link Td#findEntities(String)},
+ * both on the first and on a cached call, and that returned entities are not shared.
+ *
+ * Needs TDLib, so runs on a device: {@code ./gradlew :app:connectedAndroidTest}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TextEntityFinderTest {
+  static final String[] CORPUS = {
+    // Skipped without calling TDLib
+    "Hello world",
+    "Привет, как дела?",
+    "Don't forget (the) milk & bread!",
+    "🙂🙂 see you soon 🎉",
+    "こんにちは 世界",
+    // Passed to TDLib
+    "@durov",
+    "Follow @telegram and #news",
+    "Price went up by $TON today",
+    "/start@SomeBot please",
+    "Visit telegram.org or https://t.me/tgx_android",
+    "Write to support@example.com",
+    "Call me: +1 (555) 123-4567",
+    "Card 4111 1111 1111 1111",
+    "Meeting at 12:45, room 4.2",
+    "Numbers 1 2 3 but nothing else",
+    "Done. Next: maybe later",
+    "ссылка: пример.рф и #тег",
+  };
+
+  @BeforeClass
+  public static void init () {
+    assertTrue(N.init());
+  }
+
+  private static void assertSameEntities (String text, TdApi.TextEntity[] expected, TdApi.TextEntity[] actual) {
+    if (expected == null || expected.length == 0) {
+      assertNull(text, actual);
+      return;
+    }
+    assertNotNull(text, actual);
+    assertEquals(text, expected.length, actual.length);
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(text, expected[i].offset, actual[i].offset);
+      assertEquals(text, expected[i].length, actual[i].length);
+      assertEquals(text, expected[i].type.getConstructor(), actual[i].type.getConstructor());
+    }
+  }
+
+  @Test
+  public void sameAsTdlib () {
+    for (String text : CORPUS) {
+      TdApi.TextEntity[] expected = Td.findEntities(text);
+      assertSameEntities(text, expected, TextEntityFinder.findEntities(text));
+      assertSameEntities(text, expected, TextEntityFinder.findEntities(text)); // Cached
+    }
+  }
+
+  @Test
+  public void skippedTextsHaveNoEntities () {
+    for (String text : CORPUS) {
+      if (!TextEntityFinder.mayContainEntities(text)) {
+        TdApi.TextEntity[] entities = Td.findEntities(text);
+        assertTrue(text, entities == null || entities.length == 0);
+      }
+    }
+  }
+
+  @Test
+  public void copiesAreNotShared () {
+    String text = "Follow @telegram and #news";
+    TdApi.TextEntity[] first = TextEntityFinder.findEntities(text);
+    assertNotNull(first);
+    first[0].offset = -1;
+    first[0].type = new TdApi.TextEntityTypeTextUrl("https://example.com");
+
+    TdApi.TextEntity[] second = TextEntityFinder.findEntities(text);
+    assertSameEntities(text, Td.findEntities(text), second);
+    for (int i = 0; i < second.length; i++) {
+      assertNotSame(first[i], second[i]);
+      assertNotSame(first[i].type, second[i].type);
+    }
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 23:10
+ */
+package org.thunderdog.challegram.util.text;
+
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.thunderdog.challegram.U;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures words of chat list titles and message previews one by one, as {@link Text} does while wrapping,
+ * with and without {@link TextWidthCache}.
+ *
+ * Texts are read from {@code text_width_corpus.txt} in androidTest assets.
+ *
+ * Run with {@code ./gradlew :app:connectedAndroidTest}, preferably on a physical device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TextWidthCacheBenchmark {
+  private static final String CORPUS_ASSET = "text_width_corpus.txt";
+
+  @Rule
+  public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+  private Paint paint;
+  private String[] texts;
+  private int[][] wordBounds;
+
+  @Before
+  public void setup () throws IOException {
+    paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    paint.setTypeface(Typeface.DEFAULT);
+    paint.setTextSize(42f);
+    texts = readCorpus();
+    wordBounds = new int[texts.length][];
+    for (int i = 0; i < texts.length; i++) {
+      wordBounds[i] = findWords(texts[i]);
+    }
+    TextWidthCache.clear();
+  }
+
+  private static String[] readCorpus () throws IOException {
+    List<String> texts = new ArrayList<>();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(InstrumentationRegistry.getInstrumentation().getContext().getAssets().open(CORPUS_ASSET), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (!line.isEmpty() && !line.startsWith("#")) {
+          texts.add(line);
+        }
+      }
+    }
+    if (texts.isEmpty())
+      throw new IllegalStateException(CORPUS_ASSET + " is empty");
+    return texts.toArray(new String[0]);
+  }
+
+  private static int[] findWords (String text) {
+    int count = 0;
+    int[] bounds = new int[text.length() * 2];
+    int start = 0;
+    for (int i = 0; i <= text.length(); i++) {
+      if (i == text.length() || text.charAt(i) == ' ') {
+        if (i > start) {
+          bounds[count++] = start;
+          bounds[count++] = i;
+        }
+        start = i + 1;
+      }
+    }
+    int[] result = new int[count];
+    System.arraycopy(bounds, 0, result, 0, count);
+    return result;
+  }
+
+  @Test
+  public void measureUncached () {
+    final BenchmarkState state = benchmarkRule.getState();
+    float sum = 0;
+    while (state.keepRunning()) {
+      for (int t = 0; t < texts.length; t++) {
+        final String text = texts[t];
+        final int[] bounds = wordBounds[t];
+        for (int i = 0; i < bounds.length; i += 2) {
+          sum += U.measureText(text, bounds[i], bounds[i + 1], paint);
+        }
+      }
+    }
+    if (sum < 0)
+      throw new AssertionError();
+  }
+
+  @Test
+  public void measureCached () {
+    final BenchmarkState state = benchmarkRule.getState();
+    float sum = 0;
+    while (state.keepRunning()) {
+      sum += measureCorpusCached();
+    }
+    if (sum < 0)
+      throw new AssertionError();
+  }
+
+  @Test
+  public void measureCachedMiss () {
+    final BenchmarkState state = benchmarkRule.getState();
+    float sum = 0;
+    while (state.keepRunning()) {
+      state.pauseTiming();
+      TextWidthCache.clear();
+      state.resumeTiming();
+      sum += measureCorpusCached();
+    }
+    if (sum < 0)
+      throw new AssertionError();
+  }
+
+  private float measureCorpusCached () {
+    float sum = 0;
+    for (int t = 0; t < texts.length; t++) {
+      final String text = texts[t];
+      final int[] bounds = wordBounds[t];
+      for (int i = 0; i < bounds.length; i += 2) {
+        sum += TextWidthCache.measureText(text, bounds[i], bounds[i + 1], paint);
+      }
+    }
+    return sum;
+  }
+}
@@ -20,7 +20,10 @@ import androidx.camera.core.CameraXConfig;
 import androidx.multidex.MultiDexApplication;
 import androidx.work.Configuration;
 
+import org.thunderdog.challegram.core.MemoryGovernor;
+import org.thunderdog.challegram.telegram.AccountConfigFile;
 import org.thunderdog.challegram.tool.UI;
+import org.thunderdog.challegram.unsorted.Settings;
 
 public final class BaseApplication extends MultiDexApplication implements Configuration.Provider, CameraXConfig.Provider {
   @Override
@@ -29,6 +32,23 @@ public final class BaseApplication extends MultiDexApplication implements Config
     UI.initApp(getApplicationContext());
   }
 
+  @Override
+  public void onTrimMemory (int level) {
+    super.onTrimMemory(level);
+    if (level >= TRIM_MEMORY_UI_HIDDEN) {
+      // Process may be killed at any moment after this point, so ask the config thread to write right away
+      AccountConfigFile.flush();
+      Settings.instance().flushCustomThemes();
+    }
+    MemoryGovernor.instance().onTrimMemory(level);
+  }
+
+  @Override
+  public void onLowMemory () {
+    super.onLowMemory();
+    MemoryGovernor.instance().onLowMemory();
+  }
+
   @NonNull
   @Override
   public Configuration getWorkManagerConfiguration () {
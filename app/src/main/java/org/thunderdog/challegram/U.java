@@ -2300,6 +2300,14 @@ public class U {
   }*/
 
   public static float measureText (@Nullable CharSequence in, int start, int end, @NonNull Paint p) {
+    return in == null ? 0 : measureText(in, start, end, 0, in.length(), p);
+  }
+
+  /**
+   * @param contextStart Start of the text that may affect shaping of the run, e.g. through kerning or joining
+   * @param contextEnd End of the context
+   */
+  public static float measureText (@Nullable CharSequence in, int start, int end, int contextStart, int contextEnd, @NonNull Paint p) {
     final int count = end - start;
 
     if (in == null || in.length() == 0 || count <= 0) {
@@ -2310,7 +2318,7 @@ public class U {
       throw new IllegalArgumentException();
 
     if (Config.USE_TEXT_ADVANCE && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && Strings.getTextDirection(in, start, end) != Strings.DIRECTION_RTL) {
-      return p.getRunAdvance(in, start, end, 0, in.length(), false, end);
+      return p.getRunAdvance(in, start, end, contextStart, contextEnd, false, end);
     } else {
       float[] widths = pickWidths(count, true);
       p.getTextWidths(in, start, end, widths);
@@ -0,0 +1,107 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 22:10
+ */
+package org.thunderdog.challegram.component.chat;
+
+/**
+ * Chooses history chunk sizes and prefetch distances from recent scroll velocity
+ * and observed request latency, so the next chunk is requested early enough
+ * to arrive before the user reaches the end of loaded messages.
+ *
+ * Time is always passed by the caller and nothing here depends on Android or TDLib,
+ * so behavior can be reproduced with a simulated scroll trace.
+ */
+final class HistoryPrefetchController {
+  static final int MAX_CHUNK_SIZE = 100; // TDLib limit
+
+  private static final long DEFAULT_LATENCY_MS = 150;
+  private static final long MAX_LATENCY_MS = 3000;
+  private static final float LATENCY_SMOOTHING = .25f;
+
+  private static final float VELOCITY_SMOOTHING = .3f;
+  private static final long VELOCITY_TIMEOUT_MS = 300; // Scrolling is considered stopped after this time
+
+  // Items scrolled during one request are multiplied by these factors
+  private static final float PREFETCH_FACTOR = 1.5f;
+  private static final float CHUNK_FACTOR = 3f;
+
+  private float velocity; // Items per second, positive towards the top (older messages)
+  private long lastScrollTimeMs = -1;
+  private float pendingItems;
+  private float latencyMs = DEFAULT_LATENCY_MS;
+
+  /**
+   * @param itemsTowardsTop Scrolled distance in items, positive, when scrolling towards older messages.
+   */
+  void onScroll (long timeMs, float itemsTowardsTop) {
+    if (lastScrollTimeMs == -1 || timeMs - lastScrollTimeMs > VELOCITY_TIMEOUT_MS) {
+      // Scrolling has just started
+      lastScrollTimeMs = timeMs;
+      pendingItems = 0;
+      velocity = 0;
+      return;
+    }
+    pendingItems += itemsTowardsTop;
+    final long elapsedMs = timeMs - lastScrollTimeMs;
+    if (elapsedMs <= 0) {
+      // Multiple events within the same millisecond
+      return;
+    }
+    float currentVelocity = pendingItems * 1000f / elapsedMs;
+    velocity = velocity + (currentVelocity - velocity) * VELOCITY_SMOOTHING;
+    lastScrollTimeMs = timeMs;
+    pendingItems = 0;
+  }
+
+  void onRequestFinished (long latencyMs) {
+    if (latencyMs < 0)
+      return;
+    latencyMs = Math.min(latencyMs, MAX_LATENCY_MS);
+    this.latencyMs = this.latencyMs + (latencyMs - this.latencyMs) * LATENCY_SMOOTHING;
+  }
+
+  void reset () {
+    velocity = 0;
+    pendingItems = 0;
+    lastScrollTimeMs = -1;
+  }
+
+  float getVelocity (long timeMs, boolean towardsTop) {
+    if (lastScrollTimeMs == -1 || timeMs - lastScrollTimeMs > VELOCITY_TIMEOUT_MS) {
+      return 0;
+    }
+    return Math.max(0, towardsTop ? velocity : -velocity);
+  }
+
+  long getLatency () {
+    return (long) latencyMs;
+  }
+
+  private float getItemsPerRequest (long timeMs, boolean towardsTop) {
+    return getVelocity(timeMs, towardsTop) * latencyMs / 1000f;
+  }
+
+  /**
+   * @return Number of items from the edge of loaded messages, at which the next chunk should be requested.
+   */
+  int getPrefetchDistance (long timeMs, boolean towardsTop, int minDistance) {
+    int distance = (int) Math.ceil(getItemsPerRequest(timeMs, towardsTop) * PREFETCH_FACTOR);
+    return Math.max(minDistance, Math.min(distance, MAX_CHUNK_SIZE));
+  }
+
+  int getChunkSize (long timeMs, boolean towardsTop, int minChunkSize) {
+    int chunkSize = (int) Math.ceil(getItemsPerRequest(timeMs, towardsTop) * CHUNK_FACTOR);
+    return Math.max(minChunkSize, Math.min(chunkSize, MAX_CHUNK_SIZE));
+  }
+}
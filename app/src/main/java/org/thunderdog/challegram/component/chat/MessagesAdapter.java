@@ -319,6 +319,18 @@ public class MessagesAdapter extends RecyclerView.Adapter<MessagesHolder> {
     U.notifyItemsReplaced(this, oldItemCount);
   }
 
+  /**
+   * Same as {@link #clear(boolean)}, but messages are not destroyed and are returned to the caller instead.
+   */
+  @Nullable
+  public ArrayList<TGMessage> detachMessages () {
+    int oldItemCount = getItemCount();
+    ArrayList<TGMessage> items = this.items;
+    this.items = null;
+    U.notifyItemsReplaced(this, oldItemCount);
+    return items != null && !items.isEmpty() ? items : null;
+  }
+
   public void moveItem (int fromIndex, int toIndex) {
     if (items == null || fromIndex == toIndex) {
       return;
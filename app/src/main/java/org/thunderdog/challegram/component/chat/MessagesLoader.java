@@ -44,6 +44,7 @@ import org.thunderdog.challegram.tool.Strings;
 import org.thunderdog.challegram.tool.UI;
 import org.thunderdog.challegram.unsorted.Settings;
 import org.thunderdog.challegram.util.CancellableResultHandler;
+import org.thunderdog.challegram.util.text.TextEntityFinder;
 
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -66,8 +67,7 @@ public class MessagesLoader implements Client.ResultHandler {
   private static final int CHUNK_SEARCH_OFFSET = -19;
   private static final int CHUNK_SIZE_SEARCH = -CHUNK_SEARCH_OFFSET + 14;
 
-  private static final int CHUNK_SIZE_BOTTOM = 31;
-  private static final int CHUNK_BOTTOM_OFFSET = -30;
+  private static final int CHUNK_SIZE_BOTTOM = 31; // Minimum, actual size depends on scroll velocity
 
   public static final int MODE_INITIAL = 0;
   public static final int MODE_MORE_TOP = 1;
@@ -505,6 +505,8 @@ public class MessagesLoader implements Client.ResultHandler {
     canLoadTop = false;
     canLoadBottom = false;
 
+    prefetch.reset();
+
     if (contextId == Long.MAX_VALUE) {
       contextId = 0;
     }
@@ -805,7 +807,7 @@ public class MessagesLoader implements Client.ResultHandler {
           text = TD.newText(Strings.buildMarkdown(context, message, null));
           Td.addDefaultEntities(text);
         } else {
-          text = new TdApi.FormattedText(message, Td.findEntities(message));
+          text = new TdApi.FormattedText(message, TextEntityFinder.findEntities(message));
         }
       }
 
@@ -1011,6 +1013,16 @@ public class MessagesLoader implements Client.ResultHandler {
     load(startMessageId, 0, CHUNK_SIZE_SMALL, MODE_INITIAL, true, true, true);
   }
 
+  /**
+   * Continues from messages that were already loaded before, without sending any requests.
+   */
+  public void restoreFromCache (boolean canLoadTop, boolean canLoadBottom) {
+    reuse();
+
+    this.canLoadTop = canLoadTop;
+    this.canLoadBottom = canLoadBottom;
+  }
+
   public void loadFromMessage (MessageId messageId, final int highlightMode, boolean force) {
     reuse();
 
@@ -1027,6 +1039,25 @@ public class MessagesLoader implements Client.ResultHandler {
 
   private long lastRequestTime;
 
+  // Adaptive prefetch
+
+  private final HistoryPrefetchController prefetch = new HistoryPrefetchController();
+  private long moreRequestStartTime;
+
+  /**
+   * @param itemsTowardsTop Scrolled distance in items, positive, when scrolling towards older messages.
+   */
+  public void onScroll (float itemsTowardsTop) {
+    prefetch.onScroll(SystemClock.uptimeMillis(), itemsTowardsTop);
+  }
+
+  /**
+   * @return Number of items from the edge of loaded messages, at which {@link #loadMore(boolean)} should be called.
+   */
+  public int getPrefetchDistance (boolean fromTop, int minDistance) {
+    return prefetch.getPrefetchDistance(SystemClock.uptimeMillis(), fromTop, minDistance);
+  }
+
   private boolean loadingLocal, loadingAllowMoreTop, loadingAllowMoreBottom;
 
   private MessageId lastFromMessageId;
@@ -1036,7 +1067,7 @@ public class MessagesLoader implements Client.ResultHandler {
   private boolean foundUnreadAtLeastOnce;
   private final Object lock = new Object();
 
-  private boolean hasSearchFilter () {
+  boolean hasSearchFilter () {
     return searchFilter != null;
   }
 
@@ -1123,7 +1154,12 @@ public class MessagesLoader implements Client.ResultHandler {
   }
 
   public boolean loadMore (boolean fromTop) {
-    return loadMore(fromTop, fromTop ? CHUNK_SIZE_BIG : CHUNK_SIZE_BOTTOM, false);
+    int chunkSize = prefetch.getChunkSize(SystemClock.uptimeMillis(), fromTop, fromTop ? CHUNK_SIZE_BIG : CHUNK_SIZE_BOTTOM);
+    if (loadMore(fromTop, chunkSize, false)) {
+      moreRequestStartTime = SystemClock.uptimeMillis();
+      return true;
+    }
+    return false;
   }
 
   private boolean loadMore (boolean fromTop, int count, boolean onlyLocal) {
@@ -1147,8 +1183,7 @@ public class MessagesLoader implements Client.ResultHandler {
         }
 
         // Parameter limit must be greater than -offset
-        // -offset
-        load(startBottom, CHUNK_BOTTOM_OFFSET, count, MODE_MORE_BOTTOM, onlyLocal, false, true);
+        load(startBottom, -(count - 1), count, MODE_MORE_BOTTOM, onlyLocal, false, true);
         return true;
       }
     }
@@ -1633,6 +1668,12 @@ public class MessagesLoader implements Client.ResultHandler {
         isLoading = false;
       }
 
+      final boolean isMore = loadingMode == MODE_MORE_TOP || loadingMode == MODE_MORE_BOTTOM;
+      if (isMore && moreRequestStartTime != 0) {
+        prefetch.onRequestFinished(SystemClock.uptimeMillis() - moreRequestStartTime);
+        moreRequestStartTime = 0;
+      }
+
       boolean ignoreEndCheck = false;
 
       if (loadingMode == MODE_INITIAL || loadingMode == MODE_REPEAT_INITIAL) {
@@ -1656,6 +1697,10 @@ public class MessagesLoader implements Client.ResultHandler {
         manager.onBottomEndChecked();
       }
       manager.ensureContentHeight();
+      if (isMore) {
+        // Keep one request ahead while user is still scrolling
+        manager.checkLoadMore();
+      }
     });
   }
 
@@ -15,10 +15,12 @@
 package org.thunderdog.challegram.component.chat;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.view.View;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.UiThread;
 import androidx.annotation.WorkerThread;
@@ -44,6 +46,8 @@ import org.thunderdog.challegram.mediaview.data.MediaItem;
 import org.thunderdog.challegram.mediaview.data.MediaStack;
 import org.thunderdog.challegram.navigation.ViewController;
 import org.thunderdog.challegram.player.TGPlayerController;
+import org.thunderdog.challegram.telegram.DownloadPriorityPolicy;
+import org.thunderdog.challegram.telegram.DownloadPriorityScheduler;
 import org.thunderdog.challegram.telegram.ListManager;
 import org.thunderdog.challegram.telegram.MessageEditListener;
 import org.thunderdog.challegram.telegram.MessageListener;
@@ -87,7 +91,7 @@ import me.vkryl.td.MessageId;
 import me.vkryl.td.Td;
 
 public class MessagesManager implements Client.ResultHandler, MessagesSearchManager.Delegate,
-  MessageListener, MessageEditListener, MessageThreadListener, Comparator<TGMessage>, TGPlayerController.PlayListBuilder, BaseActivity.PasscodeListener, TdlibCache.ChatMemberStatusChangeListener, TdlibSettingsManager.DismissMessageListener {
+  MessageListener, MessageEditListener, MessageThreadListener, Comparator<TGMessage>, TGPlayerController.PlayListBuilder, BaseActivity.PasscodeListener, TdlibCache.ChatMemberStatusChangeListener, TdlibSettingsManager.DismissMessageListener, DownloadPriorityScheduler.Reporter {
   private final MessagesController controller;
   private final Tdlib tdlib;
   private MessagesAdapter adapter;
@@ -96,6 +100,7 @@ public class MessagesManager implements Client.ResultHandler, MessagesSearchMana
   private final MessagesSearchManagerMiddleware searchMiddleware;
 
   private final MessagesLoader loader;
+  private final WarmChatCache warmChats;
 
   private String eventLogQuery;
   private long[] eventLogUserIds;
@@ -115,6 +120,7 @@ public class MessagesManager implements Client.ResultHandler, MessagesSearchMana
     this.tdlib = controller.tdlib();
     this.searchMiddleware = new MessagesSearchManagerMiddleware(tdlib);
     this.loader = new MessagesLoader(this, searchMiddleware);
+    this.warmChats = new WarmChatCache(tdlib);
     this.listener = new RecyclerView.OnScrollListener() {
       @Override
       public void onScrollStateChanged (RecyclerView recyclerView, int newState) {
@@ -140,6 +146,14 @@ public class MessagesManager implements Client.ResultHandler, MessagesSearchMana
 
       @Override
       public void onScrolled (RecyclerView recyclerView, int dx, int dy) {
+        if (dy != 0 && manager != null) {
+          int first = manager.findFirstVisibleItemPosition();
+          int last = manager.findLastVisibleItemPosition();
+          if (first != -1 && last != -1 && recyclerView.getMeasuredHeight() > 0) {
+            float averageItemSize = (float) recyclerView.getMeasuredHeight() / (last - first + 1);
+            loader.onScroll(-dy / averageItemSize);
+          }
+        }
         viewMessages();
         if (dy == 0) {
           saveScrollPosition();
@@ -285,15 +299,96 @@ public class MessagesManager implements Client.ResultHandler, MessagesSearchMana
         } else {
           checkVisibleContentProtection(first, last);
         }
-        if (isFocused && !(first - BOTTOM_PRELOAD_COUNT <= 0 && loader.loadMore(false)) && last + TOP_PRELOAD_COUNT >= adapter.getItemCount()) {
-          loader.loadMore(true);
-        }
+        checkLoadMore(first, last);
         checkMessageThreadUnreadCounter(first);
       }
       checkScrollButton(first, last);
       checkMessageThreadHeaderPreview(last);
 
       controller.checkRoundVideo(first, last, true);
+
+      if (downloadViewport == null && loader.getChatId() != 0) {
+        downloadViewport = tdlib.files().newDownloadViewport(this);
+      }
+      if (downloadViewport != null) {
+        downloadViewport.invalidate();
+      }
+    }
+  }
+
+  // Download priorities
+
+  private static final int DOWNLOAD_PRIORITY_WINDOW = 20;
+
+  private DownloadPriorityScheduler.Viewport downloadViewport;
+
+  @Override
+  public void onReportDownloadPriorities (@NonNull DownloadPriorityScheduler.Viewport viewport) {
+    if (manager == null) {
+      return;
+    }
+    final int first = manager.findFirstVisibleItemPosition();
+    final int last = manager.findLastVisibleItemPosition();
+    final int viewportSize = controller.getMessagesView().getMeasuredHeight();
+    if (first == -1 || last == -1 || viewportSize <= 0) {
+      return;
+    }
+    final int averageItemSize = viewportSize / (last - first + 1);
+    // Messages that are not laid out are assumed to have average height
+    int knownDistance = 0, knownIndex = first;
+    for (int i = first; i >= Math.max(0, first - DOWNLOAD_PRIORITY_WINDOW); i--) {
+      int distance = getDownloadDistance(i, viewportSize);
+      if (distance != DownloadPriorityPolicy.DISTANCE_UNKNOWN) {
+        knownDistance = distance;
+        knownIndex = i;
+      } else {
+        distance = DownloadPriorityPolicy.estimateDistance(knownDistance, knownIndex - i - 1, averageItemSize);
+      }
+      reportDownloadPriority(viewport, i, distance, viewportSize);
+    }
+    knownDistance = 0;
+    knownIndex = last;
+    final int end = Math.min(adapter.getItemCount() - 1, last + DOWNLOAD_PRIORITY_WINDOW);
+    for (int i = first + 1; i <= end; i++) {
+      int distance = getDownloadDistance(i, viewportSize);
+      if (distance != DownloadPriorityPolicy.DISTANCE_UNKNOWN) {
+        knownDistance = distance;
+        knownIndex = i;
+      } else {
+        distance = DownloadPriorityPolicy.estimateDistance(knownDistance, i - knownIndex - 1, averageItemSize);
+      }
+      reportDownloadPriority(viewport, i, distance, viewportSize);
+    }
+  }
+
+  private int getDownloadDistance (int index, int viewportSize) {
+    View view = manager.findViewByPosition(index);
+    return view != null ? DownloadPriorityPolicy.getDistance(view.getTop(), view.getBottom(), 0, viewportSize) : DownloadPriorityPolicy.DISTANCE_UNKNOWN;
+  }
+
+  private void reportDownloadPriority (DownloadPriorityScheduler.Viewport viewport, int index, int distance, int viewportSize) {
+    TGMessage message = adapter.getMessage(index);
+    if (message != null) {
+      message.reportDownloadPriority(viewport, distance, viewportSize);
+    }
+  }
+
+  /**
+   * Requests next chunk, if user is close enough to the edge of loaded messages, considering scroll velocity.
+   */
+  public void checkLoadMore () {
+    if (manager != null) {
+      int first = manager.findFirstVisibleItemPosition();
+      int last = manager.findLastVisibleItemPosition();
+      if (first != -1 && last != -1) {
+        checkLoadMore(first, last);
+      }
+    }
+  }
+
+  private void checkLoadMore (int first, int last) {
+    if (isFocused && !(first - loader.getPrefetchDistance(false, BOTTOM_PRELOAD_COUNT) <= 0 && loader.loadMore(false)) && last + loader.getPrefetchDistance(true, TOP_PRELOAD_COUNT) >= adapter.getItemCount()) {
+      loader.loadMore(true);
     }
   }
 
@@ -533,11 +628,20 @@ public class MessagesManager implements Client.ResultHandler, MessagesSearchMana
   }
 
   public void destroy (ViewController<?> context) {
+    stashWarmChat();
+    if (!controller.isReuseEnabled()) {
+      warmChats.clear();
+    }
+    openStartTime = 0;
     resetScroll();
     cancelRefresh();
     returnToMessageIds = null;
     highlightMode = 0;
     tdlib.settings().removePinnedMessageDismissListener(this);
+    if (downloadViewport != null) {
+      downloadViewport.release();
+      downloadViewport = null;
+    }
     highlightMessageId = null;
     hasScrolled = false;
     lastViewedMention = 0;
@@ -726,10 +830,12 @@ public class MessagesManager implements Client.ResultHandler, MessagesSearchMana
       loader.setChat(chat, messageThread, areScheduled ? MessagesLoader.SPECIAL_MODE_SCHEDULED : MessagesLoader.SPECIAL_MODE_NONE, filter);
       clearHeaderMessage();
       adapter.setChatType(chat.type);
-      if (highlightMessageId != null) {
-        loadFromMessage(highlightMessageId, highlightMode, true);
-      } else {
-        loadFromStart();
+      if (!restoreWarmChat()) {
+        if (highlightMessageId != null) {
+          loadFromMessage(highlightMessageId, highlightMode, true);
+        } else {
+          loadFromStart();
+        }
       }
     }
     subscribeForUpdates();
@@ -742,6 +848,107 @@ public class MessagesManager implements Client.ResultHandler, MessagesSearchMana
     loadPreviewMessages();
   }
 
+  // Warm chats
+
+  private long openStartTime;
+
+  private boolean canUseWarmChat () {
+    return controller.isReuseEnabled() && loader.getChatId() != 0 && !inSpecialMode() && loader.getMessageThread() == null && !loader.hasSearchFilter() &&
+      !controller.inPreviewMode() && !controller.isInForceTouchMode();
+  }
+
+  private String getWarmChatFingerprint (boolean useReactionBubbles, int translateStyleMode) {
+    return useBubbles() + "_" + useReactionBubbles + "_" + translateStyleMode + "_" + Settings.instance().getChatFontSize();
+  }
+
+  /**
+   * Moves laid out messages of the closing chat to {@link #warmChats} instead of destroying them.
+   */
+  private void stashWarmChat () {
+    if (!canUseWarmChat() || loader.isLoading() || adapter.getMessageCount() == 0) {
+      return;
+    }
+    int anchorIndex = manager.findFirstVisibleItemPosition();
+    View anchorView = anchorIndex != -1 ? manager.findViewByPosition(anchorIndex) : null;
+    if (anchorView == null) {
+      return;
+    }
+    int anchorOffset = manager.getHeight() - anchorView.getBottom();
+    final int width = getRecyclerWidth();
+    final String fingerprint = getWarmChatFingerprint(useReactionBubblesValue, usedTranslateStyleMode);
+    ArrayList<TGMessage> items = adapter.detachMessages();
+    if (items == null) {
+      return;
+    }
+    // Header and sponsored messages are inserted again after restoring
+    TGMessage topMessage = items.get(items.size() - 1);
+    if (isHeaderMessage(topMessage)) {
+      items.remove(items.size() - 1);
+      if (topMessage != headerMessage) {
+        topMessage.onDestroy();
+      }
+    }
+    if (!items.isEmpty() && items.get(0).isSponsored()) {
+      items.remove(0).onDestroy();
+      if (anchorIndex > 0) {
+        anchorIndex--;
+      } else {
+        anchorOffset = 0;
+      }
+    }
+    if (items.isEmpty() || anchorIndex >= items.size()) {
+      for (TGMessage msg : items) {
+        msg.onDestroy();
+      }
+      return;
+    }
+    warmChats.put(new WarmChatCache.Entry(loader.getChatId(), items, loader.canLoadTop(), loader.canLoadBottom(), anchorIndex, anchorOffset, returnToMessageIds, width, fingerprint));
+  }
+
+  private boolean restoreWarmChat () {
+    if (!canUseWarmChat()) {
+      return false;
+    }
+    openStartTime = SystemClock.uptimeMillis();
+    if ((highlightMessageId != null && highlightMode != HIGHLIGHT_MODE_POSITION_RESTORE) || adapter.getMessageCount() > 0) {
+      return false;
+    }
+    final long chatId = loader.getChatId();
+    WarmChatCache.Entry entry = warmChats.take(chatId, getRecyclerWidth(), getWarmChatFingerprint(checkReactionBubbles(), checkTranslateStyleMode()));
+    if (entry == null) {
+      return false;
+    }
+    // Entry is still subscribed, so any update before this point either invalidates it or reaches this manager
+    subscribeForUpdates();
+    if (!warmChats.acquire(entry)) {
+      return false;
+    }
+    loader.restoreFromCache(entry.canLoadTop, entry.canLoadBottom);
+    adapter.resetMessages(entry.items);
+    manager.scrollToPositionWithOffset(entry.anchorIndex, entry.anchorOffset);
+    returnToMessageIds = entry.returnToMessageIds;
+    checkTopEndReached(entry.items, false, entry.canLoadTop);
+    onChatAwaitFinish();
+    viewMessages();
+    if (!loader.canLoadBottom()) {
+      onBottomEndChecked();
+    }
+    WarmChatCache.onWarmOpen(chatId, SystemClock.uptimeMillis() - openStartTime);
+    openStartTime = 0;
+    return true;
+  }
+
+  private void onColdOpenDisplayed () {
+    if (openStartTime != 0) {
+      WarmChatCache.onColdOpen(loader.getChatId(), SystemClock.uptimeMillis() - openStartTime);
+      openStartTime = 0;
+    }
+  }
+
+  public static String getWarmChatStats () {
+    return WarmChatCache.getStats();
+  }
+
   public void resetByMessage (MessageId highlightMessageId, int highlightMode) {
     clearHeaderMessage();
     this.highlightMessageId = highlightMessageId;
@@ -1185,6 +1392,9 @@ public class MessagesManager implements Client.ResultHandler, MessagesSearchMana
           adapter.addMessages(items, true);
         }
         checkTopEndReached(items, willRepeat, canLoadTop);
+        if (size > 0 || !willRepeat) {
+          onColdOpenDisplayed();
+        }
         if (scrollMessage == null) {
           if (scrollMessageId != null && scrollMessageId.isHistoryStart() && !items.isEmpty()) {
             scrollToHistoryStart();
@@ -0,0 +1,324 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 22:40
+ */
+package org.thunderdog.challegram.component.chat;
+
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+
+import org.drinkless.tdlib.TdApi;
+import org.thunderdog.challegram.Log;
+import org.thunderdog.challegram.core.MemoryGovernor;
+import org.thunderdog.challegram.data.TGMessage;
+import org.thunderdog.challegram.telegram.ChatListener;
+import org.thunderdog.challegram.telegram.MessageListener;
+import org.thunderdog.challegram.telegram.Tdlib;
+import org.thunderdog.challegram.tool.UI;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Keeps already built and laid out message windows of recently closed chats,
+ * so reopening one of them is displayed on the first frame without loading history again.
+ *
+ * Entry is removed on the UI thread right after any message or outgoing read state update in its chat,
+ * or after {@link #MAX_AGE_MS}. Entry built with different layout parameters is removed at the time of reopening.
+ * Removed entries stop listening to updates and their messages are destroyed.
+ */
+final class WarmChatCache implements MemoryGovernor.Trimmable {
+  private static final int MAX_ENTRY_COUNT = 3;
+  private static final long MAX_AGE_MS = 60_000;
+
+  static final class Entry implements MessageListener, ChatListener {
+    final long chatId;
+    final ArrayList<TGMessage> items;
+    final boolean canLoadTop, canLoadBottom;
+    final int anchorIndex, anchorOffset;
+    final long[] returnToMessageIds;
+    final int width;
+    final String fingerprint;
+
+    private final long createTime = SystemClock.uptimeMillis();
+    private volatile boolean isValid = true;
+    private volatile Runnable removeAct;
+
+    Entry (long chatId, ArrayList<TGMessage> items, boolean canLoadTop, boolean canLoadBottom, int anchorIndex, int anchorOffset, long[] returnToMessageIds, int width, String fingerprint) {
+      this.chatId = chatId;
+      this.items = items;
+      this.canLoadTop = canLoadTop;
+      this.canLoadBottom = canLoadBottom;
+      this.anchorIndex = anchorIndex;
+      this.anchorOffset = anchorOffset;
+      this.returnToMessageIds = returnToMessageIds;
+      this.width = width;
+      this.fingerprint = fingerprint;
+    }
+
+    private boolean isExpired (long now) {
+      return !isValid || now - createTime > MAX_AGE_MS;
+    }
+
+    private void invalidate () {
+      if (isValid) {
+        isValid = false;
+        Runnable act = removeAct;
+        if (act != null) {
+          UI.post(act);
+        }
+      }
+    }
+
+    @Override
+    public void onNewMessage (TdApi.Message message) {
+      invalidate();
+    }
+
+    @Override
+    public void onMessageSendSucceeded (TdApi.Message message, long oldMessageId) {
+      invalidate();
+    }
+
+    @Override
+    public void onMessageSendFailed (TdApi.Message message, long oldMessageId, int errorCode, String errorMessage) {
+      invalidate();
+    }
+
+    @Override
+    public void onMessageContentChanged (long chatId, long messageId, TdApi.MessageContent newContent) {
+      invalidate();
+    }
+
+    @Override
+    public void onMessageEdited (long chatId, long messageId, int editDate, @Nullable TdApi.ReplyMarkup replyMarkup) {
+      invalidate();
+    }
+
+    @Override
+    public void onMessagePinned (long chatId, long messageId, boolean isPinned) {
+      invalidate();
+    }
+
+    @Override
+    public void onMessageOpened (long chatId, long messageId) {
+      invalidate();
+    }
+
+    @Override
+    public void onMessageMentionRead (long chatId, long messageId) {
+      invalidate();
+    }
+
+    @Override
+    public void onMessageInteractionInfoChanged (long chatId, long messageId, @Nullable TdApi.MessageInteractionInfo interactionInfo) {
+      invalidate();
+    }
+
+    @Override
+    public void onMessageUnreadReactionsChanged (long chatId, long messageId, @Nullable TdApi.UnreadReaction[] unreadReactions, int unreadReactionCount) {
+      invalidate();
+    }
+
+    @Override
+    public void onMessagesDeleted (long chatId, long[] messageIds) {
+      invalidate();
+    }
+
+    @Override
+    public void onChatReadOutbox (long chatId, long lastReadOutboxMessageId) {
+      invalidate();
+    }
+  }
+
+  private static int hitCount, missCount;
+  private static long warmOpenTotalMs, coldOpenTotalMs;
+  private static int coldOpenCount;
+
+  private final Tdlib tdlib;
+  private final ArrayList<Entry> entries = new ArrayList<>(MAX_ENTRY_COUNT); // Most recent first
+
+  WarmChatCache (Tdlib tdlib) {
+    this.tdlib = tdlib;
+    MemoryGovernor.instance().register("Chat windows", this, MemoryGovernor.Priority.LOW);
+  }
+
+  @UiThread
+  void put (Entry entry) {
+    remove(entry.chatId);
+    trim(MAX_ENTRY_COUNT - 1);
+    entries.add(0, entry);
+    entry.removeAct = () -> removeEntry(entry);
+    tdlib.listeners().subscribeToMessageUpdates(entry.chatId, entry);
+    tdlib.listeners().subscribeToChatUpdates(entry.chatId, entry);
+    UI.post(entry.removeAct, MAX_AGE_MS);
+  }
+
+  /**
+   * Removes entry of the given chat from the cache.
+   *
+   * Returned entry keeps listening to updates, so the caller can subscribe to the chat first
+   * and then call {@link #acquire(Entry)} without missing anything in between.
+   *
+   * @return Entry, if it is still valid and was built with the same layout parameters, otherwise null.
+   */
+  @UiThread
+  @Nullable
+  Entry take (long chatId, int width, String fingerprint) {
+    final long now = SystemClock.uptimeMillis();
+    for (int i = 0; i < entries.size(); i++) {
+      Entry entry = entries.get(i);
+      if (entry.chatId != chatId)
+        continue;
+      detach(i);
+      if (entry.isExpired(now) || entry.width != width || !entry.fingerprint.equals(fingerprint)) {
+        unsubscribe(entry);
+        destroy(entry);
+        break;
+      }
+      return entry;
+    }
+    missCount++;
+    return null;
+  }
+
+  /**
+   * Stops listening to updates for the entry returned by {@link #take(long, int, String)}.
+   *
+   * @return True, if no update arrived since the entry was stashed. Messages of the entry are now owned by the caller.
+   * Otherwise messages are destroyed.
+   */
+  @UiThread
+  boolean acquire (Entry entry) {
+    unsubscribe(entry);
+    if (!entry.isValid) {
+      destroy(entry);
+      missCount++;
+      return false;
+    }
+    hitCount++;
+    return true;
+  }
+
+  /**
+   * Removes entry from the list and cancels its scheduled removal. Entry keeps listening to updates.
+   */
+  @UiThread
+  private Entry detach (int index) {
+    Entry entry = entries.remove(index);
+    Runnable act = entry.removeAct;
+    if (act != null) {
+      UI.cancel(act);
+      entry.removeAct = null;
+    }
+    return entry;
+  }
+
+  /**
+   * Called on the UI thread when the entry gets invalidated or expires.
+   * Does nothing if the entry was already taken or removed.
+   */
+  @UiThread
+  private void removeEntry (Entry entry) {
+    int index = entries.indexOf(entry);
+    if (index != -1) {
+      detach(index);
+      unsubscribe(entry);
+      destroy(entry);
+    }
+  }
+
+  @UiThread
+  private void remove (long chatId) {
+    for (int i = entries.size() - 1; i >= 0; i--) {
+      Entry entry = entries.get(i);
+      if (entry.chatId == chatId) {
+        detach(i);
+        unsubscribe(entry);
+        destroy(entry);
+      }
+    }
+  }
+
+  @UiThread
+  private void trim (int maxCount) {
+    final long now = SystemClock.uptimeMillis();
+    for (int i = entries.size() - 1; i >= 0; i--) {
+      Entry entry = entries.get(i);
+      if (i >= maxCount || entry.isExpired(now)) {
+        detach(i);
+        unsubscribe(entry);
+        destroy(entry);
+      }
+    }
+  }
+
+  @UiThread
+  void clear () {
+    trim(0);
+  }
+
+  private void unsubscribe (Entry entry) {
+    tdlib.listeners().unsubscribeFromMessageUpdates(entry.chatId, entry);
+    tdlib.listeners().unsubscribeFromChatUpdates(entry.chatId, entry);
+  }
+
+  private static void destroy (Entry entry) {
+    for (TGMessage msg : entry.items) {
+      msg.onDestroy();
+    }
+  }
+
+  @Override
+  public void trimMemory (int stage) {
+    clear();
+  }
+
+  @Override
+  public long getMemoryUsage () {
+    return -1;
+  }
+
+  // Stats
+
+  /**
+   * @param elapsedMs Time between opening a chat and binding its messages to the list.
+   */
+  @UiThread
+  static void onWarmOpen (long chatId, long elapsedMs) {
+    warmOpenTotalMs += elapsedMs;
+    if (Log.isEnabled(Log.TAG_MESSAGES_LOADER)) {
+      Log.i(Log.TAG_MESSAGES_LOADER, "[WARM] chatId:%d restored in %dms", chatId, elapsedMs);
+    }
+  }
+
+  @UiThread
+  static void onColdOpen (long chatId, long elapsedMs) {
+    coldOpenCount++;
+    coldOpenTotalMs += elapsedMs;
+    if (Log.isEnabled(Log.TAG_MESSAGES_LOADER)) {
+      Log.i(Log.TAG_MESSAGES_LOADER, "[COLD] chatId:%d displayed in %dms", chatId, elapsedMs);
+    }
+  }
+
+  static String getStats () {
+    int requestCount = hitCount + missCount;
+    return String.format(Locale.US, "hits: %d/%d, warm open: %dms, cold open: %dms",
+      hitCount, requestCount,
+      hitCount > 0 ? warmOpenTotalMs / hitCount : 0,
+      coldOpenCount > 0 ? coldOpenTotalMs / coldOpenCount : 0
+    );
+  }
+}
@@ -18,14 +18,17 @@ import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.RectF;
+import android.util.LruCache;
 
 import org.thunderdog.challegram.U;
 import org.thunderdog.challegram.theme.ColorId;
 import org.thunderdog.challegram.theme.Theme;
-import org.thunderdog.challegram.tool.Paints;
-import org.thunderdog.challegram.tool.PorterDuffPaint;
 import org.thunderdog.challegram.tool.Screen;
 
+import java.util.Arrays;
+
+import me.vkryl.core.unit.ByteUnit;
+
 public class Waveform {
   public static final int MODE_BITMAP = 0;
   public static final int MODE_RECT = 1;
@@ -43,7 +46,7 @@ public class Waveform {
   private Chunk[] chunks;
   private int maxSample;
   private int currentWidth;
-  private Bitmap bitmap;
+  private Bitmap bitmap; // Shared through stripCache, must not be recycled
 
   private int mode;
   private boolean isOutBubble;
@@ -148,27 +151,30 @@ public class Waveform {
     int currentHeight = (int) (minimumHeight + maxHeightDiff) * 2 + Screen.dp(10f);
 
     Canvas inactiveCanvas;
+    Paint stripPaint;
+    StripKey stripKey;
     if (mode == MODE_BITMAP) {
-      if (bitmap == null || bitmap.getWidth() != currentWidth || bitmap.getHeight() != currentHeight) {
-        if (bitmap != null) {
-          bitmap.recycle();
-          bitmap = null;
-        }
-        bitmap = Bitmap.createBitmap(currentWidth, currentHeight, Bitmap.Config.ARGB_8888);
+      stripKey = new StripKey(data, numSamples, currentHeight);
+      bitmap = stripCache.get(stripKey);
+      if (bitmap == null) {
+        bitmap = Bitmap.createBitmap(currentWidth, currentHeight, Bitmap.Config.ALPHA_8);
         inactiveCanvas = new Canvas(bitmap);
+        stripPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        stripPaint.setStyle(Paint.Style.FILL);
       } else {
-        bitmap.eraseColor(0);
-        inactiveCanvas = new Canvas(bitmap);
+        // Same waveform was already drawn for another message, only chunks are needed
+        inactiveCanvas = null;
+        stripPaint = null;
+        stripKey = null;
       }
     } else {
       inactiveCanvas = null;
+      stripPaint = null;
+      stripKey = null;
     }
 
     int[] adjustedSamples = new int[numSamples];
     scale(data, adjustedSamples);
-    if (mode == MODE_BITMAP) {
-      paint.setColor(Theme.getColor(isOutBubble ? ColorId.bubbleOut_waveformInactive : ColorId.waveformInactive));
-    }
     int cx = 0;
     int centerY = (int) ((float) currentHeight * .5f);
     for (int i = 0; i < numSamples; i++) {
@@ -182,12 +188,15 @@ public class Waveform {
         chunk.heightDiff = heightDiff;
       }
       if (inactiveCanvas != null) {
-        chunk.draw(inactiveCanvas, cx, centerY, paint);
+        chunk.draw(inactiveCanvas, cx, centerY, stripPaint);
         cx += width + spacing;
       }
     }
 
-    U.recycle(inactiveCanvas);
+    if (inactiveCanvas != null) {
+      U.recycle(inactiveCanvas);
+      stripCache.put(stripKey, bitmap);
+    }
   }
 
   private static void scale (byte[] data, int[] output) {
@@ -204,40 +213,35 @@ public class Waveform {
   }
 
   public void destroy () {
-    if (bitmap != null && !bitmap.isRecycled()) {
-      bitmap.recycle();
-    }
+    // Strip may still be used by other messages with the same waveform
+    bitmap = null;
   }
 
   public void draw (Canvas c, float progress, int startX, int centerY) {
     switch (mode) {
       case MODE_BITMAP: {
-        if (chunks == null || bitmap == null || bitmap.isRecycled()) {
+        Bitmap bitmap = this.bitmap;
+        if (chunks == null || bitmap == null) {
           break;
         }
-        int color = Theme.getColor(isOutBubble ? ColorId.bubbleOut_waveformInactive : ColorId.waveformInactive);
-        if (paint.getColor() != color) {
-          paint.setColorFilter(Paints.createColorFilter(color));
-          paint.setColor(color);
-        }
+        // Strip holds only alpha, so it is drawn in the paint color
+        int inactiveColor = Theme.getColor(isOutBubble ? ColorId.bubbleOut_waveformInactive : ColorId.waveformInactive);
+        int activeColor = Theme.getColor(isOutBubble ? ColorId.bubbleOut_waveformActive : ColorId.waveformActive);
         int topY = centerY - (int) ((float) bitmap.getHeight() * .5f);
-        if (progress == 0f) {
+        if (progress == 0f || progress == 1f) {
+          paint.setColor(progress == 0f ? inactiveColor : activeColor);
           c.drawBitmap(bitmap, startX, topY, paint);
           break;
         }
-        if (progress == 1f) {
-          int colorId = isOutBubble ? ColorId.bubbleOut_waveformActive : ColorId.waveformActive;
-          c.drawBitmap(bitmap, startX, topY, PorterDuffPaint.get(colorId));
-          break;
-        }
         float endX = progress * (float) currentWidth;
         c.save();
         c.clipRect(startX, topY, startX + endX, topY + bitmap.getHeight());
-        int colorId = isOutBubble ? ColorId.bubbleOut_waveformActive : ColorId.waveformActive;
-        c.drawBitmap(bitmap, startX, topY, PorterDuffPaint.get(colorId));
+        paint.setColor(activeColor);
+        c.drawBitmap(bitmap, startX, topY, paint);
         c.restore();
         c.save();
         c.clipRect(startX + endX, topY, startX + bitmap.getWidth(), topY + bitmap.getHeight());
+        paint.setColor(inactiveColor);
         c.drawBitmap(bitmap, startX, topY, paint);
         c.restore();
         break;
@@ -295,6 +299,51 @@ public class Waveform {
     return (int) ((minimumHeight + maxHeightDiff) * 2f);
   }
 
+  // Strip cache
+
+  private static final int STRIP_CACHE_SIZE = (int) ByteUnit.MIB.toBytes(1);
+
+  /**
+   * Inactive waveform strips shared between all messages with the same waveform and width.
+   */
+  private static final LruCache<StripKey, Bitmap> stripCache = new LruCache<StripKey, Bitmap>(STRIP_CACHE_SIZE) {
+    @Override
+    protected int sizeOf (StripKey key, Bitmap value) {
+      return value.getByteCount();
+    }
+  };
+
+  private static final class StripKey {
+    private final byte[] data;
+    private final int dataHash;
+    private final int numSamples, height;
+
+    StripKey (byte[] data, int numSamples, int height) {
+      this.data = data;
+      this.dataHash = Arrays.hashCode(data);
+      this.numSamples = numSamples;
+      this.height = height;
+    }
+
+    @Override
+    public boolean equals (Object obj) {
+      if (this == obj)
+        return true;
+      if (!(obj instanceof StripKey))
+        return false;
+      StripKey other = (StripKey) obj;
+      return other.dataHash == dataHash && other.numSamples == numSamples && other.height == height && Arrays.equals(other.data, data);
+    }
+
+    @Override
+    public int hashCode () {
+      int result = dataHash;
+      result = 31 * result + numSamples;
+      result = 31 * result + height;
+      return result;
+    }
+  }
+
   private static class Chunk {
     public float heightDiff;
 
@@ -145,6 +145,7 @@ public class ChatsAdapter extends RecyclerView.Adapter<ChatsViewHolder> {
       case VIEW_TYPE_CHAT: {
         TGChat currentChat = chats.get(position);
         TGChat nextChat = position + 1 < chats.size() ? chats.get(position + 1) : null;
+        holder.bindOwner(context.isInForceTouchMode() ? null : context, context, context);
         holder.setChat(currentChat, false, nextChat != null && currentChat.isPinnedOrSpecial() && !nextChat.isPinnedOrSpecial(), context.isChatSelected(currentChat));
         break;
       }
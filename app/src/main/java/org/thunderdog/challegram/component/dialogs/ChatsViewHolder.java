@@ -38,10 +38,50 @@ import org.thunderdog.challegram.widget.ListInfoView;
 import org.thunderdog.challegram.widget.NoScrollTextView;
 
 public class ChatsViewHolder extends RecyclerView.ViewHolder {
+  private @Nullable ChatsController parentController;
+  private @Nullable ViewController<?> themeProvider;
+
   public ChatsViewHolder (View itemView) {
     super(itemView);
   }
 
+  /**
+   * Chat views may be shared between chat list pages through a common {@link RecyclerView.RecycledViewPool}.
+   * Moves listeners of a view created by another page to the page that binds it now.
+   */
+  public void bindOwner (@Nullable ChatsController parentController, @Nullable ViewController<?> themeProvider, BaseView.ActionListProvider actionListProvider) {
+    if (this.parentController == parentController && this.themeProvider == themeProvider) {
+      return;
+    }
+    ChatView view = (ChatView) itemView;
+    if (this.themeProvider != themeProvider) {
+      if (this.themeProvider != null) {
+        this.themeProvider.removeThemeListenerByTarget(view);
+      }
+      if (themeProvider != null) {
+        themeProvider.addThemeInvalidateListener(view);
+      }
+    }
+    bindListeners(view, parentController, actionListProvider);
+    this.parentController = parentController;
+    this.themeProvider = themeProvider;
+  }
+
+  private static void bindListeners (ChatView view, @Nullable ChatsController parentController, BaseView.ActionListProvider actionListProvider) {
+    view.setPreviewActionListProvider(actionListProvider);
+    view.setLongPressInterceptor(parentController);
+    if (parentController != null) {
+      view.setEnabled(true);
+      view.setAnimationsDisabled(parentController.isLaunching());
+      view.setOnClickListener(parentController);
+      view.setOnLongClickListener(parentController);
+    } else {
+      view.setEnabled(false);
+      view.setOnClickListener(null);
+      view.setOnLongClickListener(null);
+    }
+  }
+
   public void setChat (TGChat chat, boolean needBackground, boolean noSeparator, boolean isSelected) {
     ((ChatView) itemView).setChat(chat);
     ((ChatView) itemView).setNeedBackground(needBackground);
@@ -64,21 +104,14 @@ public class ChatsViewHolder extends RecyclerView.ViewHolder {
     switch (viewType) {
       case ChatsAdapter.VIEW_TYPE_CHAT: {
         ChatView view = new ChatView(context, tdlib);
-        view.setPreviewActionListProvider(actionListProvider);
-        view.setLongPressInterceptor(parentController);
-        if (parentController != null) {
-          view.setAnimationsDisabled(parentController.isLaunching());
-          view.setOnClickListener(parentController);
-          view.setOnLongClickListener(parentController);
-        } else {
-          view.setEnabled(false);
-          view.setOnClickListener(null);
-          view.setOnLongClickListener(null);
-        }
+        bindListeners(view, parentController, actionListProvider);
         if (themeProvider != null) {
           themeProvider.addThemeInvalidateListener(view);
         }
-        return new ChatsViewHolder(view);
+        ChatsViewHolder holder = new ChatsViewHolder(view);
+        holder.parentController = parentController;
+        holder.themeProvider = themeProvider;
+        return holder;
       }
       case ChatsAdapter.VIEW_TYPE_INFO: {
         ListInfoView view = new ListInfoView(context);
@@ -16,6 +16,7 @@ package org.thunderdog.challegram.component.dialogs;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.collection.LongSparseArray;
 
 import org.drinkless.tdlib.Client;
 import org.drinkless.tdlib.TdApi;
@@ -280,8 +281,75 @@ public class SearchManager {
     }
   }
 
+  private static final long QUERY_DEBOUNCE_MS = 150;
+
+  private CancellableRunnable pendingQuery;
+
   public void onQueryChanged (@NonNull TdApi.ChatList chatList, @NonNull String query) {
-    performSearch(chatList, query, FORCE_MODE_NONE);
+    final boolean hadPendingQuery = cancelPendingQuery();
+    if (StringUtils.equalsOrBothEmpty(lastQuery, query) && hadPendingQuery) {
+      // Results of the last query were dropped or refined, force new search
+      this.lastQuery = null;
+    }
+    if (StringUtils.isEmpty(query) || StringUtils.isEmpty(lastQuery) || !Td.equalsTo(lastChatList, chatList)) {
+      performSearch(chatList, query, FORCE_MODE_NONE);
+      return;
+    }
+    if (StringUtils.equalsOrBothEmpty(lastQuery, query)) {
+      return;
+    }
+    // Drop results of the requests that are still in flight for the previous query
+    incrementContextId();
+    refineLocalChats(query);
+    pendingQuery = new CancellableRunnable() {
+      @Override
+      public void act () {
+        pendingQuery = null;
+        performSearch(chatList, query, FORCE_MODE_NONE);
+      }
+    };
+    pendingQuery.removeOnCancel(UI.getAppHandler());
+    UI.post(pendingQuery, QUERY_DEBOUNCE_MS);
+  }
+
+  private boolean cancelPendingQuery () {
+    if (pendingQuery != null) {
+      pendingQuery.cancel();
+      pendingQuery = null;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Narrows down already displayed local results while the new query is being debounced,
+   * when the new query extends the previous one.
+   *
+   * Only chats that matched the previous query by title or username can be judged here.
+   * Others were matched by TDLib in some other way, so they are kept until the new results arrive.
+   */
+  private void refineLocalChats (@NonNull String query) {
+    if (localChats == null || localChats.isEmpty() || StringUtils.isEmpty(localChatsQuery)) {
+      return;
+    }
+    if (!query.toLowerCase().startsWith(localChatsQuery.toLowerCase())) {
+      return;
+    }
+    final int oldLocalChatCount = localChats.size();
+    ArrayList<TGFoundChat> refinedChats = new ArrayList<>(oldLocalChatCount);
+    for (TGFoundChat chat : localChats) {
+      final boolean canJudge = chat.matchesHighlight();
+      chat.setHighlight(query);
+      if (!canJudge || chat.matchesHighlight()) {
+        refinedChats.add(chat);
+      }
+    }
+    setLocalChats(refinedChats.isEmpty() ? null : refinedChats, query);
+    if (refinedChats.isEmpty()) {
+      listener.onRemoveLocalChats(oldLocalChatCount);
+    } else {
+      listener.onUpdateLocalChats(oldLocalChatCount, refinedChats);
+    }
   }
 
   // Implementation
@@ -310,6 +378,7 @@ public class SearchManager {
   private static final int FORCE_MODE_ALL = 2;
 
   private void performSearch (final TdApi.ChatList chatList, final @NonNull String query, int forceMode) {
+    cancelPendingQuery();
     if (lastQuery != null && StringUtils.equalsOrBothEmpty(lastQuery, query) && Td.equalsTo(lastChatList, chatList)) {
       if (isEndReached && forceMode != FORCE_MODE_NONE && StringUtils.isEmpty(lastQuery)) {
         if (forceMode == FORCE_MODE_TOP) {
@@ -322,6 +391,7 @@ public class SearchManager {
     }
 
     final int currentContextId = incrementContextId();
+    collectReusableChats(chatList);
     reset();
 
     this.lastQuery = query;
@@ -336,6 +406,47 @@ public class SearchManager {
     }
   }
 
+  // Reusing found chats
+
+  private volatile LongSparseArray<TGFoundChat> reusableChats;
+
+  /**
+   * Collects displayed chats, so results of the next query do not build them again.
+   *
+   * Reused chats may still be displayed, so they are not modified on TDLib thread:
+   * {@link #parseResult} returns them as is, and their highlight is updated by {@link #updateHighlight}
+   * on UI thread right before the results are displayed.
+   */
+  private void collectReusableChats (@Nullable TdApi.ChatList chatList) {
+    if (!Td.equalsTo(lastChatList, chatList)) {
+      this.reusableChats = null;
+      return;
+    }
+    // Never modified after publishing, so it can be safely read from TDLib threads
+    LongSparseArray<TGFoundChat> reusableChats = new LongSparseArray<>();
+    addReusableChats(reusableChats, localChats);
+    addReusableChats(reusableChats, globalChats);
+    this.reusableChats = reusableChats.isEmpty() ? null : reusableChats;
+  }
+
+  private static void addReusableChats (LongSparseArray<TGFoundChat> out, @Nullable List<TGFoundChat> chats) {
+    if (chats != null) {
+      for (TGFoundChat chat : chats) {
+        if (chat.getId() != 0) {
+          out.put(chat.getId(), chat);
+        }
+      }
+    }
+  }
+
+  private static void updateHighlight (@Nullable List<TGFoundChat> chats, @Nullable String query) {
+    if (chats != null) {
+      for (TGFoundChat chat : chats) {
+        chat.setHighlight(query);
+      }
+    }
+  }
+
   // 1. Top Chats
 
   private ArrayList<TGFoundChat> topChats;
@@ -511,6 +622,27 @@ public class SearchManager {
   }
 
   public static int parseResult (Tdlib tdlib, ListenerInterface listener, int searchFlags, ArrayList<TGFoundChat> out, final TdApi.ChatList chatList, long[] chatIds, String query, boolean areGlobal, long[] excludeChatIds) {
+    return parseResult(tdlib, listener, searchFlags, out, chatList, chatIds, query, areGlobal, excludeChatIds, null);
+  }
+
+  private static TGFoundChat obtainFoundChat (Tdlib tdlib, ListenerInterface listener, @Nullable LongSparseArray<TGFoundChat> reusableChats, TdApi.ChatList chatList, TdApi.Chat chat, boolean isGlobal, String query) {
+    TGFoundChat foundChat = reusableChats != null ? reusableChats.get(chat.id) : null;
+    if (foundChat != null && foundChat.canReuse(chatList, isGlobal)) {
+      // Already modified by the same listener. Highlight is updated on UI thread.
+      return foundChat;
+    }
+    foundChat = new TGFoundChat(tdlib, chatList, chat, isGlobal, query);
+    if (listener != null) {
+      listener.modifyFoundChat(foundChat);
+    }
+    return foundChat;
+  }
+
+  /**
+   * @param reusableChats Chats that may be returned instead of building new ones.
+   *                      Caller must call {@link TGFoundChat#setHighlight(String)} for all results on UI thread.
+   */
+  private static int parseResult (Tdlib tdlib, ListenerInterface listener, int searchFlags, ArrayList<TGFoundChat> out, final TdApi.ChatList chatList, long[] chatIds, String query, boolean areGlobal, long[] excludeChatIds, @Nullable LongSparseArray<TGFoundChat> reusableChats) {
     List<TdApi.Chat> chats = tdlib.chats(chatIds);
     out.ensureCapacity(chatIds.length);
     final boolean onlyWritable = (searchFlags & FLAG_ONLY_WRITABLE) != 0;
@@ -559,21 +691,13 @@ public class SearchManager {
         if (needCustomFilter && !listener.customFilter(chat)) {
           continue;
         }
-        TGFoundChat foundChat = new TGFoundChat(tdlib, chatList, chat, areGlobal, query);
-        if (listener != null) {
-          listener.modifyFoundChat(foundChat);
-        }
-        out.add(foundChat);
+        out.add(obtainFoundChat(tdlib, listener, reusableChats, chatList, chat, areGlobal, query));
         count++;
       }
       return count;
     } else {
       for (TdApi.Chat chat : chats) {
-        TGFoundChat foundChat = new TGFoundChat(tdlib, chatList, chat, areGlobal, query);
-        if (listener != null) {
-          listener.modifyFoundChat(foundChat);
-        }
-        out.add(foundChat);
+        out.add(obtainFoundChat(tdlib, listener, reusableChats, chatList, chat, areGlobal, query));
       }
       return chats.size();
     }
@@ -624,7 +748,7 @@ public class SearchManager {
                 }
               }
             }
-            parseResult(tdlib, listener, searchFlags, foundChats, chatList, chatIds, query, false, !foundChatIds.isEmpty() ? foundChatIds.get() : null);
+            parseResult(tdlib, listener, searchFlags, foundChats, chatList, chatIds, query, false, !foundChatIds.isEmpty() ? foundChatIds.get() : null, reusableChats);
             foundChatIds.appendAll(chatIds);
             break;
           }
@@ -679,6 +803,7 @@ public class SearchManager {
         final boolean isFinish = !sentRequest;
         tdlib.ui().post(() -> {
           if (contextId == currentContextId) {
+            updateHighlight(foundChats, query);
             if (isFirst) {
               setLocalChats(currentContextId, query, foundChats);
             } else {
@@ -897,7 +1022,7 @@ public class SearchManager {
           case TdApi.Chats.CONSTRUCTOR: {
             long[] chatIds = ((TdApi.Chats) object).chatIds;
             foundChats = new ArrayList<>(chatIds.length);
-            parseResult(tdlib, listener, searchFlags & (~FLAG_ONLY_CONTACTS), foundChats, chatList, chatIds, usernameQuery, true, null);
+            parseResult(tdlib, listener, searchFlags & (~FLAG_ONLY_CONTACTS), foundChats, chatList, chatIds, usernameQuery, true, null, reusableChats);
             break;
           }
           case TdApi.Error.CONSTRUCTOR: {
@@ -912,6 +1037,7 @@ public class SearchManager {
         }
         tdlib.ui().post(() -> {
           if (contextId == currentContextId) {
+            updateHighlight(foundChats, usernameQuery);
             setGlobalChats(currentContextId, chatList, query, foundChats);
           }
         });
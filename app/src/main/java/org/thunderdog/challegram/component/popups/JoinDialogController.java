@@ -38,13 +38,13 @@ import org.thunderdog.challegram.tool.Screen;
 import org.thunderdog.challegram.ui.ListItem;
 import org.thunderdog.challegram.ui.SettingsAdapter;
 import org.thunderdog.challegram.util.text.TextEntity;
+import org.thunderdog.challegram.util.text.TextEntityFinder;
 import org.thunderdog.challegram.widget.CustomTextView;
 import org.thunderdog.challegram.widget.VerticalChatView;
 
 import java.util.ArrayList;
 
 import me.vkryl.android.widget.FrameLayoutFix;
-import me.vkryl.td.Td;
 
 public class JoinDialogController extends MediaBottomBaseController<Void> implements View.OnClickListener {
   private final int DESCRIPTION_PADDING = Screen.dp(16f);
@@ -100,7 +100,7 @@ public class JoinDialogController extends MediaBottomBaseController<Void> implem
       protected void setText (ListItem item, CustomTextView view, boolean isUpdate) {
         if (item.getId() == R.id.description) {
           view.setPadding(DESCRIPTION_PADDING, DESCRIPTION_PADDING, DESCRIPTION_PADDING, DESCRIPTION_PADDING / 2);
-          view.setText(item.getString(), TextEntity.valueOf(tdlib, item.getString().toString(), Td.findEntities(item.getString().toString()), new TdlibUi.UrlOpenParameters().tooltip(context().tooltipManager().builder(view))), false);
+          view.setText(item.getString(), TextEntity.valueOf(tdlib, item.getString().toString(), TextEntityFinder.findEntities(item.getString().toString()), new TdlibUi.UrlOpenParameters().tooltip(context().tooltipManager().builder(view))), false);
           view.setTextSize(15f);
         } else {
           view.setPadding(0, 0, 0, 0);
@@ -25,6 +25,8 @@ import android.view.ViewGroup;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
 
+import androidx.annotation.Nullable;
+
 import org.drinkless.tdlib.TdApi;
 import org.thunderdog.challegram.BaseActivity;
 import org.thunderdog.challegram.R;
@@ -463,7 +465,16 @@ public class StickerSetWrap extends FrameLayoutFix implements StickersListContro
   }
 
   public void initWithSet (TdApi.StickerSet set) {
-    this.info = new TdApi.StickerSetInfo(set.id, set.title, set.name, set.thumbnail, set.thumbnailOutline, set.isInstalled, set.isArchived, set.isOfficial, set.stickerFormat, set.stickerType, false, set.stickers.length, null);
+    initWithSet(set, null);
+  }
+
+  /**
+   * @param state Installed, archived and viewed state and sticker type to use instead of the ones in {@code set}
+   */
+  public void initWithSet (TdApi.StickerSet set, @Nullable TdApi.StickerSetInfo state) {
+    this.info = state != null ?
+      new TdApi.StickerSetInfo(set.id, set.title, set.name, set.thumbnail, set.thumbnailOutline, state.isInstalled, state.isArchived, set.isOfficial, set.stickerFormat, state.stickerType, state.isViewed, set.stickers.length, null) :
+      new TdApi.StickerSetInfo(set.id, set.title, set.name, set.thumbnail, set.thumbnailOutline, set.isInstalled, set.isArchived, set.isOfficial, set.stickerFormat, set.stickerType, false, set.stickers.length, null);
     updateButton(false);
     stickersController.setStickerSetInfo(info);
     stickersController.setStickers(set.stickers, info.stickerType, set.emojis);
@@ -583,8 +594,12 @@ public class StickerSetWrap extends FrameLayoutFix implements StickersListContro
   }
 
   public static StickerSetWrap showStickerSet (TdlibDelegate context, TdApi.StickerSet set) {
+    return showStickerSet(context, set, null);
+  }
+
+  public static StickerSetWrap showStickerSet (TdlibDelegate context, TdApi.StickerSet set, @Nullable TdApi.StickerSetInfo state) {
     StickerSetWrap wrap = new StickerSetWrap(context.context(), context.tdlib());
-    wrap.initWithSet(set);
+    wrap.initWithSet(set, state);
     wrap.showStickerSet();
     return wrap;
   }
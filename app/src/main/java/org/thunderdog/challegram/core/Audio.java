@@ -27,8 +27,9 @@ import org.thunderdog.challegram.tool.UI;
 
 import java.io.File;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import me.vkryl.core.StringUtils;
 import me.vkryl.core.lambda.CancellableRunnable;
@@ -39,7 +40,7 @@ public class Audio implements MediaPlayer.OnCompletionListener {
 
   public static int[] readArgs = new int[3];
 
-  private static class AudioBuffer {
+  static class AudioBuffer {
     public AudioBuffer(int capacity) {
       buffer = ByteBuffer.allocateDirect(capacity);
       bufferBytes = new byte[capacity];
@@ -50,6 +51,85 @@ public class Audio implements MediaPlayer.OnCompletionListener {
     int size;
     int finished;
     long pcmOffset;
+    int generation;
+  }
+
+  /**
+   * Decoded buffers passed from fileDecodingQueue (the only writer) to playerQueue (the only reader).
+   *
+   * Seeking bumps the generation instead of clearing the ring:
+   * buffers decoded before the seek are skipped by the reader.
+   */
+  static final class AudioBufferRing {
+    private final AudioBuffer[] buffers;
+    private final int mask;
+    private final AtomicLong readIndex = new AtomicLong();
+    private final AtomicLong writeIndex = new AtomicLong();
+    private final AtomicInteger generation = new AtomicInteger();
+
+    AudioBufferRing (int capacity, int bufferSize) {
+      this.buffers = new AudioBuffer[capacity];
+      this.mask = capacity - 1;
+      for (int i = 0; i < capacity; i++) {
+        buffers[i] = new AudioBuffer(bufferSize);
+      }
+    }
+
+    boolean isEmpty () {
+      return readIndex.get() == writeIndex.get();
+    }
+
+    // Writer
+
+    /**
+     * @return Buffer to decode into, or {@code null}, if all buffers are waiting to be played.
+     */
+    AudioBuffer acquire () {
+      long index = writeIndex.get();
+      if (index - readIndex.get() == buffers.length) {
+        return null;
+      }
+      AudioBuffer buffer = buffers[(int) (index & mask)];
+      buffer.generation = generation.get();
+      return buffer;
+    }
+
+    void publish () {
+      writeIndex.set(writeIndex.get() + 1);
+    }
+
+    /**
+     * Drops all buffers decoded so far.
+     */
+    void invalidate () {
+      generation.incrementAndGet();
+    }
+
+    // Reader
+
+    /**
+     * @return Next buffer to play, or {@code null}, if there are none.
+     */
+    AudioBuffer poll () {
+      while (true) {
+        long index = readIndex.get();
+        if (index == writeIndex.get()) {
+          return null;
+        }
+        AudioBuffer buffer = buffers[(int) (index & mask)];
+        if (buffer.generation == generation.get()) {
+          return buffer;
+        }
+        readIndex.set(index + 1);
+      }
+    }
+
+    /**
+     * Returns the buffer received from {@link #poll()} to the writer.
+     */
+    void release () {
+      readIndex.set(readIndex.get() + 1);
+    }
   }
 
   private boolean isPaused = false;
@@ -64,10 +144,8 @@ public class Audio implements MediaPlayer.OnCompletionListener {
   private long lastPlayPcm;
   private int ignoreFirstProgress = 0;
   private int buffersUsed;
-  private ArrayList<AudioBuffer> usedPlayerBuffers = new ArrayList<>();
-  private ArrayList<AudioBuffer> freePlayerBuffers = new ArrayList<>();
+  private final AudioBufferRing playerBuffers;
 
-  private final Object playerSync = new Object();
   private final Object playerObjectSync = new Object();
   private final Object sync = new Object();
 
@@ -89,9 +167,7 @@ public class Audio implements MediaPlayer.OnCompletionListener {
       playerBufferSize = 3840;
     }
 
-    for (int a = 0; a < 3; a++) {
-      freePlayerBuffers.add(new AudioBuffer(playerBufferSize));
-    }
+    playerBuffers = new AudioBufferRing(4, playerBufferSize);
 
     playerQueue = new BaseThread("playerQueue");
     fileDecodingQueue = new BaseThread("fileDecodingQueue");
@@ -105,15 +181,9 @@ public class Audio implements MediaPlayer.OnCompletionListener {
       }
       boolean was = false;
       while (true) {
-        AudioBuffer buffer = null;
-        synchronized (playerSync) {
-          if (!freePlayerBuffers.isEmpty()) {
-            buffer = freePlayerBuffers.get(0);
-            freePlayerBuffers.remove(0);
-          }
-          if (!usedPlayerBuffers.isEmpty()) {
-            was = true;
-          }
+        AudioBuffer buffer = playerBuffers.acquire();
+        if (!playerBuffers.isEmpty()) {
+          was = true;
         }
         if (buffer != null) {
           N.readOpusFile(buffer.buffer, playerBufferSize, readArgs);
@@ -126,14 +196,9 @@ public class Audio implements MediaPlayer.OnCompletionListener {
           if (buffer.size != 0) {
             buffer.buffer.rewind();
             buffer.buffer.get(buffer.bufferBytes);
-            synchronized (playerSync) {
-              usedPlayerBuffers.add(buffer);
-            }
+            playerBuffers.publish();
           } else {
-            synchronized (playerSync) {
-              freePlayerBuffers.add(buffer);
-              break;
-            }
+            break;
           }
           was = true;
         } else {
@@ -153,13 +218,7 @@ public class Audio implements MediaPlayer.OnCompletionListener {
           return;
         }
       }
-      AudioBuffer buffer = null;
-      synchronized (playerSync) {
-        if (!usedPlayerBuffers.isEmpty()) {
-          buffer = usedPlayerBuffers.get(0);
-          usedPlayerBuffers.remove(0);
-        }
-      }
+      AudioBuffer buffer = playerBuffers.poll();
 
       if (buffer != null) {
         int count = 0;
@@ -198,14 +257,14 @@ public class Audio implements MediaPlayer.OnCompletionListener {
           checkPlayerQueue();
         }
       }
-      if (buffer == null || buffer.finished != 1) {
-        checkDecoderQueue();
+      boolean finished = buffer != null && buffer.finished == 1;
+      if (buffer != null) {
+        // Buffer may be reused by the decoder right after this point
+        playerBuffers.release();
       }
 
-      if (buffer != null) {
-        synchronized (playerSync) {
-          freePlayerBuffers.add(buffer);
-        }
+      if (!finished) {
+        checkDecoderQueue();
       }
     }, 0);
   }
@@ -366,10 +425,7 @@ public class Audio implements MediaPlayer.OnCompletionListener {
         } catch (Throwable t) {
           Log.e(t);
         }
-        synchronized (playerSync) {
-          freePlayerBuffers.addAll(usedPlayerBuffers);
-          usedPlayerBuffers.clear();
-        }
+        playerBuffers.invalidate();
         decodingFinished = false;
         checkPlayerQueue();
       }, 0);
@@ -507,10 +563,7 @@ public class Audio implements MediaPlayer.OnCompletionListener {
     audioTrackPlayer.flush();
     fileDecodingQueue.post(() -> {
       N.seekOpusFile(progress);
-      synchronized (playerSync) {
-        freePlayerBuffers.addAll(usedPlayerBuffers);
-        usedPlayerBuffers.clear();
-      }
+      playerBuffers.invalidate();
       UI.post(() -> {
         if (!isPaused) {
           ignoreFirstProgress = 3;
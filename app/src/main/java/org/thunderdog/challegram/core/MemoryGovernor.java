@@ -0,0 +1,240 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 20:30
+ */
+package org.thunderdog.challegram.core;
+
+import android.content.ComponentCallbacks2;
+import android.os.SystemClock;
+
+import androidx.annotation.IntDef;
+import androidx.annotation.NonNull;
+import androidx.annotation.UiThread;
+
+import org.thunderdog.challegram.Log;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Dispatches system memory pressure signals to registered components.
+ *
+ * System trim levels are reduced to three {@link Stage}s. Each component receives a stage
+ * lowered by its {@link Priority}, so cheap-to-restore caches shrink first and harder,
+ * and components with {@link Priority#HIGH} are trimmed only under severe pressure.
+ */
+public final class MemoryGovernor {
+  @Retention(RetentionPolicy.SOURCE)
+  @IntDef({
+    Stage.NONE,
+    Stage.LIGHT,
+    Stage.MODERATE,
+    Stage.SEVERE
+  })
+  public @interface Stage {
+    int
+      NONE = 0,
+      LIGHT = 1, // Shrink caches
+      MODERATE = 2, // Keep only what is visible
+      SEVERE = 3; // Release everything that can be restored
+  }
+
+  @Retention(RetentionPolicy.SOURCE)
+  @IntDef({
+    Priority.LOW,
+    Priority.NORMAL,
+    Priority.HIGH
+  })
+  public @interface Priority {
+    int
+      LOW = 0,
+      NORMAL = 1,
+      HIGH = 2;
+  }
+
+  public interface Trimmable {
+    /**
+     * Called on UI thread. {@code stage} is never {@link Stage#NONE}.
+     */
+    @UiThread
+    void trimMemory (@Stage int stage);
+
+    /**
+     * @return Approximate amount of memory held by the component in bytes, or -1, if unknown.
+     */
+    long getMemoryUsage ();
+  }
+
+  private static volatile MemoryGovernor instance;
+
+  public static MemoryGovernor instance () {
+    if (instance == null) {
+      synchronized (MemoryGovernor.class) {
+        if (instance == null) {
+          instance = new MemoryGovernor();
+        }
+      }
+    }
+    return instance;
+  }
+
+  private static final class Entry {
+    final String name;
+    final WeakReference<Trimmable> reference;
+    final @Priority int priority;
+
+    Entry (String name, Trimmable trimmable, @Priority int priority) {
+      this.name = name;
+      this.reference = new WeakReference<>(trimmable);
+      this.priority = priority;
+    }
+  }
+
+  private final ArrayList<Entry> entries = new ArrayList<>();
+
+  MemoryGovernor () { } // Use instance(), separate instances are created only in tests
+
+  /**
+   * Registers component. Only a weak reference is kept, so components don't have to unregister.
+   */
+  public void register (@NonNull String name, @NonNull Trimmable trimmable, @Priority int priority) {
+    synchronized (entries) {
+      int index = 0;
+      while (index < entries.size() && entries.get(index).priority <= priority) {
+        index++;
+      }
+      entries.add(index, new Entry(name, trimmable, priority));
+    }
+  }
+
+  public void unregister (@NonNull Trimmable trimmable) {
+    synchronized (entries) {
+      for (int i = entries.size() - 1; i >= 0; i--) {
+        Trimmable registered = entries.get(i).reference.get();
+        if (registered == null || registered == trimmable) {
+          entries.remove(i);
+        }
+      }
+    }
+  }
+
+  public static @Stage int toStage (int trimLevel) {
+    if (trimLevel >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) { // MODERATE, COMPLETE
+      return Stage.SEVERE;
+    }
+    switch (trimLevel) {
+      case ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL:
+        return Stage.SEVERE;
+      case ComponentCallbacks2.TRIM_MEMORY_BACKGROUND:
+      case ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW:
+        return Stage.MODERATE;
+      case ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN:
+      case ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE:
+        return Stage.LIGHT;
+    }
+    return Stage.NONE;
+  }
+
+  /**
+   * Called from {@link ComponentCallbacks2#onTrimMemory(int)}. May be called directly to simulate memory pressure.
+   */
+  @UiThread
+  public void onTrimMemory (int trimLevel) {
+    trimMemory(toStage(trimLevel), "level " + trimLevel);
+  }
+
+  @UiThread
+  public void onLowMemory () {
+    trimMemory(Stage.SEVERE, "low memory");
+  }
+
+  @UiThread
+  private void trimMemory (@Stage int stage, String reason) {
+    if (stage == Stage.NONE)
+      return;
+    final Entry[] entries = getEntries();
+    final long startTimeMs = SystemClock.uptimeMillis();
+    final long usageBefore = getMemoryUsage(entries);
+    dispatch(entries, stage);
+    Log.i("Trimmed memory, reason: %s, stage: %d, usage: %d -> %d bytes, in %dms", reason, stage, usageBefore, getMemoryUsage(entries), SystemClock.uptimeMillis() - startTimeMs);
+  }
+
+  /**
+   * Passes {@code stage} lowered by priority to each registered component, without logging.
+   */
+  @UiThread
+  void dispatch (@Stage int stage) {
+    if (stage != Stage.NONE) {
+      dispatch(getEntries(), stage);
+    }
+  }
+
+  private static void dispatch (Entry[] entries, @Stage int stage) {
+    for (Entry entry : entries) {
+      int componentStage = stage - entry.priority;
+      if (componentStage <= Stage.NONE)
+        continue;
+      Trimmable trimmable = entry.reference.get();
+      if (trimmable == null)
+        continue;
+      try {
+        trimmable.trimMemory(componentStage);
+      } catch (Throwable t) {
+        Log.e("Unable to trim memory: %s", t, entry.name);
+      }
+    }
+  }
+
+  private Entry[] getEntries () {
+    synchronized (entries) {
+      return entries.toArray(new Entry[0]);
+    }
+  }
+
+  /**
+   * @return Total memory held by registered components in bytes, not counting ones that report unknown usage.
+   */
+  long getMemoryUsage () {
+    return getMemoryUsage(getEntries());
+  }
+
+  private static long getMemoryUsage (Entry[] entries) {
+    long total = 0;
+    for (Entry entry : entries) {
+      Trimmable trimmable = entry.reference.get();
+      long usage = trimmable != null ? trimmable.getMemoryUsage() : -1;
+      if (usage > 0) {
+        total += usage;
+      }
+    }
+    return total;
+  }
+
+  public String getStats () {
+    final Entry[] entries = getEntries();
+    StringBuilder b = new StringBuilder();
+    for (Entry entry : entries) {
+      Trimmable trimmable = entry.reference.get();
+      if (trimmable == null)
+        continue;
+      if (b.length() > 0)
+        b.append(", ");
+      long usage = trimmable.getMemoryUsage();
+      b.append(String.format(Locale.US, "%s (priority %d): %s", entry.name, entry.priority, usage != -1 ? usage + " bytes" : "unknown"));
+    }
+    return b.toString();
+  }
+}
@@ -25,6 +25,7 @@ import org.thunderdog.challegram.core.Lang;
 import org.thunderdog.challegram.telegram.Tdlib;
 import org.thunderdog.challegram.tool.Strings;
 import org.thunderdog.challegram.util.text.Text;
+import org.thunderdog.challegram.util.text.TextEntityFinder;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
@@ -837,7 +838,7 @@ public class ChatEventUtil {
           }
         }
 
-        TdApi.FormattedText formattedText = new TdApi.FormattedText(text, Td.findEntities(text));
+        TdApi.FormattedText formattedText = new TdApi.FormattedText(text, TextEntityFinder.findEntities(text));
         return new TdApi.MessageText(formattedText, null);
       }
 
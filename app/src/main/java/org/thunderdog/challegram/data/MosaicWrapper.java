@@ -29,6 +29,7 @@ import org.thunderdog.challegram.loader.ImageReceiver;
 import org.thunderdog.challegram.loader.Receiver;
 import org.thunderdog.challegram.loader.gif.GifReceiver;
 import org.thunderdog.challegram.mediaview.MediaViewThumbLocation;
+import org.thunderdog.challegram.telegram.DownloadPriorityScheduler;
 import org.thunderdog.challegram.tool.Paints;
 import org.thunderdog.challegram.tool.Screen;
 import org.thunderdog.challegram.tool.Views;
@@ -1045,6 +1046,15 @@ public class MosaicWrapper implements FactorAnimator.Target, ComplexReceiver.Key
     complexReceiver.clearReceivers(this);
   }
 
+  public void reportDownloadPriority (DownloadPriorityScheduler.Viewport viewport, int distance, int viewportSize) {
+    for (MediaWrapper item : items) {
+      TdApi.File targetFile = item.getTargetFile();
+      if (targetFile != null) {
+        viewport.report(targetFile, distance, viewportSize);
+      }
+    }
+  }
+
   // Touch events
 
   public MediaWrapper findMediaWrapperByMessageId (long messageId) {
@@ -90,6 +90,7 @@ import org.thunderdog.challegram.util.Permissions;
 import org.thunderdog.challegram.util.text.Letters;
 import org.thunderdog.challegram.util.text.Text;
 import org.thunderdog.challegram.util.text.TextEntity;
+import org.thunderdog.challegram.util.text.TextEntityFinder;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -401,7 +402,7 @@ public class TD {
   }
 
   private static List<String> findUrls (String text, @Nullable List<String> urls) {
-    TdApi.TextEntity[] entities = Td.findEntities(text);
+    TdApi.TextEntity[] entities = TextEntityFinder.findEntities(text);
     if (entities != null) {
       for (TdApi.TextEntity entity : entities) {
         if (entity.type.getConstructor() == TdApi.TextEntityTypeUrl.CONSTRUCTOR) {
@@ -426,7 +427,7 @@ public class TD {
     if (Td.isEmpty(text))
       return false;
     if (text.entities == null || text.entities.length == 0) {
-      TdApi.TextEntity[] foundEntities = Td.findEntities(text.text);
+      TdApi.TextEntity[] foundEntities = TextEntityFinder.findEntities(text.text);
       if (foundEntities != null) {
         text.entities = foundEntities;
         return true;
@@ -450,7 +451,7 @@ public class TD {
         case TdApi.TextEntityTypePhoneNumber.CONSTRUCTOR:
         case TdApi.TextEntityTypeMention.CONSTRUCTOR:
           if (entity.offset > start) {
-            TdApi.TextEntity[] foundEntities = Td.findEntities(text.text.substring(start, entity.offset));
+            TdApi.TextEntity[] foundEntities = TextEntityFinder.findEntities(text.text.substring(start, entity.offset));
             if (foundEntities != null)
               Collections.addAll(entities, foundEntities);
           }
@@ -459,7 +460,7 @@ public class TD {
       }
     }
     if (start < text.text.length()) {
-      TdApi.TextEntity[] foundEntities = Td.findEntities(start == 0 ? text.text : text.text.substring(start));
+      TdApi.TextEntity[] foundEntities = TextEntityFinder.findEntities(start == 0 ? text.text : text.text.substring(start));
       if (foundEntities != null)
         Collections.addAll(entities, foundEntities);
     }
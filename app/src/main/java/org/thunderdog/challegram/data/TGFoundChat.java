@@ -173,6 +173,21 @@ public class TGFoundChat {
     updateChat(chat);
   }
 
+  public boolean canReuse (@Nullable TdApi.ChatList chatList, boolean isGlobal) {
+    return chatId != 0 && chat != null && this.isGlobal == isGlobal && Td.equalsTo(this.chatList, chatList);
+  }
+
+  public void setHighlight (@Nullable String highlight) {
+    if (!StringUtils.equalsOrBothEmpty(this.highlight, highlight)) {
+      this.highlight = highlight;
+      updateChat();
+    }
+  }
+
+  public boolean matchesHighlight () {
+    return (titleHighlight != null && !titleHighlight.isEmpty()) || (usernameHighlight != null && !usernameHighlight.isEmpty());
+  }
+
   private void updateUsername (TdApi.Chat chat) {
     String username = tdlib.chatUsername(chat.id);
 
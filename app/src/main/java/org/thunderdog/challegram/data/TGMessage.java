@@ -77,6 +77,7 @@ import org.thunderdog.challegram.navigation.HeaderView;
 import org.thunderdog.challegram.navigation.ReactionsOverlayView;
 import org.thunderdog.challegram.navigation.TooltipOverlayView;
 import org.thunderdog.challegram.navigation.ViewController;
+import org.thunderdog.challegram.telegram.DownloadPriorityScheduler;
 import org.thunderdog.challegram.telegram.Tdlib;
 import org.thunderdog.challegram.telegram.TdlibDelegate;
 import org.thunderdog.challegram.telegram.TdlibSender;
@@ -111,6 +112,7 @@ import org.thunderdog.challegram.util.text.TextColorSetOverride;
 import org.thunderdog.challegram.util.text.TextColorSets;
 import org.thunderdog.challegram.util.text.TextEntity;
 import org.thunderdog.challegram.util.text.TextEntityCustom;
+import org.thunderdog.challegram.util.text.TextEntityFinder;
 import org.thunderdog.challegram.util.text.TextMedia;
 import org.thunderdog.challegram.util.text.TextPart;
 import org.thunderdog.challegram.util.text.TextStyleProvider;
@@ -3937,6 +3939,13 @@ public abstract class TGMessage implements InvalidateContentProvider, TdlibDeleg
     receiver.clear();
   }
 
+  /**
+   * Reports files that may be downloading, so their download priority follows message position.
+   */
+  public void reportDownloadPriority (DownloadPriorityScheduler.Viewport viewport, int distance, int viewportSize) {
+    // Override in children
+  }
+
   // Getters
 
   public boolean onMessageClick (MessageView v, MessagesController c) {
@@ -7644,11 +7653,7 @@ public abstract class TGMessage implements InvalidateContentProvider, TdlibDeleg
   public static TGMessage valueOfError (MessagesManager context, TdApi.Message msg, Throwable error) {
     String text = Lang.getString(R.string.FailureMessageText);
 
-    TdApi.Object entitiesObject = Client.execute(new TdApi.GetTextEntities(text));
-    TdApi.TextEntity[] entities = null;
-    if (entitiesObject != null && entitiesObject.getConstructor() == TdApi.TextEntities.CONSTRUCTOR) {
-      entities = ((TdApi.TextEntities) entitiesObject).entities;
-    }
+    TdApi.TextEntity[] entities = TextEntityFinder.findEntities(text);
 
     TdApi.TextEntity logEntity = new TdApi.TextEntity(-1, -1, new TdApi.TextEntityTypePreCode());
 
@@ -8626,6 +8631,11 @@ public abstract class TGMessage implements InvalidateContentProvider, TdlibDeleg
     return textToTranslate;
   }
 
+  @Override
+  public boolean canPersistTranslation () {
+    return !isSecretChat();
+  }
+
   public void checkTranslatableText (Runnable after) {
     final TdApi.FormattedText textToTranslate = getTextToTranslateImpl();
     this.textToTranslate = textToTranslate;
@@ -33,6 +33,7 @@ import org.thunderdog.challegram.loader.ComplexReceiver;
 import org.thunderdog.challegram.loader.DoubleImageReceiver;
 import org.thunderdog.challegram.loader.ImageReceiver;
 import org.thunderdog.challegram.mediaview.MediaViewThumbLocation;
+import org.thunderdog.challegram.telegram.DownloadPriorityScheduler;
 import org.thunderdog.challegram.theme.Theme;
 import org.thunderdog.challegram.tool.DrawAlgorithms;
 import org.thunderdog.challegram.tool.Paints;
@@ -549,6 +550,16 @@ public class TGMessageFile extends TGMessage {
     }
   }
 
+  @Override
+  public void reportDownloadPriority (DownloadPriorityScheduler.Viewport viewport, int distance, int viewportSize) {
+    for (CaptionedFile file : filesList) {
+      TdApi.File targetFile = file.component.getFile();
+      if (targetFile != null) {
+        viewport.report(targetFile, distance, viewportSize);
+      }
+    }
+  }
+
   @Override
   protected float getBubbleExpandFactor () {
     return filesList.get(filesList.size() - 1).needBottomLineExpand.get();
@@ -36,6 +36,7 @@ import org.thunderdog.challegram.mediaview.MediaViewController;
 import org.thunderdog.challegram.mediaview.MediaViewThumbLocation;
 import org.thunderdog.challegram.navigation.ViewController;
 import org.thunderdog.challegram.support.ViewSupport;
+import org.thunderdog.challegram.telegram.DownloadPriorityScheduler;
 import org.thunderdog.challegram.theme.ColorId;
 import org.thunderdog.challegram.tool.Paints;
 import org.thunderdog.challegram.tool.Screen;
@@ -762,6 +763,11 @@ public class TGMessageMedia extends TGMessage {
     mosaicWrapper.requestFiles(receiver, invalidate);
   }
 
+  @Override
+  public void reportDownloadPriority (DownloadPriorityScheduler.Viewport viewport, int distance, int viewportSize) {
+    mosaicWrapper.reportDownloadPriority(viewport, distance, viewportSize);
+  }
+
   @Override
   protected int getContentWidth () {
     int mosaicWidth = mosaicWrapper != null ? mosaicWrapper.getWidth() : 0;
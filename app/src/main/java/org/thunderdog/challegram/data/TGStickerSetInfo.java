@@ -191,11 +191,8 @@ public class TGStickerSetInfo {
   public void show (ViewController<?> context) {
     StickerSetWrap wrap;
     if (stickerSet != null) {
-      stickerSet.isInstalled = info.isInstalled;
-      stickerSet.isArchived = info.isArchived;
-      stickerSet.isViewed = info.isViewed;
-      stickerSet.stickerType = info.stickerType;
-      wrap = StickerSetWrap.showStickerSet(context, stickerSet);
+      // stickerSet may be shared through TdlibStickerSetManager, so the current state is passed separately
+      wrap = StickerSetWrap.showStickerSet(context, stickerSet, info);
     } else if (info != null && info.id != 0) {
       wrap = StickerSetWrap.showStickerSet(context, info);
     } else {
@@ -0,0 +1,447 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 19:45
+ */
+package org.thunderdog.challegram.data;
+
+import android.util.LruCache;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.drinkless.tdlib.TdApi;
+import org.thunderdog.challegram.Log;
+import org.thunderdog.challegram.U;
+import org.thunderdog.challegram.core.BaseThread;
+import org.thunderdog.challegram.tool.UI;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Locale;
+
+import me.vkryl.core.FileUtils;
+import me.vkryl.core.StringUtils;
+import me.vkryl.core.lambda.RunnableData;
+
+/**
+ * Translations shared by all {@link TranslationsManager} instances.
+ *
+ * Entries are keyed by a 64-bit hash of the original text and the target language,
+ * and keep both, so a hash collision is never served as a hit.
+ *
+ * Recently used translations are kept in memory, bounded by approximate size in bytes.
+ * Persistable translations are also written to a small directory in the app cache,
+ * which is trimmed to {@link #MAX_DISK_ENTRY_COUNT} least recently used files.
+ * Files keep only SHA-256 of the original text and the language next to the translation.
+ *
+ * Everything is wiped via {@link #clear()} when any account logs out or its storage gets cleared.
+ */
+public final class TranslationCache {
+  private static final int MAX_MEMORY_SIZE = 512 * 1024;
+  private static final int MAX_DISK_ENTRY_COUNT = 512;
+  private static final int DISK_FORMAT_VERSION = 2;
+  private static final int DIGEST_SIZE = 32;
+  private static final int MAX_STRING_SIZE = 1024 * 1024;
+
+  private static final class Entry {
+    final String text, language;
+    final TdApi.FormattedText translation;
+    final int size;
+
+    Entry (String text, String language, TdApi.FormattedText translation) {
+      this.text = text;
+      this.language = language;
+      this.translation = translation;
+      this.size = 64 + (text.length() + language.length() + translation.text.length()) * 2 + (translation.entities != null ? translation.entities.length * 32 : 0);
+    }
+
+    boolean matches (String text, String language) {
+      return this.language.equals(language) && this.text.equals(text);
+    }
+  }
+
+  private static final LruCache<Long, Entry> memoryCache = new LruCache<Long, Entry>(MAX_MEMORY_SIZE) {
+    @Override
+    protected int sizeOf (Long key, Entry entry) {
+      return entry.size;
+    }
+  };
+
+  private static BaseThread diskThread;
+  private static int generation; // Guarded by TranslationCache.class, incremented by clear()
+  private static boolean trimScheduled;
+
+  // Stats, guarded by TranslationCache.class
+  private static long memoryHitCount, diskHitCount, missCount, diskWriteCount;
+
+  private TranslationCache () { }
+
+  private static long hash (String text, String language) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < language.length(); i++) {
+      h = (h ^ language.charAt(i)) * 0x100000001b3L;
+    }
+    h = (h ^ '\n') * 0x100000001b3L;
+    for (int i = 0; i < text.length(); i++) {
+      h = (h ^ text.charAt(i)) * 0x100000001b3L;
+    }
+    return h;
+  }
+
+  @Nullable
+  private static byte[] digest (String text, String language) {
+    byte[] data = (language + '\n' + text).getBytes(StringUtils.UTF_8);
+    return U.computeSHA256(data, 0, data.length);
+  }
+
+  // Memory
+
+  /**
+   * @return Translation kept in memory, or {@code null}, if it has to be loaded from disk or requested.
+   */
+  @AnyThread
+  @Nullable
+  public static TdApi.FormattedText get (String text, String language) {
+    if (StringUtils.isEmpty(text) || StringUtils.isEmpty(language))
+      return null;
+    Entry entry = memoryCache.get(hash(text, language));
+    if (entry != null && entry.matches(text, language)) {
+      synchronized (TranslationCache.class) {
+        memoryHitCount++;
+      }
+      return entry.translation;
+    }
+    return null;
+  }
+
+  /**
+   * Looks up the translation in memory and then on disk.
+   *
+   * @param callback receives translation or {@code null}. Called on the current thread on memory hit,
+   *                 otherwise on the cache thread.
+   */
+  @AnyThread
+  public static void find (String text, String language, boolean allowDisk, @NonNull RunnableData<TdApi.FormattedText> callback) {
+    TdApi.FormattedText translation = get(text, language);
+    if (translation != null || StringUtils.isEmpty(text) || StringUtils.isEmpty(language)) {
+      callback.runWithData(translation);
+      return;
+    }
+    if (!allowDisk) {
+      onMiss();
+      callback.runWithData(null);
+      return;
+    }
+    diskThread().post(() -> {
+      final long key = hash(text, language);
+      Entry entry = readEntry(getFile(key), text, language);
+      if (entry != null) {
+        memoryCache.put(key, entry);
+        synchronized (TranslationCache.class) {
+          diskHitCount++;
+        }
+        callback.runWithData(entry.translation);
+      } else {
+        onMiss();
+        callback.runWithData(null);
+      }
+    }, 0);
+  }
+
+  private static synchronized void onMiss () {
+    missCount++;
+  }
+
+  @AnyThread
+  public static void put (String text, String language, TdApi.FormattedText translation, boolean allowDisk) {
+    if (StringUtils.isEmpty(text) || StringUtils.isEmpty(language) || translation == null)
+      return;
+    final long key = hash(text, language);
+    final Entry entry = new Entry(text, language, translation);
+    memoryCache.put(key, entry);
+    if (allowDisk) {
+      final int generation = getGeneration();
+      diskThread().post(() -> {
+        if (generation == getGeneration() && writeEntry(getFile(key), entry)) {
+          synchronized (TranslationCache.class) {
+            diskWriteCount++;
+          }
+          scheduleTrim();
+        }
+      }, 0);
+    }
+  }
+
+  /**
+   * Drops all translations from memory and disk.
+   * Translations that are being written at the moment of the call are dropped as well.
+   */
+  @AnyThread
+  public static void clear () {
+    synchronized (TranslationCache.class) {
+      generation++;
+    }
+    memoryCache.evictAll();
+    diskThread().post(() -> {
+      File dir = getCacheDir();
+      if (dir.exists() && !FileUtils.delete(dir, true)) {
+        Log.w("Unable to delete cached translations");
+      }
+    }, 0);
+  }
+
+  private static synchronized int getGeneration () {
+    return generation;
+  }
+
+  // Disk
+
+  private static synchronized BaseThread diskThread () {
+    if (diskThread == null) {
+      diskThread = new BaseThread("TranslationCacheThread");
+      diskThread.post(TranslationCache::deleteLegacyCacheDir, 0);
+    }
+    return diskThread;
+  }
+
+  private static File getCacheDir () {
+    return new File(UI.getAppContext().getCacheDir(), "translations_v" + DISK_FORMAT_VERSION);
+  }
+
+  private static void deleteLegacyCacheDir () {
+    // Version 1 kept the original text
+    File legacyDir = new File(UI.getAppContext().getCacheDir(), "translations");
+    if (legacyDir.exists() && !FileUtils.delete(legacyDir, true)) {
+      Log.w("Unable to delete legacy translations");
+    }
+  }
+
+  private static File getFile (long key) {
+    return new File(getCacheDir(), Long.toHexString(key));
+  }
+
+  /**
+   * @return Entry, if the file exists and was written for the same text and language, otherwise {@code null}.
+   */
+  @Nullable
+  private static Entry readEntry (File file, String text, String language) {
+    if (!file.exists())
+      return null;
+    byte[] expectedDigest = digest(text, language);
+    if (expectedDigest == null)
+      return null;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != DISK_FORMAT_VERSION)
+        throw new IOException("Unsupported version");
+      byte[] digest = new byte[DIGEST_SIZE];
+      in.readFully(digest);
+      if (!MessageDigest.isEqual(digest, expectedDigest))
+        return null; // Hash collision, file belongs to another text
+      String translatedText = readString(in);
+      int entityCount = in.readInt();
+      if (entityCount < 0 || entityCount > translatedText.length())
+        throw new IOException("entityCount: " + entityCount);
+      TdApi.TextEntity[] entities = new TdApi.TextEntity[entityCount];
+      for (int i = 0; i < entityCount; i++) {
+        int offset = in.readInt();
+        int length = in.readInt();
+        if (offset < 0 || length <= 0 || offset > translatedText.length() - length)
+          throw new IOException("offset: " + offset + ", length: " + length + ", textLength: " + translatedText.length());
+        TdApi.TextEntityType type = readEntityType(in);
+        if (type == null)
+          return null;
+        entities[i] = new TdApi.TextEntity(offset, length, type);
+      }
+      //noinspection ResultOfMethodCallIgnored
+      file.setLastModified(System.currentTimeMillis());
+      return new Entry(text, language, new TdApi.FormattedText(translatedText, entities));
+    } catch (IOException e) {
+      Log.w("Unable to read cached translation", e);
+      //noinspection ResultOfMethodCallIgnored
+      file.delete();
+      return null;
+    }
+  }
+
+  private static boolean writeEntry (File file, Entry entry) {
+    TdApi.TextEntity[] entities = entry.translation.entities != null ? entry.translation.entities : new TdApi.TextEntity[0];
+    for (TdApi.TextEntity entity : entities) {
+      if (!canWriteEntityType(entity.type))
+        return false;
+    }
+    byte[] digest = digest(entry.text, entry.language);
+    if (digest == null || digest.length != DIGEST_SIZE)
+      return false;
+    File dir = file.getParentFile();
+    if (dir == null || (!dir.exists() && !dir.mkdirs()))
+      return false;
+    File tempFile = new File(dir, file.getName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+      out.writeInt(DISK_FORMAT_VERSION);
+      out.write(digest);
+      writeString(out, entry.translation.text);
+      out.writeInt(entities.length);
+      for (TdApi.TextEntity entity : entities) {
+        out.writeInt(entity.offset);
+        out.writeInt(entity.length);
+        writeEntityType(out, entity.type);
+      }
+    } catch (IOException e) {
+      Log.w("Unable to save translation", e);
+      //noinspection ResultOfMethodCallIgnored
+      tempFile.delete();
+      return false;
+    }
+    return tempFile.renameTo(file);
+  }
+
+  private static void writeString (DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StringUtils.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString (DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0 || length > MAX_STRING_SIZE)
+      throw new IOException("length: " + length);
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StringUtils.UTF_8);
+  }
+
+  private static boolean canWriteEntityType (TdApi.TextEntityType type) {
+    switch (type.getConstructor()) {
+      case TdApi.TextEntityTypeBold.CONSTRUCTOR:
+      case TdApi.TextEntityTypeItalic.CONSTRUCTOR:
+      case TdApi.TextEntityTypeUnderline.CONSTRUCTOR:
+      case TdApi.TextEntityTypeStrikethrough.CONSTRUCTOR:
+      case TdApi.TextEntityTypeSpoiler.CONSTRUCTOR:
+      case TdApi.TextEntityTypeCode.CONSTRUCTOR:
+      case TdApi.TextEntityTypePre.CONSTRUCTOR:
+      case TdApi.TextEntityTypeHashtag.CONSTRUCTOR:
+      case TdApi.TextEntityTypeUrl.CONSTRUCTOR:
+      case TdApi.TextEntityTypeTextUrl.CONSTRUCTOR:
+      case TdApi.TextEntityTypePreCode.CONSTRUCTOR:
+      case TdApi.TextEntityTypeCustomEmoji.CONSTRUCTOR:
+        return true;
+    }
+    return false;
+  }
+
+  private static void writeEntityType (DataOutputStream out, TdApi.TextEntityType type) throws IOException {
+    out.writeInt(type.getConstructor());
+    switch (type.getConstructor()) {
+      case TdApi.TextEntityTypeTextUrl.CONSTRUCTOR:
+        out.writeUTF(((TdApi.TextEntityTypeTextUrl) type).url);
+        break;
+      case TdApi.TextEntityTypePreCode.CONSTRUCTOR:
+        out.writeUTF(((TdApi.TextEntityTypePreCode) type).language);
+        break;
+      case TdApi.TextEntityTypeCustomEmoji.CONSTRUCTOR:
+        out.writeLong(((TdApi.TextEntityTypeCustomEmoji) type).customEmojiId);
+        break;
+    }
+  }
+
+  @Nullable
+  private static TdApi.TextEntityType readEntityType (DataInputStream in) throws IOException {
+    final int constructor = in.readInt();
+    switch (constructor) {
+      case TdApi.TextEntityTypeBold.CONSTRUCTOR:
+        return new TdApi.TextEntityTypeBold();
+      case TdApi.TextEntityTypeItalic.CONSTRUCTOR:
+        return new TdApi.TextEntityTypeItalic();
+      case TdApi.TextEntityTypeUnderline.CONSTRUCTOR:
+        return new TdApi.TextEntityTypeUnderline();
+      case TdApi.TextEntityTypeStrikethrough.CONSTRUCTOR:
+        return new TdApi.TextEntityTypeStrikethrough();
+      case TdApi.TextEntityTypeSpoiler.CONSTRUCTOR:
+        return new TdApi.TextEntityTypeSpoiler();
+      case TdApi.TextEntityTypeCode.CONSTRUCTOR:
+        return new TdApi.TextEntityTypeCode();
+      case TdApi.TextEntityTypePre.CONSTRUCTOR:
+        return new TdApi.TextEntityTypePre();
+      case TdApi.TextEntityTypeHashtag.CONSTRUCTOR:
+        return new TdApi.TextEntityTypeHashtag();
+      case TdApi.TextEntityTypeUrl.CONSTRUCTOR:
+        return new TdApi.TextEntityTypeUrl();
+      case TdApi.TextEntityTypeTextUrl.CONSTRUCTOR:
+        return new TdApi.TextEntityTypeTextUrl(in.readUTF());
+      case TdApi.TextEntityTypePreCode.CONSTRUCTOR:
+        return new TdApi.TextEntityTypePreCode(in.readUTF());
+      case TdApi.TextEntityTypeCustomEmoji.CONSTRUCTOR:
+        return new TdApi.TextEntityTypeCustomEmoji(in.readLong());
+    }
+    return null;
+  }
+
+  private static void scheduleTrim () {
+    // Called on disk thread
+    if (trimScheduled)
+      return;
+    trimScheduled = true;
+    diskThread().post(() -> {
+      trimScheduled = false;
+      trimDisk();
+    }, 5000);
+  }
+
+  private static void trimDisk () {
+    File[] files = getCacheDir().listFiles();
+    if (files == null || files.length <= MAX_DISK_ENTRY_COUNT)
+      return;
+    final long[] lastModified = new long[files.length];
+    Integer[] order = new Integer[files.length];
+    for (int i = 0; i < files.length; i++) {
+      lastModified[i] = files[i].lastModified();
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> Long.compare(lastModified[a], lastModified[b]));
+    int removeCount = files.length - MAX_DISK_ENTRY_COUNT;
+    for (int i = 0; i < removeCount; i++) {
+      //noinspection ResultOfMethodCallIgnored
+      files[order[i]].delete();
+    }
+  }
+
+  // Stats
+
+  @AnyThread
+  public static String getStats () {
+    long memoryHitCount, diskHitCount, missCount, diskWriteCount;
+    synchronized (TranslationCache.class) {
+      memoryHitCount = TranslationCache.memoryHitCount;
+      diskHitCount = TranslationCache.diskHitCount;
+      missCount = TranslationCache.missCount;
+      diskWriteCount = TranslationCache.diskWriteCount;
+    }
+    long lookupCount = memoryHitCount + diskHitCount + missCount;
+    return String.format(Locale.US,
+      "hit rate: %.1f%% (memory: %d, disk: %d, miss: %d), memory: %d entries, %d/%d bytes, disk writes: %d",
+      lookupCount != 0 ? (memoryHitCount + diskHitCount) * 100f / lookupCount : 0f,
+      memoryHitCount, diskHitCount, missCount,
+      memoryCache.snapshot().size(), memoryCache.size(), memoryCache.maxSize(),
+      diskWriteCount
+    );
+  }
+}
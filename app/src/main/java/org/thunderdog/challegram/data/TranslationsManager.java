@@ -38,6 +38,13 @@ public final class TranslationsManager {
     String getOriginalMessageLanguage ();
 
     TdApi.FormattedText getTextToTranslate ();
+
+    /**
+     * @return False, if translations of this text must not be written to disk.
+     */
+    default boolean canPersistTranslation () {
+      return true;
+    }
   }
 
   public TranslationsManager (Tdlib tdlib, Translatable message, OnChangeTranslatedStatus statusDelegate, OnChangeTranslatedResult resultDelegate, OnNewTranslatedError errorDelegate) {
@@ -76,7 +83,20 @@ public final class TranslationsManager {
     }
 
     statusDelegate.setTranslatedStatus(TranslationCounterDrawable.TRANSLATE_STATUS_LOADING, true);
-    tdlib.ui().post(() -> requestTranslationImpl(textToTranslate, language, object -> tdlib.ui().post(() -> {
+    TranslationCache.find(textToTranslate.text, language, message.canPersistTranslation(), storedText -> tdlib.ui().post(() -> {
+      if (storedText != null) {
+        if (StringUtils.equalsOrBothEmpty(currentTranslatedLanguage, language)) {
+          statusDelegate.setTranslatedStatus(TranslationCounterDrawable.TRANSLATE_STATUS_SUCCESS, true);
+          resultDelegate.setTranslationResult(storedText);
+        }
+      } else {
+        requestRemoteTranslation(textToTranslate, language);
+      }
+    }));
+  }
+
+  private void requestRemoteTranslation (TdApi.FormattedText textToTranslate, String language) {
+    requestTranslationImpl(textToTranslate, language, object -> tdlib.ui().post(() -> {
       if (object instanceof TdApi.FormattedText) {
         TdApi.FormattedText text = prepareTranslatedText((TdApi.FormattedText) object);
         saveCachedTextTranslation(textToTranslate.text, language, text);
@@ -92,7 +112,7 @@ public final class TranslationsManager {
           }
         }
       }
-    })));
+    }));
   }
 
   public String getCurrentTranslatedLanguage () {
@@ -110,39 +130,24 @@ public final class TranslationsManager {
 
 
 
-  private final HashMap<String, TranslatedCachedValue> mTranslationsCache2 = new HashMap<>();
-
-  private static class TranslatedCachedValue {
-    public final String originalLanguage;
-    public final HashMap<String, TdApi.FormattedText> translationsCache;
-
-    public TranslatedCachedValue (String originalLanguage) {
-      this.originalLanguage = originalLanguage;
-      this.translationsCache = new HashMap<>();
-    }
-  }
+  private final HashMap<String, String> mOriginalLanguages = new HashMap<>();
 
   public @Nullable String getCachedTextLanguage (String text) {
-    TranslatedCachedValue cachedValue = mTranslationsCache2.get(text);
-    return (cachedValue != null ? cachedValue.originalLanguage: null);
+    return mOriginalLanguages.get(text);
   }
 
   public void saveCachedTextLanguage (String text, String language) {
-    if (!mTranslationsCache2.containsKey(text)) {
-      mTranslationsCache2.put(text, new TranslatedCachedValue(language));
+    if (!mOriginalLanguages.containsKey(text)) {
+      mOriginalLanguages.put(text, language);
     }
   }
 
   public @Nullable TdApi.FormattedText getCachedTextTranslation (String text, String language) {
-    TranslatedCachedValue cachedValue = mTranslationsCache2.get(text);
-    return (cachedValue != null ? cachedValue.translationsCache.get(language): null);
+    return TranslationCache.get(text, language);
   }
 
   public void saveCachedTextTranslation (String text, String language, TdApi.FormattedText translated) {
-    TranslatedCachedValue cachedValue = mTranslationsCache2.get(text);
-    if (cachedValue != null) {
-      cachedValue.translationsCache.put(language, translated);
-    }
+    TranslationCache.put(text, language, translated, message.canPersistTranslation());
   }
 
 
@@ -32,6 +32,7 @@ import org.drinkless.tdlib.TdApi;
 import org.thunderdog.challegram.Log;
 import org.thunderdog.challegram.U;
 import org.thunderdog.challegram.core.Media;
+import org.thunderdog.challegram.core.MemoryGovernor;
 import org.thunderdog.challegram.data.TD;
 import org.thunderdog.challegram.telegram.TGLegacyManager;
 import org.thunderdog.challegram.telegram.Tdlib;
@@ -58,7 +59,7 @@ import me.vkryl.core.lambda.RunnableBool;
 import me.vkryl.core.reference.ReferenceList;
 import me.vkryl.core.util.LocalVar;
 
-public class Emoji {
+public class Emoji implements MemoryGovernor.Trimmable {
   private static Emoji instance;
 
   public static Emoji instance () {
@@ -128,6 +129,8 @@ public class Emoji {
 
     this.defaultTone = Settings.instance().getEmojiDefaultTone();
 
+    MemoryGovernor.instance().register("Emoji", this, MemoryGovernor.Priority.NORMAL);
+
     final int sampleSize = EmojiBitmaps.calculateSampleSize();
     emojiOriginalSize = (int) (30 * EmojiCode.SCALE) / sampleSize;
 
@@ -164,6 +167,19 @@ public class Emoji {
     }
   }
 
+  @Override
+  public void trimMemory (@MemoryGovernor.Stage int stage) {
+    // Visible pages would be loaded again right away
+    if (stage >= MemoryGovernor.Stage.MODERATE || UI.getUiState() != UI.STATE_RESUMED) {
+      bitmaps.releasePages();
+    }
+  }
+
+  @Override
+  public long getMemoryUsage () {
+    return bitmaps.getByteCount();
+  }
+
   public int getReduceSize () {
     return bitmaps.scaleDp != 0f ? Screen.dp(Math.abs(bitmaps.scaleDp)) * (int) Math.signum(bitmaps.scaleDp) : 0;
   }
@@ -39,6 +39,7 @@ class EmojiBitmaps {
   public final Bitmap[][] bitmaps = new Bitmap[5][EmojiCode.SPLIT_COUNT];
   private final boolean[][] loadingEmoji = new boolean[5][EmojiCode.SPLIT_COUNT];
   private boolean recycled;
+  private final Object lock = new Object(); // Guards bitmaps, loadingEmoji and recycled
 
   public final float scaleDp;
 
@@ -92,35 +93,67 @@ class EmojiBitmaps {
   }
 
   public Bitmap getBitmap (int page1, int page2) {
-    return isReady(page1, page2) ? bitmaps[page1][page2] : null;
+    synchronized (lock) {
+      if (recycled)
+        return null;
+      Bitmap bitmap = bitmaps[page1][page2];
+      if (!U.isValidBitmap(bitmap)) {
+        if (!loadingEmoji[page1][page2]) {
+          loadingEmoji[page1][page2] = true;
+          Media.instance().post(() -> loadEmoji(page1, page2));
+        }
+        return null;
+      }
+      return bitmap;
+    }
   }
 
-  private boolean isReady (int page1, int page2) {
-    if (recycled)
-      return false;
-    Bitmap bitmap = bitmaps[page1][page2];
-    if (!U.isValidBitmap(bitmap)) {
-      if (!loadingEmoji[page1][page2]) {
-        loadingEmoji[page1][page2] = true;
-        Media.instance().post(() -> loadEmoji(page1, page2));
+  public void recycle () {
+    synchronized (lock) {
+      if (!recycled) {
+        recycled = true;
+        for (Bitmap[] bitmaps : this.bitmaps) {
+          int index = 0;
+          for (Bitmap bitmap : bitmaps) {
+            U.recycle(bitmap);
+            bitmaps[index] = null;
+            index++;
+          }
+        }
       }
-      return false;
     }
-    return true;
   }
 
-  public void recycle () {
-    if (!recycled) {
-      recycled = true;
+  /**
+   * Drops all loaded pages. They are loaded again when drawn next time.
+   *
+   * Bitmaps are not recycled, as they might still be drawn on another thread.
+   */
+  public void releasePages () {
+    synchronized (lock) {
+      for (int page1 = 0; page1 < bitmaps.length; page1++) {
+        for (int page2 = 0; page2 < bitmaps[page1].length; page2++) {
+          if (bitmaps[page1][page2] != null) {
+            bitmaps[page1][page2] = null;
+            loadingEmoji[page1][page2] = false;
+          }
+        }
+      }
+    }
+  }
+
+  public long getByteCount () {
+    long byteCount = 0;
+    synchronized (lock) {
       for (Bitmap[] bitmaps : this.bitmaps) {
-        int index = 0;
         for (Bitmap bitmap : bitmaps) {
-          U.recycle(bitmap);
-          bitmaps[index] = null;
-          index++;
+          if (U.isValidBitmap(bitmap)) {
+            byteCount += bitmap.getByteCount();
+          }
         }
       }
     }
+    return byteCount;
   }
 
   private void loadEmoji (int page1, int page2) {
@@ -136,11 +169,13 @@ class EmojiBitmaps {
     }
     Bitmap resultFinal = result;
     UI.post(() -> {
-      if (recycled) {
-        if (resultFinal != null)
-          resultFinal.recycle();
-      } else {
-        bitmaps[page1][page2] = resultFinal;
+      synchronized (lock) {
+        if (recycled) {
+          if (resultFinal != null)
+            resultFinal.recycle();
+        } else {
+          bitmaps[page1][page2] = resultFinal;
+        }
       }
       TGLegacyManager.instance().notifyEmojiChanged(false);
     });
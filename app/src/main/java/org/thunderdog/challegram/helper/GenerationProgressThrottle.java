@@ -0,0 +1,78 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 23:59
+ */
+package org.thunderdog.challegram.helper;
+
+import java.io.File;
+
+/**
+ * Decides when the prefix of a file being generated should be reported to TDLib.
+ *
+ * File size is checked at most once per interval, and reported only when it has grown since the last report,
+ * so TDLib is never asked to upload the same or a shorter prefix twice.
+ */
+final class GenerationProgressThrottle {
+  private final long intervalMs;
+
+  private boolean hasChecked;
+  private long lastCheckTimeMs;
+  private long reportedPrefixSize;
+
+  GenerationProgressThrottle (long intervalMs) {
+    this.intervalMs = intervalMs;
+  }
+
+  void reset () {
+    hasChecked = false;
+    lastCheckTimeMs = 0;
+    reportedPrefixSize = 0;
+  }
+
+  /**
+   * @return True, if caller should look up the current prefix size and pass it to {@link #onPrefixSize(long)}.
+   * The first call after {@link #reset()} always returns true.
+   */
+  boolean needCheck (long timeMs) {
+    if (hasChecked && timeMs - lastCheckTimeMs < intervalMs) {
+      return false;
+    }
+    hasChecked = true;
+    lastCheckTimeMs = timeMs;
+    return true;
+  }
+
+  /**
+   * Looks up the size of the file being generated, if it's time for that.
+   *
+   * @return Size of the prefix to report, or 0, if nothing has to be reported at {@code timeMs}.
+   */
+  long checkFile (long timeMs, File file) {
+    if (!needCheck(timeMs)) {
+      return 0;
+    }
+    long prefixSize = file.length();
+    return onPrefixSize(prefixSize) ? prefixSize : 0;
+  }
+
+  /**
+   * @return True, if {@code prefixSize} has to be reported.
+   */
+  boolean onPrefixSize (long prefixSize) {
+    if (prefixSize > reportedPrefixSize) {
+      reportedPrefixSize = prefixSize;
+      return true;
+    }
+    return false;
+  }
+}
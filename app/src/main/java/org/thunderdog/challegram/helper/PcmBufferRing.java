@@ -0,0 +1,206 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 17:40
+ */
+package org.thunderdog.challegram.helper;
+
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Preallocated ring of direct buffers passed from a single producer to a single consumer.
+ *
+ * Producer: {@link #acquire()}, fill the buffer, {@link #publish()}, and finally {@link #close()}.
+ * Consumer: {@link #take()}, read the buffer, {@link #release()}, until {@link #take()} returns {@code null}.
+ *
+ * Producer never waits, as it reads from AudioRecord, which drops samples when not read in time.
+ * When all ring buffers are taken, it switches to overflow buffers, allocated once and reused afterwards,
+ * until the consumer catches up. Consumer waits by parking its thread, and is unparked only when it is actually waiting.
+ */
+final class PcmBufferRing {
+  private final ByteBuffer[] buffers;
+  private final int mask;
+  private final int bufferSize;
+
+  // Overflow buffers. Producer adds to overflowQueue only when the ring is full or overflowQueue is not empty,
+  // so the consumer receives everything in order by draining the ring first.
+  private final ConcurrentLinkedQueue<ByteBuffer> overflowQueue = new ConcurrentLinkedQueue<>();
+  private final ConcurrentLinkedQueue<ByteBuffer> spareBuffers = new ConcurrentLinkedQueue<>();
+  private ByteBuffer producerOverflowBuffer; // Accessed only by producer
+  private ByteBuffer consumerOverflowBuffer; // Accessed only by consumer
+  private volatile int overflowCount, allocatedOverflowCount;
+
+  private final AtomicLong readIndex = new AtomicLong(); // Written by consumer
+  private final AtomicLong writeIndex = new AtomicLong(); // Written by producer
+  private volatile boolean isClosed;
+
+  private volatile Thread waitingConsumer;
+
+  PcmBufferRing (int capacity, int bufferSize) {
+    if (capacity <= 0 || (capacity & (capacity - 1)) != 0)
+      throw new IllegalArgumentException("capacity: " + capacity);
+    this.buffers = new ByteBuffer[capacity];
+    this.mask = capacity - 1;
+    this.bufferSize = bufferSize;
+    for (int i = 0; i < capacity; i++) {
+      buffers[i] = newBuffer(bufferSize);
+    }
+  }
+
+  private static ByteBuffer newBuffer (int bufferSize) {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+    buffer.order(ByteOrder.nativeOrder());
+    return buffer;
+  }
+
+  /**
+   * Prepares the ring for the next stream. Must be called when neither side is using it.
+   */
+  void reset () {
+    readIndex.set(0);
+    writeIndex.set(0);
+    isClosed = false;
+    ByteBuffer buffer;
+    while ((buffer = overflowQueue.poll()) != null) {
+      spareBuffers.offer(buffer);
+    }
+    if (producerOverflowBuffer != null) {
+      spareBuffers.offer(producerOverflowBuffer);
+      producerOverflowBuffer = null;
+    }
+    if (consumerOverflowBuffer != null) {
+      spareBuffers.offer(consumerOverflowBuffer);
+      consumerOverflowBuffer = null;
+    }
+    overflowCount = 0;
+  }
+
+  boolean isClosed () {
+    return isClosed;
+  }
+
+  /**
+   * @return Number of buffers passed outside of the ring since the last {@link #reset()}, because the consumer was behind.
+   */
+  int getOverflowCount () {
+    return overflowCount;
+  }
+
+  /**
+   * @return Number of overflow buffers allocated during ring lifetime.
+   */
+  int getAllocatedOverflowCount () {
+    return allocatedOverflowCount;
+  }
+
+  // Producer
+
+  /**
+   * @return Cleared buffer to fill. Never waits: when all ring buffers are taken by the consumer, returns an overflow buffer.
+   */
+  ByteBuffer acquire () {
+    final long index = writeIndex.get();
+    if (index - readIndex.get() == buffers.length || !overflowQueue.isEmpty()) {
+      ByteBuffer buffer = spareBuffers.poll();
+      if (buffer == null) {
+        buffer = newBuffer(bufferSize);
+        allocatedOverflowCount++;
+      }
+      buffer.clear();
+      producerOverflowBuffer = buffer;
+      return buffer;
+    }
+    ByteBuffer buffer = buffers[(int) (index & mask)];
+    buffer.clear();
+    return buffer;
+  }
+
+  /**
+   * Passes the buffer returned by {@link #acquire()} to the consumer.
+   */
+  void publish () {
+    ByteBuffer overflowBuffer = producerOverflowBuffer;
+    if (overflowBuffer != null) {
+      producerOverflowBuffer = null;
+      overflowCount++;
+      overflowQueue.offer(overflowBuffer);
+    } else {
+      writeIndex.set(writeIndex.get() + 1);
+    }
+    Thread consumer = waitingConsumer;
+    if (consumer != null) {
+      LockSupport.unpark(consumer);
+    }
+  }
+
+  /**
+   * Marks the end of the stream. Buffers published before are still delivered.
+   */
+  void close () {
+    isClosed = true;
+    Thread consumer = waitingConsumer;
+    if (consumer != null) {
+      LockSupport.unpark(consumer);
+    }
+  }
+
+  // Consumer
+
+  /**
+   * @return Next published buffer, or {@code null}, once the ring is closed and all buffers are consumed.
+   */
+  @Nullable
+  ByteBuffer take () {
+    final long index = readIndex.get();
+    while (true) {
+      // Ring buffers are always older than queued overflow buffers
+      if (index != writeIndex.get()) {
+        return buffers[(int) (index & mask)];
+      }
+      ByteBuffer overflowBuffer = overflowQueue.poll();
+      if (overflowBuffer != null) {
+        consumerOverflowBuffer = overflowBuffer;
+        return overflowBuffer;
+      }
+      if (isClosed) {
+        // Recheck, as the last buffer could be published right before closing
+        if (index != writeIndex.get() || !overflowQueue.isEmpty())
+          continue;
+        return null;
+      }
+      waitingConsumer = Thread.currentThread();
+      if (index == writeIndex.get() && overflowQueue.isEmpty() && !isClosed) {
+        LockSupport.park(this);
+      }
+      waitingConsumer = null;
+    }
+  }
+
+  /**
+   * Returns the buffer received from {@link #take()} to the producer.
+   */
+  void release () {
+    ByteBuffer overflowBuffer = consumerOverflowBuffer;
+    if (overflowBuffer != null) {
+      consumerOverflowBuffer = null;
+      spareBuffers.offer(overflowBuffer);
+    } else {
+      readIndex.set(readIndex.get() + 1);
+    }
+  }
+}
@@ -30,12 +30,12 @@ import org.thunderdog.challegram.data.TGRecord;
 import org.thunderdog.challegram.filegen.GenerationInfo;
 import org.thunderdog.challegram.telegram.Tdlib;
 import org.thunderdog.challegram.tool.UI;
+import org.thunderdog.challegram.unsorted.Settings;
 import org.thunderdog.challegram.voip.AudioRecordJNI;
 
 import java.io.File;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.ArrayList;
 import java.util.Arrays;
 
 import me.vkryl.core.lambda.CancellableRunnable;
@@ -81,18 +81,22 @@ public class Recorder implements Runnable {
 
   public void record (final Tdlib tdlib, final boolean isSecret, final Listener listener) {
     setRecording(true);
-    encodeThread.post(() -> recordThread.post(startRunnable = new CancellableRunnable() {
-      @Override
-      public void act () {
-        startRunnable = null;
-        synchronized (Recorder.this) {
-          if (!isRecording) {
-            return;
+    // EncoderThread is busy until the previous recording is fully encoded
+    encodeThread.post(() -> recordThread.post(() -> {
+      startRunnable = new CancellableRunnable() {
+        @Override
+        public void act () {
+          startRunnable = null;
+          synchronized (Recorder.this) {
+            if (!isRecording) {
+              return;
+            }
           }
+          startRecording(tdlib, isSecret, listener);
         }
-        startRecording(tdlib, isSecret, listener);
-      }
-    }, START_DELAY), 0);
+      };
+      recordThread.post(startRunnable, START_DELAY);
+    }, 0), 0);
   }
 
   public void save () {
@@ -147,10 +151,16 @@ public class Recorder implements Runnable {
   private AudioRecord recorder;
   private Tdlib tdlib;
   private Recorder.Listener listener;
-  private ArrayList<ByteBuffer> buffers;
+  private PcmBufferRing ring;
   private ByteBuffer fileBuffer;
   private int bufferSize;
 
+  // Progressive upload
+  private static final long GENERATION_PROGRESS_INTERVAL_MS = 1000;
+  private boolean reportGenerationProgress;
+  private File generatedFile;
+  private final GenerationProgressThrottle generationProgress = new GenerationProgressThrottle(GENERATION_PROGRESS_INTERVAL_MS);
+
   private void startRecording (Tdlib tdlib, boolean isSecret, Recorder.Listener listener) {
     this.tdlib = tdlib;
     this.listener = listener;
@@ -165,6 +175,11 @@ public class Recorder implements Runnable {
 
     currentGeneration = generation;
 
+    // Secret chat files are encrypted as a whole, so there's nothing to upload in advance
+    reportGenerationProgress = !isSecret && Settings.instance().needProgressiveVoiceUpload();
+    generatedFile = new File(generation.destinationPath);
+    generationProgress.reset();
+
     if (generationToRemove != null && new File(generationToRemove.destinationPath).delete()) {
       generationToRemove = null;
     }
@@ -183,13 +198,10 @@ public class Recorder implements Runnable {
         }
       }
 
-      if (buffers == null) {
-        buffers = new ArrayList<>(5);
-        for (int i = 0; i < 5; i++) {
-          ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
-          buffer.order(ByteOrder.nativeOrder());
-          buffers.add(buffer);
-        }
+      if (ring == null) {
+        ring = new PcmBufferRing(RING_CAPACITY, RING_BUFFER_SIZE);
+      } else {
+        ring.reset();
       }
 
       if (fileBuffer == null) {
@@ -213,6 +225,7 @@ public class Recorder implements Runnable {
       removeFile = true;
       recorder.startRecording();
       initMaxAmplitude();
+      encodeThread.post(encodeLoop, 0);
       dispatchRecord();
     } catch (Throwable t) {
       if (recorder != null) {
@@ -256,36 +269,47 @@ public class Recorder implements Runnable {
       return;
     }
 
-    ByteBuffer buffer;
-    if (buffers.isEmpty()) {
-      buffer = ByteBuffer.allocateDirect(bufferSize);
-      buffer.order(ByteOrder.nativeOrder());
-    } else {
-      buffer = buffers.get(0);
-      buffers.remove(0);
-    }
-    buffer.rewind();
+    ByteBuffer buffer = ring.acquire();
 
     int length = recorder.read(buffer, buffer.capacity());
 
     if (length <= 0) {
-      buffers.add(buffer);
-      encodeThread.post(() -> cleanupRecording(removeFile), 0);
+      ring.close();
       return;
     }
 
     buffer.limit(length);
-    final ByteBuffer finalBuffer = buffer;
-    final boolean flush = length != buffer.capacity();
 
     calculateMaxAmplitude(buffer, length);
 
-    encodeThread.post(() -> processBuffer(finalBuffer, flush), 0);
+    ring.publish();
 
     dispatchRecord();
     dispatchProgress();
   }
 
+  // Encoding internal
+
+  private static final int RING_CAPACITY = 8;
+  private static final int RING_BUFFER_SIZE = 4096;
+
+  /**
+   * Occupies EncoderThread for the whole recording, waiting on the ring between buffers,
+   * so encoding a buffer costs no message posts in either direction.
+   */
+  private final Runnable encodeLoop = () -> {
+    ByteBuffer buffer;
+    while ((buffer = ring.take()) != null) {
+      // Last buffer is shorter than the others
+      processBuffer(buffer, buffer.limit() != buffer.capacity());
+      ring.release();
+    }
+    if (ring.getOverflowCount() > 0) {
+      Log.w("Encoder fell behind, buffers passed outside of the ring: %d, allocated: %d", ring.getOverflowCount(), ring.getAllocatedOverflowCount());
+    }
+    cleanupRecording(removeFile);
+  };
+
   private void processBuffer (final ByteBuffer buffer, boolean flush) {
     while (buffer.hasRemaining()) {
       int oldLimit = -1;
@@ -298,43 +322,57 @@ public class Recorder implements Runnable {
         if (N.writeFrame(fileBuffer, !flush ? fileBuffer.limit() : buffer.position()) != 0) {
           fileBuffer.rewind();
           recordTimeCount += fileBuffer.limit() / 3 / 2 / 16;
+          if (reportGenerationProgress && !flush) {
+            reportGenerationProgress();
+          }
         }
       }
       if (oldLimit != -1) {
         buffer.limit(oldLimit);
       }
     }
-    recordThread.post(() -> buffers.add(buffer), 0);
+  }
+
+  /**
+   * Ogg pages are only appended and never rewritten, so whatever is already on disk
+   * is a prefix of the final file and TDLib may start uploading it.
+   *
+   * Expected size is always 0, which TDLib treats as unknown: the recording lasts until the user releases the button,
+   * so any estimate based on the elapsed time would stay below the final size until the very end,
+   * and TDLib would plan the upload for a smaller file than it actually receives.
+   */
+  private void reportGenerationProgress () {
+    if (currentGeneration == null) {
+      return;
+    }
+    long prefixSize = generationProgress.checkFile(SystemClock.uptimeMillis(), generatedFile);
+    if (prefixSize > 0) {
+      tdlib.setGenerationProgress(currentGeneration, 0, prefixSize);
+    }
   }
 
   private boolean removeFile;
 
   private void stopRecording (final boolean removeFile) {
-    encodeThread.post(() -> {
-      final boolean started;
+    // Not through EncoderThread, as it doesn't handle messages until the recorder is stopped
+    recordThread.post(() -> {
       if (startRunnable != null) {
         startRunnable.cancel();
         startRunnable = null;
-        started = false;
-      } else {
-        started = true;
+        cleanupRecording(removeFile);
+        return;
+      }
+      if (recorder == null || ring.isClosed()) {
+        // Not started yet, or already stopped
+        return;
+      }
+      Recorder.this.removeFile = removeFile;
+      try {
+        recorder.stop();
+        tryReleaseEnhancers();
+      } catch (Throwable t) {
+        Log.e("Cannot stop recorder", t);
       }
-      recordThread.post(() -> {
-        if (started) {
-          Recorder.this.removeFile = removeFile;
-          if (recorder == null) {
-            return;
-          }
-          try {
-            recorder.stop();
-            tryReleaseEnhancers();
-          } catch (Throwable t) {
-            Log.e("Cannot stop recorder", t);
-          }
-        } else {
-          cleanupRecording(removeFile);
-        }
-      }, 0);
     }, 0);
   }
 
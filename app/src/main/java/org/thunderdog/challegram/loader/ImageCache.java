@@ -25,6 +25,7 @@ import androidx.annotation.Nullable;
 
 import org.thunderdog.challegram.Log;
 import org.thunderdog.challegram.U;
+import org.thunderdog.challegram.core.MemoryGovernor;
 import org.thunderdog.challegram.tool.UI;
 
 import java.lang.ref.WeakReference;
@@ -34,7 +35,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import me.vkryl.core.unit.ByteUnit;
 
-public class ImageCache {
+public class ImageCache implements MemoryGovernor.Trimmable {
   private static ImageCache instance;
 
   public static ImageCache instance () {
@@ -89,6 +90,23 @@ public class ImageCache {
     rotations = new HashMap<>();
     memcache = new BitmapLruCache(getMemcacheSize());
     references = new HashMap<>();
+    MemoryGovernor.instance().register("ImageCache", this, MemoryGovernor.Priority.LOW);
+  }
+
+  @Override
+  public void trimMemory (@MemoryGovernor.Stage int stage) {
+    synchronized (counters) {
+      if (stage == MemoryGovernor.Stage.LIGHT) {
+        memcache.trimToSize(memcache.maxSize() / 2);
+      } else {
+        memcache.evictAll();
+      }
+    }
+  }
+
+  @Override
+  public long getMemoryUsage () {
+    return memcache.size();
   }
 
   private boolean hasInMemcache (String key) {
@@ -797,6 +797,20 @@ public class GifActor implements GifState.Callback, TGPlayerController.TrackChan
     return false;
   }
 
+  public void trimFreeFrames () {
+    synchronized (gifLock) {
+      if (gif != null) {
+        gif.trimFreeFrames();
+      }
+    }
+  }
+
+  public long getFrameByteCount () {
+    synchronized (gifLock) {
+      return gif != null ? gif.getByteCount() : 0;
+    }
+  }
+
   // Decoder thread
   public void onDestroy () {
     destroyDecoder();
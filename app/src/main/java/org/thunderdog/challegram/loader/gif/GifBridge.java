@@ -24,6 +24,7 @@ import androidx.collection.ArraySet;
 import org.drinkless.tdlib.TdApi;
 import org.thunderdog.challegram.Log;
 import org.thunderdog.challegram.N;
+import org.thunderdog.challegram.core.MemoryGovernor;
 import org.thunderdog.challegram.telegram.Tdlib;
 
 import java.util.ArrayList;
@@ -34,7 +35,7 @@ import java.util.concurrent.atomic.AtomicReference;
 import me.vkryl.core.lambda.RunnableData;
 import me.vkryl.td.Td;
 
-public class GifBridge {
+public class GifBridge implements MemoryGovernor.Trimmable {
   private static GifBridge instance;
 
   public static GifBridge instance () {
@@ -70,6 +71,37 @@ public class GifBridge {
     for (int i = 0; i < lottieThreads.length; i++) {
       lottieThreads[i] = new GifThread(i);
     }
+    MemoryGovernor.instance().register("GifBridge", this, MemoryGovernor.Priority.NORMAL);
+  }
+
+  private GifActor[] getActors () {
+    synchronized (records) {
+      GifActor[] actors = new GifActor[records.size()];
+      int index = 0;
+      for (GifRecord record : records.values()) {
+        actors[index++] = record.getActor();
+      }
+      return actors;
+    }
+  }
+
+  @UiThread
+  @Override
+  public void trimMemory (@MemoryGovernor.Stage int stage) {
+    // Free frames, which the decoder would fill next, are recycled. Decoded frames
+    // waiting to be drawn and the displayed one stay, recycled ones are allocated again once decoding continues
+    for (GifActor actor : getActors()) {
+      actor.trimFreeFrames();
+    }
+  }
+
+  @Override
+  public long getMemoryUsage () {
+    long total = 0;
+    for (GifActor actor : getActors()) {
+      total += actor.getFrameByteCount();
+    }
+    return total;
   }
 
   private GifThread obtainFrameThread (GifFile file) {
@@ -61,6 +61,8 @@ public class GifState {
   private final Callback callback;
   private int flags;
   private final int queueSize;
+  private Bitmap.Config config;
+  private int frameCount; // Frames in busy and free queues, and the one being decoded
 
   public GifState (int width, int height, int rotation, Callback callback, int queueSize) {
     this.width = width;
@@ -84,12 +86,14 @@ public class GifState {
 
   public boolean init (FrameReader reader, int numInit, Bitmap.Config config) {
     synchronized (busy) {
+      this.config = config;
       for (int i = 0; i < queueSize; i++) {
         Bitmap bitmap = Bitmap.createBitmap(width, height, config);
         if (bitmap == null) {
           return false;
         }
         Frame frame = new Frame(bitmap);
+        frameCount++;
         if (i < numInit) {
           if (!reader.readNextFrame(frame)) {
             return false;
@@ -105,7 +109,41 @@ public class GifState {
 
   public Frame takeFree () {
     synchronized (busy) {
-      return free.isEmpty() ? null : free.poll();
+      if (free.isEmpty()) {
+        // Frames released by trimFreeFrames() are allocated again only when needed
+        if (config != null && frameCount < queueSize) {
+          try {
+            Frame frame = new Frame(Bitmap.createBitmap(width, height, config));
+            frameCount++;
+            return frame;
+          } catch (Throwable t) {
+            return null;
+          }
+        }
+        return null;
+      }
+      return free.poll();
+    }
+  }
+
+  /**
+   * Recycles frames that are not displayed or being decoded.
+   */
+  public void trimFreeFrames () {
+    synchronized (busy) {
+      while (!free.isEmpty()) {
+        Frame frame = free.poll();
+        if (frame != null && !frame.isRecycled()) {
+          frame.recycle();
+        }
+        frameCount--;
+      }
+    }
+  }
+
+  public long getByteCount () {
+    synchronized (busy) {
+      return config != null ? (long) frameCount * width * height * (config == Bitmap.Config.ARGB_8888 ? 4 : 2) : 0;
     }
   }
 
@@ -148,6 +186,8 @@ public class GifState {
   }
 
   private void recycleImpl () {
+    config = null;
+    frameCount = 0;
     for (Frame bitmap : busy) {
       if (bitmap != null && !bitmap.isRecycled()) {
         bitmap.recycle();
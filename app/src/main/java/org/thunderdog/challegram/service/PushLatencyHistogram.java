@@ -0,0 +1,65 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 17:05
+ */
+package org.thunderdog.challegram.service;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+
+/**
+ * Time from receiving a push to displaying its notifications, since process start.
+ */
+public final class PushLatencyHistogram {
+  private static final long[] BUCKET_BOUNDS_MS = {100, 250, 500, 1000, 2500, 5000, 10000};
+
+  private static final long[] counts = new long[BUCKET_BOUNDS_MS.length + 1];
+  private static long pushCount, totalLatencyMs, maxLatencyMs;
+  private static long batchCount, coalescedCount, passCount;
+
+  private PushLatencyHistogram () { }
+
+  @AnyThread
+  static synchronized void addLatency (long latencyMs) {
+    int bucket = 0;
+    while (bucket < BUCKET_BOUNDS_MS.length && latencyMs >= BUCKET_BOUNDS_MS[bucket]) {
+      bucket++;
+    }
+    counts[bucket]++;
+    pushCount++;
+    totalLatencyMs += latencyMs;
+    maxLatencyMs = Math.max(maxLatencyMs, latencyMs);
+  }
+
+  @AnyThread
+  static synchronized void addBatch (int pushCount, int passCount) {
+    batchCount++;
+    coalescedCount += pushCount - 1;
+    PushLatencyHistogram.passCount += passCount;
+  }
+
+  @AnyThread
+  @NonNull
+  public static synchronized String export () {
+    StringBuilder b = new StringBuilder();
+    b.append(String.format(Locale.US, "Pushes: %d, avg: %dms, max: %dms\n", pushCount, pushCount != 0 ? totalLatencyMs / pushCount : 0, maxLatencyMs));
+    b.append(String.format(Locale.US, "Batches: %d, passes: %d, coalesced pushes: %d\n\n", batchCount, passCount, coalescedCount));
+    for (int i = 0; i < counts.length; i++) {
+      String range = i < BUCKET_BOUNDS_MS.length ? "< " + BUCKET_BOUNDS_MS[i] + "ms" : ">= " + BUCKET_BOUNDS_MS[i - 1] + "ms";
+      b.append(String.format(Locale.US, "%10s  %d\n", range, counts[i]));
+    }
+    return b.toString();
+  }
+}
@@ -22,6 +22,7 @@ import android.os.PowerManager;
 import android.os.SystemClock;
 
 import androidx.annotation.IntDef;
+import androidx.collection.SparseArrayCompat;
 
 import org.drinkless.tdlib.Client;
 import org.drinkless.tdlib.TdApi;
@@ -38,6 +39,8 @@ import org.thunderdog.challegram.unsorted.Settings;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -54,6 +57,7 @@ public class PushProcessor {
   }
 
   public void processPush (long pushId, String payload, long sentTime, int ttl) {
+    final long receivedTimeMs = SystemClock.uptimeMillis();
     Settings.instance().trackPushMessageReceived(sentTime, System.currentTimeMillis(), ttl);
 
     // Trying to find accountId for the push
@@ -77,7 +81,7 @@ public class PushProcessor {
       }
     }
 
-    TdlibManager.instanceForAccountId(accountId).runWithWakeLock(manager -> processPush(manager, pushId, payload, accountId));
+    TdlibManager.instanceForAccountId(accountId).runWithWakeLock(manager -> processPush(manager, new Push(pushId, payload, receivedTimeMs), accountId));
   }
 
   private boolean hasActiveNetwork () {
@@ -137,20 +141,89 @@ public class PushProcessor {
 
   private final Object foregroundLock = new Object();
 
-  private void processPush (final TdlibManager manager, final long pushId, final String payload, final int accountId) {
-    TDLib.trackPushState(pushId, true);
+  private static final class Push {
+    final long pushId;
+    final String payload;
+    final long receivedTimeMs;
 
-    // Checking current environment
-    final boolean doze = inIdleMode();
-    final boolean network = hasActiveNetwork();
+    Push (long pushId, String payload, long receivedTimeMs) {
+      this.pushId = pushId;
+      this.payload = payload;
+      this.receivedTimeMs = receivedTimeMs;
+    }
+  }
 
+  /**
+   * Pushes of a single account processed together.
+   *
+   * Exists in {@link #batches} only while something keeps the process alive until all its pushes are processed:
+   * either the thread that started it is still waiting, or a foreground task is visible.
+   * Pushes received meanwhile are added to it instead of going through the whole setup again,
+   * and are passed to TDLib together, once the current pass finishes.
+   */
+  private static final class Batch {
+    final TdlibManager manager;
+    final long pushId;
+    final int accountId;
+    final boolean inRecoveryMode;
     final long startTimeMs = SystemClock.uptimeMillis();
 
     final AtomicInteger state = new AtomicInteger(State.RUNNING);
     final CountDownLatch latch = new CountDownLatch(1);
     final AtomicReference<CancellableRunnable> timeout = new AtomicReference<>();
 
-    final boolean inRecoveryMode = manager.inRecoveryMode();
+    // Guarded by batchLock
+    final List<Push> pendingPushes = new ArrayList<>();
+    int pushCount, passCount;
+
+    Batch (TdlibManager manager, Push push, int accountId) {
+      this.manager = manager;
+      this.pushId = push.pushId;
+      this.accountId = accountId;
+      this.inRecoveryMode = manager.inRecoveryMode();
+      this.pendingPushes.add(push);
+      this.pushCount = 1;
+    }
+  }
+
+  private static final Object batchLock = new Object();
+  private static final SparseArrayCompat<Batch> batches = new SparseArrayCompat<>();
+
+  private static void removeBatch (Batch batch) {
+    synchronized (batchLock) {
+      if (batches.get(batch.accountId) == batch) {
+        batches.remove(batch.accountId);
+      }
+    }
+  }
+
+  private void processPush (final TdlibManager manager, final Push push, final int accountId) {
+    final Batch batch;
+    synchronized (batchLock) {
+      Batch existingBatch = batches.get(accountId);
+      if (existingBatch != null) {
+        existingBatch.pendingPushes.add(push);
+        existingBatch.pushCount++;
+        TDLib.Tag.notifications(push.pushId, accountId, "Added to push batch %d, pending: %d", existingBatch.pushId, existingBatch.pendingPushes.size());
+        return;
+      }
+      batch = new Batch(manager, push, accountId);
+      batches.put(accountId, batch);
+    }
+
+    final long pushId = batch.pushId;
+    final AtomicInteger state = batch.state;
+    final CountDownLatch latch = batch.latch;
+    final AtomicReference<CancellableRunnable> timeout = batch.timeout;
+    final boolean inRecoveryMode = batch.inRecoveryMode;
+    final long startTimeMs = batch.startTimeMs;
+
+    TDLib.trackPushState(pushId, true);
+
+    // Checking current environment
+    final boolean doze = inIdleMode();
+    final boolean network = hasActiveNetwork();
+
     final boolean shown;
 
     if (doze || !network || inRecoveryMode) {
@@ -168,28 +241,7 @@ public class PushProcessor {
       shown = false;
     }
 
-    manager.processPushOrSync(pushId, accountId, payload, () -> {
-      TDLib.Tag.notifications(pushId, accountId, "processPushOrSync finished in %dms", SystemClock.uptimeMillis() - startTimeMs);
-      synchronized (foregroundLock) {
-        if (state.compareAndSet(State.VISIBLE, State.FINISHED)) {
-          TDLib.Tag.notifications(pushId, accountId, "Stopping a foreground task");
-          ForegroundService.stopForegroundTask(context, pushId, accountId);
-          SyncTask.cancel(accountId);
-        } else {
-          int currentState = state.get();
-          TDLib.Tag.notifications(pushId, accountId, "Finishing without a foreground task, state: %s", stateToString(currentState));
-          state.set(State.FINISHED);
-          latch.countDown();
-
-          CancellableRunnable act = timeout.get();
-          if (act != null) {
-            act.cancel();
-            queue().cancel(act);
-          }
-        }
-      }
-      TDLib.Tag.notifications(pushId, accountId, "Finished push processing task in %dms", SystemClock.uptimeMillis() - startTimeMs);
-    });
+    processNextPass(batch);
 
     if (!shown) {
       synchronized (foregroundLock) {
@@ -220,6 +272,8 @@ public class PushProcessor {
                       if (currentState != State.FINISHED) {
                         TDLib.Tag.notifications(pushId, accountId, "Releasing push processing to avoid ANR. Notification may be missing (intentionally).");
                         // TODO show some generic "You may have a new message" notification?
+                        // Nothing keeps the process alive anymore, so next pushes should start their own batch
+                        removeBatch(batch);
                       } else {
                         TDLib.Tag.notifications(pushId, accountId, "Push was processed by canceling some of operations");
                       }
@@ -242,6 +296,7 @@ public class PushProcessor {
       latch.await();
     } catch (InterruptedException e) {
       TDLib.Tag.notifications(pushId, accountId, "Interrupted.");
+      removeBatch(batch);
     }
 
     synchronized (foregroundLock) {
@@ -254,6 +309,70 @@ public class PushProcessor {
     }
   }
 
+  private void processNextPass (final Batch batch) {
+    final Push[] pushes;
+    synchronized (batchLock) {
+      if (batch.pendingPushes.isEmpty()) {
+        if (batches.get(batch.accountId) == batch) {
+          batches.remove(batch.accountId);
+        }
+        pushes = null;
+      } else {
+        pushes = batch.pendingPushes.toArray(new Push[0]);
+        batch.pendingPushes.clear();
+        batch.passCount++;
+      }
+    }
+    if (pushes == null) {
+      onBatchFinished(batch);
+      return;
+    }
+    String[] payloads = new String[pushes.length];
+    for (int i = 0; i < pushes.length; i++) {
+      payloads[i] = pushes[i].payload;
+    }
+    final long passStartTimeMs = SystemClock.uptimeMillis();
+    batch.manager.processPushesOrSync(batch.pushId, batch.accountId, payloads, () -> {
+      long timeMs = SystemClock.uptimeMillis();
+      for (Push push : pushes) {
+        PushLatencyHistogram.addLatency(timeMs - push.receivedTimeMs);
+      }
+      TDLib.Tag.notifications(batch.pushId, batch.accountId, "processPushOrSync finished in %dms, pushCount: %d", timeMs - passStartTimeMs, pushes.length);
+      processNextPass(batch);
+    });
+  }
+
+  private void onBatchFinished (final Batch batch) {
+    final long pushId = batch.pushId;
+    final int accountId = batch.accountId;
+    final AtomicInteger state = batch.state;
+    synchronized (foregroundLock) {
+      if (state.compareAndSet(State.VISIBLE, State.FINISHED)) {
+        TDLib.Tag.notifications(pushId, accountId, "Stopping a foreground task");
+        ForegroundService.stopForegroundTask(context, pushId, accountId);
+        SyncTask.cancel(accountId);
+      } else {
+        int currentState = state.get();
+        TDLib.Tag.notifications(pushId, accountId, "Finishing without a foreground task, state: %s", stateToString(currentState));
+        state.set(State.FINISHED);
+        batch.latch.countDown();
+
+        CancellableRunnable act = batch.timeout.get();
+        if (act != null) {
+          act.cancel();
+          queue().cancel(act);
+        }
+      }
+    }
+    int pushCount, passCount;
+    synchronized (batchLock) {
+      pushCount = batch.pushCount;
+      passCount = batch.passCount;
+    }
+    PushLatencyHistogram.addBatch(pushCount, passCount);
+    TDLib.Tag.notifications(pushId, accountId, "Finished push processing task in %dms, pushCount: %d, passCount: %d", SystemClock.uptimeMillis() - batch.startTimeMs, pushCount, passCount);
+  }
+
   private boolean showForegroundNotification (TdlibManager manager, boolean inRecovery, long pushId, int accountId) {
     String text;
     if (accountId != TdlibAccount.NO_ID && manager.isMultiUser()) {
@@ -33,11 +33,14 @@ import org.thunderdog.challegram.TDLib;
 import org.thunderdog.challegram.telegram.TdlibAccount;
 import org.thunderdog.challegram.telegram.TdlibManager;
 import org.thunderdog.challegram.tool.UI;
+import org.thunderdog.challegram.unsorted.Settings;
 
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 public class SyncTask extends Worker {
+  private static final String PENDING_WORK_NAME = "sync:pending";
+
   public SyncTask (@NonNull Context context, @NonNull WorkerParameters workerParams) {
     super(context, workerParams);
   }
@@ -46,17 +49,30 @@ public class SyncTask extends Worker {
     if (accountId == TdlibAccount.NO_ID) {
       WorkManager.getInstance(UI.getAppContext()).cancelAllWorkByTag("sync");
     } else {
-      WorkManager.getInstance(UI.getAppContext()).cancelUniqueWork("sync:" + accountId);
+      Settings.instance().forgetAccountNeedsSync(accountId);
+      if (Settings.instance().getAccountsNeedingSync().length == 0) {
+        WorkManager.getInstance(UI.getAppContext()).cancelUniqueWork(PENDING_WORK_NAME);
+      }
     }
   }
 
+  /**
+   * Schedules sync of the given account, or of all accounts, if {@code accountId} is {@link TdlibAccount#NO_ID}.
+   *
+   * Accounts are not synced by separate tasks: each one is marked as pending,
+   * and a single task syncs all pending accounts in parallel.
+   */
   public static void schedule (long pushId, int accountId) {
-    final String uniqueWorkName = accountId != TdlibAccount.NO_ID ? "sync:all" : "sync:" + accountId;
+    final boolean isPending = accountId != TdlibAccount.NO_ID;
+    final String uniqueWorkName = isPending ? PENDING_WORK_NAME : "sync:all";
+    if (isPending) {
+      Settings.instance().markAccountNeedsSync(accountId, pushId);
+    }
     OneTimeWorkRequest.Builder b = new OneTimeWorkRequest.Builder(SyncTask.class);
     b.setConstraints(new Constraints.Builder()
       .setRequiredNetworkType(NetworkType.CONNECTED)
       .build());
-    b.setInputData(new Data.Builder().putLong("push_id", pushId).putInt("account_id", accountId).build());
+    b.setInputData(new Data.Builder().putLong("push_id", pushId).putInt("account_id", accountId).putBoolean("pending", isPending).build());
     b.addTag(uniqueWorkName);
     if (accountId != TdlibAccount.NO_ID)
       b.addTag("sync:specific");
@@ -89,7 +105,13 @@ public class SyncTask extends Worker {
     Data data = getInputData();
     final long pushId = data.getLong("push_id", 0);
     final int accountId = data.getInt("account_id", TdlibAccount.NO_ID);
-    if (TdlibManager.makeSync(getApplicationContext(), accountId, TdlibManager.SYNC_CAUSE_WORK_MANAGER, pushId, !TdlibManager.inUiThread(), 0)) {
+    final boolean success;
+    if (data.getBoolean("pending", false)) {
+      success = TdlibManager.makePendingSync(getApplicationContext(), TdlibManager.SYNC_CAUSE_WORK_MANAGER, pushId, !TdlibManager.inUiThread(), 0);
+    } else {
+      success = TdlibManager.makeSync(getApplicationContext(), accountId, TdlibManager.SYNC_CAUSE_WORK_MANAGER, pushId, !TdlibManager.inUiThread(), 0);
+    }
+    if (success) {
       return Result.success();
     } else {
       return Result.retry();
@@ -0,0 +1,358 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 15:40
+ */
+package org.thunderdog.challegram.telegram;
+
+import android.os.SystemClock;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.Nullable;
+
+import org.thunderdog.challegram.Log;
+import org.thunderdog.challegram.core.BaseThread;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Persistence of {@code tdlib_accounts.bin}.
+ *
+ * The whole config is serialized in memory and written on a background thread:
+ * bytes go to a temporary file, which is synced and then renamed over the main file.
+ * The previous version is kept as a backup until the rename succeeds, so a reader
+ * always finds at least one complete copy. Changes made while a write is in progress
+ * are coalesced into a single write of the latest snapshot.
+ *
+ * A CRC32 of the contents is appended after the last entry. Files without it
+ * (written by older versions) are still accepted, as long as their size matches the entry count.
+ *
+ * Failed background writes are retried, the latest snapshot is kept in memory until it is saved.
+ * All writes of pending changes happen on the config thread, {@link #flush()} only signals it.
+ */
+public final class AccountConfigFile {
+  private static final int CHECKSUM_SIZE = 4;
+  private static final long RETRY_DELAY_MS = 1000;
+  private static final long MAX_RETRY_DELAY_MS = 30000;
+
+  private static final Object lock = new Object();
+  private static final Object readLock = new Object();
+  private static final Object writeLock = new Object();
+
+  private static byte[] pendingData; // Latest snapshot that is not on disk yet
+  private static byte[] knownData; // Latest snapshot, either pending or written
+
+  private static BaseThread thread;
+  private static final Runnable writeAct = AccountConfigFile::writePending;
+  private static long retryDelayMs; // Guarded by lock
+
+  // Debug counters, guarded by lock
+  private static long requestCount, writeCount, lastWriteMs;
+
+  private AccountConfigFile () { }
+
+  private static File getFile () {
+    return TdlibManager.getAccountConfigFile();
+  }
+
+  private static File getTempFile (File file) {
+    return new File(file.getParentFile(), file.getName() + ".tmp");
+  }
+
+  private static File getBackupFile (File file) {
+    return new File(file.getParentFile(), file.getName() + ".bak");
+  }
+
+  // Read
+
+  /**
+   * Reads the file in advance, so the first {@link TdlibManager} access doesn't wait for disk.
+   */
+  @AnyThread
+  public static void preload () {
+    read();
+  }
+
+  /**
+   * @return Latest known config contents, including not yet written changes,
+   * or {@code null}, if there's no config file.
+   */
+  @AnyThread
+  @Nullable
+  static byte[] read () {
+    synchronized (lock) {
+      if (knownData != null)
+        return knownData;
+    }
+    synchronized (readLock) {
+      synchronized (lock) {
+        if (knownData != null)
+          return knownData;
+      }
+      long ms = SystemClock.uptimeMillis();
+      File file = getFile();
+      byte[] data = readVerified(file);
+      if (data == null) {
+        File backupFile = getBackupFile(file);
+        data = readVerified(backupFile);
+        if (data != null) {
+          Log.w(Log.TAG_ACCOUNTS, "Restored account config from backup, size:%d", data.length);
+        }
+      }
+      synchronized (lock) {
+        if (knownData == null) {
+          knownData = data;
+        }
+        Log.i(Log.TAG_ACCOUNTS, "Read account config in %dms, size:%d", SystemClock.uptimeMillis() - ms, data != null ? data.length : -1);
+        return knownData;
+      }
+    }
+  }
+
+  @Nullable
+  private static byte[] readVerified (File file) {
+    if (!file.exists()) {
+      return null;
+    }
+    byte[] data;
+    try (FileInputStream in = new FileInputStream(file)) {
+      FileChannel channel = in.getChannel();
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE)
+        throw new IOException("Config is too big: " + size);
+      data = new byte[(int) size];
+      if (size > 0) {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        buffer.get(data);
+      }
+    } catch (IOException e) {
+      Log.e(Log.TAG_ACCOUNTS, "Unable to read account config: %s", e, file.getName());
+      return null;
+    }
+    if (!isValid(data)) {
+      Log.e(Log.TAG_ACCOUNTS, "Account config checksum mismatch: %s, size:%d", file.getName(), data.length);
+      return null;
+    }
+    return data;
+  }
+
+  private static boolean isValid (byte[] data) {
+    if (data.length == 0) {
+      // Created, but never written
+      return true;
+    }
+    if (data.length < 4) {
+      return false;
+    }
+    int accountNum = ByteBuffer.wrap(data).getInt();
+    if (accountNum <= 0 || accountNum > TdlibAccount.ID_MAX) {
+      return false;
+    }
+    int binlogSize = TdlibManager.binlogSize(accountNum);
+    if (data.length == binlogSize + CHECKSUM_SIZE) {
+      return ByteBuffer.wrap(data, binlogSize, CHECKSUM_SIZE).getInt() == checksum(data, binlogSize);
+    }
+    // Legacy files without checksum, in TdlibAccount.VERSION_2 or TdlibAccount.VERSION_1 layout
+    return data.length == binlogSize || data.length == TdlibManager.legacyBinlogSize(accountNum);
+  }
+
+  private static int checksum (byte[] data, int length) {
+    CRC32 crc = new CRC32();
+    crc.update(data, 0, length);
+    return (int) crc.getValue();
+  }
+
+  // Write
+
+  public static byte[] serialize (TdlibManager.AccountConfig config) {
+    int accountNum = config.accounts.size();
+    int binlogSize = TdlibManager.binlogSize(accountNum);
+    ByteArrayOutputStream out = new ByteArrayOutputStream(binlogSize + CHECKSUM_SIZE);
+    try (DataOutputStream stream = new DataOutputStream(out)) {
+      TdlibManager.writeAccountConfigFully(stream, config);
+      byte[] data = out.toByteArray();
+      stream.writeInt(checksum(data, data.length));
+    } catch (IOException e) {
+      // ByteArrayOutputStream does not throw
+      throw new IllegalStateException(e);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Schedules the write of the given snapshot. Snapshots that were not written yet are discarded.
+   */
+  @AnyThread
+  static void write (byte[] data) {
+    synchronized (lock) {
+      boolean scheduled = pendingData != null;
+      pendingData = data;
+      knownData = data;
+      requestCount++;
+      if (scheduled)
+        return;
+      getThread().post(writeAct, 0);
+    }
+  }
+
+  /**
+   * Asks the config thread to write pending changes right away, skipping the retry delay, if any.
+   * Doesn't wait for the write, so it is safe to call from the main thread,
+   * e.g. when account is added or logged out, or app goes to background.
+   */
+  @AnyThread
+  public static void flush () {
+    synchronized (lock) {
+      if (pendingData == null)
+        return;
+      BaseThread thread = getThread();
+      thread.cancel(writeAct);
+      thread.post(writeAct, 0);
+    }
+  }
+
+  /**
+   * Same as {@link #flush()}, but waits up to {@code timeoutMs} for the config thread to finish the write.
+   * Used only when process is about to die, e.g. from the uncaught exception handler.
+   *
+   * @return {@code true} if there are no pending changes left
+   */
+  @AnyThread
+  public static boolean flushAndWait (long timeoutMs) {
+    CountDownLatch latch = new CountDownLatch(1);
+    synchronized (lock) {
+      if (pendingData == null)
+        return true;
+      BaseThread thread = getThread();
+      if (Thread.currentThread() == thread) {
+        // Waiting would only block the write
+        return false;
+      }
+      thread.cancel(writeAct);
+      thread.post(writeAct, 0);
+      thread.post(latch::countDown, 0);
+    }
+    try {
+      latch.await(timeoutMs, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (lock) {
+      return pendingData == null;
+    }
+  }
+
+  private static BaseThread getThread () {
+    // Guarded by lock
+    if (thread == null) {
+      thread = new BaseThread("AccountConfigThread");
+    }
+    return thread;
+  }
+
+  /**
+   * Replaces config contents on the current thread, discarding pending changes.
+   * Used by migrations that change the file layout, so {@link #read()} never returns contents in the old layout afterwards.
+   */
+  @AnyThread
+  public static void replace (byte[] data) throws IOException {
+    synchronized (writeLock) {
+      synchronized (lock) {
+        pendingData = null;
+        knownData = data;
+        requestCount++;
+      }
+      writeNow(data, SystemClock.uptimeMillis());
+    }
+  }
+
+  private static void writePending () {
+    synchronized (writeLock) {
+      byte[] data;
+      synchronized (lock) {
+        data = pendingData;
+        pendingData = null;
+      }
+      if (data == null)
+        return;
+      try {
+        writeNow(data, SystemClock.uptimeMillis());
+      } catch (IOException e) {
+        Log.e(Log.TAG_ACCOUNTS, "Unable to save account config, size:%d", e, data.length);
+        scheduleRetry(data);
+      }
+    }
+  }
+
+  private static void writeNow (byte[] data, long startTimeMs) throws IOException {
+    writeAtomically(getFile(), data);
+    synchronized (lock) {
+      writeCount++;
+      lastWriteMs = SystemClock.uptimeMillis() - startTimeMs;
+      retryDelayMs = 0;
+    }
+    Log.i(Log.TAG_ACCOUNTS, "Saved account config in %dms, size:%d", lastWriteMs, data.length);
+  }
+
+  private static void scheduleRetry (byte[] failedData) {
+    synchronized (lock) {
+      if (pendingData == null) {
+        // Nothing newer was requested while writing
+        pendingData = failedData;
+      }
+      retryDelayMs = retryDelayMs == 0 ? RETRY_DELAY_MS : Math.min(retryDelayMs * 2, MAX_RETRY_DELAY_MS);
+      getThread().post(writeAct, retryDelayMs);
+    }
+  }
+
+  private static void writeAtomically (File file, byte[] data) throws IOException {
+    File tempFile = getTempFile(file);
+    try (FileOutputStream out = new FileOutputStream(tempFile)) {
+      out.write(data);
+      out.flush();
+      out.getFD().sync();
+    }
+    File backupFile = getBackupFile(file);
+    if (file.exists()) {
+      if (backupFile.exists() && !backupFile.delete())
+        throw new IOException("Cannot delete config backup");
+      if (!file.renameTo(backupFile))
+        throw new IOException("Cannot backup config");
+    }
+    if (!tempFile.renameTo(file))
+      throw new IOException("Cannot save config");
+  }
+
+  // Stats
+
+  @AnyThread
+  public static String getStats () {
+    synchronized (lock) {
+      return "requests: " + requestCount +
+        ", writes: " + writeCount +
+        ", coalesced: " + (requestCount - writeCount - (pendingData != null ? 1 : 0)) +
+        ", last write: " + lastWriteMs + "ms" +
+        ", size: " + (knownData != null ? knownData.length : -1);
+    }
+  }
+}
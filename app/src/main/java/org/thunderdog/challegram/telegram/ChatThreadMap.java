@@ -0,0 +1,161 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 19:10
+ */
+package org.thunderdog.challegram.telegram;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Open-addressing map keyed by a (chatId, messageThreadId) pair.
+ *
+ * Keys are kept in primitive arrays, so lookups allocate nothing.
+ * Not thread-safe.
+ */
+final class ChatThreadMap<T> {
+  private static final int MIN_CAPACITY = 16;
+
+  private long[] chatIds;
+  private long[] messageThreadIds;
+  private Object[] values;
+  private int size;
+
+  ChatThreadMap () {
+    allocate(MIN_CAPACITY);
+  }
+
+  private void allocate (int capacity) {
+    this.chatIds = new long[capacity];
+    this.messageThreadIds = new long[capacity];
+    this.values = new Object[capacity];
+  }
+
+  private static int hash (long chatId, long messageThreadId) {
+    long h = chatId * 0x9E3779B97F4A7C15L + messageThreadId;
+    h ^= h >>> 32;
+    h *= 0xC2B2AE3D27D4EB4FL;
+    return (int) (h ^ (h >>> 29));
+  }
+
+  private int indexOf (long chatId, long messageThreadId) {
+    final int mask = values.length - 1;
+    int index = hash(chatId, messageThreadId) & mask;
+    while (values[index] != null) {
+      if (chatIds[index] == chatId && messageThreadIds[index] == messageThreadId)
+        return index;
+      index = (index + 1) & mask;
+    }
+    return -1;
+  }
+
+  public int size () {
+    return size;
+  }
+
+  public boolean isEmpty () {
+    return size == 0;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Nullable
+  public T get (long chatId, long messageThreadId) {
+    int index = indexOf(chatId, messageThreadId);
+    return index != -1 ? (T) values[index] : null;
+  }
+
+  public void put (long chatId, long messageThreadId, T value) {
+    if (value == null)
+      throw new IllegalArgumentException();
+    if ((size + 1) * 4 > values.length * 3) {
+      rehash(values.length << 1);
+    }
+    final int mask = values.length - 1;
+    int index = hash(chatId, messageThreadId) & mask;
+    while (values[index] != null) {
+      if (chatIds[index] == chatId && messageThreadIds[index] == messageThreadId) {
+        values[index] = value;
+        return;
+      }
+      index = (index + 1) & mask;
+    }
+    chatIds[index] = chatId;
+    messageThreadIds[index] = messageThreadId;
+    values[index] = value;
+    size++;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Nullable
+  public T remove (long chatId, long messageThreadId) {
+    int index = indexOf(chatId, messageThreadId);
+    if (index == -1)
+      return null;
+    T value = (T) values[index];
+    size--;
+    // Shift following entries of the same cluster back, so lookups don't need tombstones
+    final int mask = values.length - 1;
+    int gap = index;
+    int next = (gap + 1) & mask;
+    while (values[next] != null) {
+      int home = hash(chatIds[next], messageThreadIds[next]) & mask;
+      if (((next - home) & mask) >= ((next - gap) & mask)) {
+        chatIds[gap] = chatIds[next];
+        messageThreadIds[gap] = messageThreadIds[next];
+        values[gap] = values[next];
+        gap = next;
+      }
+      next = (next + 1) & mask;
+    }
+    values[gap] = null;
+    return value;
+  }
+
+  public void clear () {
+    if (size > 0) {
+      allocate(MIN_CAPACITY);
+      size = 0;
+    }
+  }
+
+  /**
+   * Iteration: {@code for (int i = 0; i < map.capacity(); i++) { T value = map.valueAt(i); if (value != null) { ... } }}
+   */
+  public int capacity () {
+    return values.length;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Nullable
+  public T valueAt (int index) {
+    return (T) values[index];
+  }
+
+  private void rehash (int newCapacity) {
+    long[] oldChatIds = this.chatIds;
+    long[] oldMessageThreadIds = this.messageThreadIds;
+    Object[] oldValues = this.values;
+    allocate(newCapacity);
+    final int mask = newCapacity - 1;
+    for (int i = 0; i < oldValues.length; i++) {
+      if (oldValues[i] == null)
+        continue;
+      int index = hash(oldChatIds[i], oldMessageThreadIds[i]) & mask;
+      while (values[index] != null) {
+        index = (index + 1) & mask;
+      }
+      chatIds[index] = oldChatIds[i];
+      messageThreadIds[index] = oldMessageThreadIds[i];
+      values[index] = oldValues[i];
+    }
+  }
+}
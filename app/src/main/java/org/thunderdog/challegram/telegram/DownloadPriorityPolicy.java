@@ -0,0 +1,86 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 21:05
+ */
+package org.thunderdog.challegram.telegram;
+
+/**
+ * Maps distance between a file's receiver and the viewport to a download priority.
+ *
+ * Priorities are grouped into a few buckets, so scrolling within a bucket
+ * does not require sending anything to TDLib. Has no dependencies on TDLib or Android.
+ */
+public final class DownloadPriorityPolicy {
+  public static final int DISTANCE_UNKNOWN = -1;
+
+  public static final int PRIORITY_NONE = 0;
+  public static final int PRIORITY_VISIBLE = 32;
+  public static final int PRIORITY_NEAR = 24;
+  public static final int PRIORITY_CLOSE = 16;
+  public static final int PRIORITY_AROUND = 8;
+  public static final int PRIORITY_FAR = 1;
+
+  private DownloadPriorityPolicy () { }
+
+  /**
+   * @param distance Distance in pixels between the receiver and the closest viewport edge, 0, if receiver is visible, or {@link #DISTANCE_UNKNOWN}.
+   * @param viewportSize Viewport size in pixels along the scroll axis.
+   * @return Priority from 1 to 32, or {@link #PRIORITY_NONE}, if it should not be changed.
+   */
+  public static int getPriority (int distance, int viewportSize) {
+    if (distance == DISTANCE_UNKNOWN || viewportSize <= 0) {
+      return PRIORITY_NONE;
+    }
+    if (distance == 0) {
+      return PRIORITY_VISIBLE;
+    }
+    if (distance <= viewportSize / 2) {
+      return PRIORITY_NEAR;
+    }
+    if (distance <= viewportSize) {
+      return PRIORITY_CLOSE;
+    }
+    if (distance <= viewportSize * 2) {
+      return PRIORITY_AROUND;
+    }
+    return PRIORITY_FAR;
+  }
+
+  /**
+   * @return Distance between [start, end) and [viewportStart, viewportEnd), or 0, if they intersect.
+   * Ranges that only touch each other do not intersect and are at least 1 pixel apart.
+   */
+  public static int getDistance (int start, int end, int viewportStart, int viewportEnd) {
+    if (end <= viewportStart) {
+      return Math.max(1, viewportStart - end);
+    }
+    if (start >= viewportEnd) {
+      return Math.max(1, start - viewportEnd);
+    }
+    return 0;
+  }
+
+  /**
+   * Estimates distance to an item that is not laid out, assuming items between have the same height.
+   *
+   * @param itemsBetween Number of items between the item and the closest laid out one.
+   * @param averageItemSize Average size of laid out items.
+   */
+  public static int estimateDistance (int knownDistance, int itemsBetween, int averageItemSize) {
+    if (knownDistance == DISTANCE_UNKNOWN || averageItemSize <= 0) {
+      return DISTANCE_UNKNOWN;
+    }
+    long distance = (long) knownDistance + ((long) itemsBetween + 1) * averageItemSize;
+    return (int) Math.min(distance, Integer.MAX_VALUE);
+  }
+}
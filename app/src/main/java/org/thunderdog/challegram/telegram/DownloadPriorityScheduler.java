@@ -0,0 +1,215 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 21:20
+ */
+package org.thunderdog.challegram.telegram;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.UiThread;
+import androidx.collection.SparseArrayCompat;
+
+import org.drinkless.tdlib.TdApi;
+import org.thunderdog.challegram.Log;
+
+import java.util.ArrayList;
+
+/**
+ * Changes priorities of active downloads depending on how far their receivers are from the viewport.
+ *
+ * Lists only mark their {@link Viewport} as changed while scrolling. Distances are collected
+ * and changed priorities are sent to TDLib at most once per {@link #FLUSH_DELAY_MS},
+ * so a fast fling results in a few small batches of {@link TdApi.DownloadFile} requests.
+ *
+ * Files that are no longer reported by any viewport fall back to {@link DownloadPriorityPolicy#PRIORITY_FAR}.
+ */
+public final class DownloadPriorityScheduler {
+  private static final long FLUSH_DELAY_MS = 200;
+  private static final int MAX_REQUESTS_PER_FLUSH = 16;
+
+  public interface Reporter {
+    /**
+     * Implementation should call {@link Viewport#report(TdApi.File, int, int)}
+     * for each file it displays or is about to display.
+     */
+    @UiThread
+    void onReportDownloadPriorities (@NonNull Viewport viewport);
+  }
+
+  public static final class Viewport {
+    private final DownloadPriorityScheduler context;
+    private final Reporter reporter;
+    private boolean isReleased;
+
+    private Viewport (DownloadPriorityScheduler context, Reporter reporter) {
+      this.context = context;
+      this.reporter = reporter;
+    }
+
+    /**
+     * Requests distances to be reported again. Cheap, can be called on each scroll event.
+     */
+    @UiThread
+    public void invalidate () {
+      if (!isReleased) {
+        context.scheduleFlush();
+      }
+    }
+
+    /**
+     * @param distance See {@link DownloadPriorityPolicy#getPriority(int, int)}
+     */
+    @UiThread
+    public void report (@NonNull TdApi.File file, int distance, int viewportSize) {
+      if (isReleased || file.local.isDownloadingCompleted) {
+        return;
+      }
+      context.onReport(this, file, DownloadPriorityPolicy.getPriority(distance, viewportSize));
+    }
+
+    /**
+     * Stops managing files reported by this viewport. Their priorities fall back to the lowest one.
+     */
+    @UiThread
+    public void release () {
+      if (!isReleased) {
+        isReleased = true;
+        context.viewports.remove(this);
+        context.onViewportReleased(this);
+      }
+    }
+  }
+
+  private static final class Entry {
+    TdApi.File file;
+    Viewport owner;
+    int desiredPriority = DownloadPriorityPolicy.PRIORITY_FAR;
+    int sentPriority = DownloadPriorityPolicy.PRIORITY_NONE;
+    long reportId;
+
+    Entry (TdApi.File file) {
+      this.file = file;
+    }
+  }
+
+  private final Tdlib tdlib;
+  private final TdlibFilesManager files;
+  private final ArrayList<Viewport> viewports = new ArrayList<>();
+  private final SparseArrayCompat<Entry> entries = new SparseArrayCompat<>();
+  private final Runnable flushAct = this::flush;
+  private boolean flushScheduled;
+  private long lastFlushTime;
+  private long reportId;
+
+  DownloadPriorityScheduler (Tdlib tdlib, TdlibFilesManager files) {
+    this.tdlib = tdlib;
+    this.files = files;
+  }
+
+  @UiThread
+  public Viewport newViewport (@NonNull Reporter reporter) {
+    Viewport viewport = new Viewport(this, reporter);
+    viewports.add(viewport);
+    return viewport;
+  }
+
+  private void scheduleFlush () {
+    if (!flushScheduled) {
+      flushScheduled = true;
+      long elapsed = SystemClock.uptimeMillis() - lastFlushTime;
+      long delay = Math.max(0, Math.min(FLUSH_DELAY_MS, FLUSH_DELAY_MS - elapsed));
+      tdlib.ui().postDelayed(flushAct, delay);
+    }
+  }
+
+  private void onReport (Viewport viewport, TdApi.File file, int priority) {
+    if (priority == DownloadPriorityPolicy.PRIORITY_NONE) {
+      return;
+    }
+    Entry entry = entries.get(file.id);
+    if (entry == null) {
+      entry = new Entry(file);
+      entries.put(file.id, entry);
+    } else if (entry.reportId == reportId && entry.owner != viewport) {
+      // Same file is displayed by multiple viewports
+      priority = Math.max(priority, entry.desiredPriority);
+    }
+    entry.file = file;
+    entry.owner = viewport;
+    entry.desiredPriority = priority;
+    entry.reportId = reportId;
+  }
+
+  private void onViewportReleased (Viewport viewport) {
+    boolean changed = false;
+    for (int i = 0; i < entries.size(); i++) {
+      Entry entry = entries.valueAt(i);
+      if (entry.owner == viewport) {
+        entry.owner = null;
+        entry.desiredPriority = DownloadPriorityPolicy.PRIORITY_FAR;
+        changed = true;
+      }
+    }
+    if (changed) {
+      scheduleFlush();
+    }
+  }
+
+  @UiThread
+  private void flush () {
+    flushScheduled = false;
+    lastFlushTime = SystemClock.uptimeMillis();
+
+    reportId++;
+    for (Viewport viewport : viewports.toArray(new Viewport[0])) {
+      viewport.reporter.onReportDownloadPriorities(viewport);
+    }
+
+    int requestCount = 0;
+    boolean hasMore = false;
+    for (int i = entries.size() - 1; i >= 0; i--) {
+      Entry entry = entries.valueAt(i);
+      if (entry.reportId != reportId) {
+        // No longer reported by its viewport
+        entry.owner = null;
+        entry.desiredPriority = DownloadPriorityPolicy.PRIORITY_FAR;
+      }
+      if (entry.file.local.isDownloadingCompleted) {
+        entries.removeAt(i);
+        continue;
+      }
+      // Only downloads started elsewhere are reprioritized, they are never started or resumed here
+      final boolean isDownloading = entry.file.local.isDownloadingActive;
+      if (isDownloading && entry.desiredPriority != entry.sentPriority) {
+        if (requestCount == MAX_REQUESTS_PER_FLUSH) {
+          hasMore = true;
+          continue;
+        }
+        if (files.changeDownloadPriority(entry.file, entry.desiredPriority)) {
+          requestCount++;
+        }
+        entry.sentPriority = entry.desiredPriority;
+      }
+      if (entry.owner == null && (!isDownloading || entry.sentPriority == entry.desiredPriority)) {
+        entries.removeAt(i);
+      }
+    }
+    if (requestCount > 0 && Log.isEnabled(Log.TAG_TDLIB_FILES)) {
+      Log.i(Log.TAG_TDLIB_FILES, "Changed priority of %d downloads, tracking: %d, hasMore: %b", requestCount, entries.size(), hasMore);
+    }
+    if (hasMore) {
+      scheduleFlush();
+    }
+  }
+}
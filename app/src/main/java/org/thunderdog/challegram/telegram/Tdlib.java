@@ -49,6 +49,7 @@ import org.thunderdog.challegram.data.AvatarPlaceholder;
 import org.thunderdog.challegram.data.TD;
 import org.thunderdog.challegram.data.TGMessage;
 import org.thunderdog.challegram.data.TGReaction;
+import org.thunderdog.challegram.data.TranslationCache;
 import org.thunderdog.challegram.emoji.Emoji;
 import org.thunderdog.challegram.filegen.TdlibFileGenerationManager;
 import org.thunderdog.challegram.loader.ImageFile;
@@ -442,6 +443,7 @@ public class Tdlib implements TdlibProvider, Settings.SettingsChangeListener {
   private final HashMap<Long, Integer> chatOnlineMemberCount = new HashMap<>();
   private final TdlibCache cache;
   private final TdlibEmojiManager emoji;
+  private final TdlibStickerSetManager stickerSets;
   private final TdlibEmojiReactionsManager reactions;
   private final TdlibSingleton<TdApi.Stickers> genericReactionEffects;
   private final TdlibListeners listeners;
@@ -596,6 +598,11 @@ public class Tdlib implements TdlibProvider, Settings.SettingsChangeListener {
       Log.v("INITIALIZATION: Tdlib.emoji -> %dms", SystemClock.uptimeMillis() - ms);
       ms = SystemClock.uptimeMillis();
     }
+    this.stickerSets = new TdlibStickerSetManager(this);
+    if (needMeasure) {
+      Log.v("INITIALIZATION: Tdlib.stickerSets -> %dms", SystemClock.uptimeMillis() - ms);
+      ms = SystemClock.uptimeMillis();
+    }
     this.reactions = new TdlibEmojiReactionsManager(this);
     if (needMeasure) {
       Log.v("INITIALIZATION: Tdlib.reaction -> %dms", SystemClock.uptimeMillis() - ms);
@@ -865,12 +872,14 @@ public class Tdlib implements TdlibProvider, Settings.SettingsChangeListener {
       checkPauseTimeout();
       if (isLoggingOut) {
         notifications().onDropNotificationData(true);
+        TranslationCache.clear();
       }
     }
   }
 
   public void deleteAllFiles (@Nullable RunnableBool after) {
     Log.i("Clearing data... accountId:%d", accountId);
+    TranslationCache.clear();
     long ms = SystemClock.uptimeMillis();
     client().send(new TdApi.OptimizeStorage(0, 0, 0, 0, new TdApi.FileType[]{
       // new TdApi.FileTypeNone(),
@@ -1933,6 +1942,13 @@ public class Tdlib implements TdlibProvider, Settings.SettingsChangeListener {
     return generation;
   }
 
+  /**
+   * Allows TDLib to start uploading first {@code localPrefixSize} bytes before generation is finished.
+   */
+  public void setGenerationProgress (Generation generation, long expectedSize, long localPrefixSize) {
+    client().send(new TdApi.SetFileGenerationProgress(generation.generationId, expectedSize, localPrefixSize), silentHandler());
+  }
+
   public void finishGeneration (Generation generation, @Nullable TdApi.Error error) {
     synchronized (awaitingGenerations) {
       pendingGenerations.remove(generation.generationId);
@@ -2244,6 +2260,10 @@ public class Tdlib implements TdlibProvider, Settings.SettingsChangeListener {
     return emoji;
   }
 
+  public TdlibStickerSetManager stickerSets () {
+    return stickerSets;
+  }
+
   public TdlibEmojiReactionsManager reactions () {
     return reactions;
   }
@@ -6284,58 +6304,84 @@ public class Tdlib implements TdlibProvider, Settings.SettingsChangeListener {
   }
 
   void processPushOrSync (long pushId, String payload, @Nullable Runnable after) {
-    TDLib.Tag.notifications(pushId, accountId, "Started processing push notification, hasAfter:%b", after != null);
+    processPushesOrSync(pushId, new String[] {payload}, after);
+  }
+
+  /**
+   * Passes all payloads to TDLib and waits for resulting notifications only once.
+   */
+  void processPushesOrSync (long pushId, String[] payloads, @Nullable Runnable after) {
+    TDLib.Tag.notifications(pushId, accountId, "Started processing push notification, count:%d, hasAfter:%b", payloads.length, after != null);
     incrementNotificationReferenceCount();
-    client().send(new TdApi.ProcessPushNotification(payload), result -> {
-      Runnable notificationChecker = () -> {
-        TDLib.Tag.notifications(pushId, accountId, "Making sure all notifications displayed");
-        incrementNotificationReferenceCount();
-        if (after != null) {
-          notifications().releaseTdlibReference(() -> {
-            TDLib.Tag.notifications(pushId, accountId, "Making sure we're not in AuthorizationStateLoggingOut");
-            awaitClose(() -> {
+    AtomicInteger remainingCount = new AtomicInteger(payloads.length);
+    AtomicReference<TdApi.Object> error = new AtomicReference<>();
+    for (String payload : payloads) {
+      client().send(new TdApi.ProcessPushNotification(payload), result -> {
+        if (result.getConstructor() == TdApi.Error.CONSTRUCTOR) {
+          // Logging out takes priority over other errors
+          if (((TdApi.Error) result).code == 401) {
+            error.set(result);
+          } else {
+            error.compareAndSet(null, result);
+          }
+        }
+        if (remainingCount.decrementAndGet() == 0) {
+          TdApi.Object finalResult = error.get();
+          onPushesProcessed(pushId, finalResult != null ? finalResult : result, after);
+        }
+      });
+    }
+  }
+
+  private void onPushesProcessed (long pushId, TdApi.Object result, @Nullable Runnable after) {
+    Runnable notificationChecker = () -> {
+      TDLib.Tag.notifications(pushId, accountId, "Making sure all notifications displayed");
+      incrementNotificationReferenceCount();
+      if (after != null) {
+        notifications().releaseTdlibReference(() -> {
+          TDLib.Tag.notifications(pushId, accountId, "Making sure we're not in AuthorizationStateLoggingOut");
+          awaitClose(() -> {
+            TDLib.Tag.notifications(pushId, accountId, "Finished processing push. Invoking after()");
+            after.run();
+          }, false);
+        });
+      } else {
+        notifications().releaseTdlibReference(() -> {
+          TDLib.Tag.notifications(pushId, accountId, "All notifications displayed. But there's no after() callback.");
+        });
+      }
+    };
+
+    switch (result.getConstructor()) {
+      case TdApi.Ok.CONSTRUCTOR: {
+        TDLib.Tag.notifications(pushId, accountId, "Ensuring updateActiveNotifications was sent. ignoreNotificationUpdates:%b, receivedActiveNotificationsTime:%d, receivedActiveNotificationsIgnored: %b", ignoreNotificationUpdates, receivedActiveNotificationsTime, receivedActiveNotificationsIgnored);
+        awaitNotificationInitialization(notificationChecker);
+        break;
+      }
+      case TdApi.Error.CONSTRUCTOR: {
+        TdApi.Error error = (TdApi.Error) result;
+        if (error.code == 401) {
+          TDLib.Tag.notifications(pushId, accountId, "TDLib tells to expect AuthorizationStateLoggingOut: %s, waiting.", error);
+          awaitClose(() -> {
+            if (after != null) {
               TDLib.Tag.notifications(pushId, accountId, "Finished processing push. Invoking after()");
               after.run();
-            }, false);
-          });
+            } else {
+              TDLib.Tag.notifications(pushId, accountId, "All notifications displayed. But there's no after() callback.");
+            }
+          }, true);
         } else {
-          notifications().releaseTdlibReference(() -> {
-            TDLib.Tag.notifications(pushId, accountId, "All notifications displayed. But there's no after() callback.");
-          });
-        }
-      };
-
-      switch (result.getConstructor()) {
-        case TdApi.Ok.CONSTRUCTOR: {
-          TDLib.Tag.notifications(pushId, accountId, "Ensuring updateActiveNotifications was sent. ignoreNotificationUpdates:%b, receivedActiveNotificationsTime:%d, receivedActiveNotificationsIgnored: %b", ignoreNotificationUpdates, receivedActiveNotificationsTime, receivedActiveNotificationsIgnored);
-          awaitNotificationInitialization(notificationChecker);
-          break;
-        }
-        case TdApi.Error.CONSTRUCTOR: {
-          TdApi.Error error = (TdApi.Error) result;
-          if (error.code == 401) {
-            TDLib.Tag.notifications(pushId, accountId, "TDLib tells to expect AuthorizationStateLoggingOut: %s, waiting.", error);
-            awaitClose(() -> {
-              if (after != null) {
-                TDLib.Tag.notifications(pushId, accountId, "Finished processing push. Invoking after()");
-                after.run();
-              } else {
-                TDLib.Tag.notifications(pushId, accountId, "All notifications displayed. But there's no after() callback.");
-              }
-            }, true);
-          } else {
-            TDLib.Tag.notifications(pushId, accountId, "Failed to process push: %s, performing full sync.", TD.toErrorString(result));
-            setHasUnprocessedPushes(true);
-            sync(pushId, () -> {
-              setHasUnprocessedPushes(false);
-              notificationChecker.run();
-            }, true, false);
-          }
-          break;
+          TDLib.Tag.notifications(pushId, accountId, "Failed to process push: %s, performing full sync.", TD.toErrorString(result));
+          setHasUnprocessedPushes(true);
+          sync(pushId, () -> {
+            setHasUnprocessedPushes(false);
+            notificationChecker.run();
+          }, true, false);
         }
+        break;
       }
-      decrementNotificationReferenceCount();
-    });
+    }
+    decrementNotificationReferenceCount();
   }
 
   public boolean disableContactRegisteredNotifications (boolean allowRequest) {
@@ -6843,7 +6889,7 @@ public class Tdlib implements TdlibProvider, Settings.SettingsChangeListener {
   void handleUiMessage (Message msg) {
     switch (msg.what) {
       case MSG_ACTION_UPDATE_CHAT_ACTION:
-        statusManager.onUpdateChatUserAction((TdApi.UpdateChatAction) msg.obj);
+        statusManager.onUpdateChatUserActions();
         break;
       case MSG_ACTION_UPDATE_CALL:
         cache.onUpdateCall((TdApi.UpdateCall) msg.obj);
@@ -7989,8 +8035,8 @@ public class Tdlib implements TdlibProvider, Settings.SettingsChangeListener {
 
   @TdlibThread
   private void updateChatUserAction (final TdApi.UpdateChatAction update) {
-    if (update.chatId != myUserId()) {
-      ui().sendMessage(ui().obtainMessage(MSG_ACTION_UPDATE_CHAT_ACTION, 0, 0, update));
+    if (update.chatId != myUserId() && statusManager.enqueueChatAction(update)) {
+      ui().sendMessage(ui().obtainMessage(MSG_ACTION_UPDATE_CHAT_ACTION));
     }
   }
 
@@ -35,8 +35,9 @@ import org.thunderdog.challegram.loader.gif.GifFile;
 import org.thunderdog.challegram.tool.Strings;
 import org.thunderdog.challegram.unsorted.Settings;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -93,7 +94,7 @@ public class TdlibAccount implements Comparable<TdlibAccount>, TdlibProvider {
     }
   }
 
-  TdlibAccount (TdlibManager context, int id, RandomAccessFile r, int version, boolean allowIntegrityChecks) throws IOException {
+  TdlibAccount (TdlibManager context, int id, DataInput r, int version, boolean allowIntegrityChecks) throws IOException {
     this.context = context;
     this.id = id;
     restore(r, version, allowIntegrityChecks);
@@ -125,7 +126,7 @@ public class TdlibAccount implements Comparable<TdlibAccount>, TdlibProvider {
     return Integer.compare(this.id, o.id);
   }
 
-  private void restore (RandomAccessFile r, int version, boolean allowIntegrityChecks) throws IOException {
+  private void restore (DataInput r, int version, boolean allowIntegrityChecks) throws IOException {
     this.flags            = r.readByte();
     this.knownUserId      = version == VERSION_2 ? r.readLong() : r.readInt();
     this.modificationTime = r.readLong();
@@ -143,30 +144,15 @@ public class TdlibAccount implements Comparable<TdlibAccount>, TdlibProvider {
   }
 
   static final int SIZE_PER_ENTRY = 1 /*flags*/ + 8 /*knownUserId*/ + 8 /*modification_time*/ + 4 /*order*/;
+  static final int SIZE_PER_ENTRY_V1 = 1 /*flags*/ + 4 /*knownUserId*/ + 8 /*modification_time*/ + 4 /*order*/;
 
-  void save (RandomAccessFile r) throws IOException {
+  void save (DataOutput r) throws IOException {
     r.write(flags);
     r.writeLong(knownUserId);
     r.writeLong(modificationTime);
     r.writeInt(order);
   }
 
-  int saveOrder (RandomAccessFile r, final int position) throws IOException {
-    int skipSize =
-        1 /*flags*/
-      + 8 /*knownUserId*/
-      + 8 /*modificationTime*/;
-    r.seek(position + skipSize);
-    r.writeInt(order);
-    return position + SIZE_PER_ENTRY;
-  }
-
-  int saveFlags (RandomAccessFile r, final int position) throws IOException {
-    r.seek(position);
-    r.write(flags);
-    return position + SIZE_PER_ENTRY;
-  }
-
   private boolean changeFlag (int flag, boolean enabled) {
     return setFlags(BitwiseUtils.setFlag(flags, flag, enabled));
   }
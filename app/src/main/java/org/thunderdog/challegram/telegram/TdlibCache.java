@@ -50,10 +50,11 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import me.vkryl.core.ArrayUtils;
+import me.vkryl.core.StringUtils;
 import me.vkryl.core.collection.LongSparseIntArray;
 import me.vkryl.core.lambda.CancellableRunnable;
 import me.vkryl.core.lambda.RunnableData;
@@ -109,7 +110,10 @@ public class TdlibCache implements LiveLocationManager.OutputDelegate, CleanupSt
   private final Tdlib tdlib;
   private volatile long myUserId;
 
-  private final HashMap<Long, TdApi.User> users = new HashMap<>();
+  private final ConcurrentHashMap<Long, TdApi.User> users = new ConcurrentHashMap<>();
+  // Lowercase username -> user id. Written under dataLock, read without it.
+  private final ConcurrentHashMap<String, Long> activeUsernames = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, Long> disabledUsernames = new ConcurrentHashMap<>();
   private final HashMap<Long, TdApi.UserFullInfo> userFulls = new HashMap<>();
   private final ReferenceLongMap<UserDataChangeListener> userListeners = new ReferenceLongMap<>(true);
 
@@ -349,6 +353,8 @@ public class TdlibCache implements LiveLocationManager.OutputDelegate, CleanupSt
 
   public void clear () {
     users.clear();
+    activeUsernames.clear();
+    disabledUsernames.clear();
     userFulls.clear();
     basicGroup.clear();
     basicGroupFull.clear();
@@ -458,6 +464,7 @@ public class TdlibCache implements LiveLocationManager.OutputDelegate, CleanupSt
       TdApi.User oldUser = users.get(newUser.id);
       if (hadUser = oldUser != null) {
         statusChanged = !Td.equalsTo(oldUser.status, newUser.status);
+        updateUsernameIndex(newUser.id, oldUser.usernames, newUser.usernames);
         Td.copyTo(newUser, oldUser);
         synchronized (onlineMutex) {
           oldUser.status = newUser.status;
@@ -466,6 +473,7 @@ public class TdlibCache implements LiveLocationManager.OutputDelegate, CleanupSt
       } else {
         statusChanged = false;
         users.put(newUser.id, newUser);
+        updateUsernameIndex(newUser.id, null, newUser.usernames);
       }
     }
 
@@ -1132,18 +1140,70 @@ public class TdlibCache implements LiveLocationManager.OutputDelegate, CleanupSt
   }
 
   public @Nullable TdApi.User searchUser (String username, boolean allowDisabled) {
-    TdApi.User result = null;
-    synchronized (dataLock) {
-      final Set<HashMap.Entry<Long, TdApi.User>> entries = users.entrySet();
-      for (HashMap.Entry<Long, TdApi.User> entry : entries) {
-        TdApi.User user = entry.getValue();
-        if (Td.findUsername(user, username, allowDisabled)) {
-          result = user;
-          break;
-        }
+    if (StringUtils.isEmpty(username)) {
+      return null;
+    }
+    String key = username.toLowerCase();
+    TdApi.User user = findIndexedUser(activeUsernames, key, username, allowDisabled);
+    if (user == null && allowDisabled) {
+      user = findIndexedUser(disabledUsernames, key, username, true);
+    }
+    return user;
+  }
+
+  private TdApi.User findIndexedUser (ConcurrentHashMap<String, Long> index, String key, String username, boolean allowDisabled) {
+    Long userId = index.get(key);
+    if (userId == null) {
+      return null;
+    }
+    TdApi.User user = users.get(userId);
+    return user != null && Td.findUsername(user, username, allowDisabled) ? user : null;
+  }
+
+  @TdlibThread
+  private void updateUsernameIndex (long userId, @Nullable TdApi.Usernames oldUsernames, @Nullable TdApi.Usernames newUsernames) {
+    if (oldUsernames == newUsernames) {
+      return;
+    }
+    if (oldUsernames != null) {
+      removeFromIndex(activeUsernames, oldUsernames.activeUsernames, userId);
+      removeFromIndex(activeUsernames, oldUsernames.editableUsername, userId);
+      removeFromIndex(disabledUsernames, oldUsernames.disabledUsernames, userId);
+    }
+    if (newUsernames != null) {
+      addToIndex(activeUsernames, newUsernames.activeUsernames, userId);
+      addToIndex(activeUsernames, newUsernames.editableUsername, userId);
+      addToIndex(disabledUsernames, newUsernames.disabledUsernames, userId);
+    }
+  }
+
+  private static void addToIndex (ConcurrentHashMap<String, Long> index, @Nullable String[] usernames, long userId) {
+    if (usernames != null) {
+      for (String username : usernames) {
+        addToIndex(index, username, userId);
       }
     }
-    return result;
+  }
+
+  private static void addToIndex (ConcurrentHashMap<String, Long> index, @Nullable String username, long userId) {
+    if (!StringUtils.isEmpty(username)) {
+      index.put(username.toLowerCase(), userId);
+    }
+  }
+
+  private static void removeFromIndex (ConcurrentHashMap<String, Long> index, @Nullable String[] usernames, long userId) {
+    if (usernames != null) {
+      for (String username : usernames) {
+        removeFromIndex(index, username, userId);
+      }
+    }
+  }
+
+  private static void removeFromIndex (ConcurrentHashMap<String, Long> index, @Nullable String username, long userId) {
+    if (!StringUtils.isEmpty(username)) {
+      // Username might already belong to another user
+      index.remove(username.toLowerCase(), userId);
+    }
   }
 
   @Nullable
@@ -333,6 +333,10 @@ public class TdlibChatList implements Comparator<TdlibChatList.Entry>, CounterCh
   }
 
   private int indexOfEntry (long chatId) {
+    return indexOfEntry(list, chatId);
+  }
+
+  static int indexOfEntry (List<Entry> list, long chatId) {
     int index = 0;
     for (Entry entry : list) {
       if (entry.chat.id == chatId) {
@@ -370,13 +374,8 @@ public class TdlibChatList implements Comparator<TdlibChatList.Entry>, CounterCh
       if (changeInfo.orderChanged()) {
         int newIndex;
         synchronized (list) {
-          existingEntry = list.remove(prevIndex);
-          Td.copyTo(position, existingEntry.effectivePosition);
-          newIndex = Collections.binarySearch(this.list, existingEntry, this);
-          if (newIndex >= 0)
-            throw new IllegalStateException();
-          newIndex = newIndex * -1 - 1;
-          list.add(newIndex, existingEntry);
+          existingEntry = list.get(prevIndex);
+          newIndex = moveEntry(list, prevIndex, position);
         }
         if (newIndex != prevIndex) {
           tdlib.listeners().updateChatMoved(this, existingEntry.chat, prevIndex, newIndex, changeInfo);
@@ -393,6 +392,22 @@ public class TdlibChatList implements Comparator<TdlibChatList.Entry>, CounterCh
 
   // Internal
 
+  /**
+   * Applies the new position to the entry at {@code prevIndex} and moves it to keep the list sorted.
+   *
+   * @return New index of the entry
+   */
+  static int moveEntry (List<Entry> list, int prevIndex, TdApi.ChatPosition position) {
+    Entry entry = list.remove(prevIndex);
+    Td.copyTo(position, entry.effectivePosition);
+    int newIndex = Collections.binarySearch(list, entry);
+    if (newIndex >= 0)
+      throw new IllegalStateException();
+    newIndex = newIndex * -1 - 1;
+    list.add(newIndex, entry);
+    return newIndex;
+  }
+
   private void addChatToList (Entry entry, Tdlib.ChatChange changeInfo) {
     int atIndex = Collections.binarySearch(this.list, entry, this);
     if (atIndex >= 0)
@@ -23,13 +23,15 @@ import org.thunderdog.challegram.util.BatchOperationHandler;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import me.vkryl.core.lambda.Filter;
 import me.vkryl.core.lambda.RunnableData;
 import me.vkryl.core.reference.ReferenceList;
 import me.vkryl.core.reference.ReferenceMap;
@@ -56,10 +58,16 @@ abstract class TdlibDataManager<Key, Value extends TdApi.Object, Result extends
   protected abstract Result newEntry (@NonNull Key key, @Nullable Value value, @Nullable TdApi.Error error);
 
   protected final Tdlib tdlib;
+  private final int maxEntryCount;
 
   private final Object dataLock = new Object();
-  private final Map<Key, Result> entries = new HashMap<>();
-  private final Set<Key> postponedKeys = new HashSet<>();
+  private final Map<Key, Result> entries = new LinkedHashMap<Key, Result>(16, .75f, true) {
+    @Override
+    protected boolean removeEldestEntry (Map.Entry<Key, Result> eldest) {
+      return maxEntryCount > 0 && size() > maxEntryCount;
+    }
+  };
+  private final Set<Key> postponedKeys = new LinkedHashSet<>();
   private final Set<Key> loadingKeys = new HashSet<>();
   private final ReferenceMap<Key, Watcher<Key, Value, Result>> watcherReferences = new ReferenceMap<>(true);
   private final Map<Key, List<Watcher<Key, Value, Result>>> watchers = new LinkedHashMap<>();
@@ -67,7 +75,16 @@ abstract class TdlibDataManager<Key, Value extends TdApi.Object, Result extends
   private int contextId;
 
   protected TdlibDataManager (Tdlib tdlib) {
+    this(tdlib, 0);
+  }
+
+  /**
+   * @param maxEntryCount Maximum number of loaded entries to keep, least recently used ones are forgotten first.
+   *                      0 means no limit.
+   */
+  protected TdlibDataManager (Tdlib tdlib, int maxEntryCount) {
     this.tdlib = tdlib;
+    this.maxEntryCount = maxEntryCount;
     tdlib.listeners().addCleanupListener(this);
   }
 
@@ -156,15 +173,22 @@ abstract class TdlibDataManager<Key, Value extends TdApi.Object, Result extends
 
   @UiThread
   public void performPostponedRequest (Key key) {
-    int contextId;
+    final int contextId;
+    final boolean isLoading;
     synchronized (dataLock) {
-      if (postponedKeys.isEmpty() || !postponedKeys.remove(key)) {
+      contextId = this.contextId;
+      isLoading = !postponedKeys.remove(key);
+      if (isLoading && !loadingKeys.contains(key)) {
         return;
       }
       loadingKeys.add(key);
-      contextId = this.contextId;
     }
-    requestData(contextId, Set.of(key));
+    if (isLoading) {
+      // Already requested, possibly in bulk
+      onSingleKeyRequestedAgain(key);
+    } else {
+      requestData(contextId, Set.of(key));
+    }
   }
 
   @UiThread
@@ -181,7 +205,7 @@ abstract class TdlibDataManager<Key, Value extends TdApi.Object, Result extends
         return;
       }
       loadingKeys.addAll(postponedKeys);
-      keysToRequest = new HashSet<>(postponedKeys);
+      keysToRequest = new LinkedHashSet<>(postponedKeys);
       postponedKeys.clear();
       contextId = this.contextId;
     }
@@ -197,6 +221,19 @@ abstract class TdlibDataManager<Key, Value extends TdApi.Object, Result extends
   @UiThread
   protected abstract void requestData (int contextId, Collection<Key> keysToRequest);
 
+  /**
+   * Called when {@link #performPostponedRequest(Object)} is called for a key
+   * that is already being loaded, e.g. to move it ahead of other pending requests.
+   */
+  protected void onSingleKeyRequestedAgain (Key key) { }
+
+  /**
+   * @return False, if errors should only be delivered to watchers, so the next request sends the request again.
+   */
+  protected boolean needCacheErrors () {
+    return true;
+  }
+
   @TdlibThread
   protected final void processData (int contextId, @NonNull Key key, @Nullable Value value) {
     if (value != null) {
@@ -211,13 +248,45 @@ abstract class TdlibDataManager<Key, Value extends TdApi.Object, Result extends
     processEntry(contextId, newEntry(key, null, error));
   }
 
+  /**
+   * Replaces already loaded value, e.g. when it was changed by an update.
+   * Values that were never requested are ignored.
+   */
+  @TdlibThread
+  protected final void updateData (@NonNull Key key, @NonNull Value value) {
+    synchronized (dataLock) {
+      if (entries.containsKey(key)) {
+        entries.put(key, newEntry(key, value, null));
+      }
+    }
+  }
+
+  /**
+   * Forgets loaded entries matching the filter, so they will be requested again next time.
+   */
+  protected final int removeEntries (@NonNull Filter<Result> filter) {
+    int removedCount = 0;
+    synchronized (dataLock) {
+      Iterator<Result> itr = entries.values().iterator();
+      while (itr.hasNext()) {
+        if (filter.accept(itr.next())) {
+          itr.remove();
+          removedCount++;
+        }
+      }
+    }
+    return removedCount;
+  }
+
   @TdlibThread
   private void processEntry (int contextId, Result entry) {
     List<Watcher<Key, Value, Result>> watcherList;
     synchronized (dataLock) {
       if (this.contextId != contextId)
         return;
-      entries.put(entry.key, entry);
+      if (entry.value != null || needCacheErrors()) {
+        entries.put(entry.key, entry);
+      }
       watcherList = watchers.remove(entry.key);
     }
     ReferenceList<Watcher<Key, Value, Result>> referenceList = watcherReferences.removeAll(entry.key);
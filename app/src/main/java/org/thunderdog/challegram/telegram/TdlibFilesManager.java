@@ -22,6 +22,7 @@ import androidx.annotation.IntDef;
 import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
 import androidx.collection.SparseArrayCompat;
 import androidx.core.os.CancellationSignal;
 
@@ -42,6 +43,7 @@ import org.thunderdog.challegram.voip.annotation.DataSavingOption;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -49,6 +51,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import me.vkryl.core.lambda.RunnableBool;
@@ -82,6 +85,160 @@ public class TdlibFilesManager implements GlobalConnectionListener {
     void onUpdateFile (TdApi.File file);
   }
 
+  // Locking
+
+  // Per-file state is split between stripes, so operations on different files don't contend.
+  // Listeners are never called while a stripe is locked: events are queued under the lock
+  // and delivered right after it is released, in the same order they were queued.
+
+  private static final int STRIPE_COUNT = 16; // Must be a power of two
+  private static final long PROGRESS_DISPATCH_DELAY_MS = 16; // Roughly one frame
+
+  private static final class Stripe {
+    final SparseIntArray pendingOperations = new SparseIntArray();
+    final HashMap<Integer, TdApi.File> pendingFiles = new HashMap<>();
+    final HashSet<Integer> manuallyCancelledFiles = new HashSet<>();
+
+    final SparseArrayCompat<TdApi.File> pendingProgress = new SparseArrayCompat<>();
+    final ArrayDeque<Event> events = new ArrayDeque<>();
+    boolean isDispatching;
+  }
+
+  private static final int EVENT_STATE = 0;
+  private static final int EVENT_PROGRESS = 1;
+  private static final int EVENT_UPDATE = 2;
+
+  private static final class Event {
+    final int type;
+    final int fileId;
+    final @FileDownloadState int state;
+    final @Nullable TdApi.File file;
+    final Object[] listeners;
+
+    Event (int type, int fileId, @FileDownloadState int state, @Nullable TdApi.File file, Object[] listeners) {
+      this.type = type;
+      this.fileId = fileId;
+      this.state = state;
+      this.file = file;
+      this.listeners = listeners;
+    }
+
+    void dispatch (TdlibFilesManager context) {
+      for (Object listener : listeners) {
+        // Listener could have been removed after the event was queued
+        if (!context.isRegistered(type, fileId, listener))
+          continue;
+        switch (type) {
+          case EVENT_STATE:
+            ((FileListener) listener).onFileLoadStateChanged(context.tdlib, fileId, state, file);
+            break;
+          case EVENT_PROGRESS:
+            ((FileListener) listener).onFileLoadProgress(file);
+            break;
+          case EVENT_UPDATE:
+            ((SimpleListener) listener).onUpdateFile(file);
+            break;
+        }
+      }
+    }
+  }
+
+  private boolean isRegistered (int eventType, int fileId, Object listener) {
+    if (eventType == EVENT_UPDATE) {
+      return contains(simpleListeners.iterator(fileId), listener);
+    }
+    return contains(listeners.iterator(fileId), listener) || contains(globalListeners.iterator(), listener);
+  }
+
+  private static boolean contains (@Nullable Iterator<?> list, Object listener) {
+    if (list != null) {
+      while (list.hasNext()) {
+        if (list.next() == listener)
+          return true;
+      }
+    }
+    return false;
+  }
+
+  private Stripe stripe (int fileId) {
+    return stripes[fileId & (STRIPE_COUNT - 1)];
+  }
+
+  @Nullable
+  private static Object[] snapshot (@Nullable Iterator<?> first, @Nullable Iterator<?> second) {
+    ArrayList<Object> result = addAll(null, first);
+    result = addAll(result, second);
+    return result != null ? result.toArray() : null;
+  }
+
+  private static ArrayList<Object> addAll (@Nullable ArrayList<Object> result, @Nullable Iterator<?> list) {
+    if (list != null) {
+      while (list.hasNext()) {
+        if (result == null)
+          result = new ArrayList<>();
+        result.add(list.next());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Delivers events queued for the stripe. Must be called without holding any lock.
+   *
+   * If another thread is already delivering events of this stripe, it delivers the new ones as well,
+   * so listeners of a single file always receive events in order.
+   */
+  private void dispatchEvents (Stripe stripe) {
+    synchronized (stripe) {
+      if (stripe.isDispatching || stripe.events.isEmpty())
+        return;
+      stripe.isDispatching = true;
+    }
+    boolean finished = false;
+    try {
+      while (true) {
+        Event event;
+        synchronized (stripe) {
+          event = stripe.events.poll();
+          if (event == null) {
+            stripe.isDispatching = false;
+            finished = true;
+            return;
+          }
+        }
+        event.dispatch(this);
+      }
+    } finally {
+      if (!finished) {
+        synchronized (stripe) {
+          stripe.isDispatching = false;
+        }
+      }
+    }
+  }
+
+  private void scheduleProgressDispatch () {
+    if (progressDispatchScheduled.compareAndSet(false, true)) {
+      tdlib.ui().postDelayed(dispatchProgressAct, PROGRESS_DISPATCH_DELAY_MS);
+    }
+  }
+
+  private void dispatchProgress () {
+    progressDispatchScheduled.set(false);
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        if (stripe.pendingProgress.isEmpty())
+          continue;
+        final int size = stripe.pendingProgress.size();
+        for (int i = 0; i < size; i++) {
+          queueFileProgress(stripe, stripe.pendingProgress.valueAt(i));
+        }
+        stripe.pendingProgress.clear();
+      }
+      dispatchEvents(stripe);
+    }
+  }
+
   // Context
 
   private final Tdlib tdlib;
@@ -89,13 +246,16 @@ public class TdlibFilesManager implements GlobalConnectionListener {
   private final ReferenceIntMap<FileListener> listeners;
   private final ReferenceIntMap<SimpleListener> simpleListeners;
   private final ReferenceList<FileListener> globalListeners;
-  private final SparseIntArray pendingOperations;
-  private final HashMap<Integer, TdApi.File> pendingFiles;
+
+  private final Stripe[] stripes;
 
   private final SparseArrayCompat<List<FileUpdateListener>> activeCloudReferences;
-  private final SparseIntArray downloadingCloudFiles;
+  private final SparseIntArray downloadingCloudFiles; // Guarded by activeCloudReferences
 
-  private final HashSet<Integer> manuallyCancelledFiles;
+  private final DownloadPriorityScheduler downloadScheduler;
+
+  private final AtomicBoolean progressDispatchScheduled = new AtomicBoolean();
+  private final Runnable dispatchProgressAct = this::dispatchProgress;
 
   TdlibFilesManager (Tdlib tdlib) {
     this.tdlib = tdlib;
@@ -104,13 +264,15 @@ public class TdlibFilesManager implements GlobalConnectionListener {
     this.simpleListeners = new ReferenceIntMap<>(true);
     this.globalListeners = new ReferenceList<>(true);
 
-    this.pendingOperations = new SparseIntArray();
-    this.pendingFiles = new HashMap<>();
+    this.stripes = new Stripe[STRIPE_COUNT];
+    for (int i = 0; i < stripes.length; i++) {
+      stripes[i] = new Stripe();
+    }
 
     this.activeCloudReferences = new SparseArrayCompat<>();
     this.downloadingCloudFiles = new SparseIntArray();
 
-    this.manuallyCancelledFiles = new HashSet<>();
+    this.downloadScheduler = new DownloadPriorityScheduler(tdlib, this);
 
     loadSettings();
 
@@ -298,7 +460,7 @@ public class TdlibFilesManager implements GlobalConnectionListener {
   }
 
   private void seekFileInternal (TdApi.File file, long offset, long limit) {
-    if (!TD.withinDistance(file, offset) && pendingOperations.get(file.id) == OPERATION_DOWNLOAD) {
+    if (!TD.withinDistance(file, offset) && getPendingOperation(file.id) == OPERATION_DOWNLOAD) {
       if (!Config.DEBUG_DISABLE_DOWNLOAD) {
         Log.i("FILES: downloadFile %d offset=%d", file.id, offset);
         tdlib.client().send(new TdApi.DownloadFile(file.id, CLOUD_PRIORITY, offset, limit, false), filesHandler);
@@ -327,17 +489,19 @@ public class TdlibFilesManager implements GlobalConnectionListener {
       references.add(source);
       activeCloudReferences.put(file.id, references);
       if (!file.local.isDownloadingActive) {
-        synchronized (this) {
-          int pendingOperation = pendingOperations.get(file.id);
+        final Stripe stripe = stripe(file.id);
+        synchronized (stripe) {
+          int pendingOperation = stripe.pendingOperations.get(file.id);
           if (pendingOperation == OPERATION_NONE) {
             downloadingCloudFiles.put(file.id, 1);
-            downloadFileInternal(file.id, CLOUD_PRIORITY, offset, 0, null);
+            downloadFileInternal(stripe, file.id, CLOUD_PRIORITY, offset, 0, null);
           }
         }
       } else if (offsetImportant) {
         seekFileInternal(file, offset, 0);
       }
     }
+    dispatchEvents(stripe(file.id));
   }
 
   public void removeCloudReference (TdApi.File file, FileUpdateListener source) {
@@ -355,16 +519,14 @@ public class TdlibFilesManager implements GlobalConnectionListener {
       }
       if (references.isEmpty()) {
         activeCloudReferences.removeAt(index);
-        synchronized (this) {
-          int i = downloadingCloudFiles.indexOfKey(file.id);
-          boolean hasStartedDownloadByCloud = i >= 0;
-          if (hasStartedDownloadByCloud) {
-            downloadingCloudFiles.removeAt(i);
-          }
-          int pendingOperation = pendingOperations.get(file.id);
-          if (pendingOperation != OPERATION_NONE && hasStartedDownloadByCloud) {
-            tdlib.client().send(new TdApi.CancelDownloadFile(file.id, false), filesHandler);
-          }
+        int i = downloadingCloudFiles.indexOfKey(file.id);
+        boolean hasStartedDownloadByCloud = i >= 0;
+        if (hasStartedDownloadByCloud) {
+          downloadingCloudFiles.removeAt(i);
+        }
+        int pendingOperation = getPendingOperation(file.id);
+        if (pendingOperation != OPERATION_NONE && hasStartedDownloadByCloud) {
+          tdlib.client().send(new TdApi.CancelDownloadFile(file.id, false), filesHandler);
         }
       }
     }
@@ -373,65 +535,77 @@ public class TdlibFilesManager implements GlobalConnectionListener {
   // Automatic media download
 
   public boolean downloadAutomatically (@NonNull TdApi.File file, @Nullable TdApi.ChatType chat, @MediaDownloadType int mediaType, boolean force) {
-    synchronized (this) {
+    final Stripe stripe = stripe(file.id);
+    boolean started = false;
+    synchronized (stripe) {
       if (canAutomaticallyDownload(file, mediaType, chat) && (!TD.isFileLoaded(file) || force)) {
-        downloadFile(file);
-        return true;
+        downloadFileLocked(stripe, file, DEFAULT_DOWNLOAD_PRIORITY, 0, 0, null);
+        started = true;
       }
     }
-    return false;
+    if (started) {
+      dispatchEvents(stripe);
+    }
+    return started;
   }
 
-  // Internal logic (synchronized in public)
+  // Internal logic (called with stripe locked)
 
-  private boolean addFileListener (final TdApi.File file, final @NonNull FileListener listener) {
+  private int getPendingOperation (int fileId) {
+    final Stripe stripe = stripe(fileId);
+    synchronized (stripe) {
+      return stripe.pendingOperations.get(fileId);
+    }
+  }
+
+  /**
+   * @return Events describing current state of the file, which the new listener has to receive first, or null.
+   */
+  @Nullable
+  private Event[] addFileListener (Stripe stripe, final TdApi.File file, final @NonNull FileListener listener) {
     if (listeners.add(file.id, listener)) {
-      int pendingOperation = pendingOperations.get(file.id);
+      int pendingOperation = stripe.pendingOperations.get(file.id);
       if (pendingOperation != OPERATION_NONE) {
-        listener.onFileLoadStateChanged(tdlib, file.id, STATE_IN_PROGRESS, null);
-        TdApi.File pendingFile = pendingFiles.get(file.id);
+        Object[] target = {listener};
+        Event stateEvent = new Event(EVENT_STATE, file.id, STATE_IN_PROGRESS, null, target);
+        TdApi.File pendingFile = stripe.pendingFiles.get(file.id);
         if (pendingFile != null) {
           Td.copyTo(pendingFile, file);
           float progress = TD.getFileProgress(file);
           if (progress > 0f) {
-            listener.onFileLoadProgress(file);
+            return new Event[] {stateEvent, new Event(EVENT_PROGRESS, file.id, STATE_IN_PROGRESS, file, target)};
           }
         }
-        return false; // No need to call downloadFile
+        return new Event[] {stateEvent};
       }
     }
-    return true;
-  }
-
-  private void removeFileListener (int fileId, @NonNull FileListener listener) {
-    listeners.remove(fileId, listener);
+    return null;
   }
 
-  private static void notifyFileState (Iterator<FileListener> list, Tdlib tdlib, int fileId, @FileDownloadState int state, @Nullable TdApi.File downloadedFile) {
-    while (list.hasNext()) {
-      list.next().onFileLoadStateChanged(tdlib, fileId, state, downloadedFile);
+  private void queueFileState (Stripe stripe, int fileId, @FileDownloadState int state, @Nullable TdApi.File downloadedFile) {
+    // Coalesced progress must not arrive after the state change
+    TdApi.File progressFile = stripe.pendingProgress.get(fileId);
+    if (progressFile != null) {
+      stripe.pendingProgress.remove(fileId);
+      queueFileProgress(stripe, progressFile);
     }
-  }
-
-  private void notifyFileState (int fileId, @FileDownloadState int state, @Nullable TdApi.File downloadedFile) {
-    notifyFileState(globalListeners.iterator(), tdlib, fileId, state, downloadedFile);
-    Iterator<FileListener> list = listeners.iterator(fileId);
-    if (list != null) {
-      notifyFileState(list, tdlib, fileId, state, downloadedFile);
+    Object[] listeners = snapshot(globalListeners.iterator(), this.listeners.iterator(fileId));
+    if (listeners != null) {
+      stripe.events.offer(new Event(EVENT_STATE, fileId, state, downloadedFile, listeners));
     }
   }
 
-  private static void notifyFileProgress (Iterator<FileListener> list, TdApi.File file) {
-    while (list.hasNext()) {
-      list.next().onFileLoadProgress(file);
+  private void queueFileProgress (Stripe stripe, TdApi.File file) {
+    Object[] listeners = snapshot(globalListeners.iterator(), this.listeners.iterator(file.id));
+    if (listeners != null) {
+      stripe.events.offer(new Event(EVENT_PROGRESS, file.id, STATE_IN_PROGRESS, file, listeners));
     }
   }
 
-  private void notifyFileProgress (TdApi.File file) {
-    notifyFileProgress(globalListeners.iterator(), file);
-    Iterator<FileListener> list = listeners.iterator(file.id);
-    if (list != null) {
-      notifyFileProgress(list, file);
+  private void queueFileUpdate (Stripe stripe, TdApi.File file) {
+    Object[] listeners = snapshot(simpleListeners.iterator(file.id), null);
+    if (listeners != null) {
+      stripe.events.offer(new Event(EVENT_UPDATE, file.id, STATE_IN_PROGRESS, file, listeners));
     }
   }
 
@@ -477,11 +651,11 @@ public class TdlibFilesManager implements GlobalConnectionListener {
     }
   }*/
 
-  private void downloadFileInternal (int fileId, int priority, long offset, long limit, final @Nullable Client.ResultHandler handler) {
-    int pendingOperation = pendingOperations.get(fileId);
+  private void downloadFileInternal (Stripe stripe, int fileId, int priority, long offset, long limit, final @Nullable Client.ResultHandler handler) {
+    int pendingOperation = stripe.pendingOperations.get(fileId);
     if (pendingOperation == OPERATION_NONE) {
-      pendingOperations.put(fileId, OPERATION_DOWNLOAD);
-      notifyFileState(fileId, STATE_IN_PROGRESS, null);
+      stripe.pendingOperations.put(fileId, OPERATION_DOWNLOAD);
+      queueFileState(stripe, fileId, STATE_IN_PROGRESS, null);
       if (Log.isEnabled(Log.TAG_TDLIB_FILES)) {
         Log.i(Log.TAG_TDLIB_FILES, "downloadFileInternal id=%d priority=%d offset=%d", fileId, priority, offset);
       }
@@ -510,28 +684,68 @@ public class TdlibFilesManager implements GlobalConnectionListener {
     }
   }
 
-  private void removePendingOperation (int fileId) {
-    pendingOperations.delete(fileId);
-    pendingFiles.remove(fileId);
+  private static void removePendingOperation (Stripe stripe, int fileId) {
+    stripe.pendingOperations.delete(fileId);
+    stripe.pendingFiles.remove(fileId);
+  }
+
+  private void downloadFileLocked (Stripe stripe, @NonNull TdApi.File file, int priority, long offset, long limit, @Nullable Client.ResultHandler handler) {
+    stripe.manuallyCancelledFiles.remove(file.id);
+    if (!TD.isFileLoaded(file)) {
+      downloadFileInternal(stripe, file.id, priority, offset, limit, handler);
+    } else if (handler != null) {
+      tdlib.client().send(new TdApi.DownloadFile(file.id, priority, offset, limit, false), handler);
+    }
   }
 
   // Download for whatever reason
 
   public void downloadFile (@NonNull TdApi.File file, @IntRange(from = 1, to = 32) int priority, long offset, long limit, @Nullable Client.ResultHandler handler) {
-    synchronized (this) {
-      manuallyCancelledFiles.remove(file.id);
-      if (!TD.isFileLoaded(file)) {
-        downloadFileInternal(file.id, priority, offset, limit, handler);
-      } else if (handler != null) {
-        tdlib.client().send(new TdApi.DownloadFile(file.id, priority, offset, limit, false), handler);
-      }
+    final Stripe stripe = stripe(file.id);
+    synchronized (stripe) {
+      downloadFileLocked(stripe, file, priority, offset, limit, handler);
     }
+    dispatchEvents(stripe);
   }
 
   public void downloadFile (@NonNull TdApi.File file) {
     downloadFile(file, DEFAULT_DOWNLOAD_PRIORITY, 0, 0, null);
   }
 
+  // Viewport-aware priorities
+
+  /**
+   * Creates viewport, to which a list reports distances between its items and visible area,
+   * so downloads of visible items are not delayed by the ones that have scrolled away.
+   *
+   * {@link DownloadPriorityScheduler.Viewport#release()} must be called once the list is no longer displayed.
+   */
+  @UiThread
+  public DownloadPriorityScheduler.Viewport newDownloadViewport (@NonNull DownloadPriorityScheduler.Reporter reporter) {
+    return downloadScheduler.newViewport(reporter);
+  }
+
+  boolean changeDownloadPriority (@NonNull TdApi.File file, @IntRange(from = 1, to = 32) int priority) {
+    if (Config.DEBUG_DISABLE_DOWNLOAD) {
+      return false;
+    }
+    if (isManuallyCancelled(file.id)) {
+      return false;
+    }
+    synchronized (activeCloudReferences) {
+      if (activeCloudReferences.containsKey(file.id)) {
+        // Streamed files are downloaded with specific offsets
+        return false;
+      }
+    }
+    if (Log.isEnabled(Log.TAG_TDLIB_FILES)) {
+      Log.i(Log.TAG_TDLIB_FILES, "changeDownloadPriority id=%d priority=%d", file.id, priority);
+    }
+    // Calling DownloadFile for a file that is being downloaded only changes its priority
+    tdlib.client().send(new TdApi.DownloadFile(file.id, priority, file.local.downloadOffset, 0, false), filesHandler);
+    return true;
+  }
+
   public void isFileLoadedAndExists (TdApi.File file, RunnableBool after) {
     tdlib.runOnTdlibThread(() -> {
       boolean loadedAndExists = TD.isFileLoadedAndExists(file);
@@ -544,34 +758,45 @@ public class TdlibFilesManager implements GlobalConnectionListener {
   // Cancellation
 
   public boolean cancelDownloadOrUploadFile (int fileId, boolean weak, boolean byUserRequest) { // When user clicks on cancel button on photo
-    synchronized (this) {
-      int pendingOperation = pendingOperations.get(fileId);
-      if (pendingOperation != OPERATION_NONE) {
-        if (byUserRequest) {
-          manuallyCancelledFiles.add(fileId);
-        }
-        cancelDownloadOrUploadFileInternal(fileId, pendingOperation, weak);
-        tdlib.context().player().stopPlaybackIfPlaying(fileId);
-        return true;
+    final Stripe stripe = stripe(fileId);
+    synchronized (stripe) {
+      int pendingOperation = stripe.pendingOperations.get(fileId);
+      if (pendingOperation == OPERATION_NONE) {
+        return false;
       }
+      if (byUserRequest) {
+        stripe.manuallyCancelledFiles.add(fileId);
+      }
+      cancelDownloadOrUploadFileInternal(fileId, pendingOperation, weak);
     }
-    return false;
+    tdlib.context().player().stopPlaybackIfPlaying(fileId);
+    return true;
   }
 
   public boolean hasPendingOperation (int fileId) {
-    synchronized (this) {
-      return pendingOperations.indexOfKey(fileId) >= 0;
+    final Stripe stripe = stripe(fileId);
+    synchronized (stripe) {
+      return stripe.pendingOperations.indexOfKey(fileId) >= 0;
+    }
+  }
+
+  private boolean isManuallyCancelled (int fileId) {
+    final Stripe stripe = stripe(fileId);
+    synchronized (stripe) {
+      return stripe.manuallyCancelledFiles.contains(fileId);
     }
   }
 
   public void cancelAllPendingDownloads () { // When Data Saver becomes active due to network type change
-    synchronized (this) {
-      final int size = pendingOperations.size();
-      for (int i = size - 1; i >= 0; i--) {
-        int pendingOperation = pendingOperations.valueAt(i);
-        if (pendingOperation == OPERATION_DOWNLOAD) {
-          int fileId = pendingOperations.keyAt(i);
-          cancelDownloadOrUploadFileInternal(fileId, pendingOperation, false);
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        final int size = stripe.pendingOperations.size();
+        for (int i = size - 1; i >= 0; i--) {
+          int pendingOperation = stripe.pendingOperations.valueAt(i);
+          if (pendingOperation == OPERATION_DOWNLOAD) {
+            int fileId = stripe.pendingOperations.keyAt(i);
+            cancelDownloadOrUploadFileInternal(fileId, pendingOperation, false);
+          }
         }
       }
     }
@@ -579,16 +804,49 @@ public class TdlibFilesManager implements GlobalConnectionListener {
 
   // Listen for future updates
 
+  /**
+   * Adds listener for the file. If the file is being loaded, its current state is delivered
+   * to the listener before returning, unless another thread is delivering events of the same stripe
+   * at the moment: then that thread delivers it before any other queued event.
+   */
   public void subscribe (TdApi.File file, @NonNull FileListener listener) {
-    synchronized (this) {
-      addFileListener(file, listener);
+    final Stripe stripe = stripe(file.id);
+    final Event[] initialEvents;
+    synchronized (stripe) {
+      Event[] events = addFileListener(stripe, file, listener);
+      if (events == null || stripe.isDispatching) {
+        if (events != null) {
+          for (int i = events.length - 1; i >= 0; i--) {
+            stripe.events.offerFirst(events[i]);
+          }
+        }
+        initialEvents = null;
+      } else {
+        // Queued events do not include the new listener, so it's fine to deliver its state first
+        stripe.isDispatching = true;
+        initialEvents = events;
+      }
     }
+    if (initialEvents != null) {
+      try {
+        for (Event event : initialEvents) {
+          event.dispatch(this);
+        }
+      } finally {
+        synchronized (stripe) {
+          stripe.isDispatching = false;
+        }
+      }
+    }
+    dispatchEvents(stripe);
   }
 
+  /**
+   * After this method returns, listener receives no further events, unless it is called during event delivery
+   * on another thread, in which case at most one event that is being delivered at the moment may still arrive.
+   */
   public void unsubscribe (int fileId, @NonNull FileListener listener) {
-    synchronized (this) {
-      removeFileListener(fileId, listener);
-    }
+    listeners.remove(fileId, listener);
   }
 
   public void subscribe (int fileId, @NonNull SimpleListener listener) {
@@ -624,27 +882,23 @@ public class TdlibFilesManager implements GlobalConnectionListener {
   }
 
   public void onFileUpdate (TdApi.UpdateFile update) {
-    // pendingOperations.get()
-    synchronized (this) {
-      int pendingOperation = pendingOperations.get(update.file.id);
+    final Stripe stripe = stripe(update.file.id);
+    synchronized (stripe) {
+      int pendingOperation = stripe.pendingOperations.get(update.file.id);
 
       if (pendingOperation != OPERATION_NONE) {
         if (!update.file.remote.isUploadingActive && !update.file.local.isDownloadingActive && !update.file.remote.isUploadingCompleted && !update.file.local.isDownloadingCompleted) {
-          removePendingOperation(update.file.id);
-          notifyFileState(update.file.id, STATE_PAUSED, null);
+          removePendingOperation(stripe, update.file.id);
+          queueFileState(stripe, update.file.id, STATE_PAUSED, null);
         }
       } else if (update.file.local.isDownloadingActive) {
-        pendingOperations.put(update.file.id, OPERATION_DOWNLOAD);
-        notifyFileState(update.file.id, STATE_IN_PROGRESS, null);
+        stripe.pendingOperations.put(update.file.id, OPERATION_DOWNLOAD);
+        queueFileState(stripe, update.file.id, STATE_IN_PROGRESS, null);
       }
 
-      final Iterator<SimpleListener> list = simpleListeners.iterator(update.file.id);
-      if (list != null) {
-        while (list.hasNext()) {
-          list.next().onUpdateFile(update.file);
-        }
-      }
+      queueFileUpdate(stripe, update.file);
     }
+    dispatchEvents(stripe);
   }
 
   /*public void onFileUpdate (TdApi.UpdateFileGenerationFinish update) {
@@ -683,43 +937,52 @@ public class TdlibFilesManager implements GlobalConnectionListener {
     }
   }*/
 
+  /**
+   * Progress updates are coalesced per file, so listeners receive at most one of them per frame.
+   */
   public void onFileProgress (TdApi.UpdateFile update) {
-    synchronized (this) {
+    final Stripe stripe = stripe(update.file.id);
+    synchronized (stripe) {
       float progress = TD.getFileProgress(update.file);
       if (progress > 0f) {
-        pendingFiles.put(update.file.id, update.file);
+        stripe.pendingFiles.put(update.file.id, update.file);
       }
-      notifyFileProgress(update.file);
+      stripe.pendingProgress.put(update.file.id, update.file);
     }
+    scheduleProgressDispatch();
   }
 
   public void onFileLoaded (TdApi.UpdateFile update) {
-    synchronized (this) {
+    final Stripe stripe = stripe(update.file.id);
+    synchronized (stripe) {
       final int fileId = update.file.id;
-      int pendingOperation = pendingOperations.get(fileId);
-      this.manuallyCancelledFiles.remove(fileId);
+      int pendingOperation = stripe.pendingOperations.get(fileId);
+      stripe.manuallyCancelledFiles.remove(fileId);
       if (pendingOperation != OPERATION_NONE) {
         if (TD.isFileLoadedAndExists(update.file)) {
-          removePendingOperation(fileId);
-          notifyFileState(fileId, STATE_DOWNLOADED_OR_UPLOADED, update.file);
+          removePendingOperation(stripe, fileId);
+          queueFileState(stripe, fileId, STATE_DOWNLOADED_OR_UPLOADED, update.file);
         } else {
-          notifyFileState(fileId, STATE_IN_PROGRESS, update.file);
+          queueFileState(stripe, fileId, STATE_IN_PROGRESS, update.file);
         }
       } else {
-        notifyFileState(fileId, STATE_DOWNLOADED_OR_UPLOADED, update.file);
+        queueFileState(stripe, fileId, STATE_DOWNLOADED_OR_UPLOADED, update.file);
       }
     }
+    dispatchEvents(stripe);
   }
 
   public void onFileUpdated (TdApi.UpdateFile update) {
-    synchronized (this) {
+    final Stripe stripe = stripe(update.file.id);
+    synchronized (stripe) {
       final int fileId = update.file.id;
-      int pendingOperation = pendingOperations.get(fileId);
+      int pendingOperation = stripe.pendingOperations.get(fileId);
       if (pendingOperation != OPERATION_NONE) {
-        removePendingOperation(fileId);
+        removePendingOperation(stripe, fileId);
       }
-      notifyFileState(fileId, STATE_PAUSED, update.file);
+      queueFileState(stripe, fileId, STATE_PAUSED, update.file);
     }
+    dispatchEvents(stripe);
   }
 
   /*public void onUpdateFileGenerationProgress (TdApi.UpdateFileGenerationProgress update) {
@@ -1186,7 +1449,7 @@ public class TdlibFilesManager implements GlobalConnectionListener {
     if ((automaticDownloadTypes & fileType) == 0) {
       return false;
     }
-    return !manuallyCancelledFiles.contains(file.id);
+    return !isManuallyCancelled(file.id);
   }
 
   private static String getDownloadLimitString (int limit, String valueIfEmpty) {
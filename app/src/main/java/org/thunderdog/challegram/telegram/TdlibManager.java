@@ -22,6 +22,7 @@ import android.os.Looper;
 import android.os.Message;
 import android.os.PowerManager;
 import android.os.SystemClock;
+import android.util.SparseLongArray;
 import android.widget.Toast;
 
 import androidx.annotation.IntDef;
@@ -52,11 +53,16 @@ import org.thunderdog.challegram.util.Crash;
 import org.thunderdog.challegram.util.DeviceStorageError;
 import org.thunderdog.challegram.util.TokenRetriever;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -74,6 +80,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import me.leolin.shortcutbadger.ShortcutBadger;
 import me.vkryl.android.LocaleUtils;
@@ -81,6 +88,7 @@ import me.vkryl.android.SdkVersion;
 import me.vkryl.core.ArrayUtils;
 import me.vkryl.core.FileUtils;
 import me.vkryl.core.StringUtils;
+import me.vkryl.core.lambda.CancellableRunnable;
 import me.vkryl.core.lambda.Filter;
 import me.vkryl.core.lambda.RunnableBool;
 import me.vkryl.core.lambda.RunnableData;
@@ -96,26 +104,60 @@ public class TdlibManager implements Iterable<TdlibAccount>, UI.StateListener {
   public static final int SYNC_CAUSE_SYSTEM_SYNC = 2;
   public static final int SYNC_CAUSE_DELETED_MESSAGES = 3;
 
+  private static final long PARALLEL_SYNC_MAX_DURATION_MS = TimeUnit.MINUTES.toMillis(5);
+
   public static boolean makeSync (Context context, int accountId, int cause, long causePushId, boolean sync, long timeout) {
+    return makeSync(context, accountId, false, cause, causePushId, sync, timeout);
+  }
+
+  /**
+   * Syncs all accounts marked with {@link Settings#markAccountNeedsSync} at once.
+   */
+  public static boolean makePendingSync (Context context, int cause, long causePushId, boolean sync, long timeout) {
+    return makeSync(context, TdlibAccount.NO_ID, true, cause, causePushId, sync, timeout);
+  }
+
+  private static boolean makeSync (Context context, int accountId, boolean onlyPending, int cause, long causePushId, boolean sync, long timeout) {
     final long ms = SystemClock.uptimeMillis();
     UI.initApp(context);
     final long taskId = causePushId == 0 ? Settings.instance().newPushId() : causePushId;
     final AtomicBoolean success = sync ? new AtomicBoolean(false) : null;
     final CountDownLatch latch = sync ? new CountDownLatch(1) : null;
     if (accountId == TdlibAccount.NO_ID) {
-      TDLib.Tag.notifications(taskId, accountId, "Performing sync for all accounts, cause: %d, synchronized: %b, timeout: %d, initialized in: %d", cause, sync, timeout, SystemClock.uptimeMillis() - ms);
+      final Filter<TdlibAccount> filter;
+      if (onlyPending) {
+        final int[] pendingAccountIds = Settings.instance().getAccountsNeedingSync();
+        TDLib.Tag.notifications(taskId, accountId, "Performing sync for pending accounts: %s, cause: %d, synchronized: %b, timeout: %d, initialized in: %d", Arrays.toString(pendingAccountIds), cause, sync, timeout, SystemClock.uptimeMillis() - ms);
+        filter = account -> ArrayUtils.indexOf(pendingAccountIds, account.id) != -1 && !account.isUnauthorized();
+      } else {
+        TDLib.Tag.notifications(taskId, accountId, "Performing sync for all accounts, cause: %d, synchronized: %b, timeout: %d, initialized in: %d", cause, sync, timeout, SystemClock.uptimeMillis() - ms);
+        filter = null;
+      }
+      TdlibManager.instanceForAccountId(accountId).syncInParallel(taskId, filter, Config.MAX_PARALLEL_SYNCS, timeout > 0 ? timeout : PARALLEL_SYNC_MAX_DURATION_MS, true, true, report -> {
+        for (int finishedAccountId : report.getFinishedAccountIds()) {
+          Settings.instance().forgetAccountNeedsSync(finishedAccountId);
+        }
+        if (sync) {
+          synchronized (success) {
+            success.set(report.isComplete());
+            latch.countDown();
+          }
+        }
+        TDLib.Tag.notifications(taskId, accountId, "Finished sync in %dms, %s", SystemClock.uptimeMillis() - ms, report);
+      });
     } else {
       TDLib.Tag.notifications(taskId, accountId, "Performing sync for account, cause: %d, synchronized: %b, timeout: %d, initialized in: %d", cause, sync, timeout, SystemClock.uptimeMillis() - ms);
-    }
-    TdlibManager.instanceForAccountId(accountId).sync(taskId, accountId, () -> {
-      if (sync) {
-        synchronized (success) {
-          success.set(true);
-          latch.countDown();
+      TdlibManager.instanceForAccountId(accountId).sync(taskId, accountId, () -> {
+        Settings.instance().forgetAccountNeedsSync(accountId);
+        if (sync) {
+          synchronized (success) {
+            success.set(true);
+            latch.countDown();
+          }
         }
-      }
-      TDLib.Tag.notifications(taskId, accountId, "Finished sync in %dms", SystemClock.uptimeMillis() - ms);
-    }, true, true, Config.MAX_RUNNING_TDLIBS, null);
+        TDLib.Tag.notifications(taskId, accountId, "Finished sync in %dms", SystemClock.uptimeMillis() - ms);
+      }, true, true, Config.MAX_RUNNING_TDLIBS, null);
+    }
     if (sync) {
       try {
         if (timeout > 0) {
@@ -923,29 +965,22 @@ public class TdlibManager implements Iterable<TdlibAccount>, UI.StateListener {
   private static final int BINLOG_PREFIX_SIZE = 4 /*account_num*/ + 4 /*preferred_id*/;
 
   public static int readAccountNum () {
-    File file = getAccountConfigFile();
-    if (!file.exists()) {
-      return 1;
-    }
-    try (RandomAccessFile r = new RandomAccessFile(file, MODE_R)) {
-      return Math.max(1, r.readInt());
-    } catch (Throwable ignored) {
+    byte[] data = AccountConfigFile.read();
+    if (data == null || data.length < 4) {
       return 1;
     }
+    return Math.max(1, ByteBuffer.wrap(data).getInt());
   }
 
   public static int readPreferredAccountId () {
-    File file = getAccountConfigFile();
-    if (!file.exists()) {
-      return 0;
-    }
-    try (RandomAccessFile r = new RandomAccessFile(file, MODE_R)) {
-      int accountNum = Math.max(1, r.readInt());
-      int preferredAccountId = r.readInt();
-      return preferredAccountId >= 0 && preferredAccountId < accountNum ? preferredAccountId : 0;
-    } catch (Throwable ignored) {
+    byte[] data = AccountConfigFile.read();
+    if (data == null || data.length < BINLOG_PREFIX_SIZE) {
       return 0;
     }
+    ByteBuffer buffer = ByteBuffer.wrap(data);
+    int accountNum = Math.max(1, buffer.getInt());
+    int preferredAccountId = buffer.getInt();
+    return preferredAccountId >= 0 && preferredAccountId < accountNum ? preferredAccountId : 0;
   }
 
   private void readAccountConfig () {
@@ -953,13 +988,14 @@ public class TdlibManager implements Iterable<TdlibAccount>, UI.StateListener {
     this.preferredAccountId = 0;
     File file = getAccountConfigFile();
     AccountConfig config = null;
-    if (file.exists()) {
-      try (RandomAccessFile r = new RandomAccessFile(file, MODE_R)) {
-        config = readAccountConfig(this, r, TdlibAccount.VERSION, true);
+    byte[] data = AccountConfigFile.read();
+    if (data != null) {
+      try {
+        config = readAccountConfig(this, data, TdlibAccount.VERSION, true);
       } catch (IOException e) {
         Log.e(e);
       }
-    } else {
+    } else if (!file.exists()) {
       try {
         if (!file.createNewFile())
           Log.e("Unable to create TDLib config file: %s", file.getPath());
@@ -1006,9 +1042,18 @@ public class TdlibManager implements Iterable<TdlibAccount>, UI.StateListener {
   }
 
   public static AccountConfig readAccountConfig (@Nullable TdlibManager context, RandomAccessFile r, int version, boolean allowIntegrityChecks) throws IOException {
+    return readAccountConfig(context, r, r.length(), version, allowIntegrityChecks);
+  }
+
+  static AccountConfig readAccountConfig (@Nullable TdlibManager context, byte[] data, int version, boolean allowIntegrityChecks) throws IOException {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+      return readAccountConfig(context, in, data.length, version, allowIntegrityChecks);
+    }
+  }
+
+  private static AccountConfig readAccountConfig (@Nullable TdlibManager context, DataInput r, long binlogSize, int version, boolean allowIntegrityChecks) throws IOException {
     long ms = SystemClock.uptimeMillis();
 
-    long binlogSize = r.length();
     Log.i("readAccountConfig binlogSize:%d", binlogSize);
 
     final int accountNum = binlogSize >= 4 ? r.readInt() : 0;
@@ -1043,84 +1088,12 @@ public class TdlibManager implements Iterable<TdlibAccount>, UI.StateListener {
     return BINLOG_PREFIX_SIZE + accountsNum * TdlibAccount.SIZE_PER_ENTRY;
   }
 
-  private int writeAccountConfig (RandomAccessFile r, int mode, int accountId) throws IOException {
-    int saveCount = 0;
-    final int accountNum = accounts.size();
-
-    final int binlogSize = binlogSize();
-    final long currentLen = r.length();
-
-    final boolean canOptimize;
-    switch (mode) {
-      case WRITE_MODE_FULL:
-        canOptimize = accountId != TdlibAccount.NO_ID && currentLen == binlogSize;
-        break;
-      case WRITE_MODE_ADD_ENTRY:
-        canOptimize = accountId != TdlibAccount.NO_ID && currentLen + TdlibAccount.SIZE_PER_ENTRY == binlogSize;
-        break;
-      default:
-        canOptimize = currentLen == binlogSize;
-        break;
-    }
-
-    Log.i(Log.TAG_ACCOUNTS, "Writing account configuration, accountNum:%d, preferredAccountId:%d, mode:%d, canOptimize:%b, accountId:%d, binlogSize:%d, currentLen:%d", accountNum, preferredAccountId, mode, canOptimize, accountId, binlogSize, currentLen);
-
-    if (canOptimize) {
-      switch (mode) {
-        case WRITE_MODE_ADD_ENTRY: {
-          r.setLength(binlogSize);
-          r.writeInt(accountNum);
-          r.seek(currentLen);
-          accounts.get(accountId).save(r);
-          saveCount = 1;
-          break;
-        }
-        case WRITE_MODE_PREFERRED_ID: {
-          r.seek(4 /*account_num*/);
-          r.writeInt(accountId);
-          break;
-        }
-        case WRITE_MODE_FULL: {
-          int position = BINLOG_PREFIX_SIZE + TdlibAccount.SIZE_PER_ENTRY * accountId;
-          r.seek(position);
-          accounts.get(accountId).save(r);
-          saveCount = 1;
-          break;
-        }
-        case WRITE_MODE_ORDERS: {
-          int position = BINLOG_PREFIX_SIZE;
-          for (TdlibAccount account : accounts) {
-            position = account.saveOrder(r, position);
-            saveCount++;
-          }
-          break;
-        }
-        case WRITE_MODE_FLAGS: {
-          if (accountId != TdlibAccount.NO_ID) {
-            int position = BINLOG_PREFIX_SIZE + TdlibAccount.SIZE_PER_ENTRY * accountId;
-            accounts.get(accountId).saveFlags(r, position);
-            saveCount = 1;
-          } else {
-            int position = BINLOG_PREFIX_SIZE;
-            for (TdlibAccount account : accounts) {
-              position = account.saveFlags(r, position);
-              saveCount++;
-            }
-          }
-          break;
-        }
-        default:
-          throw new IllegalArgumentException(Integer.toString(mode));
-      }
-      return saveCount;
-    }
-
-    return writeAccountConfigFully(r, new AccountConfig(currentAccount, accounts, preferredAccountId));
+  public static int legacyBinlogSize (int accountsNum) {
+    return BINLOG_PREFIX_SIZE + accountsNum * TdlibAccount.SIZE_PER_ENTRY_V1;
   }
 
-  public static int writeAccountConfigFully (RandomAccessFile r, AccountConfig config) throws IOException {
+  static int writeAccountConfigFully (DataOutput r, AccountConfig config) throws IOException {
     int accountsNum = config.accounts.size();
-    r.setLength(binlogSize(accountsNum));
     r.writeInt(accountsNum);
     r.writeInt(config.preferredAccountId);
     int saveCount = 0;
@@ -1142,27 +1115,9 @@ public class TdlibManager implements Iterable<TdlibAccount>, UI.StateListener {
 
   private synchronized void saveAccountConfig (int mode, int accountId) {
     long ms = SystemClock.uptimeMillis();
-    File file = getAccountConfigFile();
-    try {
-      if (!file.exists() && !file.createNewFile())
-        throw new DeviceStorageError("Cannot save config file");
-    } catch (IOException e) {
-      throw new DeviceStorageError(e);
-    }
-
-    int accountNum;
-    try (RandomAccessFile r = new RandomAccessFile(file, MODE_RW)) {
-      accountNum = writeAccountConfig(r, mode, accountId);
-    } catch (IOException e) {
-      Tracer.onLaunchError(e);
-      throw new DeviceStorageError(e);
-    }
-    try (RandomAccessFile ignored = new RandomAccessFile(file, MODE_RW)) {
-      Log.i(Log.TAG_ACCOUNTS, "Saved %d accounts in %dms, mode:%d", accountNum, SystemClock.uptimeMillis() - ms, mode);
-    } catch (IOException e) {
-      Tracer.onLaunchError(e);
-      throw new DeviceStorageError(e);
-    }
+    byte[] data = AccountConfigFile.serialize(new AccountConfig(currentAccount, accounts, preferredAccountId));
+    AccountConfigFile.write(data);
+    Log.i(Log.TAG_ACCOUNTS, "Scheduled account config write in %dms, accountNum:%d, preferredAccountId:%d, mode:%d, accountId:%d", SystemClock.uptimeMillis() - ms, accounts.size(), preferredAccountId, mode, accountId);
   }
 
   /*private static final int SAVE_MODE_FULL = 0;
@@ -1174,6 +1129,10 @@ public class TdlibManager implements Iterable<TdlibAccount>, UI.StateListener {
 
   private void saveAccount (TdlibAccount account, int cause) {
     saveAccountConfig(WRITE_MODE_FULL, account.id);
+    if (cause == ACCOUNT_AUTHORIZATION_CHANGED) {
+      // Logging in or out must survive process death right after it
+      AccountConfigFile.flush();
+    }
   }
 
   private void savePreferredAccountId (int accountId) {
@@ -1182,6 +1141,7 @@ public class TdlibManager implements Iterable<TdlibAccount>, UI.StateListener {
 
   private void saveNewAccount (TdlibAccount account) {
     saveAccountConfig(WRITE_MODE_ADD_ENTRY, account.id);
+    AccountConfigFile.flush();
   }
 
   public void saveAccountOrders () {
@@ -1531,6 +1491,127 @@ public class TdlibManager implements Iterable<TdlibAccount>, UI.StateListener {
     }, limit, null, after);
   }
 
+  /**
+   * Per-account result of {@link #syncInParallel}.
+   */
+  public static final class SyncReport {
+    public final long pushId;
+    private final long startTimeMs;
+    private final SparseLongArray syncTimes = new SparseLongArray(); // accountId -> duration, -1 while in progress
+    private boolean isFinished, isTimedOut;
+
+    private SyncReport (long pushId) {
+      this.pushId = pushId;
+      this.startTimeMs = SystemClock.uptimeMillis();
+    }
+
+    private synchronized void onAccountStarted (int accountId) {
+      syncTimes.put(accountId, -1);
+    }
+
+    private synchronized void onAccountFinished (int accountId) {
+      syncTimes.put(accountId, SystemClock.uptimeMillis() - startTimeMs);
+    }
+
+    private synchronized boolean finish (boolean isTimedOut) {
+      if (isFinished)
+        return false;
+      this.isFinished = true;
+      this.isTimedOut = isTimedOut;
+      return true;
+    }
+
+    /**
+     * @return False, if deadline was reached before all accounts finished sync.
+     */
+    public synchronized boolean isComplete () {
+      return isFinished && !isTimedOut;
+    }
+
+    public synchronized int[] getFinishedAccountIds () {
+      int count = 0;
+      for (int i = 0; i < syncTimes.size(); i++) {
+        if (syncTimes.valueAt(i) != -1)
+          count++;
+      }
+      int[] accountIds = new int[count];
+      for (int i = 0, j = 0; i < syncTimes.size(); i++) {
+        if (syncTimes.valueAt(i) != -1)
+          accountIds[j++] = syncTimes.keyAt(i);
+      }
+      return accountIds;
+    }
+
+    /**
+     * @return Time from the start of sync to completion of the given account, or -1, if it hasn't finished.
+     */
+    public synchronized long getSyncTime (int accountId) {
+      return syncTimes.get(accountId, -1);
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString () {
+      StringBuilder b = new StringBuilder(isTimedOut ? "timed out" : "complete");
+      for (int i = 0; i < syncTimes.size(); i++) {
+        b.append(i == 0 ? ", accounts: " : ", ").append(syncTimes.keyAt(i)).append(':');
+        long time = syncTimes.valueAt(i);
+        if (time != -1) {
+          b.append(time).append("ms");
+        } else {
+          b.append("unfinished");
+        }
+      }
+      return b.toString();
+    }
+  }
+
+  /**
+   * Syncs all accounts accepted by {@code filter} at the same time, at most {@code concurrency} at once.
+   *
+   * A single wake lock reference is held for the whole operation. {@code after} is called once,
+   * either when all accounts finish or when {@code timeoutMs} passes, whichever happens first.
+   */
+  public void syncInParallel (long pushId, @Nullable Filter<TdlibAccount> filter, int concurrency, long timeoutMs, boolean needNotifications, boolean needNetworkRequest, @NonNull RunnableData<SyncReport> after) {
+    final SyncReport report = new SyncReport(pushId);
+    final boolean locked = addWakeLockReference();
+    final AtomicReference<CancellableRunnable> deadline = new AtomicReference<>();
+    final RunnableBool finish = isTimedOut -> {
+      if (!report.finish(isTimedOut))
+        return;
+      CancellableRunnable act = deadline.getAndSet(null);
+      if (act != null) {
+        act.cancel();
+      }
+      if (locked) {
+        removeWakeLockReference();
+      }
+      after.runWithData(report);
+    };
+    if (timeoutMs > 0) {
+      CancellableRunnable act = new CancellableRunnable() {
+        @Override
+        public void act () {
+          if (deadline.compareAndSet(this, null)) {
+            TDLib.Tag.notifications(pushId, TdlibAccount.NO_ID, "Parallel sync deadline reached: %s", report);
+            finish.runWithBool(true);
+          }
+        }
+      };
+      deadline.set(act);
+      Background.instance().post(act, (int) Math.min(timeoutMs, Integer.MAX_VALUE));
+    }
+    performTdlibTask(pushId, TdlibAccount.NO_ID, (account, onDone) -> {
+      final int accountId = account.id;
+      report.onAccountStarted(accountId);
+      account.tdlib().sync(pushId, () -> {
+        report.onAccountFinished(accountId);
+        if (onDone != null)
+          onDone.run();
+      }, needNotifications, needNetworkRequest);
+    }, Math.max(1, concurrency), filter, () -> finish.runWithBool(false));
+  }
+
   public boolean notifyPushProcessingTakesTooLong (int accountId, long pushId) {
     TDLib.Tag.notifications(pushId, accountId, "Trying to speed up notification displaying by aborting some of operations");
     if (accountId != TdlibAccount.NO_ID) {
@@ -1551,6 +1632,10 @@ public class TdlibManager implements Iterable<TdlibAccount>, UI.StateListener {
     performTdlibTask(pushId, accountId, (account, onDone) -> account.tdlib().processPushOrSync(pushId, payload, onDone), Config.MAX_RUNNING_TDLIBS, null, after);
   }
 
+  public void processPushesOrSync (long pushId, int accountId, String[] payloads, @Nullable Runnable after) {
+    performTdlibTask(pushId, accountId, (account, onDone) -> account.tdlib().processPushesOrSync(pushId, payloads, onDone), Config.MAX_RUNNING_TDLIBS, null, after);
+  }
+
   public void cleanupLoggedOutAccounts () {
     long ms = SystemClock.uptimeMillis();
     AtomicInteger accountsNum = new AtomicInteger(0);
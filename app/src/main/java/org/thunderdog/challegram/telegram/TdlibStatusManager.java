@@ -31,16 +31,13 @@ import org.thunderdog.challegram.tool.Strings;
 import org.thunderdog.challegram.util.text.Text;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 
 import me.vkryl.android.AnimatorUtils;
 import me.vkryl.android.animator.BoolAnimator;
 import me.vkryl.android.animator.FactorAnimator;
 import me.vkryl.core.StringUtils;
-import me.vkryl.core.reference.ReferenceMap;
+import me.vkryl.core.reference.ReferenceList;
 import me.vkryl.td.ChatId;
 import me.vkryl.td.Td;
 
@@ -63,21 +60,31 @@ public class TdlibStatusManager implements CleanupStartupDelegate {
     }
   }
 
-  public static class ChatState implements FactorAnimator.Target {
+  public static class ChatState implements FactorAnimator.Target, UpdateBatcher.Changeable {
     private final ArrayList<Action> actions = new ArrayList<>();
     private final TdlibStatusManager context;
     private final Tdlib tdlib;
 
     private final long chatId, messageThreadId;
-    private final String key;
     private final boolean isUser;
 
+    private int pendingChangeFlags; // Changes not yet dispatched in the current batch
+
+    @Override
+    public int getPendingChangeFlags () {
+      return pendingChangeFlags;
+    }
+
+    @Override
+    public void setPendingChangeFlags (int changeFlags) {
+      this.pendingChangeFlags = changeFlags;
+    }
+
     public ChatState (TdlibStatusManager context, Tdlib tdlib, long chatId, long messageThreadId) {
       this.context = context;
       this.tdlib = tdlib;
       this.chatId = chatId;
       this.messageThreadId = messageThreadId;
-      this.key = makeKey(chatId, messageThreadId);
       this.isUser = ChatId.isUserChat(chatId);
     }
 
@@ -93,7 +100,7 @@ public class TdlibStatusManager implements CleanupStartupDelegate {
     private void setVisibilityFactor (float factor) {
       if (this.visibilityFactor != factor) {
         this.visibilityFactor = factor;
-        notifyChatActionsChanged(chatId, messageThreadId, this, CHANGE_FLAG_POSITION, context.listeners.iterator(key));
+        context.onChatStateChanged(this, CHANGE_FLAG_POSITION);
       }
     }
 
@@ -334,9 +341,9 @@ public class TdlibStatusManager implements CleanupStartupDelegate {
         }
       }
       if (this.isVisible != isVisible) {
-        setIsVisible(isVisible, context.canAnimate(chatId, messageThreadId, key, this));
+        setIsVisible(isVisible, context.canAnimate(chatId, messageThreadId, this));
       }
-      notifyChatActionsChanged(chatId, messageThreadId, this, changeFlags, context.listeners.iterator(key));
+      context.onChatStateChanged(this, changeFlags);
     }
   }
 
@@ -473,8 +480,20 @@ public class TdlibStatusManager implements CleanupStartupDelegate {
   }
 
   private final Tdlib tdlib;
-  private final HashMap<String, ChatState> chatStates = new HashMap<>();
-  private final ReferenceMap<String, ChatStateListener> listeners = new ReferenceMap<>();
+  private final ChatThreadMap<ChatState> chatStates = new ChatThreadMap<>();
+  private final ChatThreadMap<ReferenceList<ChatStateListener>> listeners = new ChatThreadMap<>();
+
+  private final UpdateBatcher<TdApi.UpdateChatAction, ChatState> updateBatcher = new UpdateBatcher<>(new UpdateBatcher.Delegate<TdApi.UpdateChatAction, ChatState>() {
+    @Override
+    public void applyUpdate (TdApi.UpdateChatAction update) {
+      onUpdateChatUserAction(update);
+    }
+
+    @Override
+    public void dispatchChanges (ChatState target, int changeFlags) {
+      notifyChatActionsChanged(target, changeFlags);
+    }
+  });
 
   TdlibStatusManager (Tdlib tdlib) {
     this.tdlib = tdlib;
@@ -488,8 +507,12 @@ public class TdlibStatusManager implements CleanupStartupDelegate {
 
   @Override
   public void onPerformUserCleanup () {
-    chatStates.clear();
-    listeners.clear();
+    // Called on TDLib thread, while maps are accessed only on UI thread
+    updateBatcher.clearPendingUpdates();
+    tdlib.ui().post(() -> {
+      chatStates.clear();
+      listeners.clear();
+    });
   }
 
   @Override
@@ -497,38 +520,56 @@ public class TdlibStatusManager implements CleanupStartupDelegate {
     tdlib.ui().post(() -> {
       if (!chatStates.isEmpty()) {
         TdApi.ChatAction action = new TdApi.ChatActionCancel();
-        for (Map.Entry<String, ChatState> entry : chatStates.entrySet()) {
-          entry.getValue().setAll(action);
-        }
+        updateBatcher.runBatch(() -> {
+          for (int i = 0; i < chatStates.capacity(); i++) {
+            ChatState state = chatStates.valueAt(i);
+            if (state != null) {
+              state.setAll(action);
+            }
+          }
+        });
       }
     });
   }
 
   // Status
 
+  @UiThread
   private void addListener (long chatId, long messageThreadId, ChatStateListener listener) {
-    listeners.add(makeKey(chatId, messageThreadId), listener);
+    ReferenceList<ChatStateListener> list = listeners.get(chatId, messageThreadId);
+    if (list == null) {
+      list = new ReferenceList<>();
+      listeners.put(chatId, messageThreadId, list);
+    }
+    list.add(listener);
   }
 
+  @UiThread
   private void removeListener (long chatId, long messageThreadId, ChatStateListener listener) {
-    listeners.remove(makeKey(chatId, messageThreadId), listener);
+    ReferenceList<ChatStateListener> list = listeners.get(chatId, messageThreadId);
+    if (list != null) {
+      list.remove(listener);
+      if (list.isEmpty()) {
+        listeners.remove(chatId, messageThreadId);
+      }
+    }
   }
 
   public @Nullable ChatState state (long chatId, long messageThreadId) {
-    return chatStates.get(makeKey(chatId, messageThreadId));
+    return chatStates.get(chatId, messageThreadId);
   }
 
   public boolean hasStatus (long chatId, long messageThreadId) {
-    ChatState state = chatStates.get(makeKey(chatId, messageThreadId));
+    ChatState state = chatStates.get(chatId, messageThreadId);
     return state != null && !state.actions.isEmpty();
   }
 
-  private boolean canAnimate (long chatId, long messageThreadId, String key, ChatState state) {
+  private boolean canAnimate (long chatId, long messageThreadId, ChatState state) {
     boolean animated = false;
-    Iterator<ChatStateListener> itr = listeners.iterator(key);
-    if (itr != null) {
-      while (itr.hasNext()) {
-        if (itr.next().canAnimateAction(chatId, messageThreadId, state)) {
+    ReferenceList<ChatStateListener> list = listeners.get(chatId, messageThreadId);
+    if (list != null) {
+      for (ChatStateListener listener : list) {
+        if (listener.canAnimateAction(chatId, messageThreadId, state)) {
           animated = true;
         }
       }
@@ -536,32 +577,53 @@ public class TdlibStatusManager implements CleanupStartupDelegate {
     return animated;
   }
 
-  private static String makeKey (long chatId, long messageThreadId) {
-    return messageThreadId != 0 ? chatId + "_" + messageThreadId : Long.toString(chatId);
-  }
-
-  @UiThread
-  void onUpdateChatUserAction (TdApi.UpdateChatAction update) {
+  /**
+   * Queues the update to be applied on UI thread.
+   *
+   * Updates that arrive before UI thread gets to them are applied together,
+   * and listeners of each chat are notified once per batch, see {@link UpdateBatcher}.
+   *
+   * @return True, if caller must schedule {@link #onUpdateChatUserActions()}.
+   */
+  @TdlibThread
+  boolean enqueueChatAction (TdApi.UpdateChatAction update) {
     if (update.action.getConstructor() == TdApi.ChatActionWatchingAnimations.CONSTRUCTOR) {
       // TODO?
-      return;
+      return false;
     }
-    String key = makeKey(update.chatId, update.messageThreadId);
-    ChatState state = chatStates.get(key);
+    return updateBatcher.enqueue(update);
+  }
+
+  @UiThread
+  void onUpdateChatUserActions () {
+    updateBatcher.processPendingUpdates();
+  }
+
+  @UiThread
+  private void onUpdateChatUserAction (TdApi.UpdateChatAction update) {
+    ChatState state = chatStates.get(update.chatId, update.messageThreadId);
     if (state == null) {
       if (update.action.getConstructor() == TdApi.ChatActionCancel.CONSTRUCTOR) {
         return;
       }
       state = new ChatState(this, tdlib, update.chatId, update.messageThreadId);
-      chatStates.put(key, state);
+      chatStates.put(update.chatId, update.messageThreadId, state);
     }
     state.setAction(update.senderId, update.action);
   }
 
-  private static void notifyChatActionsChanged (long chatId, long messageThreadId, ChatState chatState, int changeFlags, @Nullable Iterator<ChatStateListener> list) {
+  // Dispatch
+
+  @UiThread
+  private void onChatStateChanged (ChatState state, int changeFlags) {
+    updateBatcher.onChanged(state, changeFlags);
+  }
+
+  private void notifyChatActionsChanged (ChatState chatState, int changeFlags) {
+    ReferenceList<ChatStateListener> list = listeners.get(chatState.chatId, chatState.messageThreadId);
     if (list != null) {
-      while (list.hasNext()) {
-        list.next().onChatActionsChanged(chatId, messageThreadId, chatState, changeFlags);
+      for (ChatStateListener listener : list) {
+        listener.onChatActionsChanged(chatState.chatId, chatState.messageThreadId, chatState, changeFlags);
       }
     }
   }
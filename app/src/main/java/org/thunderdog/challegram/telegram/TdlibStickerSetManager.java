@@ -0,0 +1,243 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 16:10
+ */
+package org.thunderdog.challegram.telegram;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.drinkless.tdlib.TdApi;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+
+import me.vkryl.core.ArrayUtils;
+import me.vkryl.td.Td;
+
+/**
+ * Per-account cache of full sticker sets shared by sticker and emoji keyboards.
+ *
+ * At most {@link #MAX_CONCURRENT_REQUESTS} {@link TdApi.GetStickerSet} requests are sent at once.
+ * Single requests come from visible cells and are sent before sets requested in bulk,
+ * including sets that were already queued by a bulk request.
+ * At most {@link #MAX_ENTRY_COUNT} least recently used sets are kept. Errors are not cached,
+ * so a set that failed to load is requested again next time.
+ *
+ * Loaded {@link TdApi.StickerSet} objects are shared between all callers and must not be modified.
+ */
+public final class TdlibStickerSetManager extends TdlibDataManager<Long, TdApi.StickerSet, TdlibStickerSetManager.Entry> implements StickersListener {
+  private static final int MAX_CONCURRENT_REQUESTS = 4;
+  private static final int MAX_ENTRY_COUNT = 128;
+
+  public static class Entry extends AbstractEntry<Long, TdApi.StickerSet> {
+    public final long stickerSetId;
+
+    public Entry (@NonNull Long key, @Nullable TdApi.StickerSet value, @Nullable TdApi.Error error) {
+      super(key, value, error);
+      this.stickerSetId = key;
+    }
+  }
+
+  public interface Watcher extends TdlibDataManager.Watcher<Long, TdApi.StickerSet, Entry> {
+    void onStickerSetLoaded (TdlibStickerSetManager context, Entry entry);
+
+    @Override
+    default void onEntryLoaded (TdlibDataManager<Long, TdApi.StickerSet, Entry> context, Entry entry) {
+      onStickerSetLoaded((TdlibStickerSetManager) context, entry);
+    }
+  }
+
+  public interface LoadCallback {
+    /**
+     * Called for each successfully loaded sticker set, in the order of requested identifiers.
+     */
+    void onStickerSetLoaded (TdApi.StickerSet stickerSet);
+
+    /**
+     * Called once, after all requested sticker sets were either loaded or failed to load.
+     */
+    void onStickerSetsLoaded ();
+  }
+
+  private static final class Request {
+    final int contextId;
+    final long stickerSetId;
+
+    Request (int contextId, long stickerSetId) {
+      this.contextId = contextId;
+      this.stickerSetId = stickerSetId;
+    }
+  }
+
+  private final Object queueLock = new Object();
+  private final ArrayDeque<Request> urgentQueue = new ArrayDeque<>();
+  private final ArrayDeque<Request> queue = new ArrayDeque<>();
+  private int activeRequestCount;
+
+  public TdlibStickerSetManager (Tdlib tdlib) {
+    super(tdlib, MAX_ENTRY_COUNT);
+    tdlib.listeners().subscribeToStickerUpdates(this);
+  }
+
+  @Override
+  protected Entry newEntry (@NonNull Long key, @Nullable TdApi.StickerSet value, @Nullable TdApi.Error error) {
+    return new Entry(key, value, error);
+  }
+
+  @Override
+  protected boolean needCacheErrors () {
+    return false;
+  }
+
+  // Bulk load
+
+  /**
+   * Loads first {@code count} sticker sets from {@code stickerSetIds}.
+   *
+   * Callback is always called on TDLib thread, even when all sets are cached,
+   * so callers may prepare their items there.
+   */
+  @AnyThread
+  public void load (long[] stickerSetIds, int count, @NonNull LoadCallback callback) {
+    if (count == 0) {
+      tdlib.runOnTdlibThread(callback::onStickerSetsLoaded);
+      return;
+    }
+    OrderedDelivery delivery = new OrderedDelivery(count, callback);
+    Entry[] cachedEntries = null;
+    for (int index = 0; index < count; index++) {
+      final int entryIndex = index;
+      Watcher watcher = (context, entry) -> delivery.complete(entryIndex, entry);
+      Entry entry = findOrPostponeRequest(stickerSetIds[index], watcher, true);
+      if (entry != null) {
+        if (cachedEntries == null) {
+          cachedEntries = new Entry[count];
+        }
+        cachedEntries[index] = entry;
+      }
+    }
+    if (cachedEntries != null) {
+      final Entry[] entries = cachedEntries;
+      tdlib.runOnTdlibThread(() -> {
+        for (int index = 0; index < entries.length; index++) {
+          if (entries[index] != null) {
+            delivery.complete(index, entries[index]);
+          }
+        }
+      });
+    }
+    performPostponedRequests();
+  }
+
+  private static final class OrderedDelivery {
+    private final Entry[] entries;
+    private final LoadCallback callback;
+    private int deliveredCount;
+
+    OrderedDelivery (int count, LoadCallback callback) {
+      this.entries = new Entry[count];
+      this.callback = callback;
+    }
+
+    synchronized void complete (int index, Entry entry) {
+      entries[index] = entry;
+      while (deliveredCount < entries.length && entries[deliveredCount] != null) {
+        Entry deliveredEntry = entries[deliveredCount];
+        entries[deliveredCount] = null;
+        deliveredCount++;
+        if (deliveredEntry.value != null) {
+          callback.onStickerSetLoaded(deliveredEntry.value);
+        }
+        if (deliveredCount == entries.length) {
+          callback.onStickerSetsLoaded();
+        }
+      }
+    }
+  }
+
+  // Requests
+
+  @Override
+  protected void requestData (int contextId, Collection<Long> keysToRequest) {
+    synchronized (queueLock) {
+      ArrayDeque<Request> queue = keysToRequest.size() == 1 ? this.urgentQueue : this.queue;
+      for (Long stickerSetId : keysToRequest) {
+        queue.add(new Request(contextId, stickerSetId));
+      }
+    }
+    sendRequests();
+  }
+
+  @Override
+  protected void onSingleKeyRequestedAgain (Long stickerSetId) {
+    // Cell became visible while its set is still waiting in a bulk request
+    synchronized (queueLock) {
+      Iterator<Request> itr = queue.iterator();
+      while (itr.hasNext()) {
+        Request request = itr.next();
+        if (request.stickerSetId == stickerSetId) {
+          itr.remove();
+          urgentQueue.addFirst(request);
+          break;
+        }
+      }
+    }
+  }
+
+  private void sendRequests () {
+    while (true) {
+      final Request request;
+      synchronized (queueLock) {
+        if (activeRequestCount >= MAX_CONCURRENT_REQUESTS)
+          return;
+        request = !urgentQueue.isEmpty() ? urgentQueue.poll() : queue.poll();
+        if (request == null)
+          return;
+        if (isCancelled(request.contextId))
+          continue;
+        activeRequestCount++;
+      }
+      tdlib.client().send(new TdApi.GetStickerSet(request.stickerSetId), result -> {
+        synchronized (queueLock) {
+          activeRequestCount--;
+        }
+        switch (result.getConstructor()) {
+          case TdApi.StickerSet.CONSTRUCTOR:
+            processData(request.contextId, request.stickerSetId, (TdApi.StickerSet) result);
+            break;
+          case TdApi.Error.CONSTRUCTOR:
+            processError(request.contextId, request.stickerSetId, (TdApi.Error) result);
+            break;
+        }
+        sendRequests();
+      });
+    }
+  }
+
+  // Updates
+
+  @Override
+  public void onStickerSetUpdated (TdApi.StickerSet stickerSet) {
+    updateData(stickerSet.id, stickerSet);
+  }
+
+  @Override
+  public void onInstalledStickerSetsUpdated (long[] stickerSetIds, TdApi.StickerType stickerType) {
+    removeEntries(entry ->
+      entry.value == null || (Td.equalsTo(entry.value.stickerType, stickerType) && ArrayUtils.indexOf(stickerSetIds, entry.stickerSetId) == -1)
+    );
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 23:55
+ */
+package org.thunderdog.challegram.telegram;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.UiThread;
+
+import java.util.ArrayList;
+
+/**
+ * Passes updates from TDLib thread to UI thread in batches.
+ *
+ * Only the first update of a batch requires the caller to post a UI message, following ones are applied along with it.
+ * Batches are formed per posted message, not per frame: updates that arrive while the UI thread applies
+ * the current batch form the next one.
+ *
+ * Changes of the same {@link Changeable} made while a batch is applied are dispatched once, with OR-ed change flags.
+ */
+final class UpdateBatcher<U, T extends UpdateBatcher.Changeable> {
+  interface Changeable {
+    int getPendingChangeFlags ();
+    void setPendingChangeFlags (int changeFlags);
+  }
+
+  interface Delegate<U, T> {
+    void applyUpdate (U update);
+    void dispatchChanges (T target, int changeFlags);
+  }
+
+  private final Delegate<U, T> delegate;
+
+  private ArrayList<U> pendingUpdates = new ArrayList<>();
+  private ArrayList<U> processingUpdates = new ArrayList<>();
+
+  private final ArrayList<T> changedTargets = new ArrayList<>();
+  private boolean inBatch;
+
+  UpdateBatcher (Delegate<U, T> delegate) {
+    this.delegate = delegate;
+  }
+
+  /**
+   * @return True, if caller must schedule {@link #processPendingUpdates()} on UI thread.
+   */
+  @AnyThread
+  boolean enqueue (U update) {
+    synchronized (this) {
+      boolean needSchedule = pendingUpdates.isEmpty();
+      pendingUpdates.add(update);
+      return needSchedule;
+    }
+  }
+
+  /**
+   * Drops updates that were not applied yet, e.g. on logout.
+   * Already scheduled {@link #processPendingUpdates()} calls then have nothing to apply.
+   */
+  @AnyThread
+  void clearPendingUpdates () {
+    synchronized (this) {
+      pendingUpdates.clear();
+    }
+  }
+
+  @UiThread
+  void processPendingUpdates () {
+    ArrayList<U> updates;
+    synchronized (this) {
+      updates = pendingUpdates;
+      pendingUpdates = processingUpdates;
+      processingUpdates = updates;
+    }
+    inBatch = true;
+    for (U update : updates) {
+      delegate.applyUpdate(update);
+    }
+    updates.clear();
+    dispatchChanges();
+  }
+
+  /**
+   * Runs {@code act} as a single batch, e.g. to reset all targets at once.
+   */
+  @UiThread
+  void runBatch (Runnable act) {
+    inBatch = true;
+    act.run();
+    dispatchChanges();
+  }
+
+  /**
+   * @param changeFlags Non-zero flags describing the change
+   */
+  @UiThread
+  void onChanged (T target, int changeFlags) {
+    if (inBatch) {
+      if (target.getPendingChangeFlags() == 0) {
+        changedTargets.add(target);
+      }
+      target.setPendingChangeFlags(target.getPendingChangeFlags() | changeFlags);
+    } else {
+      delegate.dispatchChanges(target, changeFlags);
+    }
+  }
+
+  @UiThread
+  private void dispatchChanges () {
+    inBatch = false;
+    final int count = changedTargets.size();
+    for (int i = 0; i < count; i++) {
+      T target = changedTargets.get(i);
+      int changeFlags = target.getPendingChangeFlags();
+      target.setPendingChangeFlags(0);
+      delegate.dispatchChanges(target, changeFlags);
+    }
+    changedTargets.clear();
+  }
+}
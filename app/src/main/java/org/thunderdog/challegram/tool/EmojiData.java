@@ -21,11 +21,15 @@ import java.util.Set;
 import me.vkryl.core.StringUtils;
 
 public class EmojiData {
-  private static EmojiData instance;
+  private static volatile EmojiData instance;
 
   public static EmojiData instance () {
     if (instance == null) {
-      instance = new EmojiData();
+      synchronized (EmojiData.class) {
+        if (instance == null) {
+          instance = new EmojiData();
+        }
+      }
     }
     return instance;
   }
@@ -43,6 +43,7 @@ import org.thunderdog.challegram.unsorted.Settings;
 import org.thunderdog.challegram.util.CustomTypefaceSpan;
 import org.thunderdog.challegram.util.text.Letters;
 import org.thunderdog.challegram.util.text.Text;
+import org.thunderdog.challegram.util.text.TextEntityFinder;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -50,7 +51,6 @@ import java.util.concurrent.TimeUnit;
 
 import me.vkryl.core.StringUtils;
 import me.vkryl.core.unit.ByteUnit;
-import me.vkryl.td.Td;
 
 @SuppressWarnings(value = "SpellCheckingInspection")
 public class Strings {
@@ -616,7 +616,7 @@ public class Strings {
     if (StringUtils.isEmpty(in)) {
       return false;
     }
-    TdApi.TextEntity[] entities = Td.findEntities(in);
+    TdApi.TextEntity[] entities = TextEntityFinder.findEntities(in);
     return entities != null && entities.length == 1 && entities[0].offset == 0 && entities[0].length == in.length() && entities[0].type.getConstructor() == TdApi.TextEntityTypeUrl.CONSTRUCTOR;
   }
 
@@ -624,7 +624,7 @@ public class Strings {
     if (StringUtils.isEmpty(in)) {
       return false;
     }
-    TdApi.TextEntity[] entities = Td.findEntities(in);
+    TdApi.TextEntity[] entities = TextEntityFinder.findEntities(in);
     if (entities != null && entities.length == 1 && entities[0].offset == 0 && entities[0].length == in.length() && entities[0].type.getConstructor() == TdApi.TextEntityTypeEmailAddress.CONSTRUCTOR) {
       return true;
     }
@@ -428,6 +428,9 @@ public class ChatsController extends TelegramViewController<ChatsController.Argu
       chatsView.setVerticalScrollBarEnabled(false);
     }
     chatsView.setHasFixedSize(true);
+    if (parentController != null && !isInForceTouchMode()) {
+      chatsView.setRecycledViewPool(parentController.getChatViewPool());
+    }
     chatsView.addItemDecoration(new ChatPinSeparatorDecoration(this));
     ViewSupport.setThemedBackground(chatsView, ColorId.filling, this);
 
@@ -646,9 +649,14 @@ public class ChatsController extends TelegramViewController<ChatsController.Argu
     return contentView;
   }
 
+  private boolean measureAllChats;
+
   @TdlibThread
   private void displayChats (List<TdlibChatListSlice.Entry> entries) {
-    int initialLoadCount = chatsView.getInitialLoadCount();
+    // First page is displayed as soon as visible chats are measured, the rest are measured on bind.
+    // Next pages are loaded ahead of the scroll position, so chats are measured here, before they reach UI thread.
+    int initialLoadCount = measureAllChats ? entries.size() : chatsView.getInitialLoadCount();
+    measureAllChats = true;
     List<TGChat> parsedChats = new ArrayList<>(entries.size());
     for (TdlibChatList.Entry entry : entries) {
       parsedChats.add(new TGChat(this, chatList(), entry.chat, initialLoadCount-- >= 0));
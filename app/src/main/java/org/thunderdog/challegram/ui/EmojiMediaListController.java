@@ -52,6 +52,7 @@ import org.thunderdog.challegram.telegram.AnimationsListener;
 import org.thunderdog.challegram.telegram.EmojiMediaType;
 import org.thunderdog.challegram.telegram.StickersListener;
 import org.thunderdog.challegram.telegram.Tdlib;
+import org.thunderdog.challegram.telegram.TdlibStickerSetManager;
 import org.thunderdog.challegram.tool.Screen;
 import org.thunderdog.challegram.tool.UI;
 import org.thunderdog.challegram.tool.Views;
@@ -73,6 +74,7 @@ import me.vkryl.core.collection.IntList;
 import me.vkryl.core.collection.LongList;
 import me.vkryl.core.collection.LongSparseIntArray;
 import me.vkryl.core.lambda.CancellableRunnable;
+import me.vkryl.core.lambda.RunnableData;
 
 public class EmojiMediaListController extends ViewController<EmojiLayout> implements
   StickerSmallView.StickerMovementCallback,
@@ -1422,41 +1424,36 @@ public class EmojiMediaListController extends ViewController<EmojiLayout> implem
       setApplyingChanges(true);
       final long[] setIds = futureItems.get();
       final int addedCount = futureItems.size();
-      final int[] index = new int[2];
-      tdlib.client().send(new TdApi.GetStickerSet(setIds[index[0]]), new Client.ResultHandler() {
+      final int[] insertCount = new int[1];
+      tdlib.stickerSets().load(setIds, addedCount, new TdlibStickerSetManager.LoadCallback() {
         @Override
-        public void onResult (TdApi.Object object) {
-          if (object.getConstructor() == TdApi.StickerSet.CONSTRUCTOR) {
+        public void onStickerSetLoaded (TdApi.StickerSet rawStickerSet) {
+          final TGStickerSetInfo stickerSet = new TGStickerSetInfo(tdlib, rawStickerSet);
+          final TdApi.Sticker[] stickers = rawStickerSet.stickers;
 
-            TdApi.StickerSet rawStickerSet = (TdApi.StickerSet) object;
-            final TGStickerSetInfo stickerSet = new TGStickerSetInfo(tdlib, rawStickerSet);
-            final TdApi.Sticker[] stickers = ((TdApi.StickerSet) object).stickers;
+          final int insertIndex = insertCount[0]++;
 
-            final int insertIndex = index[1]++;
+          final ArrayList<MediaStickersAdapter.StickerItem> items;
+          items = new ArrayList<>(stickers.length + 1);
+          items.add(new MediaStickersAdapter.StickerItem(MediaStickersAdapter.StickerHolder.TYPE_HEADER, stickerSet));
 
-            final ArrayList<MediaStickersAdapter.StickerItem> items;
-            items = new ArrayList<>(stickers.length + 1);
-            items.add(new MediaStickersAdapter.StickerItem(MediaStickersAdapter.StickerHolder.TYPE_HEADER, stickerSet));
-
-            int i = 0;
-            for (TdApi.Sticker sticker : stickers) {
-              TGStickerObj parsed = new TGStickerObj(tdlib, sticker, sticker.fullType, rawStickerSet.emojis[i].emojis);
-              items.add(new MediaStickersAdapter.StickerItem(MediaStickersAdapter.StickerHolder.TYPE_STICKER, parsed));
-              i++;
-            }
-
-            runOnUiThreadOptional(() -> {
-              addStickerSet(stickerSet, items, insertIndex + getSystemSetsCount());
-            });
+          int i = 0;
+          for (TdApi.Sticker sticker : stickers) {
+            TGStickerObj parsed = new TGStickerObj(tdlib, sticker, sticker.fullType, rawStickerSet.emojis[i].emojis);
+            items.add(new MediaStickersAdapter.StickerItem(MediaStickersAdapter.StickerHolder.TYPE_STICKER, parsed));
+            i++;
           }
 
-          if (++index[0] < addedCount) {
-            tdlib.client().send(new TdApi.GetStickerSet(setIds[index[0]]), this);
-          } else {
-            runOnUiThreadOptional(() -> {
-              setApplyingChanges(false);
-            });
-          }
+          runOnUiThreadOptional(() -> {
+            addStickerSet(stickerSet, items, insertIndex + getSystemSetsCount());
+          });
+        }
+
+        @Override
+        public void onStickerSetsLoaded () {
+          runOnUiThreadOptional(() -> {
+            setApplyingChanges(false);
+          });
         }
       });
     }
@@ -1742,7 +1739,7 @@ public class EmojiMediaListController extends ViewController<EmojiLayout> implem
     }
     if (currentFlags == 0) {
       loadingStickerSets.put(stickerSetId, stickerObj.isTrending() ? FLAG_TRENDING : FLAG_REGULAR);
-      tdlib.client().send(new TdApi.GetStickerSet(stickerSetId), singleStickerSetHandler());
+      tdlib.stickerSets().findOrRequest(stickerSetId, singleStickerSetHandler());
     } else if ((currentFlags & FLAG_TRENDING) == 0 && stickerObj.isTrending()) {
       currentFlags |= FLAG_TRENDING;
       loadingStickerSets.put(stickerSetId, currentFlags);
@@ -1752,20 +1749,15 @@ public class EmojiMediaListController extends ViewController<EmojiLayout> implem
     }
   }
 
-  private Client.ResultHandler singleStickerSetHandler () {
-    return object -> {
-      switch (object.getConstructor()) {
-        case TdApi.StickerSet.CONSTRUCTOR: {
-          final TdApi.StickerSet stickerSet = (TdApi.StickerSet) object;
-          runOnUiThreadOptional(() -> {
-            applyStickerSet(stickerSet);
-          });
-          break;
-        }
-        case TdApi.Error.CONSTRUCTOR: {
-          UI.showError(object);
-          break;
-        }
+  private RunnableData<TdlibStickerSetManager.Entry> singleStickerSetHandler () {
+    return entry -> {
+      if (entry.value != null) {
+        final TdApi.StickerSet stickerSet = entry.value;
+        runOnUiThreadOptional(() -> {
+          applyStickerSet(stickerSet);
+        });
+      } else {
+        UI.showError(entry.error);
       }
     };
   }
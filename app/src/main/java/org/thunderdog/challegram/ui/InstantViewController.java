@@ -34,6 +34,7 @@ import org.drinkless.tdlib.TdApi;
 import org.thunderdog.challegram.Log;
 import org.thunderdog.challegram.R;
 import org.thunderdog.challegram.config.Config;
+import org.thunderdog.challegram.core.Background;
 import org.thunderdog.challegram.core.Lang;
 import org.thunderdog.challegram.data.InlineResult;
 import org.thunderdog.challegram.data.InlineResultCommon;
@@ -68,6 +69,8 @@ import org.thunderdog.challegram.widget.PageBlockView;
 import org.thunderdog.challegram.widget.PageBlockWrapView;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 
 import me.vkryl.android.widget.FrameLayoutFix;
@@ -187,21 +190,25 @@ public class InstantViewController extends ViewController<InstantViewController.
         if (blockIndex == -1)
           return;
         boolean isOpen = ((PageBlockRichText) pageBlock).toggleDetailsOpened();
+        itemsChangeCount++;
         if (isOpen) {
-          final ArrayList<PageBlock> blocks;
-          try {
-            blocks = PageBlock.parse(this, getUrl(), getArgumentsStrict().instantView, pageBlock, this, null);
-          } catch (Throwable t) {
-            Log.e("Exception in instant view block", t);
-            context().tooltipManager().builder(view).show(tdlib, t instanceof UnsupportedOperationException ? R.string.InstantViewSectionUnsupported : R.string.InstantViewError).hideDelayed();
-            ((PageBlockRichText) pageBlock).toggleDetailsOpened();
-            return;
-          }
-          ListItem[] items = new ListItem[blocks.size()];
-          int index = 0;
-          for (PageBlock block : blocks) {
-            items[index] = new ListItem(block.getRelatedViewType()).setData(block);
-            index++;
+          ListItem[] items = collapsedDetails.remove(pageBlock);
+          if (items == null) {
+            final ArrayList<PageBlock> blocks;
+            try {
+              blocks = PageBlock.parse(this, getUrl(), getArgumentsStrict().instantView, pageBlock, this, null);
+            } catch (Throwable t) {
+              Log.e("Exception in instant view block", t);
+              context().tooltipManager().builder(view).show(tdlib, t instanceof UnsupportedOperationException ? R.string.InstantViewSectionUnsupported : R.string.InstantViewError).hideDelayed();
+              ((PageBlockRichText) pageBlock).toggleDetailsOpened();
+              return;
+            }
+            items = new ListItem[blocks.size()];
+            int index = 0;
+            for (PageBlock block : blocks) {
+              items[index] = new ListItem(block.getRelatedViewType()).setData(block);
+              index++;
+            }
           }
           adapter.addItems(blockIndex + 1, items);
         } else {
@@ -213,6 +220,12 @@ public class InstantViewController extends ViewController<InstantViewController.
               break;
             }
           }
+          // Keep the subtree as is, including states of nested details, so it doesn't have to be parsed and measured again
+          ListItem[] items = new ListItem[itemCount];
+          for (int i = 0; i < itemCount; i++) {
+            items[i] = adapter.getItem(blockIndex + 1 + i);
+          }
+          collapsedDetails.put(pageBlock, items);
           adapter.removeRange(blockIndex + 1, itemCount);
         }
         rebuildMediaBlocks();
@@ -423,7 +436,7 @@ public class InstantViewController extends ViewController<InstantViewController.
     });
 
     adapter = new SettingsAdapter(this);
-    buildCells(pageBlocks, false);
+    buildCells(pageBlocks, null);
 
     recyclerView.setAdapter(adapter);
 
@@ -462,9 +475,84 @@ public class InstantViewController extends ViewController<InstantViewController.
     return PageBlock.parse(this, getUrl(), instantView, null, this, null);
   }
 
-  private void buildCells (ArrayList<PageBlock> blocks, boolean isReplace) {
+  private final HashMap<PageBlock, ListItem[]> collapsedDetails = new HashMap<>();
+  private ArrayList<PageBlock> displayedBlocks;
+  private int itemsChangeCount;
+
+  /**
+   * Range of blocks that differ between the displayed preview and the full version.
+   * Blocks before {@link #prefixCount} and after {@link #suffixCount} have the same content,
+   * so their views are rebound in place instead of being replaced.
+   */
+  private static class BlocksDiff {
+    final int itemsChangeCount;
+    final int prefixCount, suffixCount;
+
+    BlocksDiff (int itemsChangeCount, int prefixCount, int suffixCount) {
+      this.itemsChangeCount = itemsChangeCount;
+      this.prefixCount = prefixCount;
+      this.suffixCount = suffixCount;
+    }
+
+    /**
+     * Assigns the same id to original blocks with the same content.
+     *
+     * Content of an original block is serialized with its whole subtree, and many blocks share the same
+     * original block (e.g. every item of a list), so it is serialized only once per original block.
+     */
+    private static class ContentKeys {
+      private final IdentityHashMap<TdApi.PageBlock, Integer> originalBlockIds = new IdentityHashMap<>();
+      private final HashMap<String, Integer> contentIds = new HashMap<>();
+
+      private int getContentId (@Nullable TdApi.PageBlock originalBlock) {
+        if (originalBlock == null) {
+          return -1;
+        }
+        Integer id = originalBlockIds.get(originalBlock);
+        if (id == null) {
+          String content = originalBlock.toString();
+          id = contentIds.get(content);
+          if (id == null) {
+            id = contentIds.size();
+            contentIds.put(content, id);
+          }
+          originalBlockIds.put(originalBlock, id);
+        }
+        return id;
+      }
+
+      long[] compute (List<PageBlock> blocks) {
+        long[] keys = new long[blocks.size()];
+        for (int i = 0; i < keys.length; i++) {
+          PageBlock block = blocks.get(i);
+          keys[i] = ((long) block.getRelatedViewType() << 32) | (getContentId(block.getOriginalBlock()) & 0xffffffffL);
+        }
+        return keys;
+      }
+    }
+
+    static BlocksDiff compute (int itemsChangeCount, List<PageBlock> oldBlocks, List<PageBlock> newBlocks) {
+      ContentKeys contentKeys = new ContentKeys();
+      final long[] oldKeys = contentKeys.compute(oldBlocks);
+      final long[] newKeys = contentKeys.compute(newBlocks);
+      final int oldCount = oldKeys.length, newCount = newKeys.length;
+      final int maxCount = Math.min(oldCount, newCount);
+      int prefixCount = 0;
+      while (prefixCount < maxCount && oldKeys[prefixCount] == newKeys[prefixCount]) {
+        prefixCount++;
+      }
+      int suffixCount = 0;
+      while (suffixCount < maxCount - prefixCount && oldKeys[oldCount - 1 - suffixCount] == newKeys[newCount - 1 - suffixCount]) {
+        suffixCount++;
+      }
+      return new BlocksDiff(itemsChangeCount, prefixCount, suffixCount);
+    }
+  }
+
+  private void buildCells (ArrayList<PageBlock> blocks, @Nullable BlocksDiff diff) {
     Args args = getArgumentsStrict();
     final TdApi.WebPageInstantView instantView = args.instantView;
+    final boolean isReplace = diff != null;
 
     if (isReplace && !instantView.isFull) {
       Log.e("TDLib error: instantView.isFull returned false on the second call");
@@ -481,19 +569,51 @@ public class InstantViewController extends ViewController<InstantViewController.
     }
 
     this.mediaBlocks = mediaBlocks;
+    this.displayedBlocks = blocks;
+    this.collapsedDetails.clear();
     // recyclerView.setItemAnimator(null);
-    adapter.setItems(items, false);
+    if (isReplace && diff.itemsChangeCount == itemsChangeCount) {
+      replaceItems(items, diff);
+    } else {
+      adapter.setItems(items, false);
+    }
     recyclerView.invalidateItemDecorations();
     if (!StringUtils.isEmpty(args.anchorLink)) {
       scrollToAnchor(args.anchorLink, false);
     }
     // recyclerView.setItemAnimator(new CustomItemAnimator(Anim.DECELERATE_INTERPOLATOR, 180l));
 
-    if (!isReplace) {
+    if (!isReplace && !instantView.isFull) {
       tdlib.client().send(new TdApi.GetWebPageInstantView(getUrl(), true), this);
     }
   }
 
+  private void replaceItems (ArrayList<ListItem> items, BlocksDiff diff) {
+    List<ListItem> currentItems = adapter.getItems();
+    final int oldCount = currentItems.size(), newCount = items.size();
+    final int oldChangedCount = oldCount - diff.prefixCount - diff.suffixCount;
+    final int newChangedCount = newCount - diff.prefixCount - diff.suffixCount;
+    // Unchanged blocks still have to be rebound to the new instances. Payload keeps the same view holders.
+    for (int i = 0; i < diff.prefixCount; i++) {
+      currentItems.set(i, items.get(i));
+    }
+    for (int i = 0; i < diff.suffixCount; i++) {
+      currentItems.set(oldCount - 1 - i, items.get(newCount - 1 - i));
+    }
+    if (diff.prefixCount > 0) {
+      adapter.notifyItemRangeChanged(0, diff.prefixCount, Boolean.TRUE);
+    }
+    if (diff.suffixCount > 0) {
+      adapter.notifyItemRangeChanged(oldCount - diff.suffixCount, diff.suffixCount, Boolean.TRUE);
+    }
+    if (oldChangedCount > 0) {
+      adapter.removeRange(diff.prefixCount, oldChangedCount);
+    }
+    if (newChangedCount > 0) {
+      adapter.addItems(diff.prefixCount, items.subList(diff.prefixCount, diff.prefixCount + newChangedCount).toArray(new ListItem[0]));
+    }
+  }
+
   public String getUrl () {
     return getArgumentsStrict().webPage.url;
   }
@@ -507,22 +627,38 @@ public class InstantViewController extends ViewController<InstantViewController.
     switch (object.getConstructor()) {
       case TdApi.WebPageInstantView.CONSTRUCTOR: {
         final TdApi.WebPageInstantView instantView = (TdApi.WebPageInstantView) object;
-        tdlib.ui().post(() -> {
-          if (!isDestroyed()) {
-            if (!TD.hasInstantView(instantView.version)) {
+        if (!TD.hasInstantView(instantView.version)) {
+          tdlib.ui().post(() -> {
+            if (!isDestroyed()) {
               UI.showToast(R.string.InstantViewUnsupported, Toast.LENGTH_SHORT);
               UI.openUrl(getUrl());
-            } else {
-              ArrayList<PageBlock> pageBlocks;
-              try {
-                pageBlocks = parsePageBlocks(instantView);
-              } catch (PageBlock.UnsupportedPageBlockException ignored) {
-                return;
-              }
-              getArgumentsStrict().instantView = instantView;
-              buildCells(pageBlocks, true);
             }
-          }
+          });
+          break;
+        }
+        tdlib.ui().post(() -> {
+          if (isDestroyed())
+            return;
+          // Parsing and comparing long articles takes a while, keep it away from the UI thread
+          final ArrayList<PageBlock> oldBlocks = displayedBlocks;
+          final int itemsChangeCount = this.itemsChangeCount;
+          Background.instance().post(() -> {
+            if (isDestroyed())
+              return;
+            ArrayList<PageBlock> pageBlocks;
+            try {
+              pageBlocks = parsePageBlocks(instantView);
+            } catch (PageBlock.UnsupportedPageBlockException ignored) {
+              return;
+            }
+            BlocksDiff diff = BlocksDiff.compute(itemsChangeCount, oldBlocks, pageBlocks);
+            tdlib.ui().post(() -> {
+              if (!isDestroyed()) {
+                getArgumentsStrict().instantView = instantView;
+                buildCells(pageBlocks, diff);
+              }
+            });
+          });
         });
         break;
       }
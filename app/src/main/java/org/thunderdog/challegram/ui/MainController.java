@@ -50,6 +50,7 @@ import org.thunderdog.challegram.BuildConfig;
 import org.thunderdog.challegram.Log;
 import org.thunderdog.challegram.R;
 import org.thunderdog.challegram.U;
+import org.thunderdog.challegram.component.dialogs.ChatsAdapter;
 import org.thunderdog.challegram.component.dialogs.SearchManager;
 import org.thunderdog.challegram.config.Config;
 import org.thunderdog.challegram.core.Lang;
@@ -1303,6 +1304,23 @@ public class MainController extends ViewPagerController<Void> implements Menu, M
     return false;
   }
 
+  private static final int MAX_SHARED_CHAT_VIEWS = 24;
+  private RecyclerView.RecycledViewPool chatViewPool;
+
+  /**
+   * Chat views shared between all chat list pages, so switching between folders doesn't inflate new ones.
+   */
+  public RecyclerView.RecycledViewPool getChatViewPool () {
+    if (chatViewPool == null) {
+      chatViewPool = new RecyclerView.RecycledViewPool();
+      chatViewPool.setMaxRecycledViews(ChatsAdapter.VIEW_TYPE_CHAT, MAX_SHARED_CHAT_VIEWS);
+      // Info and empty views are bound to the page that created them
+      chatViewPool.setMaxRecycledViews(ChatsAdapter.VIEW_TYPE_INFO, 0);
+      chatViewPool.setMaxRecycledViews(ChatsAdapter.VIEW_TYPE_EMPTY, 0);
+    }
+    return chatViewPool;
+  }
+
   private ChatsController newChatsController (TdApi.ChatList chatList, @Filter int filter) {
     ChatsController chats = new ChatsController(this.context, tdlib).setParent(this);
     ChatFilter chatFilter;
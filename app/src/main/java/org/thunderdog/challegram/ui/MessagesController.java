@@ -310,6 +310,10 @@ public class MessagesController extends ViewController<MessagesController.Argume
     destroyInstance = true;
   }
 
+  public boolean isReuseEnabled () {
+    return reuseEnabled && !destroyInstance;
+  }
+
   private int flags;
   private static final int FLAG_REPLY_ANIMATING = 0x01;
 
@@ -36,15 +36,20 @@ import org.thunderdog.challegram.MainActivity;
 import org.thunderdog.challegram.R;
 import org.thunderdog.challegram.U;
 import org.thunderdog.challegram.component.base.SettingView;
+import org.thunderdog.challegram.component.chat.MessagesManager;
 import org.thunderdog.challegram.config.Config;
 import org.thunderdog.challegram.core.Background;
 import org.thunderdog.challegram.core.Lang;
+import org.thunderdog.challegram.core.MemoryGovernor;
 import org.thunderdog.challegram.data.TD;
+import org.thunderdog.challegram.data.TranslationCache;
 import org.thunderdog.challegram.navigation.BackHeaderButton;
 import org.thunderdog.challegram.navigation.DoubleHeaderView;
 import org.thunderdog.challegram.navigation.SettingsWrap;
 import org.thunderdog.challegram.navigation.SettingsWrapBuilder;
 import org.thunderdog.challegram.navigation.ViewController;
+import org.thunderdog.challegram.service.PushLatencyHistogram;
+import org.thunderdog.challegram.telegram.AccountConfigFile;
 import org.thunderdog.challegram.telegram.GlobalTokenStateListener;
 import org.thunderdog.challegram.telegram.Tdlib;
 import org.thunderdog.challegram.telegram.TdlibAccount;
@@ -57,6 +62,7 @@ import org.thunderdog.challegram.tool.Strings;
 import org.thunderdog.challegram.tool.UI;
 import org.thunderdog.challegram.ui.camera.CameraController;
 import org.thunderdog.challegram.unsorted.Settings;
+import org.thunderdog.challegram.unsorted.StartupTrace;
 import org.thunderdog.challegram.unsorted.Test;
 import org.thunderdog.challegram.util.Crash;
 import org.thunderdog.challegram.util.StringList;
@@ -218,6 +224,15 @@ public class SettingsBugController extends RecyclerViewController<SettingsBugCon
     }
   }
 
+  private static String getCacheStats () {
+    return
+      "Custom themes: " + Settings.instance().getCustomThemeSnapshotStats() + "\n" +
+      "Account config: " + AccountConfigFile.getStats() + "\n" +
+      "Translation cache: " + TranslationCache.getStats() + "\n" +
+      "Memory: " + MemoryGovernor.instance().getStats() + "\n" +
+      "Chat windows: " + MessagesManager.getWarmChatStats();
+  }
+
   private void setLogSize (long size, boolean old) {
     final int i = old ? 1 : 0;
     if (this.logSize[i] != size) {
@@ -421,6 +436,8 @@ public class SettingsBugController extends RecyclerViewController<SettingsBugCon
           view.getToggler().setRadioEnabled(Settings.instance().needForceZxingQrProcessing(), isUpdate);
         } else if (itemId == R.id.btn_secret_debugQrRegions) {
           view.getToggler().setRadioEnabled(Settings.instance().needShowQrRegions(), isUpdate);
+        } else if (itemId == R.id.btn_secret_progressiveVoiceUpload) {
+          view.getToggler().setRadioEnabled(Settings.instance().needProgressiveVoiceUpload(), isUpdate);
         } else if (itemId == R.id.btn_secret_disableNetwork) {
           view.getToggler().setRadioEnabled(Settings.instance().forceDisableNetwork(), isUpdate);
         } else if (itemId == R.id.btn_secret_forceTcpInCalls) {
@@ -678,6 +695,12 @@ public class SettingsBugController extends RecyclerViewController<SettingsBugCon
           items.add(new ListItem(ListItem.TYPE_SETTING, R.id.btn_secret_tdlibDatabaseStats, 0, "TDLib database statistics", false));
           items.add(new ListItem(ListItem.TYPE_SEPARATOR_FULL));
           items.add(new ListItem(ListItem.TYPE_SETTING, R.id.btn_secret_databaseStats, 0, "Other internal statistics", false));
+          items.add(new ListItem(ListItem.TYPE_SEPARATOR_FULL));
+          items.add(new ListItem(ListItem.TYPE_SETTING, R.id.btn_secret_startupTrace, 0, "Startup trace", false));
+          items.add(new ListItem(ListItem.TYPE_SEPARATOR_FULL));
+          items.add(new ListItem(ListItem.TYPE_SETTING, R.id.btn_secret_cacheStats, 0, "Cache statistics", false));
+          items.add(new ListItem(ListItem.TYPE_SEPARATOR_FULL));
+          items.add(new ListItem(ListItem.TYPE_SETTING, R.id.btn_secret_pushLatency, 0, "Push latency", false));
 
           if (testerLevel >= Tdlib.TESTER_LEVEL_ADMIN) {
             items.add(new ListItem(ListItem.TYPE_SEPARATOR_FULL));
@@ -748,6 +771,11 @@ public class SettingsBugController extends RecyclerViewController<SettingsBugCon
             items.add(new ListItem(ListItem.TYPE_SEPARATOR_FULL));
           items.add(new ListItem(ListItem.TYPE_RADIO_SETTING, R.id.btn_secret_disableNetwork, 0, "Force disable network", Settings.instance().forceDisableNetwork()));
         }
+        if (testerLevel >= Tdlib.TESTER_LEVEL_ADMIN || Settings.instance().needProgressiveVoiceUpload()) {
+          if (items.size() > initialSize)
+            items.add(new ListItem(ListItem.TYPE_SEPARATOR_FULL));
+          items.add(new ListItem(ListItem.TYPE_RADIO_SETTING, R.id.btn_secret_progressiveVoiceUpload, 0, "Upload voice messages while recording", Settings.instance().needProgressiveVoiceUpload()));
+        }
         if (Config.QR_AVAILABLE) {
           if (testerLevel >= Tdlib.TESTER_LEVEL_ADMIN || Settings.instance().needDisableQrProcessing()) {
             if (items.size() > initialSize)
@@ -1140,6 +1168,8 @@ public class SettingsBugController extends RecyclerViewController<SettingsBugCon
       Settings.instance().setShowQrRegions(adapter.toggleView(v));
     } else if (viewId == R.id.btn_secret_qrTest) {
       openInAppCamera(new CameraOpenOptions().ignoreAnchor(true).noTrace(true).allowSystem(false).optionalMicrophone(true).qrModeDebug(true).mode(CameraController.MODE_QR).qrCodeListener((qrCode) -> UI.showToast(qrCode, Toast.LENGTH_LONG)));
+    } else if (viewId == R.id.btn_secret_progressiveVoiceUpload) {
+      Settings.instance().setProgressiveVoiceUpload(adapter.toggleView(v));
     } else if (viewId == R.id.btn_secret_disableNetwork) {
       Settings.instance().setDisableNetwork(adapter.toggleView(v));
       TdlibManager.instance().watchDog().letsHelpDoge();
@@ -1281,6 +1311,18 @@ public class SettingsBugController extends RecyclerViewController<SettingsBugCon
       TextController c = new TextController(context, tdlib);
       c.setArguments(TextController.Arguments.fromRawText("App Database Stats", stats, "text/plain"));
       navigateTo(c);
+    } else if (viewId == R.id.btn_secret_startupTrace) {
+      TextController c = new TextController(context, tdlib);
+      c.setArguments(TextController.Arguments.fromRawText("Startup Trace", StartupTrace.export(), "text/plain"));
+      navigateTo(c);
+    } else if (viewId == R.id.btn_secret_cacheStats) {
+      TextController c = new TextController(context, tdlib);
+      c.setArguments(TextController.Arguments.fromRawText("Cache Stats", getCacheStats(), "text/plain"));
+      navigateTo(c);
+    } else if (viewId == R.id.btn_secret_pushLatency) {
+      TextController c = new TextController(context, tdlib);
+      c.setArguments(TextController.Arguments.fromRawText("Push Latency", PushLatencyHistogram.export(), "text/plain"));
+      navigateTo(c);
     } else if (viewId == R.id.btn_secret_tdlibDatabaseStats) {
       UI.showToast("Calculating. Please wait...", Toast.LENGTH_SHORT);
       tdlib.client().send(new TdApi.GetDatabaseStatistics(), result -> {
@@ -34,6 +34,7 @@ import org.thunderdog.challegram.core.Lang;
 import org.thunderdog.challegram.data.TGStickerSetInfo;
 import org.thunderdog.challegram.telegram.StickersListener;
 import org.thunderdog.challegram.telegram.Tdlib;
+import org.thunderdog.challegram.telegram.TdlibStickerSetManager;
 import org.thunderdog.challegram.tool.Screen;
 import org.thunderdog.challegram.tool.Strings;
 import org.thunderdog.challegram.tool.UI;
@@ -923,30 +924,27 @@ public class StickersController extends RecyclerViewController<StickersControlle
       setApplyingChanges(true);
       final long[] setIds = futureItems.get();
       final int addedCount = futureItems.size();
-      final int[] index = new int[2];
-      tdlib.client().send(new TdApi.GetStickerSet(setIds[index[0]]), new Client.ResultHandler() {
+      final int[] insertCount = new int[1];
+      tdlib.stickerSets().load(setIds, addedCount, new TdlibStickerSetManager.LoadCallback() {
         @Override
-        public void onResult (TdApi.Object object) {
-          if (object.getConstructor() == TdApi.StickerSet.CONSTRUCTOR) {
-            final TGStickerSetInfo stickerSet = new TGStickerSetInfo(tdlib, (TdApi.StickerSet) object);
-            final int insertIndex = index[1]++;
+        public void onStickerSetLoaded (TdApi.StickerSet rawStickerSet) {
+          final TGStickerSetInfo stickerSet = new TGStickerSetInfo(tdlib, rawStickerSet);
+          final int insertIndex = insertCount[0]++;
 
-            tdlib.ui().post(() -> {
-              if (!isDestroyed()) {
-                addStickerSet(stickerSet, insertIndex);
-              }
-            });
-          }
+          tdlib.ui().post(() -> {
+            if (!isDestroyed()) {
+              addStickerSet(stickerSet, insertIndex);
+            }
+          });
+        }
 
-          if (++index[0] < addedCount) {
-            tdlib.client().send(new TdApi.GetStickerSet(setIds[index[0]]), this);
-          } else {
-            tdlib.ui().post(() -> {
-              if (!isDestroyed()) {
-                setApplyingChanges(false);
-              }
-            });
-          }
+        @Override
+        public void onStickerSetsLoaded () {
+          tdlib.ui().post(() -> {
+            if (!isDestroyed()) {
+              setApplyingChanges(false);
+            }
+          });
         }
       });
     }
@@ -50,6 +50,7 @@ import org.thunderdog.challegram.tool.UI;
 import org.thunderdog.challegram.tool.Views;
 import org.thunderdog.challegram.unsorted.Size;
 import org.thunderdog.challegram.util.StringList;
+import org.thunderdog.challegram.util.text.TextEntityFinder;
 import org.thunderdog.challegram.v.RtlGridLayoutManager;
 import org.thunderdog.challegram.widget.ProgressComponentView;
 
@@ -59,7 +60,6 @@ import me.vkryl.android.AnimatorUtils;
 import me.vkryl.android.widget.FrameLayoutFix;
 import me.vkryl.core.collection.IntList;
 import me.vkryl.core.lambda.CancellableRunnable;
-import me.vkryl.td.Td;
 
 public class StickersListController extends ViewController<StickersListController.StickerSetProvider> implements Menu, StickerSmallView.StickerMovementCallback, Client.ResultHandler, MoreDelegate, StickersListener {
   public StickersListController (Context context, Tdlib tdlib) {
@@ -172,7 +172,7 @@ public class StickersListController extends ViewController<StickersListControlle
   @Override
   public CharSequence getName () {
     if (info != null) {
-      TdApi.TextEntity[] entities = Td.findEntities(info.title);
+      TdApi.TextEntity[] entities = TextEntityFinder.findEntities(info.title);
       return TD.formatString(this, info.title, entities, null, null);
     }
     return null;
@@ -96,6 +96,7 @@ import org.thunderdog.challegram.util.DrawModifier;
 import org.thunderdog.challegram.util.LineDrawModifier;
 import org.thunderdog.challegram.util.text.Counter;
 import org.thunderdog.challegram.util.text.Letters;
+import org.thunderdog.challegram.util.text.TextEntityFinder;
 import org.thunderdog.challegram.v.CustomRecyclerView;
 import org.thunderdog.challegram.v.HeaderEditText;
 import org.thunderdog.challegram.widget.CheckBoxView;
@@ -122,7 +123,6 @@ import me.vkryl.core.ColorUtils;
 import me.vkryl.core.StringUtils;
 import me.vkryl.core.lambda.CancellableRunnable;
 import me.vkryl.core.lambda.RunnableInt;
-import me.vkryl.td.Td;
 
 public class ThemeListController extends RecyclerViewController<ThemeListController.Args> implements Menu, View.OnClickListener, ClipboardManager.OnPrimaryClipChangedListener, View.OnLongClickListener {
   public static class Args {
@@ -1881,7 +1881,7 @@ public class ThemeListController extends RecyclerViewController<ThemeListControl
 
   private CharSequence makeDescription (@StringRes int resId) {
     CharSequence text = Strings.replaceBoldTokens(Lang.getString(resId));
-    TdApi.TextEntity[] entities = Td.findEntities(text.toString());
+    TdApi.TextEntity[] entities = TextEntityFinder.findEntities(text.toString());
     if (entities != null) {
       List<Object> spans = new ArrayList<>();
       for (TdApi.TextEntity entity : entities) {
@@ -2938,6 +2938,7 @@ public class ThemeListController extends RecyclerViewController<ThemeListControl
       ColorState state = (ColorState) colorPicker.getData();
       saveChanges(colorPicker, state);
     }
+    Settings.instance().flushCustomThemes();
   }
 
   private void editColor (int position, @ColorId int colorId) {
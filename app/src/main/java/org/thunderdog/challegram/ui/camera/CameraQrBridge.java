@@ -29,17 +29,9 @@ import com.google.mlkit.vision.barcode.BarcodeScanner;
 import com.google.mlkit.vision.barcode.BarcodeScannerOptions;
 import com.google.mlkit.vision.barcode.BarcodeScanning;
 import com.google.mlkit.vision.common.InputImage;
-import com.google.zxing.BinaryBitmap;
-import com.google.zxing.ChecksumException;
-import com.google.zxing.FormatException;
-import com.google.zxing.NotFoundException;
-import com.google.zxing.PlanarYUVLuminanceSource;
 import com.google.zxing.Result;
 import com.google.zxing.ResultPoint;
-import com.google.zxing.common.HybridBinarizer;
-import com.google.zxing.qrcode.QRCodeReader;
 import com.google.zxing.qrcode.detector.AlignmentPattern;
-import com.google.zxing.qrcode.detector.FinderPattern;
 
 import org.thunderdog.challegram.Log;
 import org.thunderdog.challegram.U;
@@ -48,20 +40,19 @@ import org.thunderdog.challegram.tool.UI;
 import org.thunderdog.challegram.ui.camera.legacy.CameraApiLegacy;
 import org.thunderdog.challegram.unsorted.Settings;
 
-import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class CameraQrBridge {
   public final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor();
 
   private final CameraDelegate delegate;
   private final Executor mainExecutor;
-  private final QRCodeReader zxingReader = new QRCodeReader();
   private BarcodeScanner barcodeScanner;
-  private boolean mlkitFailed;
+  private volatile boolean mlkitFailed;
 
   public CameraQrBridge (CameraManager<?> manager) {
     this.delegate = manager.delegate;
@@ -77,6 +68,9 @@ public class CameraQrBridge {
   }
 
   public void destroy () {
+    if (skippedFrameCount > 0) {
+      Log.i(Log.TAG_CAMERA, "QR scanner skipped %d frames while decoding", skippedFrameCount);
+    }
     if (barcodeScanner != null) barcodeScanner.close();
     backgroundExecutor.shutdown();
     mlkitFailed = false;
@@ -92,27 +86,59 @@ public class CameraQrBridge {
     }
 
     if (isGmsImplementationSupported()) {
-      gmsImplementation(InputImage.fromMediaImage(mediaImage, proxy.getImageInfo().getRotationDegrees()), bufferAsBytes(proxy.getPlanes()[0].getBuffer()), U.isRotated(proxy.getImageInfo().getRotationDegrees()), proxy::close);
+      gmsImplementation(InputImage.fromMediaImage(mediaImage, proxy.getImageInfo().getRotationDegrees()), U.isRotated(proxy.getImageInfo().getRotationDegrees()), () -> processImageZxing(proxy), proxy::close);
     } else {
-      zxingImplementation(bufferAsBytes(proxy.getPlanes()[0].getBuffer()), proxy.getWidth(), proxy.getHeight(), proxy.getImageInfo().getRotationDegrees(), proxy::close);
+      processImageZxing(proxy);
+    }
+  }
+
+  @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+  private void processImageZxing (ImageProxy proxy) {
+    if (!decodeInFlight.compareAndSet(false, true)) {
+      skippedFrameCount++;
+      proxy.close();
+      return;
     }
+    // Only the region of interest is copied, after that the frame is returned to the camera right away
+    int width = proxy.getWidth(), height = proxy.getHeight();
+    Rect roi = regionOfInterest(width, height);
+    ImageProxy.PlaneProxy plane = proxy.getPlanes()[0];
+    byte[] luminance = zxingDecoder.copyRegion(plane.getBuffer(), plane.getRowStride(), plane.getPixelStride(), roi.left, roi.top, roi.width(), roi.height());
+    int rotation = proxy.getImageInfo().getRotationDegrees();
+    proxy.close();
+    zxingImplementation(luminance, roi.width(), roi.height(), 0, 0, roi, width, height, rotation, null);
   }
 
   public void processImage (byte[] data, int previewWidth, int previewHeight, CameraApiLegacy legacyApi) {
     int rotation = delegate.getCurrentCameraOrientation();
 
     if (isGmsImplementationSupported()) {
-      gmsImplementation(InputImage.fromByteArray(data, previewWidth, previewHeight, rotation, ImageFormat.NV21), data, U.isRotated(rotation), legacyApi::notifyCanReadNextFrame);
+      gmsImplementation(InputImage.fromByteArray(data, previewWidth, previewHeight, rotation, ImageFormat.NV21), U.isRotated(rotation), () -> processImageZxing(data, previewWidth, previewHeight, rotation, legacyApi), legacyApi::notifyCanReadNextFrame);
     } else {
-      zxingImplementation(data, previewWidth, previewHeight, rotation, legacyApi::notifyCanReadNextFrame);
+      processImageZxing(data, previewWidth, previewHeight, rotation, legacyApi);
     }
   }
 
+  private void processImageZxing (byte[] data, int previewWidth, int previewHeight, int rotation, CameraApiLegacy legacyApi) {
+    if (!decodeInFlight.compareAndSet(false, true)) {
+      skippedFrameCount++;
+      legacyApi.notifyCanReadNextFrame();
+      return;
+    }
+    // NV21 luminance plane is tightly packed, so it is read in place
+    Rect roi = regionOfInterest(previewWidth, previewHeight);
+    zxingImplementation(data, previewWidth, previewHeight, roi.left, roi.top, roi, previewWidth, previewHeight, rotation, legacyApi::notifyCanReadNextFrame);
+  }
+
   public boolean isGmsImplementationSupported () {
     return barcodeScanner != null && !mlkitFailed;
   }
 
-  private void gmsImplementation (InputImage image, byte[] safeData, boolean swapSizes, @Nullable Runnable onCompleteListener) {
+  /**
+   * @param zxingFallback Decodes the same frame with ZXing, if ML Kit fails with {@link MlKitException}.
+   * Responsible for returning the frame, so {@code onCompleteListener} is not called in that case.
+   */
+  private void gmsImplementation (InputImage image, boolean swapSizes, Runnable zxingFallback, @Nullable Runnable onCompleteListener) {
     barcodeScanner.process(image).addOnSuccessListener(mainExecutor, barcodes -> {
       if (barcodes.isEmpty()) {
         delegate.onQrCodeNotFound();
@@ -125,56 +151,83 @@ public class CameraQrBridge {
           delegate.onQrCodeFound(first.getRawValue(), new RectF(first.getBoundingBox()), image.getHeight(), image.getWidth(), 0, false);
         }
       }
-    }).addOnFailureListener(ex -> {
+    }).addOnCompleteListener(mainExecutor, task -> {
+      Exception ex = task.isSuccessful() || task.isCanceled() ? null : task.getException();
       if (ex instanceof MlKitException) {
         //Log.w("MlkitException - reverting to ZXing [code: %s, msg: %s]", ((MlKitException) ex).getErrorCode(), ex.getMessage());
+        // This and next frames are decoded with ZXing
         mlkitFailed = true;
-        zxingImplementation(safeData, image.getWidth(), image.getHeight(), image.getRotationDegrees(), onCompleteListener);
-      } else {
+        zxingFallback.run();
+        return;
+      }
+      if (ex != null) {
         Log.e(Log.TAG_CAMERA, ex);
       }
-    }).addOnCompleteListener(result -> {
       if (onCompleteListener != null) onCompleteListener.run();
     });
   }
 
+  // Region of interest
+
+  private final QrRegionDecoder zxingDecoder = new QrRegionDecoder();
+  private final AtomicBoolean decodeInFlight = new AtomicBoolean();
+  private long skippedFrameCount;
+
+  private Rect regionOfInterest (int width, int height) {
+    int roiWidth = zxingDecoder.regionWidth(width, height);
+    int roiHeight = zxingDecoder.regionHeight(width, height);
+    int left = (width - roiWidth) / 2;
+    int top = (height - roiHeight) / 2;
+    return new Rect(left, top, left + roiWidth, top + roiHeight);
+  }
+
+  // ZXing
+
+  /**
+   * Decodes the region of interest without rotating the frame: QR codes are readable in any orientation,
+   * so only resulting points are mapped into the rotated coordinate space.
+   *
+   * @param data Luminance values, {@code dataWidth} bytes per row. Either the whole frame or a copy of {@code roi}.
+   * @param dataLeft Position of {@code roi} inside {@code data}
+   */
   @SuppressWarnings("SuspiciousNameCombination")
-  private void zxingImplementation (byte[] data, int width, int height, int rotation, @Nullable Runnable onFinish) {
+  private void zxingImplementation (byte[] data, int dataWidth, int dataHeight, int dataLeft, int dataTop, Rect roi, int width, int height, int rotation, @Nullable Runnable onFinish) {
     backgroundExecutor.submit(() -> {
+      boolean found = false;
       try {
         int sensorRotation = delegate.getCurrentCameraSensorOrientation();
-        Result match = zxingImplementationImpl(data, width, height, rotation);
-        if (match != null && match.getText() != null && !match.getText().isEmpty()) {
+        Result match = zxingDecoder.decode(data, dataWidth, dataHeight, dataLeft, dataTop, roi.width(), roi.height());
+        if (match != null) {
+          found = true;
+          ResultPoint[] points = QrRegionDecoder.mapResultPoints(match.getResultPoints(), roi.left, roi.top, width, height, rotation);
+          float moduleSize = QrRegionDecoder.estimatedModuleSize(match.getResultPoints(), rotation);
           RectF zxingBox;
           if (sensorRotation != rotation && U.isRotated(sensorRotation)) {
-            zxingBox = zxingBoundingBox(match, rotation, true, width, height);
+            zxingBox = zxingBoundingBox(points, moduleSize, rotation, true, width, height);
             mainExecutor.execute(() -> delegate.onQrCodeFound(match.getText(), zxingBox, height, width, rotation, true));
           } else {
-            zxingBox = zxingBoundingBox(match, rotation, false, width, height);
+            zxingBox = zxingBoundingBox(points, moduleSize, rotation, false, width, height);
             mainExecutor.execute(() -> delegate.onQrCodeFound(match.getText(), zxingBox, width, height, rotation, true));
           }
         } else {
           mainExecutor.execute(delegate::onQrCodeNotFound);
         }
       } catch (Exception ex) {
-        if (ex instanceof NotFoundException) {
-          mainExecutor.execute(delegate::onQrCodeNotFound);
-        } else {
-          Log.e(Log.TAG_CAMERA, ex);
-        }
+        Log.e(Log.TAG_CAMERA, ex);
       } finally {
+        zxingDecoder.onRegionDecoded(found);
+        decodeInFlight.set(false);
         if (onFinish != null) onFinish.run();
       }
     });
   }
 
-  private RectF zxingBoundingBox (Result result, int rotation, boolean sensorRotationInverted, int width, int height) {
+  private RectF zxingBoundingBox (ResultPoint[] points, float estimatedModuleSize, int rotation, boolean sensorRotationInverted, int width, int height) {
     // ordered in: bottom-left, top-left, top-right
-    if (result.getResultPoints().length < 3) return null;
+    if (points == null || points.length < 3) return null;
 
-    ResultPoint[] points = result.getResultPoints();
     ResultPoint bottomLeft, topLeft, topRight;
-    int moduleSize;
+    int moduleSize = (int) estimatedModuleSize * 2;
 
     if (U.isRotated(rotation)) {
       bottomLeft = points[2];
@@ -186,12 +239,6 @@ public class CameraQrBridge {
       topRight = points[2];
     }
 
-    if (bottomLeft instanceof FinderPattern) {
-      moduleSize = (int) ((FinderPattern) bottomLeft).getEstimatedModuleSize() * 2;
-    } else {
-      moduleSize = 0;
-    }
-
     int x1 = (int) Math.min(Math.min(topLeft.getX(), topRight.getX()), bottomLeft.getX());
     int x2 = (int) Math.max(Math.max(topLeft.getX(), topRight.getX()), bottomLeft.getX());
     int y1 = (int) Math.min(Math.min(topLeft.getY(), topRight.getY()), bottomLeft.getY());
@@ -209,66 +256,4 @@ public class CameraQrBridge {
       x1 - moduleSize, y1 - moduleSize, x2 + moduleSize, y2 + moduleSize
     );
   }
-
-  @SuppressWarnings("SuspiciousNameCombination")
-  private Result zxingImplementationImpl (byte[] data, int width, int height, int rotation) throws FormatException, ChecksumException, NotFoundException {
-    if (rotation != 0) {
-      data = rotateYuvImage(data, width, height, rotation);
-    }
-
-    if (U.isRotated(rotation)) {
-      int prevWidth = width;
-      width = height;
-      height = prevWidth;
-    }
-
-    PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(
-      data,
-      width,
-      height,
-      0,
-      0,
-      width,
-      height,
-      rotation == 180
-    );
-
-    return zxingReader.decode(new BinaryBitmap(new HybridBinarizer(source)));
-  }
-
-  private byte[] bufferAsBytes (ByteBuffer buffer) {
-    buffer.rewind();
-    byte[] bytes = new byte[buffer.remaining()];
-    buffer.get(bytes);
-    return bytes;
-  }
-
-  private byte[] rotateYuvImage (byte[] data, int width, int height, int degrees) {
-    if (degrees == 0 || degrees % 90 != 0) return data;
-
-    byte[] rotatedData = new byte[data.length];
-
-    for (int y = 0; y < height; y++) {
-      for (int x = 0; x < width; x++) {
-        switch (degrees) {
-          case 90: {
-            rotatedData[x * height + height - y - 1] = data[x + y * width];
-            break;
-          }
-
-          case 180: {
-            rotatedData[width * (height - y - 1) + width - x - 1] = data[x + y * width];
-            break;
-          }
-
-          case 270: {
-            rotatedData[y + x * height] = data[y * width + width - x - 1];
-            break;
-          }
-        }
-      }
-    }
-
-    return rotatedData;
-  }
 }
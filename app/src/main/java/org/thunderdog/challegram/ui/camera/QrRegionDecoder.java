@@ -0,0 +1,153 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 20:40
+ */
+package org.thunderdog.challegram.ui.camera;
+
+import androidx.annotation.Nullable;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.ChecksumException;
+import com.google.zxing.FormatException;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+import com.google.zxing.qrcode.detector.FinderPattern;
+
+import java.nio.ByteBuffer;
+
+/**
+ * ZXing part of {@link CameraQrBridge}, kept free of Android classes so it can be benchmarked on the JVM.
+ *
+ * Decodes a center region of interest of the luminance plane without rotating it.
+ * The region grows after several frames without a code and shrinks back after a match.
+ * Not thread-safe, {@link CameraQrBridge} uses it from one decode at a time.
+ */
+public final class QrRegionDecoder {
+  private static final float[] ROI_SCALES = {.6f, .8f, 1f};
+  private static final int ROI_ATTEMPTS_PER_SCALE = 3;
+
+  private final QRCodeReader reader = new QRCodeReader();
+  private int roiScaleIndex, roiAttemptCount;
+  private byte[] luminanceBuffer;
+
+  // Region of interest
+
+  public int regionWidth (int width, int height) {
+    float scale = ROI_SCALES[roiScaleIndex];
+    return scale == 1f ? width : (int) (Math.min(width, height) * scale);
+  }
+
+  public int regionHeight (int width, int height) {
+    float scale = ROI_SCALES[roiScaleIndex];
+    return scale == 1f ? height : (int) (Math.min(width, height) * scale);
+  }
+
+  public void onRegionDecoded (boolean found) {
+    if (found) {
+      roiScaleIndex = 0;
+      roiAttemptCount = 0;
+    } else if (++roiAttemptCount >= ROI_ATTEMPTS_PER_SCALE) {
+      roiAttemptCount = 0;
+      roiScaleIndex = (roiScaleIndex + 1) % ROI_SCALES.length;
+    }
+  }
+
+  /**
+   * Copies the region out of a plane with the given strides into a buffer that is reused between frames.
+   *
+   * @return Luminance values, {@code roiWidth} bytes per row
+   */
+  public byte[] copyRegion (ByteBuffer buffer, int rowStride, int pixelStride, int roiLeft, int roiTop, int roiWidth, int roiHeight) {
+    int size = roiWidth * roiHeight;
+    byte[] out = luminanceBuffer;
+    if (out == null || out.length < size) {
+      luminanceBuffer = out = new byte[size];
+    }
+    if (pixelStride == 1) {
+      for (int y = 0; y < roiHeight; y++) {
+        buffer.position((roiTop + y) * rowStride + roiLeft);
+        buffer.get(out, y * roiWidth, roiWidth);
+      }
+    } else {
+      for (int y = 0; y < roiHeight; y++) {
+        int rowOffset = (roiTop + y) * rowStride + roiLeft * pixelStride;
+        for (int x = 0; x < roiWidth; x++) {
+          out[y * roiWidth + x] = buffer.get(rowOffset + x * pixelStride);
+        }
+      }
+    }
+    return out;
+  }
+
+  // Decoding
+
+  /**
+   * @param data Luminance values, {@code dataWidth} bytes per row. Either the whole frame or a copy of the region.
+   * @param dataLeft Position of the region inside {@code data}
+   * @return Decoded code, or {@code null}, if the region has none
+   */
+  @Nullable
+  public Result decode (byte[] data, int dataWidth, int dataHeight, int dataLeft, int dataTop, int roiWidth, int roiHeight) {
+    try {
+      PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(data, dataWidth, dataHeight, dataLeft, dataTop, roiWidth, roiHeight, false);
+      Result match = reader.decode(new BinaryBitmap(new HybridBinarizer(source)));
+      return match != null && match.getText() != null && !match.getText().isEmpty() ? match : null;
+    } catch (NotFoundException | FormatException | ChecksumException e) {
+      return null;
+    } finally {
+      reader.reset();
+    }
+  }
+
+  /**
+   * Maps points found in the sensor frame into the coordinate space of the frame rotated by {@code rotation}.
+   */
+  public static ResultPoint[] mapResultPoints (ResultPoint[] points, int offsetX, int offsetY, int width, int height, int rotation) {
+    if (points == null) {
+      return null;
+    }
+    ResultPoint[] mapped = new ResultPoint[points.length];
+    for (int i = 0; i < points.length; i++) {
+      float x = points[i].getX() + offsetX;
+      float y = points[i].getY() + offsetY;
+      switch (rotation) {
+        case 90:
+          mapped[i] = new ResultPoint(height - 1 - y, x);
+          break;
+        case 180:
+          // Frame used to be rotated and then mirrored horizontally, keep the same space
+          mapped[i] = new ResultPoint(x, height - 1 - y);
+          break;
+        case 270:
+          mapped[i] = new ResultPoint(y, width - 1 - x);
+          break;
+        default:
+          mapped[i] = new ResultPoint(x, y);
+          break;
+      }
+    }
+    return mapped;
+  }
+
+  public static float estimatedModuleSize (ResultPoint[] points, int rotation) {
+    if (points == null || points.length < 3) {
+      return 0;
+    }
+    ResultPoint bottomLeft = rotation == 90 || rotation == 270 ? points[2] : points[0];
+    return bottomLeft instanceof FinderPattern ? ((FinderPattern) bottomLeft).getEstimatedModuleSize() : 0;
+  }
+}
@@ -24,8 +24,10 @@ import org.drinkmore.Tracer;
 import org.thunderdog.challegram.BuildConfig;
 import org.thunderdog.challegram.Log;
 import org.thunderdog.challegram.N;
+import org.thunderdog.challegram.telegram.AccountConfigFile;
 import org.thunderdog.challegram.telegram.TdlibManager;
 import org.thunderdog.challegram.telegram.TdlibNotificationUtils;
+import org.thunderdog.challegram.tool.EmojiData;
 import org.thunderdog.challegram.util.Crash;
 
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -61,54 +63,43 @@ public class AppState {
 
     CrashManager.instance().register();
 
+    StartupTrace.reset();
     long startStep = SystemClock.uptimeMillis();
-
-    N.init();
-    Settings.instance();
-    TdlibNotificationUtils.initialize();
-
+    AtomicBoolean launchFailed = new AtomicBoolean(false);
+
+    StartupGraph graph = new StartupGraph();
+    StartupGraph.Stage nativeLibs = graph.foreground("native", N::init);
+    StartupGraph.Stage settings = graph.foreground("settings", Settings::instance, nativeLibs);
+    // Background stages only warm up what is loaded lazily anyway, so startup continues without them
+    graph.background("emoji", EmojiData::instance).optional();
+    graph.background("notifications", TdlibNotificationUtils::initialize, settings).optional();
+    graph.background("account_config", AccountConfigFile::preload, settings).optional();
     if (BuildConfig.DEBUG || BuildConfig.EXPERIMENTAL) {
-      Thread.UncaughtExceptionHandler defaultUncaughtExceptionHandler = Thread.getDefaultUncaughtExceptionHandler();
-      AtomicBoolean isCrashing = new AtomicBoolean(false);
-      Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
-        @Override
-        public void uncaughtException (@NonNull Thread thread, @NonNull Throwable error) {
-          if (isCrashing.getAndSet(true)) {
-            return;
-          }
-          error.printStackTrace();
-          Settings.instance().storeCrash(new Crash.Builder("Uncaught exception!", thread, error));
-          isCrashing.set(false);
-          if (defaultUncaughtExceptionHandler != null) {
-            Thread.setDefaultUncaughtExceptionHandler(defaultUncaughtExceptionHandler);
-            defaultUncaughtExceptionHandler.uncaughtException(thread, error);
-            Thread.setDefaultUncaughtExceptionHandler(this);
-          } else {
-            Process.killProcess(Process.myPid());
-            System.exit(10);
-          }
-        }
-      });
+      graph.foreground("crash_handler", AppState::installDebugCrashHandler, settings);
     }
-
-    boolean needMeasure = Log.needMeasureLaunchSpeed();
-
-    try {
-      if (BuildConfig.DEBUG)
-        Test.executeBeforeAppInit();
-      if (needMeasure) {
-        Log.i("==== INITIALIZATION STARTED IN %dMS ===\nManufacturer: %s, Product: %s", SystemClock.uptimeMillis() - startStep, Build.MANUFACTURER, Build.PRODUCT);
-        startStep = SystemClock.uptimeMillis();
-      }
-      TdlibManager.instance();
-      if (needMeasure) {
-        Log.i("==== INITIALIZATION FINISHED IN %dms ===", SystemClock.uptimeMillis() - startStep);
+    graph.foreground("tdlib", () -> {
+      try {
+        if (BuildConfig.DEBUG)
+          Test.executeBeforeAppInit();
+        if (Log.needMeasureLaunchSpeed()) {
+          Log.i("==== INITIALIZATION STARTED IN %dMS ===\nManufacturer: %s, Product: %s", SystemClock.uptimeMillis() - startStep, Build.MANUFACTURER, Build.PRODUCT);
+        }
+        TdlibManager.instance();
+      } catch (Throwable t) {
+        Tracer.onLaunchError(t);
+        Log.e("App initialization failed", t);
+        launchFailed.set(true);
       }
-    } catch (Throwable t) {
-      Tracer.onLaunchError(t);
-      Log.e("App initialization failed", t);
+    }, settings);
+    graph.run();
+
+    StartupTrace.finish(SystemClock.uptimeMillis());
+    if (launchFailed.get()) {
       return;
     }
+    if (Log.needMeasureLaunchSpeed()) {
+      Log.i("==== INITIALIZATION FINISHED IN %dms ===\n%s", SystemClock.uptimeMillis() - startStep, StartupTrace.export());
+    }
 
     isInitialized.set(true);
 
@@ -119,6 +110,33 @@ public class AppState {
     }
   }
 
+  private static final long CRASH_FLUSH_TIMEOUT_MS = 1500;
+
+  private static void installDebugCrashHandler () {
+    Thread.UncaughtExceptionHandler defaultUncaughtExceptionHandler = Thread.getDefaultUncaughtExceptionHandler();
+    AtomicBoolean isCrashing = new AtomicBoolean(false);
+    Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+      @Override
+      public void uncaughtException (@NonNull Thread thread, @NonNull Throwable error) {
+        if (isCrashing.getAndSet(true)) {
+          return;
+        }
+        error.printStackTrace();
+        Settings.instance().storeCrash(new Crash.Builder("Uncaught exception!", thread, error));
+        AccountConfigFile.flushAndWait(CRASH_FLUSH_TIMEOUT_MS);
+        isCrashing.set(false);
+        if (defaultUncaughtExceptionHandler != null) {
+          Thread.setDefaultUncaughtExceptionHandler(defaultUncaughtExceptionHandler);
+          defaultUncaughtExceptionHandler.uncaughtException(thread, error);
+          Thread.setDefaultUncaughtExceptionHandler(this);
+        } else {
+          Process.killProcess(Process.myPid());
+          System.exit(10);
+        }
+      }
+    });
+  }
+
   public static void ensureReady () {
     if (!isInitialized.get()) {
       try {
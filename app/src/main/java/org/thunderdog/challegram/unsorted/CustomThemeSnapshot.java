@@ -0,0 +1,266 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 13:05
+ */
+package org.thunderdog.challegram.unsorted;
+
+import android.os.SystemClock;
+import android.util.SparseIntArray;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.SparseArrayCompat;
+
+import org.thunderdog.challegram.Log;
+import org.thunderdog.challegram.core.Background;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.vkryl.leveldb.LevelDB;
+
+/**
+ * In-memory copy of custom theme colors and properties.
+ *
+ * Reads never touch LevelDB: the snapshot is published through a volatile field
+ * and replaced as a whole on every change (copy-on-write), so readers need no lock.
+ * Writes are applied to the snapshot immediately and persisted later
+ * in a single {@link LevelDB#edit()} … {@link LevelDB#apply()} transaction.
+ * Paths that must not lose them (app going to background, theme editor closing, crash)
+ * call {@link #flushSoon()} or {@link #flush()}.
+ */
+final class CustomThemeSnapshot {
+  private static final long WRITE_DELAY_MS = 300;
+  private static final Object REMOVED = new Object();
+
+  static final class Values {
+    final SparseIntArray colors;
+    final SparseIntArray properties; // Float.floatToRawIntBits
+
+    Values () {
+      this.colors = new SparseIntArray();
+      this.properties = new SparseIntArray();
+    }
+
+    Values (Values copy) {
+      this.colors = copy.colors.clone();
+      this.properties = copy.properties.clone();
+    }
+
+    boolean hasProperty (int propertyId) {
+      return properties.indexOfKey(propertyId) >= 0;
+    }
+
+    float getProperty (int propertyId, float defValue) {
+      int index = properties.indexOfKey(propertyId);
+      return index >= 0 ? Float.intBitsToFloat(properties.valueAt(index)) : defValue;
+    }
+
+    void setProperty (int propertyId, float value) {
+      properties.put(propertyId, Float.floatToRawIntBits(value));
+    }
+  }
+
+  private final LevelDB pmc;
+  private volatile SparseArrayCompat<Values> themes = new SparseArrayCompat<>();
+
+  private final Object flushLock = new Object();
+  private final LinkedHashMap<String, Object> pendingWrites = new LinkedHashMap<>();
+  private final Runnable flushAct = this::flush;
+
+  // Debug counters
+  private volatile long loadTimeMs;
+  private final AtomicLong readCount = new AtomicLong(), fallbackCount = new AtomicLong();
+  private long writeCount; // Guarded by pendingWrites
+  private long flushCount; // Guarded by flushLock
+
+  CustomThemeSnapshot (LevelDB pmc) {
+    this.pmc = pmc;
+  }
+
+  // Load
+
+  interface Loader {
+    void load (SparseArrayCompat<Values> out);
+  }
+
+  void load (@NonNull Loader loader) {
+    long ms = SystemClock.uptimeMillis();
+    SparseArrayCompat<Values> themes = new SparseArrayCompat<>();
+    loader.load(themes);
+    this.themes = themes;
+    loadTimeMs = SystemClock.uptimeMillis() - ms;
+    Log.i("Loaded %d custom themes in %dms", themes.size(), loadTimeMs);
+  }
+
+  static Values obtain (SparseArrayCompat<Values> themes, int customThemeId) {
+    Values values = themes.get(customThemeId);
+    if (values == null) {
+      values = new Values();
+      themes.put(customThemeId, values);
+    }
+    return values;
+  }
+
+  // Read
+
+  @Nullable
+  Values get (int customThemeId) {
+    readCount.incrementAndGet();
+    return themes.get(customThemeId);
+  }
+
+  boolean hasColor (@Nullable Values values, int colorId) {
+    if (values != null && values.colors.indexOfKey(colorId) >= 0) {
+      return true;
+    }
+    fallbackCount.incrementAndGet();
+    return false;
+  }
+
+  // Write
+
+  @AnyThread
+  synchronized void replace (int customThemeId, @Nullable Values values) {
+    SparseArrayCompat<Values> themes = this.themes.clone();
+    if (values != null) {
+      themes.put(customThemeId, values);
+    } else {
+      themes.remove(customThemeId);
+    }
+    this.themes = themes;
+  }
+
+  @AnyThread
+  synchronized void setColor (int customThemeId, int colorId, String key, @Nullable Integer color) {
+    SparseArrayCompat<Values> themes = this.themes.clone();
+    Values existing = themes.get(customThemeId);
+    Values values = existing != null ? new Values(existing) : new Values();
+    if (color != null) {
+      values.colors.put(colorId, color);
+    } else {
+      values.colors.delete(colorId);
+    }
+    themes.put(customThemeId, values);
+    this.themes = themes;
+    scheduleWrite(key, color != null ? color : REMOVED);
+  }
+
+  @AnyThread
+  synchronized void setProperty (int customThemeId, int propertyId, String key, @Nullable Float value) {
+    SparseArrayCompat<Values> themes = this.themes.clone();
+    Values existing = themes.get(customThemeId);
+    Values values = existing != null ? new Values(existing) : new Values();
+    if (value != null) {
+      values.setProperty(propertyId, value);
+    } else {
+      values.properties.delete(propertyId);
+    }
+    themes.put(customThemeId, values);
+    this.themes = themes;
+    scheduleWrite(key, value != null ? value : REMOVED);
+  }
+
+  private void scheduleWrite (String key, Object value) {
+    synchronized (pendingWrites) {
+      pendingWrites.remove(key);
+      pendingWrites.put(key, value);
+      writeCount++;
+    }
+    Background.instance().thread().cancel(flushAct);
+    Background.instance().post(flushAct, (int) WRITE_DELAY_MS);
+  }
+
+  /**
+   * Asks {@link Background} thread to write pending changes right away instead of after {@link #WRITE_DELAY_MS}.
+   */
+  @AnyThread
+  void flushSoon () {
+    synchronized (pendingWrites) {
+      if (pendingWrites.isEmpty())
+        return;
+    }
+    Background.instance().thread().cancel(flushAct);
+    Background.instance().post(flushAct, 0);
+  }
+
+  /**
+   * Writes all pending changes to LevelDB on the current thread.
+   * Must be called before reading theme keys from {@link LevelDB} directly.
+   */
+  @AnyThread
+  void flush () {
+    synchronized (flushLock) {
+      Map<String, Object> writes;
+      synchronized (pendingWrites) {
+        if (pendingWrites.isEmpty())
+          return;
+        writes = new LinkedHashMap<>(pendingWrites);
+        pendingWrites.clear();
+      }
+      pmc.edit();
+      for (Map.Entry<String, Object> entry : writes.entrySet()) {
+        Object value = entry.getValue();
+        if (value == REMOVED) {
+          pmc.remove(entry.getKey());
+        } else if (value instanceof Integer) {
+          pmc.putInt(entry.getKey(), (Integer) value);
+        } else if (value instanceof Float) {
+          pmc.putFloat(entry.getKey(), (Float) value);
+        }
+      }
+      pmc.apply();
+      flushCount++;
+    }
+  }
+
+  @AnyThread
+  void dropPendingWrites (String keyPrefix) {
+    synchronized (pendingWrites) {
+      Iterator<String> itr = pendingWrites.keySet().iterator();
+      while (itr.hasNext()) {
+        if (itr.next().startsWith(keyPrefix)) {
+          itr.remove();
+        }
+      }
+    }
+  }
+
+  // Stats
+
+  long getLoadTimeMs () {
+    return loadTimeMs;
+  }
+
+  String getStats () {
+    int pendingCount;
+    long writeCount, flushCount;
+    synchronized (pendingWrites) {
+      pendingCount = pendingWrites.size();
+      writeCount = this.writeCount;
+    }
+    synchronized (flushLock) {
+      flushCount = this.flushCount;
+    }
+    return "themes: " + themes.size() +
+      ", load: " + loadTimeMs + "ms" +
+      ", reads: " + readCount.get() +
+      ", fallbacks: " + fallbackCount.get() +
+      ", writes: " + writeCount +
+      ", flushes: " + flushCount +
+      ", pending: " + pendingCount;
+  }
+}
@@ -30,6 +30,7 @@ import androidx.annotation.IntDef;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.UiThread;
+import androidx.collection.SparseArrayCompat;
 
 import com.otaliastudios.transcoder.strategy.DefaultVideoStrategy;
 
@@ -44,12 +45,14 @@ import org.thunderdog.challegram.config.Config;
 import org.thunderdog.challegram.config.Device;
 import org.thunderdog.challegram.core.Background;
 import org.thunderdog.challegram.core.Lang;
+import org.thunderdog.challegram.core.Media;
 import org.thunderdog.challegram.data.TD;
 import org.thunderdog.challegram.emoji.Emoji;
 import org.thunderdog.challegram.emoji.RecentEmoji;
 import org.thunderdog.challegram.emoji.RecentInfo;
 import org.thunderdog.challegram.loader.ImageFile;
 import org.thunderdog.challegram.player.TGPlayerController;
+import org.thunderdog.challegram.telegram.AccountConfigFile;
 import org.thunderdog.challegram.telegram.EmojiMediaType;
 import org.thunderdog.challegram.telegram.Tdlib;
 import org.thunderdog.challegram.telegram.TdlibAccount;
@@ -107,6 +110,7 @@ import me.vkryl.core.ColorUtils;
 import me.vkryl.core.DateUtils;
 import me.vkryl.core.FileUtils;
 import me.vkryl.core.StringUtils;
+import me.vkryl.core.collection.IntList;
 import me.vkryl.core.lambda.CancellableRunnable;
 import me.vkryl.core.lambda.RunnableBool;
 import me.vkryl.core.reference.ReferenceList;
@@ -822,6 +826,8 @@ public class Settings {
       pmc.removeByPrefix(KEY_TUTORIAL_PSA);
     }
     trackInstalledApkVersion();
+    customThemes = new CustomThemeSnapshot(pmc);
+    customThemes.load(out -> loadCustomThemeValues(out, KEY_THEME_FULL));
     Log.i("Opened database in %dms", SystemClock.uptimeMillis() - ms);
     checkPendingPasscodeLocks();
     applyLogSettings(true);
@@ -1530,6 +1536,7 @@ public class Settings {
   }*/
 
   private final LevelDB pmc;
+  private final CustomThemeSnapshot customThemes;
 
   public LevelDB pmc () {
     return pmc;
@@ -1966,7 +1973,8 @@ public class Settings {
 
         File oldConfigFile = TdlibManager.getAccountConfigFile();
         File backupFile = new File(oldConfigFile.getParentFile(), oldConfigFile.getName() + ".bak." + TdlibAccount.VERSION_1);
-        if (oldConfigFile.exists() && !backupFile.exists()) {
+        // Also repeat, if previous attempt was interrupted after making the backup
+        if (oldConfigFile.exists() && (!backupFile.exists() || oldConfigFile.length() == TdlibManager.legacyBinlogSize(accountNum))) {
           TdlibManager.AccountConfig config = null;
           try (RandomAccessFile r = new RandomAccessFile(oldConfigFile, TdlibManager.MODE_R)) {
             config = TdlibManager.readAccountConfig(null, r, TdlibAccount.VERSION_1, false);
@@ -1974,20 +1982,10 @@ public class Settings {
             Log.e(e);
           }
           if (config != null) {
-            File newConfigFile = new File(oldConfigFile.getParentFile(), oldConfigFile.getName() + ".tmp");
             try {
-              if (newConfigFile.exists() || newConfigFile.createNewFile()) {
-                try (RandomAccessFile r = new RandomAccessFile(newConfigFile, TdlibManager.MODE_RW)) {
-                  TdlibManager.writeAccountConfigFully(r, config);
-                } catch (IOException e) {
-                  Tracer.onLaunchError(e);
-                  throw new DeviceStorageError(e);
-                }
-              }
-              if (!oldConfigFile.renameTo(backupFile))
-                throw new DeviceStorageError("Cannot backup old config");
-              if (!newConfigFile.renameTo(oldConfigFile))
-                throw new DeviceStorageError("Cannot save new config");
+              Media.copyFile(oldConfigFile, backupFile);
+              // Goes through AccountConfigFile, so contents it has already read in the old layout are replaced as well
+              AccountConfigFile.replace(AccountConfigFile.serialize(config));
             } catch (Throwable t) {
               Tracer.onLaunchError(t);
               throw new DeviceStorageError(t);
@@ -5353,6 +5351,7 @@ public class Settings {
       }
     }
 
+    customThemes.flush();
     pmc.edit();
     putInt(KEY_THEMES_CREATED_COUNT, newThemeId);
     putString(KEY_THEME_NAME + newThemeId, name);
@@ -5416,6 +5415,7 @@ public class Settings {
       putFloat(themePropertyKey(newThemeId, PropertyId.PARENT_THEME), parentThemeId);
     }
     pmc.apply();
+    reloadCustomThemeValues(newThemeId);
     return newThemeId;
   }
 
@@ -5439,6 +5439,8 @@ public class Settings {
         }
       }
     }
+    customThemes.dropPendingWrites(KEY_THEME_FULL + customThemeId + "_");
+    customThemes.replace(customThemeId, null);
     pmc.edit();
     pmc.remove(KEY_THEME_NAME + customThemeId);
     pmc.remove(KEY_THEME_AUTHOR + customThemeId);
@@ -5457,7 +5459,8 @@ public class Settings {
   }
 
   public float getThemeProperty (int customThemeId, @PropertyId int propertyId, float defValue) {
-    return pmc.getFloat(themePropertyKey(customThemeId, propertyId), defValue);
+    CustomThemeSnapshot.Values values = customThemes.get(customThemeId);
+    return values != null ? values.getProperty(propertyId, defValue) : defValue;
   }
 
   private ThemeInfo processThemeEntry (LevelDB.Entry entry, @Nullable ThemeInfo theme) {
@@ -5531,7 +5534,67 @@ public class Settings {
   }
 
   public boolean hasCustomTheme (int customThemeId) {
-    return customThemeId > 0 && pmc.contains(themePropertyKey(customThemeId, PropertyId.PARENT_THEME));
+    if (customThemeId <= 0)
+      return false;
+    CustomThemeSnapshot.Values values = customThemes.get(customThemeId);
+    return values != null && values.hasProperty(PropertyId.PARENT_THEME);
+  }
+
+  private void loadCustomThemeValues (SparseArrayCompat<CustomThemeSnapshot.Values> out, String prefix) {
+    Map<String, Integer> colorsMap = ThemeColors.getMap();
+    Map<String, Integer> propsMap = ThemeProperties.getMap();
+    final int idStartIndex = KEY_THEME_FULL.length();
+    for (final LevelDB.Entry entry : pmc.find(prefix)) {
+      String key = entry.key();
+      // theme{customThemeId}_{c|p}_{name}, other keys like theme_name{customThemeId} are skipped
+      int idEndIndex = idStartIndex;
+      while (idEndIndex < key.length() && Character.isDigit(key.charAt(idEndIndex))) {
+        idEndIndex++;
+      }
+      if (idEndIndex == idStartIndex || idEndIndex + 3 > key.length() || key.charAt(idEndIndex) != '_' || key.charAt(idEndIndex + 2) != '_') {
+        continue;
+      }
+      try {
+        int customThemeId = Integer.parseInt(key.substring(idStartIndex, idEndIndex));
+        String name = key.substring(idEndIndex + 3);
+        switch (key.charAt(idEndIndex + 1)) {
+          case 'c': {
+            Integer colorId = colorsMap.get(name);
+            if (colorId != null) {
+              CustomThemeSnapshot.obtain(out, customThemeId).colors.put(colorId, entry.asInt());
+            }
+            break;
+          }
+          case 'p': {
+            Integer propertyId = propsMap.get(name);
+            if (propertyId != null) {
+              CustomThemeSnapshot.obtain(out, customThemeId).setProperty(propertyId, entry.asFloat());
+            }
+            break;
+          }
+        }
+      } catch (Throwable t) {
+        Log.e("Cannot parse theme entry, key: %s", t, key);
+      }
+    }
+  }
+
+  private void reloadCustomThemeValues (int customThemeId) {
+    SparseArrayCompat<CustomThemeSnapshot.Values> out = new SparseArrayCompat<>();
+    loadCustomThemeValues(out, KEY_THEME_FULL + customThemeId + "_");
+    customThemes.replace(customThemeId, out.get(customThemeId));
+  }
+
+  /**
+   * Writes custom theme changes that are not in the database yet, without waiting for the write-behind delay.
+   * Doesn't block the caller.
+   */
+  public void flushCustomThemes () {
+    customThemes.flushSoon();
+  }
+
+  public String getCustomThemeSnapshotStats () {
+    return customThemes.getStats();
   }
 
   public static class ThemeExportInfo {
@@ -5573,6 +5636,7 @@ public class Settings {
     String prefix = KEY_THEME_FULL + customThemeId + "_";
     int themeId = ThemeManager.serializeCustomThemeId(customThemeId);
     ThemeCustom theme = new ThemeCustom(themeId);
+    customThemes.flush();
     int startIndex = prefix.length(), entryCount = 0;
     Map<String, Integer> colorsMap = ThemeColors.getMap();
     Map<String, Integer> propsMap = ThemeProperties.getMap();
@@ -5606,6 +5670,7 @@ public class Settings {
     if (_customThemeId != ThemeId.NONE) {
       String prefix = KEY_THEME_FULL + _customThemeId + "_";
       theme = new ThemeExportInfo(getCustomThemeName(_customThemeId), getCustomThemeWallpaper(_customThemeId));
+      customThemes.flush();
       int startIndex = prefix.length();
       for (final LevelDB.Entry entry : pmc.find(prefix)) {
         try {
@@ -5670,35 +5735,31 @@ public class Settings {
   }
 
   public void setCustomThemeColor (int customThemeId, @ColorId int colorId, @Nullable Integer newColor) {
-    if (newColor == null)
-      pmc.remove(themeColorKey(customThemeId, colorId));
-    else
-      pmc.putInt(themeColorKey(customThemeId, colorId), newColor);
+    customThemes.setColor(customThemeId, colorId, themeColorKey(customThemeId, colorId), newColor);
   }
 
   public void setCustomThemeProperty (int customThemeId, @PropertyId int propertyId, @Nullable Float newValue) {
-    if (newValue == null)
-      pmc.remove(themePropertyKey(customThemeId, propertyId));
-    else
-      pmc.putFloat(themePropertyKey(customThemeId, propertyId), newValue);
+    customThemes.setProperty(customThemeId, propertyId, themePropertyKey(customThemeId, propertyId), newValue);
   }
 
   public int getCustomThemeColor (int customThemeId, @ColorId int colorId) {
-    try {
-      return pmc.tryGetInt(themeColorKey(customThemeId, colorId));
-    } catch (FileNotFoundException e) {
-      return ThemeSet.getColor((int) getCustomThemeProperty(customThemeId, PropertyId.PARENT_THEME), colorId);
+    CustomThemeSnapshot.Values values = customThemes.get(customThemeId);
+    if (customThemes.hasColor(values, colorId)) {
+      return values.colors.get(colorId);
     }
+    int parentThemeId = values != null ? (int) values.getProperty(PropertyId.PARENT_THEME, ThemeId.BLUE) : ThemeId.BLUE;
+    return ThemeSet.getColor(parentThemeId, colorId);
   }
 
   public float getCustomThemeProperty (int customThemeId, @PropertyId int propertyId) {
-    try {
-      return pmc.tryGetFloat(themePropertyKey(customThemeId, propertyId));
-    } catch (FileNotFoundException e) {
-      if (propertyId == PropertyId.PARENT_THEME)
-        return ThemeId.BLUE;
-      return ThemeSet.getProperty((int) getCustomThemeProperty(customThemeId, PropertyId.PARENT_THEME), propertyId);
+    CustomThemeSnapshot.Values values = customThemes.get(customThemeId);
+    if (values != null && values.hasProperty(propertyId)) {
+      return values.getProperty(propertyId, 0);
     }
+    if (propertyId == PropertyId.PARENT_THEME)
+      return ThemeId.BLUE;
+    int parentThemeId = values != null ? (int) values.getProperty(PropertyId.PARENT_THEME, ThemeId.BLUE) : ThemeId.BLUE;
+    return ThemeSet.getProperty(parentThemeId, propertyId);
   }
 
   public void setCustomThemeName (int customThemeId, String name) {
@@ -5839,12 +5900,53 @@ public class Settings {
     return pushId;
   }
 
+  private static final String KEY_PENDING_SYNC_PREFIX = "pending_sync_";
+
+  /**
+   * Remembers that account has work that was not finished in time, e.g. a push that couldn't be processed.
+   */
+  public void markAccountNeedsSync (int accountId, long pushId) {
+    putLong(KEY_PENDING_SYNC_PREFIX + accountId, pushId);
+  }
+
+  public void forgetAccountNeedsSync (int accountId) {
+    remove(KEY_PENDING_SYNC_PREFIX + accountId);
+  }
+
+  public int[] getAccountsNeedingSync () {
+    IntList accountIds = new IntList(4);
+    for (LevelDB.Entry entry : pmc.find(KEY_PENDING_SYNC_PREFIX)) {
+      int accountId = StringUtils.parseInt(entry.key().substring(KEY_PENDING_SYNC_PREFIX.length()), TdlibAccount.NO_ID);
+      if (accountId != TdlibAccount.NO_ID) {
+        accountIds.append(accountId);
+      }
+    }
+    return accountIds.get();
+  }
+
+  private final Map<Long, Integer> receiverAccountIds = new HashMap<>();
+
   public void putNotificationReceiverId (long receiverId, int accountId) {
     putInt("receiver_" + receiverId, accountId);
+    synchronized (receiverAccountIds) {
+      receiverAccountIds.put(receiverId, accountId);
+    }
   }
 
   public int findAccountByReceiverId (long receiverId) {
-    return getInt("receiver_" + receiverId, TdlibAccount.NO_ID);
+    // Called for every push, so known receivers are resolved without touching the database
+    synchronized (receiverAccountIds) {
+      Integer accountId = receiverAccountIds.get(receiverId);
+      if (accountId != null)
+        return accountId;
+    }
+    int accountId = getInt("receiver_" + receiverId, TdlibAccount.NO_ID);
+    if (accountId != TdlibAccount.NO_ID) {
+      synchronized (receiverAccountIds) {
+        receiverAccountIds.put(receiverId, accountId);
+      }
+    }
+    return accountId;
   }
 
   public boolean needNotificationAppVersionUpdate (int accountId) {
@@ -5867,6 +5969,7 @@ public class Settings {
   private static final int UTILITY_FEATURE_NO_QR_PROCESS = 1 << 6;
   private static final int UTILITY_FEATURE_QR_ZXING = 1 << 7;
   private static final int UTILITY_FEATURE_QR_REGION_DEBUG = 1 << 8;
+  private static final int UTILITY_FEATURE_PROGRESSIVE_VOICE_UPLOAD = 1 << 9;
 
   private int getUtilityFeatures () {
     return pmc.getInt(KEY_UTILITY_FEATURES, 0);
@@ -5923,6 +6026,14 @@ public class Settings {
     toggleUtilityFeature(UTILITY_FEATURE_QR_REGION_DEBUG, enabled);
   }
 
+  public boolean needProgressiveVoiceUpload () {
+    return checkUtilityFeature(UTILITY_FEATURE_PROGRESSIVE_VOICE_UPLOAD);
+  }
+
+  public void setProgressiveVoiceUpload (boolean enabled) {
+    toggleUtilityFeature(UTILITY_FEATURE_PROGRESSIVE_VOICE_UPLOAD, enabled);
+  }
+
   public boolean needForceZxingQrProcessing () {
     return checkUtilityFeature(UTILITY_FEATURE_QR_ZXING);
   }
@@ -6024,6 +6135,8 @@ public class Settings {
 
     final String keyPrefix = makeCrashPrefix(crashId);
 
+    // Process is about to die, so pending theme changes are written now and synced below
+    customThemes.flush();
     pmc.edit();
     // increment crashId
     pmc.putLong(KEY_TDLIB_CRASH_PREFIX, crashId + 1);
@@ -0,0 +1,157 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 14:35
+ */
+package org.thunderdog.challegram.unsorted;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import org.thunderdog.challegram.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Startup stages with explicit dependencies.
+ *
+ * Background stages run on a small pool as soon as their dependencies complete,
+ * foreground stages run on the thread that calls {@link #run()} in the order they were added.
+ * Each stage reports its timing to {@link StartupTrace}.
+ *
+ * Failure of a stage the app can't start without is rethrown from {@link #run()}.
+ * Failures of {@link Stage#optional() optional} stages are only logged,
+ * stages that depend on them still run.
+ */
+final class StartupGraph {
+  private static final int POOL_SIZE = 2;
+
+  final class Stage {
+    final String name;
+    final Stage[] dependencies;
+    final Runnable act;
+    final boolean background;
+    volatile boolean isOptional;
+    final CountDownLatch latch = new CountDownLatch(1);
+    volatile Throwable error;
+
+    Stage (String name, Stage[] dependencies, Runnable act, boolean background) {
+      this.name = name;
+      this.dependencies = dependencies;
+      this.act = act;
+      this.background = background;
+    }
+
+    void execute () {
+      try {
+        for (Stage dependency : dependencies) {
+          dependency.await();
+        }
+        long startMs = SystemClock.uptimeMillis();
+        act.run();
+        StartupTrace.addSpan(name, startMs, SystemClock.uptimeMillis());
+      } catch (Throwable t) {
+        if (error == null) {
+          error = t;
+        }
+        Log.e("Startup stage failed: %s, optional: %b", t, name, isOptional);
+      } finally {
+        latch.countDown();
+      }
+    }
+
+    /**
+     * Marks the stage as not required for startup: its failure is logged, but not rethrown.
+     */
+    Stage optional () {
+      this.isOptional = true;
+      return this;
+    }
+
+    void await () {
+      try {
+        latch.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      }
+      if (error != null && !isOptional) {
+        throw new StageFailedError(name, error);
+      }
+    }
+  }
+
+  static final class StageFailedError extends RuntimeException {
+    StageFailedError (String name, Throwable cause) {
+      super("Startup stage failed: " + name, cause);
+    }
+  }
+
+  private final List<Stage> stages = new ArrayList<>();
+
+  Stage foreground (@NonNull String name, @NonNull Runnable act, Stage... dependencies) {
+    Stage stage = new Stage(name, dependencies, act, false);
+    stages.add(stage);
+    return stage;
+  }
+
+  Stage background (@NonNull String name, @NonNull Runnable act, Stage... dependencies) {
+    Stage stage = new Stage(name, dependencies, act, true);
+    stages.add(stage);
+    return stage;
+  }
+
+  /**
+   * Runs all stages and waits for them to finish.
+   *
+   * Rethrows the original error of the first failed stage that is not optional.
+   */
+  void run () {
+    long startMs = SystemClock.uptimeMillis();
+    ExecutorService executor = null;
+    for (Stage stage : stages) {
+      if (stage.background) {
+        if (executor == null) {
+          executor = Executors.newFixedThreadPool(POOL_SIZE, r -> new Thread(r, "StartupThread"));
+        }
+        executor.execute(stage::execute);
+      }
+    }
+    try {
+      for (Stage stage : stages) {
+        if (!stage.background) {
+          stage.execute();
+        }
+      }
+      for (Stage stage : stages) {
+        stage.await();
+      }
+    } catch (StageFailedError e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException) cause;
+      if (cause instanceof Error)
+        throw (Error) cause;
+      throw e;
+    } finally {
+      if (executor != null) {
+        executor.shutdown();
+      }
+      StartupTrace.addSpan("graph", startMs, SystemClock.uptimeMillis());
+    }
+  }
+}
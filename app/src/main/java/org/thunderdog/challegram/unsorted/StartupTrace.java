@@ -0,0 +1,81 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 14:20
+ */
+package org.thunderdog.challegram.unsorted;
+
+import android.os.SystemClock;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Timing spans recorded during application cold start.
+ */
+public final class StartupTrace {
+  public static final class Span {
+    public final String name;
+    public final String threadName;
+    public final long startMs, durationMs;
+
+    Span (String name, String threadName, long startMs, long durationMs) {
+      this.name = name;
+      this.threadName = threadName;
+      this.startMs = startMs;
+      this.durationMs = durationMs;
+    }
+  }
+
+  private static final List<Span> spans = new ArrayList<>();
+  private static long originMs = SystemClock.uptimeMillis();
+  private static long totalMs;
+
+  private StartupTrace () { }
+
+  @AnyThread
+  static synchronized void reset () {
+    spans.clear();
+    originMs = SystemClock.uptimeMillis();
+    totalMs = 0;
+  }
+
+  @AnyThread
+  static synchronized void addSpan (String name, long startMs, long endMs) {
+    spans.add(new Span(name, Thread.currentThread().getName(), startMs - originMs, endMs - startMs));
+  }
+
+  @AnyThread
+  static synchronized void finish (long endMs) {
+    totalMs = endMs - originMs;
+  }
+
+  @AnyThread
+  public static synchronized List<Span> getSpans () {
+    return new ArrayList<>(spans);
+  }
+
+  @AnyThread
+  @NonNull
+  public static synchronized String export () {
+    StringBuilder b = new StringBuilder();
+    b.append(String.format(Locale.US, "Total: %dms\n\n", totalMs));
+    for (Span span : spans) {
+      b.append(String.format(Locale.US, "+%5dms %5dms  %s [%s]\n", span.startMs, span.durationMs, span.name, span.threadName));
+    }
+    return b.toString();
+  }
+}
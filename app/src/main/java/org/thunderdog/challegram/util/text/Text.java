@@ -41,7 +41,6 @@ import androidx.collection.SparseArrayCompat;
 import org.drinkless.tdlib.TdApi;
 import org.thunderdog.challegram.BuildConfig;
 import org.thunderdog.challegram.Log;
-import org.thunderdog.challegram.U;
 import org.thunderdog.challegram.core.DiffMatchPatch;
 import org.thunderdog.challegram.core.Lang;
 import org.thunderdog.challegram.data.TD;
@@ -76,7 +75,6 @@ import me.vkryl.core.BitwiseUtils;
 import me.vkryl.core.ColorUtils;
 import me.vkryl.core.StringUtils;
 import me.vkryl.core.lambda.Destroyable;
-import me.vkryl.td.Td;
 
 public class Text implements Runnable, Emoji.CountLimiter, CounterAnimator.TextDrawable, ListAnimator.Measurable, Destroyable {
   public static final int FLAG_NO_TRIM = 1;
@@ -293,7 +291,7 @@ public class Text implements Runnable, Emoji.CountLimiter, CounterAnimator.TextD
     if (entities != null && entities.length > 0) {
       return entities;
     } else if (linkFlags != ENTITY_FLAGS_NONE) {
-      TdApi.TextEntity[] foundEntities = Td.findEntities(in);
+      TdApi.TextEntity[] foundEntities = TextEntityFinder.findEntities(in);
       if (foundEntities != null && foundEntities.length > 0) {
         ArrayList<TextEntity> entitiesList = null;
         int skippedCount = 0;
@@ -329,7 +327,7 @@ public class Text implements Runnable, Emoji.CountLimiter, CounterAnimator.TextD
     this.defaultTextColorSet = textColorSet;
     this.entities = entities;
     this.suffix = suffix;
-    this.suffixWidth = !StringUtils.isEmpty(suffix) ? (int) U.measureText(this.suffix, getTextPaint(null)) : 0;
+    this.suffixWidth = !StringUtils.isEmpty(suffix) ? (int) TextWidthCache.measureText(this.suffix, getTextPaint(null)) : 0;
     set(maxWidth, in);
   }
 
@@ -536,7 +534,7 @@ public class Text implements Runnable, Emoji.CountLimiter, CounterAnimator.TextD
   }
 
   public static TdApi.TextEntity[] findEntities (String in, int flags) {
-    TdApi.TextEntity[] foundEntities = Td.findEntities(in);
+    TdApi.TextEntity[] foundEntities = TextEntityFinder.findEntities(in);
     if (foundEntities != null && foundEntities.length > 0) {
       ArrayList<TdApi.TextEntity> entitiesList = null;
       int skippedCount = 0;
@@ -1613,7 +1611,7 @@ public class Text implements Runnable, Emoji.CountLimiter, CounterAnimator.TextD
       } else if (isChild) {
         fullWidth = childWidth[0];
       } else {
-        fullWidth = U.measureText(in, start, end, paint);
+        fullWidth = TextWidthCache.measureText(in, start, end, paint);
       }
     }
     futureWidth = fullWidth;
@@ -1671,7 +1669,7 @@ public class Text implements Runnable, Emoji.CountLimiter, CounterAnimator.TextD
         } else if (newEnd - currentEnd == 1 && lastCodePointWidth != -1 && lastCodePoint == codePoint) {
           charWidth = lastCodePointWidth;
         } else {
-          charWidth = U.measureText(in, currentEnd, newEnd, paint);
+          charWidth = TextWidthCache.measureText(in, currentEnd, newEnd, paint);
           if (newEnd - currentEnd == 1) {
             lastCodePoint = codePoint;
             lastCodePointWidth = charWidth;
@@ -1719,7 +1717,7 @@ public class Text implements Runnable, Emoji.CountLimiter, CounterAnimator.TextD
       boolean movedLastLine = false;
 
       float firstCodePointWidth;
-      if ((textFlags & FLAG_BOUNDS_NOT_STRICT) != 0 && in.codePointCount(start, end) == 2 && currentX + (firstCodePointWidth = U.measureText(in, start, start + 1, paint)) <= maxWidth) {
+      if ((textFlags & FLAG_BOUNDS_NOT_STRICT) != 0 && in.codePointCount(start, end) == 2 && currentX + (firstCodePointWidth = TextWidthCache.measureText(in, start, start + 1, paint)) <= maxWidth) {
         int firstCodePoint = in.codePointAt(start);
         int secondCodePoint = in.codePointAt(start + Character.charCount(firstCodePoint));
 
@@ -1855,7 +1853,7 @@ public class Text implements Runnable, Emoji.CountLimiter, CounterAnimator.TextD
         }
       }
       final String defaultEllipsis = Strings.ELLIPSIS;
-      float ellipsisWidth = U.measureText(ellipsis, getTextPaint(entity));
+      float ellipsisWidth = TextWidthCache.measureText(ellipsis, getTextPaint(entity));
       boolean addLine = false;
       if (currentX + ellipsisWidth <= lineMaxWidth || (addLine = (textFlags & Text.FLAG_ELLIPSIZE_NEWLINE) != 0 && getLineCount() == maxLineCount - 1)) {
         // Easy path: just add ellipsis
@@ -1877,7 +1875,7 @@ public class Text implements Runnable, Emoji.CountLimiter, CounterAnimator.TextD
         // Hard path: find enough place for ellipsis and place it there
         final int requiredLineIndex = lastPart.getLineIndex();
         final int minEnd = lastPart.getEnd();
-        final float defaultEllipsisWidth = U.measureText(defaultEllipsis, getTextPaint(null));
+        final float defaultEllipsisWidth = TextWidthCache.measureText(defaultEllipsis, getTextPaint(null));
 
         boolean done = false;
         do {
@@ -1890,7 +1888,7 @@ public class Text implements Runnable, Emoji.CountLimiter, CounterAnimator.TextD
               ellipsis = defaultEllipsis;
               changedEllipsis = true;
             }
-            ellipsisWidth = changedEllipsis || !lastPart.isSameEntity(entity) ? U.measureText(ellipsis, getTextPaint(lastPart.getEntity())) : ellipsisWidth;
+            ellipsisWidth = changedEllipsis || !lastPart.isSameEntity(entity) ? TextWidthCache.measureText(ellipsis, getTextPaint(lastPart.getEntity())) : ellipsisWidth;
 
             TextPart ellipsisPart = new TextPart(this, ellipsis, 0, ellipsis.length(), lastPart.getLineIndex(), lastPart.getParagraphIndex());
             ellipsisPart.setXY(currentX, currentY);
@@ -1914,7 +1912,7 @@ public class Text implements Runnable, Emoji.CountLimiter, CounterAnimator.TextD
               if (!ellipsis.endsWith(defaultEllipsis)) {
                 ellipsis += defaultEllipsis;
               }
-              ellipsisWidth = U.measureText(ellipsis, paint);
+              ellipsisWidth = TextWidthCache.measureText(ellipsis, paint);
               if (currentX + ellipsisWidth <= lineMaxWidth) {
                 lastPart.setLine(ellipsis, 0, ellipsis.length());
                 lastPart.setWidth(ellipsisWidth);
@@ -2134,7 +2132,7 @@ public class Text implements Runnable, Emoji.CountLimiter, CounterAnimator.TextD
 
   private float makeSpaceSize (Paint paint) {
     if (lastSpaceSize == 0f || lastSpacePaint != paint) {
-      lastSpaceSize = U.measureText(" ", paint);
+      lastSpaceSize = TextWidthCache.measureText(" ", paint);
       lastSpacePaint = paint;
     }
     return lastSpaceSize;
@@ -0,0 +1,188 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 18:25
+ */
+package org.thunderdog.challegram.util.text;
+
+import android.util.LruCache;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.Nullable;
+
+import org.drinkless.tdlib.TdApi;
+
+import java.util.ArrayList;
+
+import me.vkryl.core.lambda.Filter;
+import me.vkryl.td.Td;
+
+/**
+ * Cached replacement for {@link Td#findEntities(String)}.
+ *
+ * Texts that cannot contain any entity TDLib detects are answered without calling TDLib,
+ * results for other texts are kept in a small LRU cache, as the same texts
+ * (bios, descriptions, set titles) are usually scanned again soon.
+ *
+ * Callers receive their own copies of entities, including their types, so they are free to modify them.
+ * Results with entity types that cannot be copied here are not cached.
+ */
+public final class TextEntityFinder {
+  private static final int CACHE_SIZE = 128;
+  private static final int MAX_CACHED_LENGTH = 4096;
+  private static final TdApi.TextEntity[] NO_ENTITIES = new TdApi.TextEntity[0];
+
+  private static final LruCache<String, TdApi.TextEntity[]> cache = new LruCache<>(CACHE_SIZE);
+
+  private TextEntityFinder () { }
+
+  /**
+   * @return Entities found in {@code in}, or {@code null}, if there are none.
+   */
+  @AnyThread
+  @Nullable
+  public static TdApi.TextEntity[] findEntities (String in) {
+    if (in == null || in.isEmpty() || !mayContainEntities(in)) {
+      return null;
+    }
+    boolean cacheable = in.length() <= MAX_CACHED_LENGTH;
+    TdApi.TextEntity[] entities = cacheable ? cache.get(in) : null;
+    if (entities == null) {
+      entities = Td.findEntities(in);
+      if (entities == null) {
+        entities = NO_ENTITIES;
+      }
+      if (!cacheable || !canCopy(entities)) {
+        // Nobody else has seen them
+        return entities.length > 0 ? entities : null;
+      }
+      cache.put(in, entities);
+    }
+    return copyOf(entities, null);
+  }
+
+  @AnyThread
+  @Nullable
+  public static TdApi.TextEntity[] findEntities (String in, Filter<TdApi.TextEntity> filter) {
+    TdApi.TextEntity[] entities = findEntities(in);
+    return entities != null ? copyOf(entities, filter) : null;
+  }
+
+  @Nullable
+  private static TdApi.TextEntity[] copyOf (TdApi.TextEntity[] entities, @Nullable Filter<TdApi.TextEntity> filter) {
+    if (entities.length == 0) {
+      return null;
+    }
+    if (filter != null) {
+      // Entities are already copied
+      ArrayList<TdApi.TextEntity> accepted = null;
+      for (TdApi.TextEntity entity : entities) {
+        if (filter.accept(entity)) {
+          if (accepted == null)
+            accepted = new ArrayList<>(entities.length);
+          accepted.add(entity);
+        }
+      }
+      return accepted != null ? accepted.toArray(new TdApi.TextEntity[0]) : null;
+    }
+    TdApi.TextEntity[] copy = new TdApi.TextEntity[entities.length];
+    for (int i = 0; i < entities.length; i++) {
+      TdApi.TextEntity entity = entities[i];
+      copy[i] = new TdApi.TextEntity(entity.offset, entity.length, copyOf(entity.type));
+    }
+    return copy;
+  }
+
+  private static boolean canCopy (TdApi.TextEntity[] entities) {
+    for (TdApi.TextEntity entity : entities) {
+      if (copyOf(entity.type) == null)
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * @return Copy of {@code type}, or {@code null}, if it is of a type this class doesn't know
+   */
+  @Nullable
+  static TdApi.TextEntityType copyOf (TdApi.TextEntityType type) {
+    switch (type.getConstructor()) {
+      // Found in plain text
+      case TdApi.TextEntityTypeMention.CONSTRUCTOR:
+        return new TdApi.TextEntityTypeMention();
+      case TdApi.TextEntityTypeHashtag.CONSTRUCTOR:
+        return new TdApi.TextEntityTypeHashtag();
+      case TdApi.TextEntityTypeCashtag.CONSTRUCTOR:
+        return new TdApi.TextEntityTypeCashtag();
+      case TdApi.TextEntityTypeBotCommand.CONSTRUCTOR:
+        return new TdApi.TextEntityTypeBotCommand();
+      case TdApi.TextEntityTypeUrl.CONSTRUCTOR:
+        return new TdApi.TextEntityTypeUrl();
+      case TdApi.TextEntityTypeEmailAddress.CONSTRUCTOR:
+        return new TdApi.TextEntityTypeEmailAddress();
+      case TdApi.TextEntityTypePhoneNumber.CONSTRUCTOR:
+        return new TdApi.TextEntityTypePhoneNumber();
+      case TdApi.TextEntityTypeBankCardNumber.CONSTRUCTOR:
+        return new TdApi.TextEntityTypeBankCardNumber();
+      // With arguments
+      case TdApi.TextEntityTypeTextUrl.CONSTRUCTOR:
+        return new TdApi.TextEntityTypeTextUrl(((TdApi.TextEntityTypeTextUrl) type).url);
+      case TdApi.TextEntityTypeMentionName.CONSTRUCTOR:
+        return new TdApi.TextEntityTypeMentionName(((TdApi.TextEntityTypeMentionName) type).userId);
+      case TdApi.TextEntityTypePreCode.CONSTRUCTOR:
+        return new TdApi.TextEntityTypePreCode(((TdApi.TextEntityTypePreCode) type).language);
+      case TdApi.TextEntityTypeCustomEmoji.CONSTRUCTOR:
+        return new TdApi.TextEntityTypeCustomEmoji(((TdApi.TextEntityTypeCustomEmoji) type).customEmojiId);
+      case TdApi.TextEntityTypeMediaTimestamp.CONSTRUCTOR:
+        return new TdApi.TextEntityTypeMediaTimestamp(((TdApi.TextEntityTypeMediaTimestamp) type).mediaTimestamp);
+    }
+    return null;
+  }
+
+  /**
+   * Every entity TDLib finds in a plain text needs at least one of
+   * '@', '#', '$', '/', '.', ':' or a digit. Only letters, whitespace, symbols
+   * and a few other ASCII punctuation characters are accepted here,
+   * so anything unusual is still passed to TDLib.
+   */
+  static boolean mayContainEntities (String in) {
+    final int length = in.length();
+    for (int i = 0; i < length; i++) {
+      char c = in.charAt(i);
+      if (c < 0x80) {
+        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == ' ' || c == '\n') {
+          continue;
+        }
+        switch (c) {
+          case ',': case '!': case '?': case '\'': case '"': case '(': case ')':
+          case '-': case ';': case '*': case '&': case '%': case '^': case '~':
+          case '_': case '+': case '=': case '[': case ']': case '{': case '}':
+          case '<': case '>': case '|': case '\\': case '`': case '\t': case '\r':
+            continue;
+        }
+        return true;
+      }
+      if (Character.isLetter(c) || Character.isWhitespace(c) || Character.isSurrogate(c)) {
+        continue;
+      }
+      switch (Character.getType(c)) {
+        case Character.OTHER_SYMBOL:
+        case Character.NON_SPACING_MARK:
+        case Character.ENCLOSING_MARK:
+        case Character.COMBINING_SPACING_MARK:
+          continue;
+      }
+      return true;
+    }
+    return false;
+  }
+}
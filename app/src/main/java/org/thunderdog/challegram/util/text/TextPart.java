@@ -24,7 +24,6 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import org.drinkless.tdlib.TdApi;
-import org.thunderdog.challegram.U;
 import org.thunderdog.challegram.core.Lang;
 import org.thunderdog.challegram.emoji.Emoji;
 import org.thunderdog.challegram.emoji.EmojiInfo;
@@ -215,11 +214,11 @@ public class TextPart {
   public void trimContents (float realMaxWidth) {
     this.trimmedMaxWidth = realMaxWidth;
     TextPaint paint = source.getTextPaint(entity);
-    int ellipsis = (int) U.measureText("…", paint);
+    int ellipsis = (int) TextWidthCache.measureText("…", paint);
     int maxWidth = (int) realMaxWidth - ellipsis - x;
     trimmedLine = line.substring(start, end);
     trimmedLine = TextUtils.ellipsize(trimmedLine, paint, maxWidth, TextUtils.TruncateAt.END).toString();
-    trimmedWidth = U.measureText(trimmedLine, paint);
+    trimmedWidth = TextWidthCache.measureText(trimmedLine, paint);
     if (!trimmedLine.endsWith("…")) {
       trimmedLine = trimmedLine + "…";
       trimmedWidth += ellipsis;
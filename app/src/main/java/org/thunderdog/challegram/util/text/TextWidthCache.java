@@ -0,0 +1,270 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 12:10
+ */
+package org.thunderdog.challegram.util.text;
+
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.thunderdog.challegram.U;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Shared bounded cache of text advances, keyed by paint parameters that affect the advance
+ * (typeface, text size, fake-bold, letter spacing, horizontal scale, locale), the string and neighbouring characters.
+ *
+ * Only short runs are cached: usernames, timestamps and common words are measured
+ * over and over again while scrolling, while long runs rarely repeat.
+ *
+ * Cached runs are measured with one code point of context on each side. That is enough for kerning
+ * between simple characters, but not for clusters of several code points (combining marks, joiners,
+ * emoji sequences) or scripts with contextual shaping, so runs that contain or touch such characters
+ * are not cached and are measured with the whole text as context.
+ */
+public final class TextWidthCache {
+  public static final int MAX_CACHED_LENGTH = 32;
+  private static final int MAX_ENTRY_COUNT = 4096;
+
+  private static final class Key {
+    private Typeface typeface;
+    private float textSize;
+    private boolean fakeBold;
+    private float letterSpacing, textScaleX;
+    private Locale locale;
+    private CharSequence text;
+    private int contextStart, start, end, contextEnd;
+    private int hashCode;
+
+    Key () { }
+
+    Key (Key copy) {
+      this.typeface = copy.typeface;
+      this.textSize = copy.textSize;
+      this.fakeBold = copy.fakeBold;
+      this.letterSpacing = copy.letterSpacing;
+      this.textScaleX = copy.textScaleX;
+      this.locale = copy.locale;
+      this.text = copy.text.subSequence(copy.contextStart, copy.contextEnd).toString();
+      this.contextStart = 0;
+      this.start = copy.start - copy.contextStart;
+      this.end = copy.end - copy.contextStart;
+      this.contextEnd = this.text.length();
+      this.hashCode = copy.hashCode;
+    }
+
+    /**
+     * @return {@code false}, if the run can't be cached. Key must be cleared in this case as well.
+     */
+    boolean set (@NonNull Paint paint, @NonNull CharSequence text, int start, int end) {
+      this.typeface = paint.getTypeface();
+      this.textSize = paint.getTextSize();
+      this.fakeBold = paint.isFakeBoldText();
+      this.letterSpacing = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP ? paint.getLetterSpacing() : 0f;
+      this.textScaleX = paint.getTextScaleX();
+      this.locale = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1 ? paint.getTextLocale() : null;
+      this.text = text;
+      this.contextStart = start > 0 ? start - Character.charCount(Character.codePointBefore(text, start)) : start;
+      this.start = start;
+      this.end = end;
+      this.contextEnd = end < text.length() ? end + Character.charCount(Character.codePointAt(text, end)) : end;
+      if (contextEnd < text.length() && !isSimple(text.charAt(contextEnd))) {
+        // Following mark or joiner may change the glyph of the trailing context character
+        return false;
+      }
+      int hashCode = typeface != null ? typeface.hashCode() : 0;
+      hashCode = 31 * hashCode + Float.floatToIntBits(textSize);
+      hashCode = 31 * hashCode + (fakeBold ? 1 : 0);
+      hashCode = 31 * hashCode + Float.floatToIntBits(letterSpacing);
+      hashCode = 31 * hashCode + Float.floatToIntBits(textScaleX);
+      hashCode = 31 * hashCode + (locale != null ? locale.hashCode() : 0);
+      hashCode = 31 * hashCode + (start - contextStart);
+      for (int i = contextStart; i < contextEnd; i++) {
+        char c = text.charAt(i);
+        if (!isSimple(c))
+          return false;
+        hashCode = 31 * hashCode + c;
+      }
+      this.hashCode = hashCode;
+      return true;
+    }
+
+    float measure (@NonNull Paint paint) {
+      return U.measureText(text, start, end, contextStart, contextEnd, paint);
+    }
+
+    void clear () {
+      this.typeface = null;
+      this.locale = null;
+      this.text = null;
+    }
+
+    @Override
+    public boolean equals (@Nullable Object obj) {
+      if (obj == this)
+        return true;
+      if (!(obj instanceof Key))
+        return false;
+      Key other = (Key) obj;
+      if (other.hashCode != hashCode || other.typeface != typeface || other.fakeBold != fakeBold || Float.compare(other.textSize, textSize) != 0 ||
+        Float.compare(other.letterSpacing, letterSpacing) != 0 || Float.compare(other.textScaleX, textScaleX) != 0 ||
+        (locale != null ? !locale.equals(other.locale) : other.locale != null) ||
+        other.start - other.contextStart != start - contextStart ||
+        other.end - other.start != end - start ||
+        other.contextEnd - other.contextStart != contextEnd - contextStart)
+        return false;
+      for (int i = 0; i < contextEnd - contextStart; i++) {
+        if (text.charAt(contextStart + i) != other.text.charAt(other.contextStart + i))
+          return false;
+      }
+      return true;
+    }
+
+    @Override
+    public int hashCode () {
+      return hashCode;
+    }
+  }
+
+  /**
+   * @return Whether the character is shaped on its own, so one code point of context is enough to measure it:
+   * it is not a part of a surrogate pair, not a mark or a joiner, and belongs to a script without contextual forms.
+   */
+  static boolean isSimple (char c) {
+    if (c < 0x300) {
+      // Latin, Latin-1 and Latin Extended, IPA, spacing modifier letters
+      return true;
+    }
+    switch (Character.getType(c)) {
+      case Character.NON_SPACING_MARK:
+      case Character.ENCLOSING_MARK:
+      case Character.COMBINING_SPACING_MARK:
+      case Character.FORMAT:
+      case Character.SURROGATE:
+      case Character.PRIVATE_USE:
+      case Character.UNASSIGNED:
+        return false;
+    }
+    Character.UnicodeBlock block = Character.UnicodeBlock.of(c);
+    return
+      block == Character.UnicodeBlock.GREEK ||
+      block == Character.UnicodeBlock.CYRILLIC ||
+      block == Character.UnicodeBlock.CYRILLIC_SUPPLEMENTARY ||
+      block == Character.UnicodeBlock.ARMENIAN ||
+      block == Character.UnicodeBlock.GEORGIAN ||
+      block == Character.UnicodeBlock.LATIN_EXTENDED_ADDITIONAL ||
+      block == Character.UnicodeBlock.GENERAL_PUNCTUATION ||
+      block == Character.UnicodeBlock.CURRENCY_SYMBOLS ||
+      block == Character.UnicodeBlock.LETTERLIKE_SYMBOLS ||
+      block == Character.UnicodeBlock.NUMBER_FORMS ||
+      block == Character.UnicodeBlock.ARROWS ||
+      block == Character.UnicodeBlock.MATHEMATICAL_OPERATORS ||
+      block == Character.UnicodeBlock.CJK_SYMBOLS_AND_PUNCTUATION ||
+      block == Character.UnicodeBlock.HIRAGANA ||
+      block == Character.UnicodeBlock.KATAKANA ||
+      block == Character.UnicodeBlock.HANGUL_SYLLABLES ||
+      block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS ||
+      block == Character.UnicodeBlock.HALFWIDTH_AND_FULLWIDTH_FORMS;
+  }
+
+  private static final Key lookupKey = new Key();
+  private static final LinkedHashMap<Key, Float> widths = new LinkedHashMap<Key, Float>(256, .75f, true) {
+    @Override
+    protected boolean removeEldestEntry (Map.Entry<Key, Float> eldest) {
+      return size() > MAX_ENTRY_COUNT;
+    }
+  };
+
+  private static long hitCount, missCount, uncachedCount;
+
+  private TextWidthCache () { }
+
+  public static float measureText (@Nullable CharSequence in, @NonNull Paint paint) {
+    return in == null ? 0 : measureText(in, 0, in.length(), paint);
+  }
+
+  public static float measureText (@Nullable CharSequence in, int start, int end, @NonNull Paint paint) {
+    final int count = end - start;
+    if (in == null || count <= 0) {
+      return 0;
+    }
+    if (count > MAX_CACHED_LENGTH) {
+      return U.measureText(in, start, end, paint);
+    }
+    final Key key;
+    synchronized (widths) {
+      if (!lookupKey.set(paint, in, start, end)) {
+        lookupKey.clear();
+        uncachedCount++;
+        return U.measureText(in, start, end, paint);
+      }
+      Float width = widths.get(lookupKey);
+      if (width != null) {
+        hitCount++;
+        lookupKey.clear();
+        return width;
+      }
+      missCount++;
+      key = new Key(lookupKey);
+      lookupKey.clear();
+    }
+    // Measured outside of the lock, so concurrent layouts are not blocked by a slow measurement.
+    // Concurrent misses of the same run may measure it twice, which is harmless.
+    float result = key.measure(paint);
+    synchronized (widths) {
+      widths.put(key, result);
+    }
+    return result;
+  }
+
+  public static void clear () {
+    synchronized (widths) {
+      widths.clear();
+      hitCount = missCount = uncachedCount = 0;
+    }
+  }
+
+  public static int size () {
+    synchronized (widths) {
+      return widths.size();
+    }
+  }
+
+  public static long getHitCount () {
+    synchronized (widths) {
+      return hitCount;
+    }
+  }
+
+  public static long getMissCount () {
+    synchronized (widths) {
+      return missCount;
+    }
+  }
+
+  /**
+   * @return Number of short runs that were measured without the cache, because they contain or touch characters that are not {@link #isSimple(char) simple}
+   */
+  public static long getUncachedCount () {
+    synchronized (widths) {
+      return uncachedCount;
+    }
+  }
+}
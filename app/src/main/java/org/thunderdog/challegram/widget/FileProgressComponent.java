@@ -1619,6 +1619,10 @@ public class FileProgressComponent implements TdlibFilesManager.FileListener, Fa
 
   @Override
   public void onFileLoadProgress (TdApi.File file) {
+    if (this.file == null || this.file.id != file.id) {
+      // Component was bound to another file after the event was queued
+      return;
+    }
     boolean triggerGenerationFinish = !isDownloaded && file.local.isDownloadingCompleted;
     Td.copyTo(file, this.file);
     final float progress = TD.getFileProgress(file);
@@ -1634,6 +1638,9 @@ public class FileProgressComponent implements TdlibFilesManager.FileListener, Fa
 
   @Override
   public void onFileLoadStateChanged (Tdlib tdlib, int fileId, @TdlibFilesManager.FileDownloadState int state, @Nullable TdApi.File downloadedFile) {
+    if (file == null || file.id != fileId) {
+      return;
+    }
     boolean isUI = Looper.getMainLooper() == Looper.myLooper();
     if (state == TdlibFilesManager.STATE_DOWNLOADED_OR_UPLOADED) {
       if (downloadedFile != null) {
@@ -410,6 +410,12 @@ public class TextFormattingLayout extends FrameLayout implements TranslationsMan
     return originalTextToTranslate;
   }
 
+  @Override
+  public boolean canPersistTranslation () {
+    // Text being composed is not written to disk
+    return false;
+  }
+
   /* * */
 
   private static int checkSpans (TdApi.FormattedText text, int start, int end) {
@@ -0,0 +1,175 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 23:59
+ */
+package org.thunderdog.challegram.component.chat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Replays simulated scroll traces the way {@link MessagesManager} and {@link MessagesLoader} drive
+ * {@link HistoryPrefetchController}, and counts how many times the user reaches the edge of loaded messages.
+ */
+public class HistoryPrefetchControllerTest {
+  // Same as in MessagesManager and MessagesLoader
+  private static final int MIN_PREFETCH_DISTANCE = 10; // TOP_PRELOAD_COUNT
+  private static final int MIN_CHUNK_SIZE = 50; // CHUNK_SIZE_BIG
+
+  private static final int INITIAL_ITEM_COUNT = 50;
+  private static final long FRAME_MS = 16;
+
+  private interface ScrollTrace {
+    /**
+     * @return Desired scroll velocity towards older messages in items per second.
+     */
+    float getVelocity (long timeMs);
+  }
+
+  private static final class Result {
+    int edgeHitCount;
+    long lastEdgeHitTime = -1;
+    int requestCount;
+    long lastRequestTime = -1;
+    float scrolledItems;
+  }
+
+  private static Result simulate (ScrollTrace trace, long durationMs, long latencyMs, boolean adaptive) {
+    HistoryPrefetchController prefetch = new HistoryPrefetchController();
+    Result result = new Result();
+    int loadedCount = INITIAL_ITEM_COUNT;
+    float position = 0; // Index of the last visible item
+    boolean atEdge = false;
+    long requestFinishTime = -1;
+    int pendingChunkSize = 0;
+
+    for (long time = 0; time <= durationMs; time += FRAME_MS) {
+      if (requestFinishTime != -1 && time >= requestFinishTime) {
+        loadedCount += pendingChunkSize;
+        prefetch.onRequestFinished(latencyMs);
+        requestFinishTime = -1;
+      }
+
+      float wantedItems = trace.getVelocity(time) * FRAME_MS / 1000f;
+      float scrolledItems = Math.min(wantedItems, loadedCount - 1 - position);
+      if (wantedItems > 0 && scrolledItems < wantedItems) {
+        if (!atEdge) {
+          result.edgeHitCount++;
+          result.lastEdgeHitTime = time;
+          atEdge = true;
+        }
+      } else {
+        atEdge = false;
+      }
+      if (scrolledItems > 0) {
+        position += scrolledItems;
+        result.scrolledItems += scrolledItems;
+        prefetch.onScroll(time, scrolledItems);
+      }
+
+      int distance = adaptive ? prefetch.getPrefetchDistance(time, true, MIN_PREFETCH_DISTANCE) : MIN_PREFETCH_DISTANCE;
+      if (requestFinishTime == -1 && position + distance >= loadedCount) {
+        pendingChunkSize = adaptive ? prefetch.getChunkSize(time, true, MIN_CHUNK_SIZE) : MIN_CHUNK_SIZE;
+        requestFinishTime = time + latencyMs;
+        result.requestCount++;
+        result.lastRequestTime = time;
+      }
+    }
+    return result;
+  }
+
+  private static ScrollTrace constant (float velocity) {
+    return timeMs -> velocity;
+  }
+
+  private static final long DURATION_MS = 20_000;
+  private static final long WARMUP_MS = 3_000;
+  private static final int MAX_WARMUP_EDGE_HIT_COUNT = 3;
+
+  // Velocity in items per second and request latency, at which MAX_CHUNK_SIZE is enough to keep up
+  private static final long[][] SUSTAINABLE = {
+    {60, 150}, {60, 400}, {150, 150}, {150, 400}, {400, 50}, {400, 150}
+  };
+  private static final long[][] ALL = {
+    {20, 50}, {20, 400}, {20, 1000},
+    {60, 50}, {60, 150}, {60, 400}, {60, 1000},
+    {150, 50}, {150, 150}, {150, 400}, {150, 1000},
+    {400, 50}, {400, 150}, {400, 400}, {400, 1000}
+  };
+
+  @Test
+  public void sustainableScrollReachesEdgeOnlyWhileWarmingUp () {
+    for (long[] c : SUSTAINABLE) {
+      Result adaptive = simulate(constant(c[0]), DURATION_MS, c[1], true);
+      Result fixed = simulate(constant(c[0]), DURATION_MS, c[1], false);
+      String message = "velocity: " + c[0] + ", latency: " + c[1];
+      assertTrue(message, adaptive.edgeHitCount <= MAX_WARMUP_EDGE_HIT_COUNT);
+      assertTrue(message, adaptive.lastEdgeHitTime < WARMUP_MS);
+      assertTrue(message, adaptive.edgeHitCount <= fixed.edgeHitCount);
+    }
+  }
+
+  @Test
+  public void adaptiveNeverScrollsLessThanFixed () {
+    for (long[] c : ALL) {
+      Result adaptive = simulate(constant(c[0]), DURATION_MS, c[1], true);
+      Result fixed = simulate(constant(c[0]), DURATION_MS, c[1], false);
+      assertTrue("velocity: " + c[0] + ", latency: " + c[1], adaptive.scrolledItems >= fixed.scrolledItems - 1f);
+    }
+  }
+
+  @Test
+  public void slowScrollUsesMinimums () {
+    Result adaptive = simulate(constant(20), DURATION_MS, 150, true);
+    Result fixed = simulate(constant(20), DURATION_MS, 150, false);
+    assertEquals(0, adaptive.edgeHitCount);
+    assertEquals(fixed.requestCount, adaptive.requestCount);
+  }
+
+  @Test
+  public void noRequestsAfterFlingStops () {
+    final long flingMs = 1500;
+    ScrollTrace fling = timeMs -> Math.max(0f, 600f * (1f - (float) timeMs / flingMs));
+    Result result = simulate(fling, 10_000, 150, true);
+    assertTrue(result.requestCount > 0);
+    assertTrue(result.lastRequestTime <= flingMs);
+  }
+
+  @Test
+  public void velocityResetsAfterPause () {
+    HistoryPrefetchController prefetch = new HistoryPrefetchController();
+    for (long time = 0; time <= 1000; time += FRAME_MS) {
+      prefetch.onScroll(time, 4f);
+    }
+    assertTrue(prefetch.getVelocity(1000, true) > 0);
+    assertEquals(0f, prefetch.getVelocity(1000, false), 0f);
+    assertTrue(prefetch.getPrefetchDistance(1000, true, MIN_PREFETCH_DISTANCE) > MIN_PREFETCH_DISTANCE);
+
+    assertEquals(0f, prefetch.getVelocity(1400, true), 0f);
+    assertEquals(MIN_PREFETCH_DISTANCE, prefetch.getPrefetchDistance(1400, true, MIN_PREFETCH_DISTANCE));
+    assertEquals(MIN_CHUNK_SIZE, prefetch.getChunkSize(1400, true, MIN_CHUNK_SIZE));
+  }
+
+  @Test
+  public void chunkSizeAndDistanceAreCapped () {
+    HistoryPrefetchController prefetch = new HistoryPrefetchController();
+    prefetch.onRequestFinished(60_000);
+    for (long time = 0; time <= 1000; time += FRAME_MS) {
+      prefetch.onScroll(time, 100f);
+    }
+    assertEquals(HistoryPrefetchController.MAX_CHUNK_SIZE, prefetch.getChunkSize(1000, true, MIN_CHUNK_SIZE));
+    assertEquals(HistoryPrefetchController.MAX_CHUNK_SIZE, prefetch.getPrefetchDistance(1000, true, MIN_PREFETCH_DISTANCE));
+  }
+}
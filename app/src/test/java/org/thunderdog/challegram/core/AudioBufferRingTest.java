@@ -0,0 +1,192 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 23:40
+ */
+package org.thunderdog.challegram.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class AudioBufferRingTest {
+  private static final int BUFFER_SIZE = 64;
+
+  private static void fill (Audio.AudioBuffer buffer, int seekCount, long position, boolean finished) {
+    ByteBuffer data = ByteBuffer.wrap(buffer.bufferBytes);
+    while (data.remaining() >= 12) {
+      data.putInt(seekCount);
+      data.putLong(position);
+    }
+    buffer.size = BUFFER_SIZE;
+    buffer.pcmOffset = position;
+    buffer.finished = finished ? 1 : 0;
+  }
+
+  @Test
+  public void fullRingRejectsWriter () {
+    Audio.AudioBufferRing ring = new Audio.AudioBufferRing(4, BUFFER_SIZE);
+    for (int i = 0; i < 4; i++) {
+      Audio.AudioBuffer buffer = ring.acquire();
+      assertNotNull(buffer);
+      fill(buffer, 0, i, false);
+      ring.publish();
+    }
+    assertNull(ring.acquire());
+    Audio.AudioBuffer buffer = ring.poll();
+    assertNotNull(buffer);
+    assertEquals(0, buffer.pcmOffset);
+    ring.release();
+    assertNotNull(ring.acquire());
+  }
+
+  @Test
+  public void seekSkipsBuffersDecodedBefore () {
+    Audio.AudioBufferRing ring = new Audio.AudioBufferRing(4, BUFFER_SIZE);
+    for (int i = 0; i < 3; i++) {
+      fill(ring.acquire(), 0, i, false);
+      ring.publish();
+    }
+    ring.invalidate();
+    assertNull(ring.poll());
+    assertTrue(ring.isEmpty());
+
+    fill(ring.acquire(), 1, 100, false);
+    ring.publish();
+    Audio.AudioBuffer buffer = ring.poll();
+    assertNotNull(buffer);
+    assertEquals(100, buffer.pcmOffset);
+    assertSame(buffer, ring.poll());
+  }
+
+  @Test
+  public void seekBetweenAcquireAndPublishDropsBuffer () {
+    Audio.AudioBufferRing ring = new Audio.AudioBufferRing(4, BUFFER_SIZE);
+    Audio.AudioBuffer buffer = ring.acquire();
+    ring.invalidate();
+    fill(buffer, 0, 0, false);
+    ring.publish();
+    assertNull(ring.poll());
+  }
+
+  /**
+   * Decoder and player run on separate threads, the decoder seeks at random points, as in {@link Audio}.
+   *
+   * Player must never see a buffer being overwritten, must never go back to a position decoded before a seek
+   * it has already observed, and must play every buffer of a position range without gaps.
+   */
+  @Test
+  public void interleavedDecodePlaySeek () throws InterruptedException {
+    final int operationCount = 200_000;
+    final Audio.AudioBufferRing ring = new Audio.AudioBufferRing(4, BUFFER_SIZE);
+    final ConcurrentHashMap<Integer, Long> seekTargets = new ConcurrentHashMap<>();
+    final AtomicReference<Throwable> playerError = new AtomicReference<>();
+    seekTargets.put(0, 0L);
+
+    final int[] finalSeekCount = new int[1];
+    Thread decoder = new Thread(() -> {
+      Random random = new Random(41);
+      int seekCount = 0;
+      long position = 0;
+      for (int i = 0; i < operationCount; i++) {
+        if (random.nextInt(100) == 0) {
+          seekCount++;
+          position = random.nextInt(1_000_000);
+          seekTargets.put(seekCount, position);
+          ring.invalidate();
+          continue;
+        }
+        Audio.AudioBuffer buffer = ring.acquire();
+        if (buffer == null) {
+          Thread.yield();
+          continue;
+        }
+        fill(buffer, seekCount, position++, false);
+        ring.publish();
+      }
+      Audio.AudioBuffer buffer;
+      while ((buffer = ring.acquire()) == null) {
+        Thread.yield();
+      }
+      fill(buffer, seekCount, position, true);
+      ring.publish();
+      finalSeekCount[0] = seekCount;
+    }, "decoder");
+
+    final long[] playedCount = new long[1];
+    Thread player = new Thread(() -> {
+      int lastSeekCount = -1;
+      long lastPosition = -1;
+      try {
+        while (true) {
+          Audio.AudioBuffer buffer = ring.poll();
+          if (buffer == null) {
+            Thread.yield();
+            continue;
+          }
+          ByteBuffer data = ByteBuffer.wrap(buffer.bufferBytes);
+          final int seekCount = data.getInt();
+          final long position = data.getLong();
+          while (data.remaining() >= 12) {
+            if (data.getInt() != seekCount || data.getLong() != position)
+              throw new AssertionError("Buffer was modified while being played");
+          }
+          if (position != buffer.pcmOffset)
+            throw new AssertionError("pcmOffset: " + buffer.pcmOffset + ", position: " + position);
+          if (seekCount < lastSeekCount)
+            throw new AssertionError("Went back from seek " + lastSeekCount + " to " + seekCount);
+          if (seekCount == lastSeekCount) {
+            if (position != lastPosition + 1)
+              throw new AssertionError("Gap after " + lastPosition + ": " + position);
+          } else {
+            Long target = seekTargets.get(seekCount);
+            if (target == null || position != target)
+              throw new AssertionError("Seek " + seekCount + " started at " + position + ", expected: " + target);
+          }
+          lastSeekCount = seekCount;
+          lastPosition = position;
+          playedCount[0]++;
+          final boolean finished = buffer.finished == 1;
+          ring.release();
+          if (finished)
+            break;
+        }
+      } catch (Throwable t) {
+        playerError.set(t);
+      }
+    }, "player");
+
+    player.start();
+    decoder.start();
+    decoder.join(30_000);
+    player.join(30_000);
+    if (playerError.get() != null) {
+      throw new AssertionError(playerError.get());
+    }
+    if (decoder.isAlive() || player.isAlive()) {
+      fail("Decoder or player got stuck");
+    }
+    assertTrue(finalSeekCount[0] > 0);
+    assertTrue(playedCount[0] > 0);
+    assertTrue(ring.isEmpty());
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 23:59
+ */
+package org.thunderdog.challegram.core;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class MemoryGovernorTest {
+  private static final long MB = 1024 * 1024;
+
+  /**
+   * Behaves like caches in the app: shrinks to a half, a quarter, or releases everything.
+   */
+  private static final class FakeCache implements MemoryGovernor.Trimmable {
+    final String name;
+    final List<String> log;
+    long bytes;
+    final ArrayList<Integer> stages = new ArrayList<>();
+
+    FakeCache (String name, long bytes, List<String> log) {
+      this.name = name;
+      this.bytes = bytes;
+      this.log = log;
+    }
+
+    @Override
+    public void trimMemory (int stage) {
+      stages.add(stage);
+      log.add(name);
+      switch (stage) {
+        case MemoryGovernor.Stage.LIGHT:
+          bytes /= 2;
+          break;
+        case MemoryGovernor.Stage.MODERATE:
+          bytes /= 4;
+          break;
+        case MemoryGovernor.Stage.SEVERE:
+          bytes = 0;
+          break;
+        default:
+          throw new IllegalArgumentException(Integer.toString(stage));
+      }
+    }
+
+    @Override
+    public long getMemoryUsage () {
+      return bytes;
+    }
+  }
+
+  private final ArrayList<String> log = new ArrayList<>();
+  private final MemoryGovernor governor = new MemoryGovernor();
+  private final FakeCache low = new FakeCache("low", 8 * MB, log);
+  private final FakeCache normal = new FakeCache("normal", 8 * MB, log);
+  private final FakeCache high = new FakeCache("high", 8 * MB, log);
+
+  private void registerAll () {
+    // Registration order differs from priority order on purpose
+    governor.register("high", high, MemoryGovernor.Priority.HIGH);
+    governor.register("low", low, MemoryGovernor.Priority.LOW);
+    governor.register("normal", normal, MemoryGovernor.Priority.NORMAL);
+  }
+
+  private void assertBytes (long lowBytes, long normalBytes, long highBytes) {
+    assertEquals("low", lowBytes, low.bytes);
+    assertEquals("normal", normalBytes, normal.bytes);
+    assertEquals("high", highBytes, high.bytes);
+    assertEquals("total", lowBytes + normalBytes + highBytes, governor.getMemoryUsage());
+  }
+
+  @Test
+  public void trimLevelToStage () {
+    assertEquals(MemoryGovernor.Stage.NONE, MemoryGovernor.toStage(0));
+    assertEquals(MemoryGovernor.Stage.LIGHT, MemoryGovernor.toStage(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE));
+    assertEquals(MemoryGovernor.Stage.MODERATE, MemoryGovernor.toStage(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW));
+    assertEquals(MemoryGovernor.Stage.SEVERE, MemoryGovernor.toStage(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL));
+    assertEquals(MemoryGovernor.Stage.LIGHT, MemoryGovernor.toStage(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN));
+    assertEquals(MemoryGovernor.Stage.MODERATE, MemoryGovernor.toStage(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND));
+    assertEquals(MemoryGovernor.Stage.SEVERE, MemoryGovernor.toStage(ComponentCallbacks2.TRIM_MEMORY_MODERATE));
+    assertEquals(MemoryGovernor.Stage.SEVERE, MemoryGovernor.toStage(ComponentCallbacks2.TRIM_MEMORY_COMPLETE));
+  }
+
+  @Test
+  public void lightStageTrimsOnlyLowPriority () {
+    registerAll();
+    governor.dispatch(MemoryGovernor.Stage.LIGHT);
+    assertBytes(4 * MB, 8 * MB, 8 * MB);
+    assertEquals(Arrays.asList(MemoryGovernor.Stage.LIGHT), low.stages);
+    assertEquals(0, normal.stages.size());
+    assertEquals(0, high.stages.size());
+  }
+
+  @Test
+  public void moderateStage () {
+    registerAll();
+    governor.dispatch(MemoryGovernor.Stage.MODERATE);
+    assertBytes(2 * MB, 4 * MB, 8 * MB);
+    assertEquals(Arrays.asList(MemoryGovernor.Stage.MODERATE), low.stages);
+    assertEquals(Arrays.asList(MemoryGovernor.Stage.LIGHT), normal.stages);
+    assertEquals(0, high.stages.size());
+  }
+
+  @Test
+  public void severeStageTrimsEverything () {
+    registerAll();
+    governor.dispatch(MemoryGovernor.Stage.SEVERE);
+    assertBytes(0, 2 * MB, 4 * MB);
+    assertEquals(Arrays.asList(MemoryGovernor.Stage.SEVERE), low.stages);
+    assertEquals(Arrays.asList(MemoryGovernor.Stage.MODERATE), normal.stages);
+    assertEquals(Arrays.asList(MemoryGovernor.Stage.LIGHT), high.stages);
+    // Cheap to restore caches shrink first
+    assertEquals(Arrays.asList("low", "normal", "high"), log);
+  }
+
+  @Test
+  public void noneStageDoesNothing () {
+    registerAll();
+    governor.dispatch(MemoryGovernor.Stage.NONE);
+    assertBytes(8 * MB, 8 * MB, 8 * MB);
+    assertEquals(0, log.size());
+  }
+
+  @Test
+  public void simulatedTrimLevels () {
+    registerAll();
+    int[] levels = {
+      ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE,
+      ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW,
+      ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN,
+      ComponentCallbacks2.TRIM_MEMORY_BACKGROUND,
+      ComponentCallbacks2.TRIM_MEMORY_COMPLETE
+    };
+    long[][] expected = {
+      {4 * MB, 8 * MB, 8 * MB},
+      {MB, 4 * MB, 8 * MB},
+      {MB / 2, 4 * MB, 8 * MB},
+      {MB / 8, 2 * MB, 8 * MB},
+      {0, MB / 2, 4 * MB}
+    };
+    for (int i = 0; i < levels.length; i++) {
+      governor.dispatch(MemoryGovernor.toStage(levels[i]));
+      assertBytes(expected[i][0], expected[i][1], expected[i][2]);
+    }
+  }
+
+  @Test
+  public void unknownUsageIsNotCounted () {
+    MemoryGovernor.Trimmable unknown = new MemoryGovernor.Trimmable() {
+      @Override
+      public void trimMemory (int stage) { }
+
+      @Override
+      public long getMemoryUsage () {
+        return -1;
+      }
+    };
+    governor.register("unknown", unknown, MemoryGovernor.Priority.LOW);
+    registerAll();
+    assertEquals(24 * MB, governor.getMemoryUsage());
+  }
+
+  @Test
+  public void unregisteredCacheIsNotTrimmed () {
+    registerAll();
+    governor.unregister(normal);
+    governor.dispatch(MemoryGovernor.Stage.SEVERE);
+    assertEquals(8 * MB, normal.bytes);
+    assertEquals(0, normal.stages.size());
+    assertEquals(4 * MB, governor.getMemoryUsage());
+  }
+}
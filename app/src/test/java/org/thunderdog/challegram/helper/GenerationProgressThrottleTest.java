@@ -0,0 +1,203 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 23:59
+ */
+package org.thunderdog.challegram.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class GenerationProgressThrottleTest {
+  private static final long INTERVAL_MS = 1000;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Appends Ogg-like pages to a file: each page is written as a header and a body in two separate writes,
+   * so the file may be checked in the middle of a page, like it happens while the encoder is flushing.
+   */
+  private static final class FakePageWriter {
+    private final File file;
+    private final List<Long> pageBoundaries = new ArrayList<>();
+    private long writtenSize;
+
+    FakePageWriter (File file) {
+      this.file = file;
+    }
+
+    void writeHeader (int segmentCount) throws IOException {
+      write(27 + segmentCount);
+    }
+
+    void writeBody (int size) throws IOException {
+      write(size);
+      pageBoundaries.add(writtenSize);
+    }
+
+    private void write (int size) throws IOException {
+      try (FileOutputStream out = new FileOutputStream(file, true)) {
+        out.write(new byte[size]);
+      }
+      writtenSize += size;
+    }
+  }
+
+  @Test
+  public void firstCheckPassesRegardlessOfTime () {
+    GenerationProgressThrottle throttle = new GenerationProgressThrottle(INTERVAL_MS);
+    assertTrue(throttle.needCheck(0));
+
+    throttle = new GenerationProgressThrottle(INTERVAL_MS);
+    assertTrue(throttle.needCheck(INTERVAL_MS - 1));
+  }
+
+  @Test
+  public void intervalBoundary () {
+    GenerationProgressThrottle throttle = new GenerationProgressThrottle(INTERVAL_MS);
+    long start = 5000;
+    assertTrue(throttle.needCheck(start));
+    assertFalse(throttle.needCheck(start));
+    assertFalse(throttle.needCheck(start + INTERVAL_MS - 1));
+    assertTrue(throttle.needCheck(start + INTERVAL_MS));
+    // Interval counts from the last passed check, not from the first one
+    assertFalse(throttle.needCheck(start + INTERVAL_MS * 2 - 1));
+    assertTrue(throttle.needCheck(start + INTERVAL_MS * 2));
+  }
+
+  @Test
+  public void reportsOnlyGrowingPrefix () {
+    GenerationProgressThrottle throttle = new GenerationProgressThrottle(INTERVAL_MS);
+    assertFalse(throttle.onPrefixSize(0));
+    assertTrue(throttle.onPrefixSize(1));
+    assertFalse(throttle.onPrefixSize(1));
+    assertTrue(throttle.onPrefixSize(4096));
+    assertFalse(throttle.onPrefixSize(2048));
+    assertFalse(throttle.onPrefixSize(4096));
+    assertTrue(throttle.onPrefixSize(4097));
+  }
+
+  @Test
+  public void resetStartsNewRecording () {
+    GenerationProgressThrottle throttle = new GenerationProgressThrottle(INTERVAL_MS);
+    assertTrue(throttle.needCheck(10_000));
+    assertTrue(throttle.onPrefixSize(100_000));
+
+    throttle.reset();
+    // Next recording may start right away and its file starts from scratch
+    assertTrue(throttle.needCheck(10_001));
+    assertTrue(throttle.onPrefixSize(512));
+    assertFalse(throttle.needCheck(10_002));
+  }
+
+  @Test
+  public void simulatedRecording () {
+    // 10 seconds of recording, frame written every 60ms, file grows by 120 bytes per frame,
+    // except for periods when encoder buffers internally and size stays the same
+    GenerationProgressThrottle throttle = new GenerationProgressThrottle(INTERVAL_MS);
+    long fileSize = 0;
+    long lastReportedSize = 0, lastCheckTime = -1;
+    int reportCount = 0;
+    for (long time = 0; time <= 10_000; time += 60) {
+      if ((time / 1500) % 2 == 0) {
+        fileSize += 120;
+      }
+      if (throttle.needCheck(time)) {
+        if (lastCheckTime != -1) {
+          assertTrue(time - lastCheckTime >= INTERVAL_MS);
+        }
+        lastCheckTime = time;
+        if (throttle.onPrefixSize(fileSize)) {
+          assertTrue(fileSize > lastReportedSize);
+          lastReportedSize = fileSize;
+          reportCount++;
+        } else {
+          assertEquals(lastReportedSize, fileSize);
+        }
+      }
+    }
+    assertTrue(reportCount > 0);
+    assertTrue(reportCount <= 10_000 / INTERVAL_MS + 1);
+  }
+
+  @Test
+  public void fakeWriterPrefixBookkeeping () throws IOException {
+    File file = folder.newFile("voice.ogg");
+    FakePageWriter writer = new FakePageWriter(file);
+    GenerationProgressThrottle throttle = new GenerationProgressThrottle(INTERVAL_MS);
+
+    List<Long> reported = new ArrayList<>();
+    long time = 0, lastReportTime = -1;
+    int midPageCheckCount = 0;
+    // 120 pages of 20ms frames, variable body size
+    for (int page = 0; page < 120; page++) {
+      writer.writeHeader(1);
+      time += 10;
+      long prefixSize = throttle.checkFile(time, file);
+      if (prefixSize > 0) {
+        // Checked between header and body: prefix is not on a page boundary, but all of it is already on disk
+        assertFalse(writer.pageBoundaries.contains(prefixSize));
+        midPageCheckCount++;
+        reported.add(prefixSize);
+        if (lastReportTime != -1) {
+          assertTrue(time - lastReportTime >= INTERVAL_MS);
+        }
+        lastReportTime = time;
+      }
+      writer.writeBody(60 + (page % 7) * 10);
+      time += 50;
+      prefixSize = throttle.checkFile(time, file);
+      if (prefixSize > 0) {
+        assertTrue(writer.pageBoundaries.contains(prefixSize));
+        reported.add(prefixSize);
+        if (lastReportTime != -1) {
+          assertTrue(time - lastReportTime >= INTERVAL_MS);
+        }
+        assertEquals(writer.writtenSize, prefixSize);
+        lastReportTime = time;
+      }
+    }
+
+    assertTrue(reported.size() > 1);
+    assertTrue(midPageCheckCount > 0);
+    for (int i = 0; i < reported.size(); i++) {
+      assertTrue(reported.get(i) <= writer.writtenSize);
+      if (i > 0) {
+        assertTrue(reported.get(i) > reported.get(i - 1));
+      }
+    }
+
+    // Nothing new on disk: nothing is reported again, even after the interval
+    long lastReported = reported.get(reported.size() - 1);
+    time += INTERVAL_MS;
+    long prefixSize = throttle.checkFile(time, file);
+    if (lastReported == writer.writtenSize) {
+      assertEquals(0, prefixSize);
+    } else {
+      assertEquals(writer.writtenSize, prefixSize);
+    }
+    time += INTERVAL_MS;
+    assertEquals(0, throttle.checkFile(time, file));
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 23:59
+ */
+package org.thunderdog.challegram.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+public class PcmBufferRingTest {
+  // Same as in Recorder
+  private static final int RING_CAPACITY = 8;
+  private static final int RING_BUFFER_SIZE = 4096;
+
+  private static final int BYTES_PER_SECOND = 48000 * 2; // 48 kHz, mono, 16-bit
+  private static final int SPEED = 10;
+  private static final int DURATION_SECONDS = 20;
+
+  @Test
+  public void closedEmptyRingReturnsNull () {
+    PcmBufferRing ring = new PcmBufferRing(RING_CAPACITY, RING_BUFFER_SIZE);
+    ring.close();
+    assertNull(ring.take());
+    ring.reset();
+    ring.acquire().putInt(1);
+    ring.publish();
+    ring.close();
+    ByteBuffer buffer = ring.take();
+    assertEquals(1, buffer.getInt(0));
+    ring.release();
+    assertNull(ring.take());
+  }
+
+  @Test
+  public void fullRingOverflowsInOrder () {
+    PcmBufferRing ring = new PcmBufferRing(2, 16);
+    for (int round = 0; round < 2; round++) {
+      for (int i = 0; i < 5; i++) {
+        ring.acquire().putInt(0, i);
+        ring.publish();
+      }
+      assertEquals(3, ring.getOverflowCount());
+      // Consumer catches up partially, producer keeps using overflow buffers until they are drained
+      assertEquals(0, ring.take().getInt(0));
+      ring.release();
+      ring.acquire().putInt(0, 5);
+      ring.publish();
+      assertEquals(4, ring.getOverflowCount());
+      ring.close();
+      for (int i = 1; i <= 5; i++) {
+        ByteBuffer buffer = ring.take();
+        assertEquals(i, buffer.getInt(0));
+        assertEquals(16, buffer.capacity());
+        ring.release();
+      }
+      assertNull(ring.take());
+      ring.reset();
+      assertEquals(0, ring.getOverflowCount());
+    }
+    // Overflow buffers are reused between recordings
+    assertEquals(4, ring.getAllocatedOverflowCount());
+  }
+
+  /**
+   * Producer publishes buffers on the schedule of a 48 kHz recording played 10 times faster than realtime,
+   * consumer stalls now and then, as an encoder does when flushing to disk.
+   *
+   * Every buffer must arrive intact and in order, and the producer must never wait for the consumer,
+   * even when a stall is longer than the ring can absorb.
+   */
+  @Test
+  public void tenTimesRealtime () throws InterruptedException {
+    final PcmBufferRing ring = new PcmBufferRing(RING_CAPACITY, RING_BUFFER_SIZE);
+    final int bufferCount = DURATION_SECONDS * BYTES_PER_SECOND / RING_BUFFER_SIZE;
+    final long bufferIntervalNs = TimeUnit.SECONDS.toNanos(1) * RING_BUFFER_SIZE / BYTES_PER_SECOND / SPEED;
+    final long ringDurationNs = bufferIntervalNs * RING_CAPACITY;
+    final int lastBufferSize = RING_BUFFER_SIZE / 2;
+
+    final AtomicReference<Throwable> consumerError = new AtomicReference<>();
+    final long[] consumedCount = new long[1];
+    Thread consumer = new Thread(() -> {
+      try {
+        long expectedSequence = 0;
+        ByteBuffer buffer;
+        while ((buffer = ring.take()) != null) {
+          final long sequence = buffer.getLong(0);
+          if (sequence != expectedSequence)
+            throw new AssertionError("Expected buffer " + expectedSequence + ", received: " + sequence);
+          final int expectedLimit = sequence == bufferCount - 1 ? lastBufferSize : RING_BUFFER_SIZE;
+          if (buffer.limit() != expectedLimit)
+            throw new AssertionError("limit: " + buffer.limit() + ", expected: " + expectedLimit);
+          for (int offset = 8; offset + 8 <= buffer.limit(); offset += 8) {
+            if (buffer.getLong(offset) != sequence * 31 + offset)
+              throw new AssertionError("Buffer " + sequence + " is corrupted at " + offset);
+          }
+          if (sequence % 97 == 0) {
+            // Stall for a half of what the ring can hold
+            LockSupport.parkNanos(ringDurationNs / 2);
+          } else if (sequence % 211 == 0) {
+            // Stall for longer than the ring can hold
+            LockSupport.parkNanos(ringDurationNs * 3);
+          }
+          ring.release();
+          expectedSequence++;
+        }
+        consumedCount[0] = expectedSequence;
+      } catch (Throwable t) {
+        consumerError.set(t);
+      }
+    }, "encoder");
+    consumer.start();
+
+    long maxLagNs = 0;
+    final long startTime = System.nanoTime();
+    for (int sequence = 0; sequence < bufferCount; sequence++) {
+      final long deadline = startTime + bufferIntervalNs * sequence;
+      long now;
+      while ((now = System.nanoTime()) < deadline) {
+        LockSupport.parkNanos(deadline - now);
+      }
+      maxLagNs = Math.max(maxLagNs, now - deadline);
+
+      ByteBuffer buffer = ring.acquire();
+      final int size = sequence == bufferCount - 1 ? lastBufferSize : RING_BUFFER_SIZE;
+      buffer.putLong(0, sequence);
+      for (int offset = 8; offset + 8 <= size; offset += 8) {
+        buffer.putLong(offset, (long) sequence * 31 + offset);
+      }
+      buffer.limit(size);
+      ring.publish();
+    }
+    ring.close();
+    final long elapsedNs = System.nanoTime() - startTime;
+
+    consumer.join(TimeUnit.SECONDS.toMillis(DURATION_SECONDS));
+    if (consumer.isAlive()) {
+      fail("Consumer got stuck");
+    }
+    if (consumerError.get() != null) {
+      throw new AssertionError(consumerError.get());
+    }
+    assertEquals(bufferCount, consumedCount[0]);
+    final long scheduledNs = bufferIntervalNs * bufferCount;
+    assertTrue("Took " + TimeUnit.NANOSECONDS.toMillis(elapsedNs) + "ms instead of " + TimeUnit.NANOSECONDS.toMillis(scheduledNs) + "ms", elapsedNs < scheduledNs * 3 / 2);
+    // Producer never waits, so its lag is only scheduling noise, far below what AudioRecord's own buffer holds
+    assertTrue("Producer lagged by " + TimeUnit.NANOSECONDS.toMillis(maxLagNs) + "ms", maxLagNs < ringDurationNs);
+    assertTrue(ring.getOverflowCount() > 0);
+    assertTrue(ring.getAllocatedOverflowCount() <= ring.getOverflowCount());
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 23:56
+ */
+package org.thunderdog.challegram.telegram;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+public class ChatThreadMapTest {
+  private static String key (long chatId, long messageThreadId) {
+    return chatId + "_" + messageThreadId;
+  }
+
+  @Test
+  public void distinguishesThreadsOfSameChat () {
+    ChatThreadMap<String> map = new ChatThreadMap<>();
+    map.put(-1001234567890L, 0, "chat");
+    map.put(-1001234567890L, 1L << 20, "thread");
+    map.put(1L << 20, -1001234567890L, "swapped");
+    assertEquals("chat", map.get(-1001234567890L, 0));
+    assertEquals("thread", map.get(-1001234567890L, 1L << 20));
+    assertEquals("swapped", map.get(1L << 20, -1001234567890L));
+    assertNull(map.get(-1001234567890L, 1));
+    assertEquals(3, map.size());
+  }
+
+  /**
+   * Replays random puts and removals over a small key space, so clusters, rehashing and
+   * backward shifting on removal are all exercised, and compares the result with {@link HashMap}.
+   */
+  @Test
+  public void replayMatchesHashMap () {
+    final int operationCount = 10_000;
+    Random random = new Random(42);
+    ChatThreadMap<Integer> map = new ChatThreadMap<>();
+    HashMap<String, Integer> expected = new HashMap<>();
+    long[] chatIds = new long[64];
+    for (int i = 0; i < chatIds.length; i++) {
+      chatIds[i] = i % 2 == 0 ? random.nextInt(1_000_000) : -1000000000000L - random.nextInt(1_000_000);
+    }
+    for (int i = 0; i < operationCount; i++) {
+      long chatId = chatIds[random.nextInt(chatIds.length)];
+      long messageThreadId = random.nextInt(4) == 0 ? (long) random.nextInt(8) << 20 : 0;
+      String key = key(chatId, messageThreadId);
+      if (random.nextInt(3) == 0) {
+        assertEquals(expected.remove(key), map.remove(chatId, messageThreadId));
+      } else {
+        map.put(chatId, messageThreadId, i);
+        expected.put(key, i);
+      }
+      assertEquals(expected.size(), map.size());
+    }
+    int foundCount = 0;
+    for (int i = 0; i < map.capacity(); i++) {
+      if (map.valueAt(i) != null) {
+        foundCount++;
+      }
+    }
+    assertEquals(expected.size(), foundCount);
+    for (long chatId : chatIds) {
+      for (int thread = 0; thread < 8; thread++) {
+        long messageThreadId = (long) thread << 20;
+        assertEquals(expected.get(key(chatId, messageThreadId)), map.get(chatId, messageThreadId));
+      }
+    }
+    map.clear();
+    assertTrue(map.isEmpty());
+    assertNull(map.get(chatIds[0], 0));
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 23:59
+ */
+package org.thunderdog.challegram.telegram;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.thunderdog.challegram.telegram.DownloadPriorityPolicy.DISTANCE_UNKNOWN;
+import static org.thunderdog.challegram.telegram.DownloadPriorityPolicy.PRIORITY_AROUND;
+import static org.thunderdog.challegram.telegram.DownloadPriorityPolicy.PRIORITY_CLOSE;
+import static org.thunderdog.challegram.telegram.DownloadPriorityPolicy.PRIORITY_FAR;
+import static org.thunderdog.challegram.telegram.DownloadPriorityPolicy.PRIORITY_NEAR;
+import static org.thunderdog.challegram.telegram.DownloadPriorityPolicy.PRIORITY_NONE;
+import static org.thunderdog.challegram.telegram.DownloadPriorityPolicy.PRIORITY_VISIBLE;
+import static org.thunderdog.challegram.telegram.DownloadPriorityPolicy.estimateDistance;
+import static org.thunderdog.challegram.telegram.DownloadPriorityPolicy.getDistance;
+import static org.thunderdog.challegram.telegram.DownloadPriorityPolicy.getPriority;
+
+import org.junit.Test;
+
+public class DownloadPriorityPolicyTest {
+  private static final int VIEWPORT_SIZE = 1000;
+
+  @Test
+  public void priorityBucketBoundaries () {
+    assertEquals(PRIORITY_VISIBLE, getPriority(0, VIEWPORT_SIZE));
+
+    assertEquals(PRIORITY_NEAR, getPriority(1, VIEWPORT_SIZE));
+    assertEquals(PRIORITY_NEAR, getPriority(VIEWPORT_SIZE / 2, VIEWPORT_SIZE));
+
+    assertEquals(PRIORITY_CLOSE, getPriority(VIEWPORT_SIZE / 2 + 1, VIEWPORT_SIZE));
+    assertEquals(PRIORITY_CLOSE, getPriority(VIEWPORT_SIZE, VIEWPORT_SIZE));
+
+    assertEquals(PRIORITY_AROUND, getPriority(VIEWPORT_SIZE + 1, VIEWPORT_SIZE));
+    assertEquals(PRIORITY_AROUND, getPriority(VIEWPORT_SIZE * 2, VIEWPORT_SIZE));
+
+    assertEquals(PRIORITY_FAR, getPriority(VIEWPORT_SIZE * 2 + 1, VIEWPORT_SIZE));
+    assertEquals(PRIORITY_FAR, getPriority(Integer.MAX_VALUE, VIEWPORT_SIZE));
+  }
+
+  @Test
+  public void priorityOddViewportSize () {
+    // viewportSize / 2 rounds down
+    assertEquals(PRIORITY_NEAR, getPriority(500, 1001));
+    assertEquals(PRIORITY_CLOSE, getPriority(501, 1001));
+
+    assertEquals(PRIORITY_VISIBLE, getPriority(0, 1));
+    assertEquals(PRIORITY_CLOSE, getPriority(1, 1));
+    assertEquals(PRIORITY_AROUND, getPriority(2, 1));
+    assertEquals(PRIORITY_FAR, getPriority(3, 1));
+  }
+
+  @Test
+  public void priorityIsNotChangedWithoutLayout () {
+    assertEquals(PRIORITY_NONE, getPriority(DISTANCE_UNKNOWN, VIEWPORT_SIZE));
+    assertEquals(PRIORITY_NONE, getPriority(0, 0));
+    assertEquals(PRIORITY_NONE, getPriority(100, -1));
+  }
+
+  @Test
+  public void priorityDecreasesWithDistance () {
+    int prevPriority = getPriority(0, VIEWPORT_SIZE);
+    for (int distance = 1; distance <= VIEWPORT_SIZE * 3; distance++) {
+      int priority = getPriority(distance, VIEWPORT_SIZE);
+      assertTrue(priority <= prevPriority);
+      assertTrue(priority >= PRIORITY_FAR);
+      prevPriority = priority;
+    }
+  }
+
+  @Test
+  public void distanceBoundaries () {
+    // Above the viewport
+    assertEquals(100, getDistance(-200, -100, 0, VIEWPORT_SIZE));
+    assertEquals(1, getDistance(-200, -1, 0, VIEWPORT_SIZE));
+    assertEquals(1, getDistance(-200, 0, 0, VIEWPORT_SIZE)); // Touching top edge is not visible
+    assertEquals(0, getDistance(-200, 1, 0, VIEWPORT_SIZE));
+
+    // Below the viewport
+    assertEquals(0, getDistance(VIEWPORT_SIZE - 1, VIEWPORT_SIZE + 200, 0, VIEWPORT_SIZE));
+    assertEquals(1, getDistance(VIEWPORT_SIZE, VIEWPORT_SIZE + 200, 0, VIEWPORT_SIZE)); // Touching bottom edge is not visible
+    assertEquals(1, getDistance(VIEWPORT_SIZE + 1, VIEWPORT_SIZE + 200, 0, VIEWPORT_SIZE));
+    assertEquals(100, getDistance(VIEWPORT_SIZE + 100, VIEWPORT_SIZE + 200, 0, VIEWPORT_SIZE));
+
+    // Inside or covering the viewport
+    assertEquals(0, getDistance(0, VIEWPORT_SIZE, 0, VIEWPORT_SIZE));
+    assertEquals(0, getDistance(100, 200, 0, VIEWPORT_SIZE));
+    assertEquals(0, getDistance(-500, VIEWPORT_SIZE + 500, 0, VIEWPORT_SIZE));
+
+    // Viewport not starting at 0
+    assertEquals(50, getDistance(0, 50, 100, 200));
+    assertEquals(50, getDistance(250, 300, 100, 200));
+  }
+
+  @Test
+  public void adjacentItemIsNotVisible () {
+    int itemSize = 300;
+    assertEquals(PRIORITY_NEAR, getPriority(getDistance(-itemSize, 0, 0, VIEWPORT_SIZE), VIEWPORT_SIZE));
+    assertEquals(PRIORITY_NEAR, getPriority(getDistance(VIEWPORT_SIZE, VIEWPORT_SIZE + itemSize, 0, VIEWPORT_SIZE), VIEWPORT_SIZE));
+  }
+
+  @Test
+  public void estimateDistanceBoundaries () {
+    // Item right next to the laid out one is one average item further
+    assertEquals(150, estimateDistance(50, 0, 100));
+    assertEquals(350, estimateDistance(50, 2, 100));
+    assertEquals(100, estimateDistance(0, 0, 100));
+
+    assertEquals(DISTANCE_UNKNOWN, estimateDistance(DISTANCE_UNKNOWN, 0, 100));
+    assertEquals(DISTANCE_UNKNOWN, estimateDistance(50, 0, 0));
+    assertEquals(DISTANCE_UNKNOWN, estimateDistance(50, 0, -1));
+  }
+
+  @Test
+  public void estimateDistanceDoesNotOverflow () {
+    assertEquals(Integer.MAX_VALUE, estimateDistance(Integer.MAX_VALUE - 10, 0, 100));
+    assertEquals(Integer.MAX_VALUE, estimateDistance(0, Integer.MAX_VALUE / 2, 100));
+    assertEquals(Integer.MAX_VALUE, estimateDistance(0, Integer.MAX_VALUE, 1));
+    assertEquals(Integer.MAX_VALUE, estimateDistance(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE));
+    assertEquals(PRIORITY_FAR, getPriority(estimateDistance(0, Integer.MAX_VALUE, 1), VIEWPORT_SIZE));
+  }
+
+  @Test
+  public void estimatedPriorityBucketBoundaries () {
+    int averageItemSize = 100;
+    int knownDistance = 0; // Closest laid out item is visible
+    assertEquals(PRIORITY_NEAR, getPriority(estimateDistance(knownDistance, 4, averageItemSize), VIEWPORT_SIZE));
+    assertEquals(PRIORITY_CLOSE, getPriority(estimateDistance(knownDistance, 5, averageItemSize), VIEWPORT_SIZE));
+    assertEquals(PRIORITY_CLOSE, getPriority(estimateDistance(knownDistance, 9, averageItemSize), VIEWPORT_SIZE));
+    assertEquals(PRIORITY_AROUND, getPriority(estimateDistance(knownDistance, 10, averageItemSize), VIEWPORT_SIZE));
+    assertEquals(PRIORITY_AROUND, getPriority(estimateDistance(knownDistance, 19, averageItemSize), VIEWPORT_SIZE));
+    assertEquals(PRIORITY_FAR, getPriority(estimateDistance(knownDistance, 20, averageItemSize), VIEWPORT_SIZE));
+  }
+}
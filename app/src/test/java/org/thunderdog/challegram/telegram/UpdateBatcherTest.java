@@ -0,0 +1,258 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 23:58
+ */
+package org.thunderdog.challegram.telegram;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays chat action updates through {@link UpdateBatcher} the way {@link TdlibStatusManager} does,
+ * with states kept in {@link ChatThreadMap}.
+ */
+public class UpdateBatcherTest {
+  private static final int EVENT_COUNT = 10_000;
+  private static final int CANCEL = 0;
+
+  private static final class Event {
+    final long chatId, messageThreadId;
+    final int senderId, action;
+
+    Event (long chatId, long messageThreadId, int senderId, int action) {
+      this.chatId = chatId;
+      this.messageThreadId = messageThreadId;
+      this.senderId = senderId;
+      this.action = action;
+    }
+  }
+
+  private static final class State implements UpdateBatcher.Changeable {
+    final long chatId, messageThreadId;
+    final HashMap<Integer, Integer> actions = new HashMap<>();
+    int pendingChangeFlags;
+    int batchDispatchCount;
+
+    State (long chatId, long messageThreadId) {
+      this.chatId = chatId;
+      this.messageThreadId = messageThreadId;
+    }
+
+    @Override
+    public int getPendingChangeFlags () {
+      return pendingChangeFlags;
+    }
+
+    @Override
+    public void setPendingChangeFlags (int changeFlags) {
+      this.pendingChangeFlags = changeFlags;
+    }
+  }
+
+  private static final class Replay implements UpdateBatcher.Delegate<Event, State> {
+    final ChatThreadMap<State> states = new ChatThreadMap<>();
+    final UpdateBatcher<Event, State> batcher = new UpdateBatcher<>(this);
+    final ArrayList<State> dispatchedInBatch = new ArrayList<>();
+    int appliedCount, changeCount, dispatchCount, batchCount;
+
+    @Override
+    public void applyUpdate (Event event) {
+      appliedCount++;
+      State state = states.get(event.chatId, event.messageThreadId);
+      if (state == null) {
+        if (event.action == CANCEL)
+          return;
+        state = new State(event.chatId, event.messageThreadId);
+        states.put(event.chatId, event.messageThreadId, state);
+      }
+      final int changeFlags;
+      if (event.action == CANCEL) {
+        changeFlags = state.actions.remove(event.senderId) != null ? TdlibStatusManager.CHANGE_FLAG_TEXT : 0;
+      } else {
+        Integer previous = state.actions.put(event.senderId, event.action);
+        changeFlags = previous == null ? TdlibStatusManager.CHANGE_FLAG_TEXT : previous != event.action ? TdlibStatusManager.CHANGE_FLAG_ICON : 0;
+      }
+      if (changeFlags != 0) {
+        changeCount++;
+        batcher.onChanged(state, changeFlags);
+      }
+    }
+
+    @Override
+    public void dispatchChanges (State target, int changeFlags) {
+      assertTrue(changeFlags != 0);
+      dispatchCount++;
+      target.batchDispatchCount++;
+      dispatchedInBatch.add(target);
+    }
+
+    void process () {
+      batchCount++;
+      batcher.processPendingUpdates();
+      for (State state : dispatchedInBatch) {
+        assertEquals("Chat notified more than once per batch", 1, state.batchDispatchCount);
+      }
+      for (State state : dispatchedInBatch) {
+        state.batchDispatchCount = 0;
+      }
+      dispatchedInBatch.clear();
+    }
+  }
+
+  private static ArrayList<Event> generateEvents (long seed) {
+    Random random = new Random(seed);
+    ArrayList<Event> events = new ArrayList<>(EVENT_COUNT);
+    for (int i = 0; i < EVENT_COUNT; i++) {
+      long chatId = -1000000000000L - random.nextInt(50);
+      long messageThreadId = random.nextInt(5) == 0 ? (long) (1 + random.nextInt(3)) << 20 : 0;
+      int senderId = random.nextInt(5);
+      int action = random.nextInt(3) == 0 ? CANCEL : 1 + random.nextInt(4);
+      events.add(new Event(chatId, messageThreadId, senderId, action));
+    }
+    return events;
+  }
+
+  private static HashMap<String, HashMap<Integer, Integer>> expectedState (ArrayList<Event> events) {
+    HashMap<String, HashMap<Integer, Integer>> expected = new HashMap<>();
+    for (Event event : events) {
+      String key = event.chatId + "_" + event.messageThreadId;
+      HashMap<Integer, Integer> actions = expected.get(key);
+      if (event.action == CANCEL) {
+        if (actions != null) {
+          actions.remove(event.senderId);
+        }
+      } else {
+        if (actions == null) {
+          expected.put(key, actions = new HashMap<>());
+        }
+        actions.put(event.senderId, event.action);
+      }
+    }
+    return expected;
+  }
+
+  private static void assertFinalState (ArrayList<Event> events, Replay replay) {
+    HashMap<String, HashMap<Integer, Integer>> expected = expectedState(events);
+    int stateCount = 0;
+    for (int i = 0; i < replay.states.capacity(); i++) {
+      State state = replay.states.valueAt(i);
+      if (state == null)
+        continue;
+      stateCount++;
+      HashMap<Integer, Integer> actions = expected.get(state.chatId + "_" + state.messageThreadId);
+      assertEquals(actions != null ? actions : new HashMap<Integer, Integer>(), state.actions);
+      assertEquals(0, state.pendingChangeFlags);
+    }
+    assertEquals(expected.size(), stateCount);
+    assertEquals(events.size(), replay.appliedCount);
+  }
+
+  @Test
+  public void clearedUpdatesAreNotApplied () {
+    Replay replay = new Replay();
+    ArrayList<Event> events = generateEvents(45);
+    assertTrue(replay.batcher.enqueue(events.get(0)));
+    for (int i = 1; i < 100; i++) {
+      replay.batcher.enqueue(events.get(i));
+    }
+    replay.batcher.clearPendingUpdates();
+    replay.process(); // Already scheduled message
+    assertEquals(0, replay.appliedCount);
+    assertEquals(0, replay.dispatchCount);
+
+    // Next update schedules a new message
+    assertTrue(replay.batcher.enqueue(events.get(100)));
+    replay.process();
+    assertEquals(1, replay.appliedCount);
+  }
+
+  @Test
+  public void singleBatchNotifiesEachChatOnce () {
+    ArrayList<Event> events = generateEvents(42);
+    Replay replay = new Replay();
+    int scheduleCount = 0;
+    for (Event event : events) {
+      if (replay.batcher.enqueue(event)) {
+        scheduleCount++;
+      }
+    }
+    assertEquals(1, scheduleCount);
+    replay.process();
+    assertFinalState(events, replay);
+    HashSet<String> changedChats = new HashSet<>();
+    for (Event event : events) {
+      changedChats.add(event.chatId + "_" + event.messageThreadId);
+    }
+    assertTrue(replay.dispatchCount <= changedChats.size());
+    assertTrue(replay.dispatchCount < replay.changeCount);
+  }
+
+  @Test
+  public void messagePerUpdateWithoutBacklog () {
+    ArrayList<Event> events = generateEvents(43);
+    Replay replay = new Replay();
+    for (Event event : events) {
+      assertTrue(replay.batcher.enqueue(event));
+      replay.process();
+    }
+    assertFinalState(events, replay);
+    assertEquals(events.size(), replay.batchCount);
+    assertEquals(replay.changeCount, replay.dispatchCount);
+  }
+
+  /**
+   * TDLib thread enqueues updates and posts a message only when asked to, UI thread applies them concurrently.
+   */
+  @Test
+  public void concurrentReplay () throws InterruptedException {
+    final ArrayList<Event> events = generateEvents(44);
+    final Replay replay = new Replay();
+    final LinkedBlockingQueue<Boolean> messages = new LinkedBlockingQueue<>();
+    final int[] postedCount = new int[1];
+    Thread tdlibThread = new Thread(() -> {
+      Random random = new Random(45);
+      for (Event event : events) {
+        if (replay.batcher.enqueue(event)) {
+          postedCount[0]++;
+          messages.add(Boolean.TRUE);
+        }
+        if (random.nextInt(50) == 0) {
+          Thread.yield();
+        }
+      }
+      messages.add(Boolean.FALSE);
+    }, "tdlib");
+    tdlibThread.start();
+    while (true) {
+      Boolean message = messages.poll(30, TimeUnit.SECONDS);
+      assertTrue("UI thread got stuck", message != null);
+      if (!message)
+        break;
+      replay.process();
+    }
+    tdlibThread.join();
+    assertEquals(postedCount[0], replay.batchCount);
+    assertTrue(replay.batchCount <= events.size());
+    assertTrue(replay.dispatchCount <= replay.changeCount);
+    assertFinalState(events, replay);
+  }
+}
@@ -0,0 +1,34 @@
+plugins {
+  `java-library`
+  id("me.champeau.jmh") version "0.7.1"
+}
+
+java {
+  sourceCompatibility = Config.JAVA_VERSION
+  targetCompatibility = Config.JAVA_VERSION
+}
+
+// :app is an Android module, so Android-free classes are compiled here directly from their sources.
+// When a listed class starts depending on Android, its benchmark has to move to app/src/androidTest.
+sourceSets.getByName("main") {
+  java.srcDirs(
+    "../app/src/main/java"
+  )
+  java.include(
+    "org/thunderdog/challegram/charts/SegmentTree.java",
+    "org/thunderdog/challegram/ui/camera/QrRegionDecoder.java"
+  )
+}
+
+dependencies {
+  implementation("androidx.annotation:annotation:${LibraryVersions.ANNOTATIONS}")
+  implementation("com.google.zxing:core:3.4.1")
+}
+
+jmh {
+  warmupIterations.set(3)
+  iterations.set(5)
+  fork.set(1)
+  resultFormat.set("JSON")
+  resultsFile.set(project.file("results/latest.json"))
+}
@@ -0,0 +1,113 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 20:50
+ */
+package org.thunderdog.challegram.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.thunderdog.challegram.ui.camera.QrRegionDecoder;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * QR decoding of camera frames as done by {@code CameraQrBridge} when ML Kit is not available.
+ *
+ * {@code fullFrame} copies the whole Y plane and decodes all of it, as before the region of interest was introduced
+ * (without the extra rotation copy it also used to do). {@code region} copies the center region with plane strides
+ * and decodes only it, as {@link QrRegionDecoder} does for the first frames.
+ *
+ * Frames are synthetic: a login QR code on a noisy gradient, with row padding like camera planes have.
+ * Both variants must find the code, otherwise setup fails.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class QrDecodeBenchmark {
+  private static final String CONTENT = "tg://login?token=AQJ3bWlzYWt1cmFuYW1pX3NhbXBsZV90b2tlbl9mb3JfYmVuY2htYXJr";
+  private static final int ROW_PADDING = 64;
+
+  @Param({"1920x1080", "3840x2160"})
+  public String frameSize;
+
+  private int width, height, rowStride;
+  private ByteBuffer plane;
+  private byte[] fullFrame;
+  private QrRegionDecoder decoder;
+
+  @Setup
+  public void setup () throws WriterException {
+    int separator = frameSize.indexOf('x');
+    width = Integer.parseInt(frameSize.substring(0, separator));
+    height = Integer.parseInt(frameSize.substring(separator + 1));
+    rowStride = width + ROW_PADDING;
+
+    byte[] data = new byte[rowStride * height];
+    Random random = new Random(width);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int value = 90 + (x + y) * 80 / (width + height) + random.nextInt(24);
+        data[y * rowStride + x] = (byte) value;
+      }
+    }
+    // Code takes about a third of the short side, slightly off center
+    int codeSize = height / 3;
+    BitMatrix matrix = new QRCodeWriter().encode(CONTENT, BarcodeFormat.QR_CODE, codeSize, codeSize);
+    int codeLeft = (width - codeSize) / 2 + width / 40;
+    int codeTop = (height - codeSize) / 2 - height / 40;
+    for (int y = 0; y < matrix.getHeight(); y++) {
+      for (int x = 0; x < matrix.getWidth(); x++) {
+        int value = matrix.get(x, y) ? 30 + random.nextInt(20) : 200 + random.nextInt(30);
+        data[(codeTop + y) * rowStride + codeLeft + x] = (byte) value;
+      }
+    }
+    plane = ByteBuffer.allocateDirect(data.length);
+    plane.put(data);
+    fullFrame = new byte[data.length];
+    decoder = new QrRegionDecoder();
+
+    if (fullFrame() == null || region() == null)
+      throw new IllegalStateException("QR code not found in " + frameSize);
+  }
+
+  @Benchmark
+  public Result fullFrame () {
+    plane.position(0);
+    plane.get(fullFrame);
+    return decoder.decode(fullFrame, rowStride, height, 0, 0, width, height);
+  }
+
+  @Benchmark
+  public Result region () {
+    // First step of the region of interest, decoding never changes it here
+    int roiWidth = decoder.regionWidth(width, height);
+    int roiHeight = decoder.regionHeight(width, height);
+    int roiLeft = (width - roiWidth) / 2, roiTop = (height - roiHeight) / 2;
+    byte[] luminance = decoder.copyRegion(plane, rowStride, 1, roiLeft, roiTop, roiWidth, roiHeight);
+    return decoder.decode(luminance, roiWidth, roiHeight, 0, 0, roiWidth, roiHeight);
+  }
+}
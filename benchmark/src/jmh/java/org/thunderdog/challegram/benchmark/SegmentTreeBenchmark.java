@@ -0,0 +1,83 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026 at 10:20
+ */
+package org.thunderdog.challegram.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.thunderdog.challegram.charts.SegmentTree;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Range min/max queries as done by charts for every visible window while scrolling or zooming.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SegmentTreeBenchmark {
+  private static final int QUERY_COUNT = 1024;
+
+  @Param({"365", "4096"})
+  public int pointCount;
+
+  @Param({"30", "200"})
+  public int windowSize;
+
+  private SegmentTree tree;
+  private int[] queryStarts;
+  private int queryIndex;
+
+  @Setup
+  public void setup () {
+    Random random = new Random(pointCount);
+    int[] values = new int[pointCount];
+    for (int i = 0; i < pointCount; i++) {
+      values[i] = random.nextInt(100000);
+    }
+    tree = new SegmentTree(values);
+    queryStarts = new int[QUERY_COUNT];
+    int maxStart = Math.max(1, pointCount - windowSize);
+    for (int i = 0; i < QUERY_COUNT; i++) {
+      queryStarts[i] = random.nextInt(maxStart);
+    }
+  }
+
+  private int nextStart () {
+    int start = queryStarts[queryIndex];
+    queryIndex = (queryIndex + 1) % QUERY_COUNT;
+    return start;
+  }
+
+  @Benchmark
+  public int maxQuery () {
+    int from = nextStart();
+    return tree.rMaxQ(from, from + windowSize - 1);
+  }
+
+  @Benchmark
+  public void minMaxQuery (Blackhole blackhole) {
+    int from = nextStart();
+    blackhole.consume(tree.rMinQ(from, from + windowSize - 1));
+    blackhole.consume(tree.rMaxQ(from, from + windowSize - 1));
+  }
+}
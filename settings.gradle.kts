@@ -7,5 +7,7 @@ include(
   ":vkryl:leveldb",
   ":vkryl:core",
 
-  ":app"
+  ":app",
+
+  ":benchmark"
 )
\ No newline at end of file